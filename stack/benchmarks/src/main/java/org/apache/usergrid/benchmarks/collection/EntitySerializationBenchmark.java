@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks.collection;
+
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.usergrid.benchmarks.fixtures.BenchmarkMetricsFactory;
+import org.apache.usergrid.benchmarks.fixtures.Fixtures;
+import org.apache.usergrid.persistence.collection.MvccEntity;
+import org.apache.usergrid.persistence.collection.serialization.SerializationFig;
+import org.apache.usergrid.persistence.collection.serialization.impl.MvccEntitySerializationStrategyV3Impl;
+import org.apache.usergrid.persistence.collection.serialization.impl.MvccEntitySerializationStrategyV3Impl.EntitySerializer;
+import org.apache.usergrid.persistence.collection.serialization.impl.MvccEntitySerializationStrategyV3Impl.EntityWrapper;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.EntityMap;
+
+
+/**
+ * Entity (de)serialization in {@link MvccEntitySerializationStrategyV3Impl}, in both the JSON and compact formats.
+ * The strategy is created without a keyspace, nothing here touches cassandra.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class EntitySerializationBenchmark {
+
+    @Param( { "10", "100" } )
+    public int fieldCount;
+
+    @Param( { "false", "true" } )
+    public boolean compact;
+
+    private EntitySerializer serializer;
+    private EntityWrapper wrapper;
+    private ByteBuffer serialized;
+
+
+    @Setup
+    public void setup() {
+        final SerializationFig serializationFig =
+            Fixtures.fig( SerializationFig.class, "isCompactEntityFormatEnabled", String.valueOf( compact ) );
+        final MetricsFactory metricsFactory = new BenchmarkMetricsFactory();
+
+        final MvccEntitySerializationStrategyV3Impl strategy =
+            new MvccEntitySerializationStrategyV3Impl( null, serializationFig, null, metricsFactory );
+
+        serializer = strategy.new EntitySerializer( serializationFig, metricsFactory );
+
+        final Entity entity = Fixtures.entity( new Random( Fixtures.SEED ), fieldCount );
+
+        wrapper = new EntityWrapper( entity.getId(), entity.getVersion(), MvccEntity.Status.COMPLETE,
+            EntityMap.fromEntity( entity ), 0 );
+
+        serialized = serializer.toByteBuffer( wrapper );
+    }
+
+
+    @Benchmark
+    public ByteBuffer serialize() {
+        return serializer.toByteBuffer( wrapper );
+    }
+
+
+    @Benchmark
+    public EntityWrapper deserialize() {
+        return serializer.fromByteBuffer( serialized.duplicate() );
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks.common;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.usergrid.benchmarks.fixtures.Fixtures;
+import org.apache.usergrid.persistence.core.rx.OrderedMerge;
+
+import rx.Observable;
+
+
+/**
+ * Merging sorted streams with {@link OrderedMerge}, as we do when reading edges across shards
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class OrderedMergeBenchmark {
+
+    private static final Comparator<Long> ASCENDING = Long::compare;
+
+    @Param( { "2", "8", "32" } )
+    public int sources;
+
+    @Param( { "10000" } )
+    public int elements;
+
+    @Param( { "100" } )
+    public int bufferSize;
+
+    private Observable<Long>[] observables;
+
+
+    @Setup
+    @SuppressWarnings( "unchecked" )
+    public void setup() {
+        final Random random = new Random( Fixtures.SEED );
+
+        final List<List<Long>> lists = new ArrayList<>( sources );
+
+        for ( int i = 0; i < sources; i++ ) {
+            lists.add( new ArrayList<>() );
+        }
+
+        //spread the values randomly across the sources so the merge has to interleave them
+        for ( int i = 0; i < elements; i++ ) {
+            lists.get( random.nextInt( sources ) ).add( random.nextLong() );
+        }
+
+        observables = new Observable[sources];
+
+        for ( int i = 0; i < sources; i++ ) {
+            final List<Long> values = lists.get( i );
+            Collections.sort( values );
+            observables[i] = Observable.from( values );
+        }
+    }
+
+
+    @Benchmark
+    public int merge() {
+        return OrderedMerge.orderedMerge( ASCENDING, bufferSize, observables ).count().toBlocking().single();
+    }
+}
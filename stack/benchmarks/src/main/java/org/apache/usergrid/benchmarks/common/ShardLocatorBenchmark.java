@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks.common;
+
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.usergrid.benchmarks.fixtures.Fixtures;
+import org.apache.usergrid.persistence.core.shard.ExpandingShardLocator;
+import org.apache.usergrid.persistence.core.shard.StringHashUtils;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+import com.google.common.hash.Funnel;
+
+
+/**
+ * Locating shards for ids with {@link ExpandingShardLocator}, using the same funnel as the edge metadata
+ * serialization
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class ShardLocatorBenchmark {
+
+    private static final Funnel<Id> ID_FUNNEL = ( from, into ) -> {
+        final UUID id = from.getUuid();
+
+        into.putLong( id.getMostSignificantBits() );
+        into.putLong( id.getLeastSignificantBits() );
+        into.putString( from.getType(), StringHashUtils.UTF8 );
+    };
+
+    private static final int ID_COUNT = 1024;
+
+    /**
+     * Bucket sizes, separated by colons, newest first
+     */
+    @Param( { "20", "100:50:20" } )
+    public String buckets;
+
+    private ExpandingShardLocator<Id> locator;
+    private Id[] ids;
+    private int next;
+
+
+    @Setup
+    public void setup() {
+        final String[] sizes = buckets.split( ":" );
+        final int[] bucketSizes = new int[sizes.length];
+
+        for ( int i = 0; i < sizes.length; i++ ) {
+            bucketSizes[i] = Integer.parseInt( sizes[i] );
+        }
+
+        locator = new ExpandingShardLocator<>( ID_FUNNEL, bucketSizes );
+
+        final Random random = new Random( Fixtures.SEED );
+
+        ids = new Id[ID_COUNT];
+
+        for ( int i = 0; i < ID_COUNT; i++ ) {
+            ids[i] = Fixtures.id( random, "user" );
+        }
+    }
+
+
+    @Benchmark
+    public int currentBucket() {
+        return locator.getCurrentBucket( nextId() );
+    }
+
+
+    @Benchmark
+    public int[] allBuckets() {
+        return locator.getAllBuckets( nextId() );
+    }
+
+
+    private Id nextId() {
+        next = ( next + 1 ) & ( ID_COUNT - 1 );
+        return ids[next];
+    }
+}
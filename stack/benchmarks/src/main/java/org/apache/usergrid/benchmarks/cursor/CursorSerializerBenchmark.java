@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks.cursor;
+
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.apache.usergrid.benchmarks.fixtures.Fixtures;
+import org.apache.usergrid.corepersistence.pipeline.cursor.RequestCursor;
+import org.apache.usergrid.corepersistence.pipeline.cursor.ResponseCursor;
+import org.apache.usergrid.corepersistence.pipeline.read.EdgePath;
+import org.apache.usergrid.corepersistence.pipeline.read.collect.IdCursorSerializer;
+import org.apache.usergrid.corepersistence.pipeline.read.search.ElasticsearchCursorSerializer;
+import org.apache.usergrid.corepersistence.pipeline.read.traverse.EdgeCursorSerializer;
+
+import com.google.common.base.Optional;
+
+
+/**
+ * Encoding and decoding a cursor with an edge, an id and an elasticsearch offset, the shape of a cursor for a
+ * graph traversal followed by a query
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class CursorSerializerBenchmark {
+
+    private Optional<EdgePath> edgePath;
+    private Optional<String> encoded;
+
+
+    @Setup
+    public void setup() {
+        final Random random = new Random( Fixtures.SEED );
+
+        final EdgePath edge = new EdgePath<>( 1, Fixtures.edges( random, 1 )[0], EdgeCursorSerializer.INSTANCE,
+            Optional.absent() );
+
+        final EdgePath id = new EdgePath<>( 2, Fixtures.id( random, "device" ), IdCursorSerializer.INSTANCE,
+            Optional.of( edge ) );
+
+        final EdgePath offset =
+            new EdgePath<>( 3, 100, ElasticsearchCursorSerializer.INSTANCE, Optional.of( id ) );
+
+        edgePath = Optional.of( offset );
+        encoded = new ResponseCursor( edgePath ).encodeAsString();
+    }
+
+
+    @Benchmark
+    public Optional<String> encode() {
+        return new ResponseCursor( edgePath ).encodeAsString();
+    }
+
+
+    @Benchmark
+    public void decode( final Blackhole blackhole ) {
+        final RequestCursor cursor = new RequestCursor( encoded );
+
+        blackhole.consume( cursor.getCursor( 1, EdgeCursorSerializer.INSTANCE ) );
+        blackhole.consume( cursor.getCursor( 2, IdCursorSerializer.INSTANCE ) );
+        blackhole.consume( cursor.getCursor( 3, ElasticsearchCursorSerializer.INSTANCE ) );
+    }
+}
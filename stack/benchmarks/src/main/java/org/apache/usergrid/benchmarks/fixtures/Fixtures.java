@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks.fixtures;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.safehaus.guicyfig.GuicyFig;
+import org.safehaus.guicyfig.GuicyFigModule;
+
+import org.apache.usergrid.persistence.core.guicyfig.SetConfigTestBypass;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.graph.MarkedEdge;
+import org.apache.usergrid.persistence.graph.impl.SimpleMarkedEdge;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+import org.apache.usergrid.persistence.model.field.ArrayField;
+import org.apache.usergrid.persistence.model.field.BooleanField;
+import org.apache.usergrid.persistence.model.field.DoubleField;
+import org.apache.usergrid.persistence.model.field.EntityObjectField;
+import org.apache.usergrid.persistence.model.field.IntegerField;
+import org.apache.usergrid.persistence.model.field.LocationField;
+import org.apache.usergrid.persistence.model.field.LongField;
+import org.apache.usergrid.persistence.model.field.StringField;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+import org.apache.usergrid.persistence.model.field.value.Location;
+import org.apache.usergrid.persistence.model.util.EntityUtils;
+
+import com.google.inject.Guice;
+
+
+/**
+ * Reproducible benchmark inputs.  Everything is generated from a caller supplied seed, so two runs of the same
+ * benchmark on different builds see exactly the same entities, edges and ids.
+ */
+public final class Fixtures {
+
+    public static final long SEED = 0x5EEDL;
+
+    private static final String[] WORDS =
+        { "apache", "usergrid", "cassandra", "elastic", "search", "graph", "entity", "collection", "query", "index",
+            "shard", "edge", "cursor", "tenant", "device", "notification" };
+
+
+    private Fixtures() {
+    }
+
+
+    /**
+     * A version 1 uuid built from the random source, so the ids look like the time uuids we write
+     */
+    public static UUID timeUuid( final Random random ) {
+        final long msb = ( random.nextLong() & ~0xF000L ) | 0x1000L;
+        final long lsb = ( random.nextLong() & 0x3FFFFFFFFFFFFFFFL ) | 0x8000000000000000L;
+        return new UUID( msb, lsb );
+    }
+
+
+    public static Id id( final Random random, final String type ) {
+        return new SimpleId( timeUuid( random ), type );
+    }
+
+
+    public static ApplicationScope applicationScope( final Random random ) {
+        return new ApplicationScopeImpl( id( random, "application" ) );
+    }
+
+
+    /**
+     * Create an entity with the given number of top level fields.  Fields cycle through the types we see in real
+     * payloads: strings, numbers, booleans, arrays, locations and nested objects.
+     */
+    public static Entity entity( final Random random, final int fieldCount ) {
+        final Entity entity = new Entity( id( random, "user" ) );
+        EntityUtils.setVersion( entity, timeUuid( random ) );
+
+        for ( int i = 0; i < fieldCount; i++ ) {
+            final String name = "field" + i;
+
+            switch ( i % 8 ) {
+                case 0:
+                    entity.setField( new StringField( name, sentence( random, 8 ) ) );
+                    break;
+                case 1:
+                    entity.setField( new IntegerField( name, random.nextInt() ) );
+                    break;
+                case 2:
+                    entity.setField( new LongField( name, random.nextLong() ) );
+                    break;
+                case 3:
+                    entity.setField( new DoubleField( name, random.nextDouble() ) );
+                    break;
+                case 4:
+                    entity.setField( new BooleanField( name, random.nextBoolean() ) );
+                    break;
+                case 5:
+                    final List<String> values = new ArrayList<>();
+                    for ( int j = 0; j < 5; j++ ) {
+                        values.add( word( random ) );
+                    }
+                    entity.setField( new ArrayField<>( name, values ) );
+                    break;
+                case 6:
+                    entity.setField( new LocationField( name,
+                        new Location( random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180 ) ) );
+                    break;
+                default:
+                    final EntityObject nested = new EntityObject();
+                    nested.setField( new StringField( "street", sentence( random, 3 ) ) );
+                    nested.setField( new IntegerField( "zip", random.nextInt( 100000 ) ) );
+                    nested.setField( new StringField( "city", word( random ) ) );
+                    entity.setField( new EntityObjectField( name, nested ) );
+                    break;
+            }
+        }
+
+        return entity;
+    }
+
+
+    /**
+     * Create edges between random nodes.  Nodes are drawn from a small pool so comparators hit equal ids and have to
+     * fall through to their tie breakers.
+     */
+    public static MarkedEdge[] edges( final Random random, final int count ) {
+        final Id[] nodes = new Id[Math.max( 2, count / 10 )];
+
+        for ( int i = 0; i < nodes.length; i++ ) {
+            nodes[i] = id( random, "node" );
+        }
+
+        final MarkedEdge[] edges = new MarkedEdge[count];
+
+        for ( int i = 0; i < count; i++ ) {
+            edges[i] = new SimpleMarkedEdge( nodes[random.nextInt( nodes.length )], "likes",
+                nodes[random.nextInt( nodes.length )], random.nextInt( 1000 ), false );
+        }
+
+        return edges;
+    }
+
+
+    /**
+     * Get a fig from its defaults, then bypass the given method name and value pairs
+     */
+    public static <T extends GuicyFig> T fig( final Class<T> figClass, final String... overrides ) {
+        final T fig = Guice.createInjector( new GuicyFigModule( figClass ) ).getInstance( figClass );
+
+        for ( int i = 0; i + 1 < overrides.length; i += 2 ) {
+            SetConfigTestBypass.setValueByPass( fig, overrides[i], overrides[i + 1] );
+        }
+
+        return fig;
+    }
+
+
+    private static String sentence( final Random random, final int words ) {
+        final StringBuilder builder = new StringBuilder();
+
+        for ( int i = 0; i < words; i++ ) {
+            if ( i > 0 ) {
+                builder.append( ' ' );
+            }
+            builder.append( word( random ) );
+        }
+
+        return builder.toString();
+    }
+
+
+    private static String word( final Random random ) {
+        return WORDS[random.nextInt( WORDS.length )];
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks.graph;
+
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.usergrid.benchmarks.fixtures.Fixtures;
+import org.apache.usergrid.persistence.graph.MarkedEdge;
+import org.apache.usergrid.persistence.graph.SearchByEdgeType;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.comparators.DescendingTimestampComparator;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.comparators.OrderedComparator;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.comparators.SourceDirectedEdgeDescendingComparator;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.comparators.TargetDirectedEdgeDescendingComparator;
+
+
+/**
+ * Sorting edges with the comparators used to merge shards.  Timestamps are drawn from a small range, so the
+ * comparators regularly fall through to comparing ids.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class EdgeComparatorBenchmark {
+
+    @Param( { "source", "target", "timestamp", "ascending" } )
+    public String comparator;
+
+    @Param( { "1000" } )
+    public int edgeCount;
+
+    private Comparator<MarkedEdge> edgeComparator;
+    private MarkedEdge[] edges;
+
+
+    @Setup
+    public void setup() {
+        edges = Fixtures.edges( new Random( Fixtures.SEED ), edgeCount );
+        edgeComparator = comparator( comparator );
+    }
+
+
+    @Benchmark
+    public MarkedEdge[] sort() {
+        final MarkedEdge[] sorted = edges.clone();
+        Arrays.sort( sorted, edgeComparator );
+        return sorted;
+    }
+
+
+    private static Comparator<MarkedEdge> comparator( final String name ) {
+        switch ( name ) {
+            case "source":
+                return SourceDirectedEdgeDescendingComparator.INSTANCE;
+            case "target":
+                return TargetDirectedEdgeDescendingComparator.INSTANCE;
+            case "timestamp":
+                return DescendingTimestampComparator.INSTANCE;
+            case "ascending":
+                return new OrderedComparator<>( SourceDirectedEdgeDescendingComparator.INSTANCE,
+                    SearchByEdgeType.Order.ASCENDING );
+            default:
+                throw new IllegalArgumentException( "Unknown comparator " + name );
+        }
+    }
+}
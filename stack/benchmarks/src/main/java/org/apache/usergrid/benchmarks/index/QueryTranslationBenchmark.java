@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.benchmarks.index;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.index.query.QueryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.usergrid.persistence.index.impl.EsQueryVistor;
+import org.apache.usergrid.persistence.index.query.ParsedQuery;
+import org.apache.usergrid.persistence.index.query.ParsedQueryBuilder;
+
+import com.google.common.base.Optional;
+
+
+/**
+ * Parsing a query with {@link ParsedQueryBuilder} and translating it to elasticsearch with {@link EsQueryVistor}
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class QueryTranslationBenchmark {
+
+    @Param( { "equality", "range", "fulltext", "geo", "compound" } )
+    public String query;
+
+    private String ql;
+    private ParsedQuery parsed;
+
+
+    @Setup
+    public void setup() throws Exception {
+        ql = ql( query );
+        parsed = ParsedQueryBuilder.build( ql );
+    }
+
+
+    @Benchmark
+    public ParsedQuery parse() throws Exception {
+        return ParsedQueryBuilder.build( ql );
+    }
+
+
+    @Benchmark
+    public Optional<QueryBuilder> translate() throws Exception {
+        return visit( parsed );
+    }
+
+
+    @Benchmark
+    public Optional<QueryBuilder> parseAndTranslate() throws Exception {
+        return visit( ParsedQueryBuilder.build( ql ) );
+    }
+
+
+    private static Optional<QueryBuilder> visit( final ParsedQuery parsedQuery ) throws Exception {
+        final EsQueryVistor visitor = new EsQueryVistor();
+
+        if ( parsedQuery.getRootOperand() != null ) {
+            parsedQuery.getRootOperand().visit( visitor );
+        }
+
+        return visitor.getQueryBuilder();
+    }
+
+
+    private static String ql( final String name ) {
+        switch ( name ) {
+            case "equality":
+                return "select * where name = 'fred'";
+            case "range":
+                return "select * where age >= 21 and age < 65 order by created desc";
+            case "fulltext":
+                return "select * where description contains 'usergrid*' or title contains 'apache'";
+            case "geo":
+                return "select * where location within 1000 of 37.774989, -122.419413";
+            case "compound":
+                return "select * where (status = 'active' or status = 'pending') and not deleted = true "
+                    + "and score > 10.5 and owner = 8a5fd4ff-1f89-11e5-a1b3-0242ac110003 order by score desc";
+            default:
+                throw new IllegalArgumentException( "Unknown query " + name );
+        }
+    }
+}
@@ -91,8 +91,10 @@ public class CoreModule extends AbstractModule {
 
         bind( ManagerCache.class ).to( CpManagerCache.class );
         bind( ApplicationIdCacheFactory.class );
+        bind( EntityCache.class ).to( EntityCacheImpl.class );
         bind( CollectionSettingsFactory.class );
         bind( CollectionSettingsCache.class );
+        bind( CollectionSizeIndex.class ).to( CollectionSizeIndexImpl.class );
 
 
         /**
@@ -142,8 +144,12 @@ public class CoreModule extends AbstractModule {
 
         install( new GuicyFigModule( ApplicationIdCacheFig.class ) );
 
+        install( new GuicyFigModule( EntityCacheFig.class ) );
+
         install( new GuicyFigModule( CollectionSettingsCacheFig.class ) );
 
+        install( new GuicyFigModule( CollectionSizeFig.class ) );
+
         install( new GuicyFigModule( EntityManagerFig.class ) );
 
         install( new GuicyFigModule( AsyncEventsSchedulerFig.class ) );
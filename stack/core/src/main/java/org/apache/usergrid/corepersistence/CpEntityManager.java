@@ -161,9 +161,8 @@ public class CpEntityManager implements EntityManager {
 
     public QueueManagerFactory queueManagerFactory;
 
-
-    //    /** Short-term cache to keep us from reloading same Entity during single request. */
-//    private LoadingCache<EntityScope, org.apache.usergrid.persistence.model.entity.Entity> entityCache;
+    /** Entity cache shared by all entity managers, see {@link EntityCacheImpl} */
+    private final EntityCache entityCache;
 
 
     /**
@@ -186,7 +185,8 @@ public class CpEntityManager implements EntityManager {
                             final ConnectionService connectionService,
                             final CollectionSettingsFactory collectionSettingsFactory,
                             final UUID applicationId,
-                            final QueueManagerFactory queueManagerFactory) {
+                            final QueueManagerFactory queueManagerFactory,
+                            final EntityCache entityCache ) {
 
         this.entityManagerFig = entityManagerFig;
         this.actorSystemFig = actorSystemFig;
@@ -200,6 +200,7 @@ public class CpEntityManager implements EntityManager {
         Preconditions.checkNotNull( graphManagerFactory, "graphManagerFactory must not be null" );
         Preconditions.checkNotNull( connectionService, "connectionService must not be null" );
         Preconditions.checkNotNull( collectionService, "collectionService must not be null" );
+        Preconditions.checkNotNull( entityCache, "entityCache must not be null" );
 
         this.graphManagerFactory = graphManagerFactory;
         this.connectionService = connectionService;
@@ -253,11 +254,12 @@ public class CpEntityManager implements EntityManager {
         this.skipAggregateCounters = false;
 
         this.queueManagerFactory = queueManagerFactory;
+        this.entityCache = entityCache;
     }
 
 
     /**
-     * Load entity from short-term cache. Package scope so that CpRelationManager can use it too.
+     * Load entity from the shared entity cache. Package scope so that CpRelationManager can use it too.
      *
      * @param entityId Load the entity by entityId
      *
@@ -265,7 +267,7 @@ public class CpEntityManager implements EntityManager {
      */
     org.apache.usergrid.persistence.model.entity.Entity load( Id entityId ) {
 
-            return ecm .load( entityId ).toBlocking().lastOrDefault(null);
+            return entityCache.load( applicationScope, entityId, ecm );
 
     }
 
@@ -527,6 +529,8 @@ public class CpEntityManager implements EntityManager {
 
             cpEntity = ecm.write( cpEntity, region ).toBlocking().last();
 
+            entityCache.invalidate( applicationScope, entityId );
+
 //            cpEntity = ecm.update( cpEntity ).toBlockingObservable().last();
 //            // need to reload entity so bypass entity cache
 //            cpEntity = ecm.load( entityId ).toBlockingObservable().last();
@@ -627,7 +631,8 @@ public class CpEntityManager implements EntityManager {
 
         //Step 1 & 2 of delete
         String region = this.lookupAuthoritativeRegionForType( entityRef.getType() );
-        return ecm.mark( entityId, region ).mergeWith( gm.markNode( entityId, createGraphOperationTimestamp() ) );
+        return ecm.mark( entityId, region ).mergeWith( gm.markNode( entityId, createGraphOperationTimestamp() ) )
+            .doOnCompleted( () -> entityCache.invalidate( applicationScope, entityId ) );
 
     }
 
@@ -1121,8 +1126,9 @@ public class CpEntityManager implements EntityManager {
         //                "Entity Id " + entityId.getType() + ":"+entityId.getUuid() +" uuid not time based");
         //        }
 
+        // read-modify-write, so bypass the entity cache
         org.apache.usergrid.persistence.model.entity.Entity cpEntity =
-                load( entityId );
+                ecm.load( entityId ).toBlocking().lastOrDefault( null );
 
         cpEntity.removeField( propertyName );
 
@@ -1145,6 +1151,8 @@ public class CpEntityManager implements EntityManager {
         //TODO: does this call and others like it need a graphite reporter?
         cpEntity = ecm.write( cpEntity, region ).toBlocking().last();
 
+        entityCache.invalidate( applicationScope, entityId );
+
         if(logger.isTraceEnabled()){
             logger.trace("Wrote {}:{} version {}",
                 cpEntity.getId().getType(), cpEntity.getId().getUuid(), cpEntity.getVersion() );
@@ -2833,6 +2841,11 @@ public class CpEntityManager implements EntityManager {
             //this does the write so before adding to a collection everything already exists already.
             cpEntity = ecm.write( cpEntity, region ).toBlocking().last();
 
+            // new ids can't be cached yet, only imported and application entities may already exist
+            if ( importId != null || is_application ) {
+                entityCache.invalidate( applicationScope, cpEntity.getId() );
+            }
+
             entity.setSize(cpEntity.getSize());
 
             if(logger.isTraceEnabled()) {
@@ -117,6 +117,7 @@ public class CpEntityManagerFactory implements EntityManagerFactory, Application
     private final LockManager lockManager;
 
     private final QueueManagerFactory queueManagerFactory;
+    private final EntityCache entityCache;
 
     public static final String MANAGEMENT_APP_INIT_MAXRETRIES= "management.app.init.max-retries";
     public static final String MANAGEMENT_APP_INIT_INTERVAL = "management.app.init.interval";
@@ -138,6 +139,7 @@ public class CpEntityManagerFactory implements EntityManagerFactory, Application
         this.collectionService = injector.getInstance( CollectionService.class );
         this.connectionService = injector.getInstance( ConnectionService.class );
         this.collectionSettingsFactory = injector.getInstance( CollectionSettingsFactory.class );
+        this.entityCache = injector.getInstance( EntityCache.class );
 
         Properties properties = cassandraService.getProperties();
         this.entityManagers = createEntityManagerCache( properties );
@@ -152,6 +154,7 @@ public class CpEntityManagerFactory implements EntityManagerFactory, Application
                 this.actorSystemManager = injector.getInstance( ActorSystemManager.class );
 
                 actorSystemManager.registerRouterProducer( uniqueValuesService );
+                actorSystemManager.registerRouterProducer( injector.getInstance( EntityCacheImpl.class ) );
                 actorSystemManager.start();
                 actorSystemManager.waitForClientActor();
 
@@ -378,7 +381,8 @@ public class CpEntityManagerFactory implements EntityManagerFactory, Application
             connectionService,
             collectionSettingsFactory,
             applicationId,
-            queueManagerFactory);
+            queueManagerFactory,
+            entityCache);
 
         return em;
     }
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.corepersistence;
+
+
+import org.apache.usergrid.persistence.collection.EntityCollectionManager;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+
+/**
+ * Cache of entities shared by every entity manager on this node, keyed by application and entity id.  Entries keep
+ * the version they were loaded at, so once they are older than the staleness bound they can be validated against
+ * the entity log instead of being reloaded.
+ *
+ * Entities returned are copies, callers are free to set and remove their fields.
+ */
+public interface EntityCache {
+
+    /**
+     * Load the entity, from the cache when the cached version is recent enough or still the latest version,
+     * otherwise from the collection manager
+     *
+     * @return The entity or null if it does not exist
+     */
+    Entity load( ApplicationScope scope, Id entityId, EntityCollectionManager ecm );
+
+    /**
+     * Remove the entity from the cache on this node and on all other nodes.  Call after the entity is written or
+     * deleted
+     */
+    void invalidate( ApplicationScope scope, Id entityId );
+
+    /**
+     * Remove the entity from the cache on this node only
+     */
+    void invalidateLocal( ApplicationScope scope, Id entityId );
+}
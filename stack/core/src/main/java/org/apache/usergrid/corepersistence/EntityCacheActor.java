@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.corepersistence;
+
+
+import java.io.Serializable;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.corepersistence.util.CpNamingUtils;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+
+import akka.actor.ActorRef;
+import akka.actor.UntypedActor;
+import akka.cluster.pubsub.DistributedPubSub;
+import akka.cluster.pubsub.DistributedPubSubMediator;
+
+
+/**
+ * Removes entities from the local entity cache when they are written or deleted on other nodes.
+ */
+public class EntityCacheActor extends UntypedActor {
+    private static final Logger logger = LoggerFactory.getLogger( EntityCacheActor.class );
+
+    private final EntityCache entityCache;
+
+
+    public EntityCacheActor( final EntityCache entityCache ) {
+        this.entityCache = entityCache;
+
+        ActorRef mediator = DistributedPubSub.get( getContext().system() ).mediator();
+        mediator.tell( new DistributedPubSubMediator.Subscribe( EntityCacheImpl.TOPIC, getSelf() ), getSelf() );
+    }
+
+
+    public void onReceive( Object msg ) {
+
+        if ( msg instanceof Invalidation ) {
+            Invalidation invalidation = ( Invalidation ) msg;
+
+            entityCache.invalidateLocal( CpNamingUtils.getApplicationScope( invalidation.getApplicationId() ),
+                new SimpleId( invalidation.getEntityId(), invalidation.getEntityType() ) );
+
+            if ( logger.isTraceEnabled() ) {
+                logger.trace( "Invalidated cached entity {}:{} in app {}", invalidation.getEntityType(),
+                    invalidation.getEntityId(), invalidation.getApplicationId() );
+            }
+
+        } else if ( msg instanceof DistributedPubSubMediator.SubscribeAck ) {
+            if ( logger.isDebugEnabled() ) {
+                logger.debug( "Subscribed to {}", EntityCacheImpl.TOPIC );
+            }
+
+        } else {
+            unhandled( msg );
+        }
+    }
+
+
+    /**
+     * An entity that was written or deleted
+     */
+    public static class Invalidation implements Serializable {
+
+        private final UUID applicationId;
+        private final UUID entityId;
+        private final String entityType;
+
+
+        public Invalidation( final UUID applicationId, final UUID entityId, final String entityType ) {
+            this.applicationId = applicationId;
+            this.entityId = entityId;
+            this.entityType = entityType;
+        }
+
+
+        public UUID getApplicationId() {
+            return applicationId;
+        }
+
+
+        public UUID getEntityId() {
+            return entityId;
+        }
+
+
+        public String getEntityType() {
+            return entityType;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.corepersistence;
+
+
+import org.safehaus.guicyfig.Default;
+import org.safehaus.guicyfig.FigSingleton;
+import org.safehaus.guicyfig.GuicyFig;
+import org.safehaus.guicyfig.Key;
+
+
+/**
+ * Shared entity cache fig
+ */
+@FigSingleton
+public interface EntityCacheFig extends GuicyFig {
+
+    @Key( "usergrid.entity_cache.enabled" )
+    @Default( "true" )
+    boolean getEnabled();
+
+    /**
+     * Maximum number of entities held across all applications
+     */
+    @Key( "usergrid.entity_cache.size" )
+    @Default( "10000" )
+    int getCacheSize();
+
+    /**
+     * Entities are reloaded in full once they have been cached this long
+     */
+    @Key( "usergrid.entity_cache.timeout_ms" )
+    @Default( "300000" )
+    int getCacheTimeout();
+
+    /**
+     * Entities validated within this window are served without reading cassandra.  Older entries are validated
+     * against the latest version in the entity log before they are served
+     */
+    @Key( "usergrid.entity_cache.max_staleness_ms" )
+    @Default( "1000" )
+    int getMaxStaleness();
+}
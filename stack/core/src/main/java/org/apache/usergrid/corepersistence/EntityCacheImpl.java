@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.corepersistence;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.actorsystem.ActorSystemFig;
+import org.apache.usergrid.persistence.actorsystem.ActorSystemManager;
+import org.apache.usergrid.persistence.actorsystem.RouterProducer;
+import org.apache.usergrid.persistence.collection.EntityCollectionManager;
+import org.apache.usergrid.persistence.collection.MvccLogEntry;
+import org.apache.usergrid.persistence.collection.VersionSet;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.ArrayField;
+import org.apache.usergrid.persistence.model.field.EntityObjectField;
+import org.apache.usergrid.persistence.model.field.Field;
+import org.apache.usergrid.persistence.model.field.ListField;
+import org.apache.usergrid.persistence.model.field.SetField;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+
+import com.codahale.metrics.Meter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+
+
+/**
+ * Bounded LRU cache of entities shared by all entity managers.  Entries validated within the staleness bound are
+ * served as is, older entries are served if the entity log still has their version as the latest one.
+ *
+ * Writes and deletes invalidate the entry locally and, when the actor system is enabled, on every other node by
+ * publishing to the entity cache topic.  Without the actor system other nodes see the change once their entry is
+ * older than the staleness bound.
+ */
+@Singleton
+public class EntityCacheImpl implements EntityCache, RouterProducer {
+    private static final Logger logger = LoggerFactory.getLogger( EntityCacheImpl.class );
+
+    public static final String TOPIC = "entityCache";
+
+    private final EntityCacheFig entityCacheFig;
+    private final ActorSystemFig actorSystemFig;
+    private final ActorSystemManager actorSystemManager;
+
+    private final Cache<CacheKey, CachedEntity> cache;
+
+    private final Meter hitMeter;
+    private final Meter validatedMeter;
+    private final Meter missMeter;
+
+
+    @Inject
+    public EntityCacheImpl( final EntityCacheFig entityCacheFig, final ActorSystemFig actorSystemFig,
+                            final ActorSystemManager actorSystemManager, final MetricsFactory metricsFactory ) {
+
+        this.entityCacheFig = entityCacheFig;
+        this.actorSystemFig = actorSystemFig;
+        this.actorSystemManager = actorSystemManager;
+
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize( entityCacheFig.getCacheSize() )
+            .expireAfterWrite( entityCacheFig.getCacheTimeout(), TimeUnit.MILLISECONDS )
+            .build();
+
+        this.hitMeter = metricsFactory.getMeter( EntityCacheImpl.class, "entity_cache.hit" );
+        this.validatedMeter = metricsFactory.getMeter( EntityCacheImpl.class, "entity_cache.validated" );
+        this.missMeter = metricsFactory.getMeter( EntityCacheImpl.class, "entity_cache.miss" );
+    }
+
+
+    @Override
+    public Entity load( final ApplicationScope scope, final Id entityId, final EntityCollectionManager ecm ) {
+
+        if ( !entityCacheFig.getEnabled() ) {
+            return ecm.load( entityId ).toBlocking().lastOrDefault( null );
+        }
+
+        final CacheKey key = new CacheKey( scope, entityId );
+
+        //take the time before reading so the staleness bound covers the read itself
+        final long now = System.currentTimeMillis();
+
+        final CachedEntity cached = cache.getIfPresent( key );
+
+        if ( cached != null ) {
+
+            if ( now - cached.validated < entityCacheFig.getMaxStaleness() ) {
+                hitMeter.mark();
+                return copy( cached.entity );
+            }
+
+            if ( isLatest( cached.entity, ecm ) ) {
+                cached.validated = now;
+                validatedMeter.mark();
+                return copy( cached.entity );
+            }
+        }
+
+        missMeter.mark();
+
+        final Entity entity = ecm.load( entityId ).toBlocking().lastOrDefault( null );
+
+        if ( entity == null ) {
+            cache.invalidate( key );
+            return null;
+        }
+
+        cache.put( key, new CachedEntity( copy( entity ), now ) );
+
+        return entity;
+    }
+
+
+    @Override
+    public void invalidate( final ApplicationScope scope, final Id entityId ) {
+
+        invalidateLocal( scope, entityId );
+
+        if ( !actorSystemFig.getEnabled() || !actorSystemManager.isReady() ) {
+            return;
+        }
+
+        try {
+            actorSystemManager.publishToAllRegions( TOPIC,
+                new EntityCacheActor.Invalidation( scope.getApplication().getUuid(), entityId.getUuid(),
+                    entityId.getType() ), ActorRef.noSender() );
+        }
+        catch ( Exception e ) {
+            //other nodes will still pick up the change once their entry is older than the staleness bound
+            logger.warn( "Unable to publish invalidation of {}:{}", entityId.getType(), entityId.getUuid(), e );
+        }
+    }
+
+
+    @Override
+    public void invalidateLocal( final ApplicationScope scope, final Id entityId ) {
+        cache.invalidate( new CacheKey( scope, entityId ) );
+    }
+
+
+    /**
+     * True if the version of the entity is still the latest complete version in the entity log
+     */
+    private boolean isLatest( final Entity entity, final EntityCollectionManager ecm ) {
+
+        final VersionSet versions =
+            ecm.getLatestVersion( Collections.singleton( entity.getId() ) ).toBlocking().lastOrDefault( null );
+
+        if ( versions == null ) {
+            return false;
+        }
+
+        final MvccLogEntry latest = versions.getMaxVersion( entity.getId() );
+
+        return latest != null && latest.getState() == MvccLogEntry.State.COMPLETE && latest.getVersion()
+            .equals( entity.getVersion() );
+    }
+
+
+    /**
+     * Copy so callers can modify the entity, including its nested objects and arrays, without changing the cached one
+     */
+    private static Entity copy( final Entity entity ) {
+        final Entity copy = new Entity( entity.getId(), entity.getVersion() );
+        copyFields( entity, copy );
+        copy.setSize( entity.getSize() );
+        return copy;
+    }
+
+
+    private static EntityObject copy( final EntityObject entityObject ) {
+        if ( entityObject == null ) {
+            return null;
+        }
+
+        final EntityObject copy = new EntityObject();
+        copyFields( entityObject, copy );
+        copy.setSize( entityObject.getSize() );
+        return copy;
+    }
+
+
+    private static void copyFields( final EntityObject source, final EntityObject target ) {
+        for ( final Field field : source.getFields() ) {
+            target.setField( copy( field ) );
+        }
+    }
+
+
+    @SuppressWarnings( "unchecked" )
+    private static Field copy( final Field field ) {
+        if ( field.getValue() == null ) {
+            return field;
+        }
+
+        if ( field instanceof EntityObjectField ) {
+            return new EntityObjectField( field.getName(), copy( ( EntityObject ) field.getValue() ) );
+        }
+
+        if ( field instanceof ArrayField ) {
+            return new ArrayField<>( field.getName(), copy( ( List<Object> ) field.getValue() ) );
+        }
+
+        if ( field instanceof ListField ) {
+            return new ListField<>( field.getName(), copy( ( List<Object> ) field.getValue() ) );
+        }
+
+        if ( field instanceof SetField ) {
+            return new SetField<>( field.getName(), new LinkedHashSet<>( ( Set<Object> ) field.getValue() ) );
+        }
+
+        //the other fields hold values that aren't modified in place
+        return field;
+    }
+
+
+    /**
+     * Arrays hold values, nested arrays and objects
+     */
+    @SuppressWarnings( "unchecked" )
+    private static List<Object> copy( final List<Object> list ) {
+        final List<Object> copy = new ArrayList<>( list.size() );
+
+        for ( final Object item : list ) {
+            if ( item instanceof EntityObject ) {
+                copy.add( copy( ( EntityObject ) item ) );
+            }
+            else if ( item instanceof List ) {
+                copy.add( copy( ( List<Object> ) item ) );
+            }
+            else {
+                copy.add( item );
+            }
+        }
+
+        return copy;
+    }
+
+
+    @Override
+    public String getRouterPath() {
+        return "/user/entityCacheSubscriber";
+    }
+
+
+    @Override
+    public Collection<Class> getMessageTypes() {
+        //invalidations are published to a topic, nothing is routed
+        return Collections.emptyList();
+    }
+
+
+    @Override
+    public void addConfiguration( final Map<String, Object> configMap ) {
+        //no configuration needed for the subscriber
+    }
+
+
+    @Override
+    public void produceRouter( final ActorSystem system, final String role ) {
+        logger.info( "Starting entity cache subscriber" );
+        system.actorOf( Props.create( EntityCacheActor.class, this ), "entityCacheSubscriber" );
+    }
+
+
+    private static final class CachedEntity {
+
+        private final Entity entity;
+
+        /**
+         * The last time the version of the entity was known to be the latest
+         */
+        private volatile long validated;
+
+
+        private CachedEntity( final Entity entity, final long validated ) {
+            this.entity = entity;
+            this.validated = validated;
+        }
+    }
+
+
+    private static final class CacheKey {
+
+        private final Id applicationId;
+        private final Id entityId;
+
+
+        private CacheKey( final ApplicationScope scope, final Id entityId ) {
+            this.applicationId = scope.getApplication();
+            this.entityId = entityId;
+        }
+
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( !( o instanceof CacheKey ) ) {
+                return false;
+            }
+
+            final CacheKey cacheKey = ( CacheKey ) o;
+
+            return applicationId.equals( cacheKey.applicationId ) && entityId.equals( cacheKey.entityId );
+        }
+
+
+        @Override
+        public int hashCode() {
+            return 31 * applicationId.hashCode() + entityId.hashCode();
+        }
+    }
+}
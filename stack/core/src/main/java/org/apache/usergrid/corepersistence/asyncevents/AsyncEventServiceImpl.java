@@ -21,7 +21,6 @@ package org.apache.usergrid.corepersistence.asyncevents;
 
 
 import java.io.IOException;
-import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -33,6 +32,8 @@ import org.apache.usergrid.persistence.index.impl.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.usergrid.corepersistence.index.CollectionSizeFig;
+import org.apache.usergrid.corepersistence.index.CollectionSizeIndex;
 import org.apache.usergrid.corepersistence.index.EntityIndexOperation;
 import org.apache.usergrid.corepersistence.index.IndexLocationStrategyFactory;
 import org.apache.usergrid.corepersistence.index.IndexProcessorFig;
@@ -76,6 +77,7 @@ import com.google.inject.Singleton;
 import rx.Observable;
 import rx.Subscriber;
 import rx.Subscription;
+import rx.functions.Action0;
 import rx.schedulers.Schedulers;
 
 
@@ -113,6 +115,8 @@ public class AsyncEventServiceImpl implements AsyncEventService {
     private final EntityIndexFactory entityIndexFactory;
     private final EventBuilder eventBuilder;
     private final RxTaskScheduler rxTaskScheduler;
+    private final CollectionSizeIndex collectionSizeIndex;
+    private final CollectionSizeFig collectionSizeFig;
 
     private final Timer readTimer;
     private final Timer writeTimer;
@@ -144,9 +148,13 @@ public class AsyncEventServiceImpl implements AsyncEventService {
                                  final EventBuilder eventBuilder,
                                  final MapManagerFactory mapManagerFactory,
                                  final QueueFig queueFig,
+                                 final CollectionSizeIndex collectionSizeIndex,
+                                 final CollectionSizeFig collectionSizeFig,
                                  @EventExecutionScheduler
                                     final RxTaskScheduler rxTaskScheduler ) {
         this.indexProducer = indexProducer;
+        this.collectionSizeIndex = collectionSizeIndex;
+        this.collectionSizeFig = collectionSizeFig;
 
         this.entityCollectionManagerFactory = entityCollectionManagerFactory;
         this.indexLocationStrategyFactory = indexLocationStrategyFactory;
@@ -187,12 +195,12 @@ public class AsyncEventServiceImpl implements AsyncEventService {
     /**
      * Offer the EntityIdScope to SQS
      */
-    private void offer(final Serializable operation) {
+    private void offer(final AsyncEvent operation) {
         final Timer.Context timer = this.writeTimer.time();
 
         try {
             //signal to SQS
-            this.queue.sendMessage( operation );
+            this.queue.sendMessage( encode( operation ) );
         } catch (IOException e) {
             throw new RuntimeException("Unable to queue message", e);
         } finally {
@@ -201,12 +209,12 @@ public class AsyncEventServiceImpl implements AsyncEventService {
     }
 
 
-    private void offerTopic( final Serializable operation ) {
+    private void offerTopic( final AsyncEvent operation ) {
         final Timer.Context timer = this.writeTimer.time();
 
         try {
             //signal to SQS
-            this.queue.sendMessageToTopic( operation );
+            this.queue.sendMessageToTopic( encode( operation ) );
         }
         catch ( IOException e ) {
             throw new RuntimeException( "Unable to queue message", e );
@@ -216,12 +224,18 @@ public class AsyncEventServiceImpl implements AsyncEventService {
         }
     }
 
-    private void offerBatch(final List operations){
+    private void offerBatch(final List<? extends AsyncEvent> operations){
         final Timer.Context timer = this.writeTimer.time();
 
         try {
-            //signal to SQS
-            this.queue.sendMessages(operations);
+            //signal to SQS, packing as many events per message as fit when binary events are enabled
+            if ( indexProcessorFig.isBinaryEvents() ) {
+                this.queue.sendMessages( AsyncEventBatch
+                    .pack( queueFig.getPrimaryRegion(), operations, indexProcessorFig.getMaxMessageSize() ) );
+            }
+            else {
+                this.queue.sendMessages( operations );
+            }
         } catch (IOException e) {
             throw new RuntimeException("Unable to queue message", e);
         } finally {
@@ -230,6 +244,19 @@ public class AsyncEventServiceImpl implements AsyncEventService {
     }
 
 
+    /**
+     * Wrap the event in the binary encoding when enabled
+     */
+    private AsyncEvent encode( final AsyncEvent operation ) {
+        if ( !indexProcessorFig.isBinaryEvents() ) {
+            return operation;
+        }
+
+        return AsyncEventBatch.pack( queueFig.getPrimaryRegion(), Collections.singletonList( operation ),
+            indexProcessorFig.getMaxMessageSize() ).get( 0 );
+    }
+
+
     /**
      * Take message from SQS
      */
@@ -306,66 +333,20 @@ public class AsyncEventServiceImpl implements AsyncEventService {
 
             final AsyncEvent thisEvent = event;
 
-            if (logger.isDebugEnabled()) {
-                logger.debug("Processing event with type {}", event.getClass().getSimpleName());
-            }
-
             try {
 
-                IndexOperationMessage single = new IndexOperationMessage();
-
-                // normal indexing event for an entity
-                if ( event instanceof  EntityIndexEvent ){
-
-                     single = handleEntityIndexUpdate( message );
-
-                }
-                // normal indexing event for an edge
-                else if ( event instanceof EdgeIndexEvent ){
-
-                    single = handleEdgeIndex( message );
+                // a batch carries several events, the message is only ack'd once all of them are processed
+                final List<AsyncEvent> events = event instanceof AsyncEventBatch
+                    ? ( ( AsyncEventBatch ) event ).decodeEvents() : Collections.singletonList( event );
 
-                }
-                // deletes are 2-part, actual IO to delete data, then queue up a de-index
-                else if ( event instanceof EdgeDeleteEvent ) {
+                final IndexOperationMessage combined = new IndexOperationMessage();
 
-                    single = handleEdgeDelete( message );
+                for ( final AsyncEvent single : events ) {
+                    combined.ingest( handleEvent( single, message ) );
                 }
-                // deletes are 2-part, actual IO to delete data, then queue up a de-index
-                else if ( event instanceof EntityDeleteEvent ) {
-
-                    single = handleEntityDelete( message );
-                }
-                // initialization has special logic, therefore a special event type and no index operation message
-                else if ( event instanceof InitializeApplicationIndexEvent ) {
-
-                    handleInitializeApplicationIndex(event, message);
-                }
-                // this is the main event that pulls the index doc from map persistence and hands to the index producer
-                else if (event instanceof ElasticsearchIndexEvent) {
-
-                    handleIndexOperation((ElasticsearchIndexEvent) event);
-
-                } else if (event instanceof DeIndexOldVersionsEvent) {
-
-                    single = handleDeIndexOldVersionEvent((DeIndexOldVersionsEvent) event);
-
-                } else {
-
-                    throw new Exception("Unknown EventType for message: "+ message.getStringBody().trim());
-                }
-
-
-                if( !(event instanceof ElasticsearchIndexEvent)
-                    && !(event instanceof InitializeApplicationIndexEvent)
-                      && single.isEmpty() ){
-                        logger.warn("No index operation messages came back from event processing for msg: {} ",
-                            message.getStringBody().trim());
-                }
-
 
                 // if no exception happens and the QueueMessage is returned in these results, it will get ack'd
-                return new IndexEventResult(Optional.of(single), Optional.of(message), thisEvent.getCreationTime());
+                return new IndexEventResult(Optional.of(combined), Optional.of(message), thisEvent.getCreationTime());
 
             } catch (IndexDocNotFoundException e){
 
@@ -396,6 +377,70 @@ public class AsyncEventServiceImpl implements AsyncEventService {
         return indexEventResults.collect(Collectors.toList());
     }
 
+
+    /**
+     * Process a single event, returning the index operations it produced
+     */
+    private IndexOperationMessage handleEvent( final AsyncEvent event, final QueueMessage message ) throws Exception {
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Processing event with type {}", event.getClass().getSimpleName());
+        }
+
+        IndexOperationMessage single = new IndexOperationMessage();
+
+        // normal indexing event for an entity
+        if ( event instanceof  EntityIndexEvent ){
+
+             single = handleEntityIndexUpdate( event );
+
+        }
+        // normal indexing event for an edge
+        else if ( event instanceof EdgeIndexEvent ){
+
+            single = handleEdgeIndex( event );
+
+        }
+        // deletes are 2-part, actual IO to delete data, then queue up a de-index
+        else if ( event instanceof EdgeDeleteEvent ) {
+
+            single = handleEdgeDelete( event );
+        }
+        // deletes are 2-part, actual IO to delete data, then queue up a de-index
+        else if ( event instanceof EntityDeleteEvent ) {
+
+            single = handleEntityDelete( event );
+        }
+        // initialization has special logic, therefore a special event type and no index operation message
+        else if ( event instanceof InitializeApplicationIndexEvent ) {
+
+            handleInitializeApplicationIndex( event );
+        }
+        // this is the main event that pulls the index doc from map persistence and hands to the index producer
+        else if (event instanceof ElasticsearchIndexEvent) {
+
+            handleIndexOperation((ElasticsearchIndexEvent) event);
+
+        } else if (event instanceof DeIndexOldVersionsEvent) {
+
+            single = handleDeIndexOldVersionEvent((DeIndexOldVersionsEvent) event);
+
+        } else {
+
+            throw new Exception("Unknown EventType for message: "+ message.getStringBody().trim());
+        }
+
+
+        if( !(event instanceof ElasticsearchIndexEvent)
+            && !(event instanceof InitializeApplicationIndexEvent)
+              && single.isEmpty() ){
+                logger.warn("No index operation messages came back from event processing for msg: {} ",
+                    message.getStringBody().trim());
+        }
+
+        return single;
+    }
+
     @Override
     public void queueInitializeApplicationIndex( final ApplicationScope applicationScope) {
         IndexLocationStrategy indexLocationStrategy = indexLocationStrategyFactory.getIndexLocationStrategy(
@@ -412,6 +457,9 @@ public class AsyncEventServiceImpl implements AsyncEventService {
 
         offer(new EntityIndexEvent(queueFig.getPrimaryRegion(),new EntityIdScope(applicationScope, entity.getId()), 0));
 
+        // every write comes through here once, re-indexing doesn't, so this is where the collection size changes
+        updateCollectionSize( "write", entity.getId(), () -> collectionSizeIndex.entityWritten( applicationScope, entity ) );
+
         final EntityIndexOperation entityIndexOperation =
             new EntityIndexOperation( applicationScope, entity.getId(), updatedAfter);
 
@@ -422,13 +470,9 @@ public class AsyncEventServiceImpl implements AsyncEventService {
 
     }
 
-    private IndexOperationMessage handleEntityIndexUpdate(final QueueMessage message) {
+    private IndexOperationMessage handleEntityIndexUpdate(final AsyncEvent event) {
 
-        Preconditions.checkNotNull( message, "Queue Message cannot be null for handleEntityIndexUpdate" );
-
-        final AsyncEvent event = ( AsyncEvent ) message.getBody();
-
-        Preconditions.checkNotNull(message, "QueueMessage Body cannot be null for handleEntityIndexUpdate");
+        Preconditions.checkNotNull(event, "Event cannot be null for handleEntityIndexUpdate");
         Preconditions.checkArgument(event instanceof EntityIndexEvent, String.format("Event Type for handleEntityIndexUpdate must be ENTITY_INDEX, got %s", event.getClass()));
 
         final EntityIndexEvent entityIndexEvent = (EntityIndexEvent) event;
@@ -457,13 +501,9 @@ public class AsyncEventServiceImpl implements AsyncEventService {
 
     }
 
-    private IndexOperationMessage handleEdgeIndex(final QueueMessage message) {
-
-        Preconditions.checkNotNull( message, "Queue Message cannot be null for handleEdgeIndex" );
+    private IndexOperationMessage handleEdgeIndex(final AsyncEvent event) {
 
-        final AsyncEvent event = (AsyncEvent) message.getBody();
-
-        Preconditions.checkNotNull( message, "QueueMessage Body cannot be null for handleEdgeIndex" );
+        Preconditions.checkNotNull( event, "Event cannot be null for handleEdgeIndex" );
         Preconditions.checkArgument(event instanceof EdgeIndexEvent, String.format("Event Type for handleEdgeIndex must be EDGE_INDEX, got %s", event.getClass()));
 
         final EdgeIndexEvent edgeIndexEvent = ( EdgeIndexEvent ) event;
@@ -486,13 +526,9 @@ public class AsyncEventServiceImpl implements AsyncEventService {
         offer( new EdgeDeleteEvent( queueFig.getPrimaryRegion(), applicationScope, edge ) );
     }
 
-    private IndexOperationMessage  handleEdgeDelete(final QueueMessage message) {
-
-        Preconditions.checkNotNull( message, "Queue Message cannot be null for handleEdgeDelete" );
+    private IndexOperationMessage  handleEdgeDelete(final AsyncEvent event) {
 
-        final AsyncEvent event = (AsyncEvent) message.getBody();
-
-        Preconditions.checkNotNull( message, "QueueMessage Body cannot be null for handleEdgeDelete" );
+        Preconditions.checkNotNull( event, "Event cannot be null for handleEdgeDelete" );
         Preconditions.checkArgument(event instanceof EdgeDeleteEvent, String.format("Event Type for handleEdgeDelete must be EDGE_DELETE, got %s", event.getClass()));
 
 
@@ -666,14 +702,29 @@ public class AsyncEventServiceImpl implements AsyncEventService {
 
         // sent in region (not offerTopic) as the delete IO happens in-region, then queues a multi-region de-index op
         offer( new EntityDeleteEvent(queueFig.getPrimaryRegion(), new EntityIdScope( applicationScope, entityId ) ) );
+
+        updateCollectionSize( "delete", entityId, () -> collectionSizeIndex.entityDeleted( applicationScope, entityId ) );
     }
 
-    private IndexOperationMessage handleEntityDelete(final QueueMessage message) {
 
-        Preconditions.checkNotNull(message, "Queue Message cannot be null for handleEntityDelete");
+    /**
+     * Update the collection sizes in the background, they must never slow down or fail the request
+     */
+    private void updateCollectionSize( final String operation, final Id entityId, final Action0 update ) {
+
+        if ( !collectionSizeFig.getEnabled() ) {
+            return;
+        }
+
+        Observable.just( entityId ).doOnNext( id -> update.call() )
+            .subscribeOn( rxTaskScheduler.getAsyncIOScheduler() )
+            .subscribe( id -> {}, t -> logger.error( "Unable to update the collection size for {} of {}",
+                operation, entityId, t ) );
+    }
+
+    private IndexOperationMessage handleEntityDelete(final AsyncEvent event) {
 
-        final AsyncEvent event = (AsyncEvent) message.getBody();
-        Preconditions.checkNotNull( message, "QueueMessage Body cannot be null for handleEntityDelete" );
+        Preconditions.checkNotNull( event, "Event cannot be null for handleEntityDelete" );
         Preconditions.checkArgument( event instanceof EntityDeleteEvent,
             String.format( "Event Type for handleEntityDelete must be ENTITY_DELETE, got %s", event.getClass() ) );
 
@@ -700,8 +751,8 @@ public class AsyncEventServiceImpl implements AsyncEventService {
     }
 
 
-    private void handleInitializeApplicationIndex(final AsyncEvent event, final QueueMessage message) {
-        Preconditions.checkNotNull(message, "Queue Message cannot be null for handleInitializeApplicationIndex");
+    private void handleInitializeApplicationIndex(final AsyncEvent event) {
+        Preconditions.checkNotNull(event, "Event cannot be null for handleInitializeApplicationIndex");
         Preconditions.checkArgument(event instanceof InitializeApplicationIndexEvent, String.format("Event Type for handleInitializeApplicationIndex must be APPLICATION_INDEX, got %s", event.getClass()));
 
         final InitializeApplicationIndexEvent initializeApplicationIndexEvent =
@@ -20,6 +20,8 @@
 package org.apache.usergrid.corepersistence.asyncevents;
 
 
+import org.apache.usergrid.corepersistence.index.CollectionSizeFig;
+import org.apache.usergrid.corepersistence.index.CollectionSizeIndex;
 import org.apache.usergrid.corepersistence.index.IndexLocationStrategyFactory;
 import org.apache.usergrid.corepersistence.index.IndexProcessorFig;
 import org.apache.usergrid.persistence.collection.EntityCollectionManagerFactory;
@@ -55,6 +57,8 @@ public class AsyncIndexProvider implements Provider<AsyncEventService> {
     private final IndexProducer indexProducer;
     private final MapManagerFactory mapManagerFactory;
     private final QueueFig queueFig;
+    private final CollectionSizeIndex collectionSizeIndex;
+    private final CollectionSizeFig collectionSizeFig;
 
     private AsyncEventService asyncEventService;
 
@@ -70,7 +74,9 @@ public class AsyncIndexProvider implements Provider<AsyncEventService> {
                               final EntityIndexFactory entityIndexFactory,
                               final IndexProducer indexProducer,
                               final MapManagerFactory mapManagerFactory,
-                              final QueueFig queueFig) {
+                              final QueueFig queueFig,
+                              final CollectionSizeIndex collectionSizeIndex,
+                              final CollectionSizeFig collectionSizeFig) {
 
         this.indexProcessorFig = indexProcessorFig;
         this.queueManagerFactory = queueManagerFactory;
@@ -83,6 +89,8 @@ public class AsyncIndexProvider implements Provider<AsyncEventService> {
         this.indexProducer = indexProducer;
         this.mapManagerFactory = mapManagerFactory;
         this.queueFig = queueFig;
+        this.collectionSizeIndex = collectionSizeIndex;
+        this.collectionSizeFig = collectionSizeFig;
     }
 
 
@@ -104,15 +112,15 @@ public class AsyncIndexProvider implements Provider<AsyncEventService> {
 
         switch (impl) {
             case LOCAL:
-                AsyncEventServiceImpl eventService = new AsyncEventServiceImpl(scope -> new LocalQueueManager(), indexProcessorFig, indexProducer, metricsFactory,
-                    entityCollectionManagerFactory, indexLocationStrategyFactory, entityIndexFactory, eventBuilder,mapManagerFactory, queueFig,rxTaskScheduler);
+                AsyncEventServiceImpl eventService = new AsyncEventServiceImpl(scope -> new LocalQueueManager(scope, queueFig, metricsFactory), indexProcessorFig, indexProducer, metricsFactory,
+                    entityCollectionManagerFactory, indexLocationStrategyFactory, entityIndexFactory, eventBuilder,mapManagerFactory, queueFig, collectionSizeIndex, collectionSizeFig, rxTaskScheduler);
                 eventService.MAX_TAKE = 1000;
                 return eventService;
             case SQS:
                 throw new IllegalArgumentException("Configuration value of SQS is no longer allowed. Use SNS instead with only a single region");
             case SNS:
                 return new AsyncEventServiceImpl(queueManagerFactory, indexProcessorFig, indexProducer, metricsFactory,
-                    entityCollectionManagerFactory, indexLocationStrategyFactory,entityIndexFactory, eventBuilder, mapManagerFactory, queueFig, rxTaskScheduler );
+                    entityCollectionManagerFactory, indexLocationStrategyFactory,entityIndexFactory, eventBuilder, mapManagerFactory, queueFig, collectionSizeIndex, collectionSizeFig, rxTaskScheduler );
             default:
                 throw new IllegalArgumentException("Configuration value of " + getErrorValues() + " are allowed");
         }
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.asyncevents.model;
+
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * Several events sent as one queue message, encoded with the {@link AsyncEventCodec}.  The payload is Base64 so it
+ * travels through SQS and SNS as text.
+ */
+public final class AsyncEventBatch extends AsyncEvent {
+
+    @JsonProperty
+    protected String payload;
+
+
+    /**
+     * Needed by jackson
+     */
+    public AsyncEventBatch() {
+        super();
+    }
+
+
+    public AsyncEventBatch( final String sourceRegion, final byte[] packedEvents ) {
+        super( sourceRegion );
+        this.payload = Base64.getEncoder().encodeToString( packedEvents );
+    }
+
+
+    /**
+     * Decode the events of the batch
+     */
+    public List<AsyncEvent> decodeEvents() {
+        return AsyncEventCodec.decode( Base64.getDecoder().decode( payload ) );
+    }
+
+
+    /**
+     * Pack the events into as few batches as possible, each with a payload of at most the given number of characters.
+     * An event larger than the limit on its own gets a batch of its own
+     */
+    public static List<AsyncEventBatch> pack( final String sourceRegion, final List<? extends AsyncEvent> events,
+                                              final int maxPayloadSize ) {
+
+        final List<AsyncEventBatch> batches = new ArrayList<>();
+        final List<byte[]> pending = new ArrayList<>();
+
+        int pendingSize = AsyncEventCodec.packedSize( pending );
+
+        for ( final AsyncEvent event : events ) {
+
+            final byte[] encoded = AsyncEventCodec.encode( event );
+            final int size = pendingSize + 5 + encoded.length;
+
+            if ( !pending.isEmpty() && base64Size( size ) > maxPayloadSize ) {
+                batches.add( new AsyncEventBatch( sourceRegion, AsyncEventCodec.pack( pending ) ) );
+                pending.clear();
+                pendingSize = AsyncEventCodec.packedSize( pending );
+            }
+
+            pending.add( encoded );
+            pendingSize += 5 + encoded.length;
+        }
+
+        if ( !pending.isEmpty() ) {
+            batches.add( new AsyncEventBatch( sourceRegion, AsyncEventCodec.pack( pending ) ) );
+        }
+
+        return batches;
+    }
+
+
+    private static int base64Size( final int bytes ) {
+        return ( ( bytes + 2 ) / 3 ) * 4;
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.asyncevents.model;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.usergrid.corepersistence.index.ReplicatedIndexLocationStrategy;
+import org.apache.usergrid.persistence.collection.serialization.impl.migration.EntityIdScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.graph.Edge;
+import org.apache.usergrid.persistence.graph.impl.SimpleEdge;
+import org.apache.usergrid.persistence.index.IndexAlias;
+import org.apache.usergrid.persistence.index.IndexLocationStrategy;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+
+
+/**
+ * Binary encoding of async events, so several events fit in one queue message.  Every event type is written field by
+ * field and read back through its constructor, no reflection or type names on the wire.
+ *
+ * A packed payload is a version byte, the number of events, then each event prefixed with its length.  An event is
+ * its type tag, creation time and source region, followed by the fields of the type.
+ *
+ * When adding an event type, give it a new tag.  When changing the fields of a type, bump the version and keep
+ * reading the old one, events written by nodes still on the old version may be in the queue.
+ */
+public final class AsyncEventCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final byte ENTITY_INDEX = 1;
+    private static final byte EDGE_INDEX = 2;
+    private static final byte EDGE_DELETE = 3;
+    private static final byte ENTITY_DELETE = 4;
+    private static final byte INITIALIZE_APPLICATION_INDEX = 5;
+    private static final byte ELASTICSEARCH_INDEX = 6;
+    private static final byte DE_INDEX_OLD_VERSIONS = 7;
+
+
+    private AsyncEventCodec() {
+    }
+
+
+    /**
+     * Encode a single event, to be packed with {@link #pack(List)}
+     */
+    public static byte[] encode( final AsyncEvent event ) {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 128 );
+        final DataOutputStream out = new DataOutputStream( bytes );
+
+        try {
+            if ( event instanceof EntityIndexEvent ) {
+                final EntityIndexEvent entityIndexEvent = ( EntityIndexEvent ) event;
+
+                writeHeader( out, ENTITY_INDEX, event );
+                writeEntityIdScope( out, entityIndexEvent.getEntityIdScope() );
+                out.writeLong( entityIndexEvent.getUpdatedAfter() );
+            }
+            else if ( event instanceof EdgeIndexEvent ) {
+                final EdgeIndexEvent edgeIndexEvent = ( EdgeIndexEvent ) event;
+
+                writeHeader( out, EDGE_INDEX, event );
+                writeApplicationScope( out, edgeIndexEvent.getApplicationScope() );
+                writeId( out, edgeIndexEvent.getEntityId() );
+                writeEdge( out, edgeIndexEvent.getEdge() );
+            }
+            else if ( event instanceof EdgeDeleteEvent ) {
+                final EdgeDeleteEvent edgeDeleteEvent = ( EdgeDeleteEvent ) event;
+
+                writeHeader( out, EDGE_DELETE, event );
+                writeApplicationScope( out, edgeDeleteEvent.getApplicationScope() );
+                writeEdge( out, edgeDeleteEvent.getEdge() );
+            }
+            else if ( event instanceof EntityDeleteEvent ) {
+                writeHeader( out, ENTITY_DELETE, event );
+                writeEntityIdScope( out, ( ( EntityDeleteEvent ) event ).getEntityIdScope() );
+            }
+            else if ( event instanceof InitializeApplicationIndexEvent ) {
+                writeHeader( out, INITIALIZE_APPLICATION_INDEX, event );
+                writeIndexLocationStrategy( out,
+                    ( ( InitializeApplicationIndexEvent ) event ).getIndexLocationStrategy() );
+            }
+            else if ( event instanceof ElasticsearchIndexEvent ) {
+                writeHeader( out, ELASTICSEARCH_INDEX, event );
+                writeUuid( out, ( ( ElasticsearchIndexEvent ) event ).getIndexBatchId() );
+            }
+            else if ( event instanceof DeIndexOldVersionsEvent ) {
+                final DeIndexOldVersionsEvent deIndexOldVersionsEvent = ( DeIndexOldVersionsEvent ) event;
+
+                writeHeader( out, DE_INDEX_OLD_VERSIONS, event );
+                writeEntityIdScope( out, deIndexOldVersionsEvent.getEntityIdScope() );
+                writeUuid( out, deIndexOldVersionsEvent.getMarkedVersion() );
+            }
+            else {
+                throw new IllegalArgumentException( "Unable to encode event of type " + event.getClass() );
+            }
+
+            out.flush();
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to encode event", e );
+        }
+
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * Pack encoded events into a single payload
+     */
+    public static byte[] pack( final List<byte[]> events ) {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream( packedSize( events ) );
+        final DataOutputStream out = new DataOutputStream( bytes );
+
+        try {
+            out.writeByte( VERSION );
+            writeVarInt( out, events.size() );
+
+            for ( final byte[] event : events ) {
+                writeVarInt( out, event.length );
+                out.write( event );
+            }
+
+            out.flush();
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to pack events", e );
+        }
+
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * The upper bound of the size of the events once packed
+     */
+    public static int packedSize( final List<byte[]> events ) {
+        int size = 1 + 5;
+
+        for ( final byte[] event : events ) {
+            size += 5 + event.length;
+        }
+
+        return size;
+    }
+
+
+    /**
+     * Decode a payload written by {@link #pack(List)}
+     */
+    public static List<AsyncEvent> decode( final byte[] payload ) {
+
+        final DataInputStream in = new DataInputStream( new ByteArrayInputStream( payload ) );
+
+        try {
+            final byte version = in.readByte();
+
+            if ( version != VERSION ) {
+                throw new IllegalArgumentException( "Unsupported async event encoding version " + version );
+            }
+
+            final int count = readVarInt( in );
+
+            final List<AsyncEvent> events = new ArrayList<>( count );
+
+            for ( int i = 0; i < count; i++ ) {
+                final byte[] event = new byte[readVarInt( in )];
+                in.readFully( event );
+
+                events.add( decodeEvent( new DataInputStream( new ByteArrayInputStream( event ) ) ) );
+            }
+
+            return events;
+        }
+        catch ( IOException e ) {
+            throw new IllegalArgumentException( "Unable to decode async events", e );
+        }
+    }
+
+
+    private static AsyncEvent decodeEvent( final DataInput in ) throws IOException {
+
+        final byte type = in.readByte();
+        final long creationTime = in.readLong();
+        final String sourceRegion = readString( in );
+
+        final AsyncEvent event;
+
+        switch ( type ) {
+            case ENTITY_INDEX:
+                event = new EntityIndexEvent( sourceRegion, readEntityIdScope( in ), in.readLong() );
+                break;
+            case EDGE_INDEX:
+                event = new EdgeIndexEvent( sourceRegion, readApplicationScope( in ), readId( in ), readEdge( in ) );
+                break;
+            case EDGE_DELETE:
+                event = new EdgeDeleteEvent( sourceRegion, readApplicationScope( in ), readEdge( in ) );
+                break;
+            case ENTITY_DELETE:
+                event = new EntityDeleteEvent( sourceRegion, readEntityIdScope( in ) );
+                break;
+            case INITIALIZE_APPLICATION_INDEX:
+                event = new InitializeApplicationIndexEvent( sourceRegion, readIndexLocationStrategy( in ) );
+                break;
+            case ELASTICSEARCH_INDEX:
+                event = new ElasticsearchIndexEvent( sourceRegion, readUuid( in ) );
+                break;
+            case DE_INDEX_OLD_VERSIONS:
+                event = new DeIndexOldVersionsEvent( sourceRegion, readEntityIdScope( in ), readUuid( in ) );
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown async event type " + type );
+        }
+
+        // keep the time the event was first created, not decoded
+        event.creationTime = creationTime;
+
+        return event;
+    }
+
+
+    private static void writeHeader( final DataOutput out, final byte type, final AsyncEvent event )
+        throws IOException {
+        out.writeByte( type );
+        out.writeLong( event.getCreationTime() );
+        writeString( out, event.sourceRegion );
+    }
+
+
+    private static void writeEntityIdScope( final DataOutput out, final EntityIdScope entityIdScope )
+        throws IOException {
+        writeApplicationScope( out, entityIdScope.getApplicationScope() );
+        writeId( out, entityIdScope.getId() );
+    }
+
+
+    private static EntityIdScope readEntityIdScope( final DataInput in ) throws IOException {
+        final ApplicationScope applicationScope = readApplicationScope( in );
+        return new EntityIdScope( applicationScope, readId( in ) );
+    }
+
+
+    private static void writeApplicationScope( final DataOutput out, final ApplicationScope applicationScope )
+        throws IOException {
+        writeId( out, applicationScope.getApplication() );
+    }
+
+
+    private static ApplicationScope readApplicationScope( final DataInput in ) throws IOException {
+        return new ApplicationScopeImpl( readId( in ) );
+    }
+
+
+    private static void writeEdge( final DataOutput out, final Edge edge ) throws IOException {
+        writeId( out, edge.getSourceNode() );
+        writeString( out, edge.getType() );
+        writeId( out, edge.getTargetNode() );
+        out.writeLong( edge.getTimestamp() );
+    }
+
+
+    private static Edge readEdge( final DataInput in ) throws IOException {
+        final Id sourceNode = readId( in );
+        final String type = readString( in );
+        final Id targetNode = readId( in );
+        return new SimpleEdge( sourceNode, type, targetNode, in.readLong() );
+    }
+
+
+    private static void writeIndexLocationStrategy( final DataOutput out,
+                                                    final IndexLocationStrategy indexLocationStrategy )
+        throws IOException {
+        writeString( out, indexLocationStrategy.getAlias().getReadAlias() );
+        writeString( out, indexLocationStrategy.getAlias().getWriteAlias() );
+        writeString( out, indexLocationStrategy.getIndexRootName() );
+        writeString( out, indexLocationStrategy.getIndexInitialName() );
+        writeApplicationScope( out, indexLocationStrategy.getApplicationScope() );
+        writeVarInt( out, indexLocationStrategy.getNumberOfShards() );
+        writeVarInt( out, indexLocationStrategy.getNumberOfReplicas() );
+    }
+
+
+    private static IndexLocationStrategy readIndexLocationStrategy( final DataInput in ) throws IOException {
+        final String readAlias = readString( in );
+        final String writeAlias = readString( in );
+        final String rootName = readString( in );
+        final String initialName = readString( in );
+        final ApplicationScope applicationScope = readApplicationScope( in );
+        final int shards = readVarInt( in );
+        final int replicas = readVarInt( in );
+
+        // the same type the strategy is deserialized as from json
+        return new ReplicatedIndexLocationStrategy(
+            new DecodedIndexLocationStrategy( new DecodedIndexAlias( readAlias, writeAlias ), rootName, initialName,
+                applicationScope, shards, replicas ) );
+    }
+
+
+    private static void writeId( final DataOutput out, final Id id ) throws IOException {
+        writeUuid( out, id.getUuid() );
+        writeString( out, id.getType() );
+    }
+
+
+    private static Id readId( final DataInput in ) throws IOException {
+        final UUID uuid = readUuid( in );
+        return new SimpleId( uuid, readString( in ) );
+    }
+
+
+    private static void writeUuid( final DataOutput out, final UUID uuid ) throws IOException {
+        out.writeLong( uuid.getMostSignificantBits() );
+        out.writeLong( uuid.getLeastSignificantBits() );
+    }
+
+
+    private static UUID readUuid( final DataInput in ) throws IOException {
+        final long mostSignificantBits = in.readLong();
+        return new UUID( mostSignificantBits, in.readLong() );
+    }
+
+
+    /**
+     * Strings are their UTF-8 length plus one, 0 for null, then the bytes
+     */
+    private static void writeString( final DataOutput out, final String value ) throws IOException {
+        if ( value == null ) {
+            writeVarInt( out, 0 );
+            return;
+        }
+
+        final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        writeVarInt( out, bytes.length + 1 );
+        out.write( bytes );
+    }
+
+
+    private static String readString( final DataInput in ) throws IOException {
+        final int length = readVarInt( in );
+
+        if ( length == 0 ) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length - 1];
+        in.readFully( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+
+    private static void writeVarInt( final DataOutput out, int value ) throws IOException {
+        while ( ( value & ~0x7F ) != 0 ) {
+            out.writeByte( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+
+        out.writeByte( value );
+    }
+
+
+    private static int readVarInt( final DataInput in ) throws IOException {
+        int value = 0;
+
+        for ( int shift = 0; shift < 32; shift += 7 ) {
+            final byte b = in.readByte();
+            value |= ( b & 0x7F ) << shift;
+
+            if ( ( b & 0x80 ) == 0 ) {
+                return value;
+            }
+        }
+
+        throw new IOException( "Malformed variable length int" );
+    }
+
+
+    private static final class DecodedIndexAlias implements IndexAlias {
+
+        private final String readAlias;
+        private final String writeAlias;
+
+
+        private DecodedIndexAlias( final String readAlias, final String writeAlias ) {
+            this.readAlias = readAlias;
+            this.writeAlias = writeAlias;
+        }
+
+
+        @Override
+        public String getReadAlias() {
+            return readAlias;
+        }
+
+
+        @Override
+        public String getWriteAlias() {
+            return writeAlias;
+        }
+    }
+
+
+    private static final class DecodedIndexLocationStrategy implements IndexLocationStrategy {
+
+        private final IndexAlias alias;
+        private final String rootName;
+        private final String initialName;
+        private final ApplicationScope applicationScope;
+        private final int shards;
+        private final int replicas;
+
+
+        private DecodedIndexLocationStrategy( final IndexAlias alias, final String rootName, final String initialName,
+                                              final ApplicationScope applicationScope, final int shards,
+                                              final int replicas ) {
+            this.alias = alias;
+            this.rootName = rootName;
+            this.initialName = initialName;
+            this.applicationScope = applicationScope;
+            this.shards = shards;
+            this.replicas = replicas;
+        }
+
+
+        @Override
+        public IndexAlias getAlias() {
+            return alias;
+        }
+
+
+        @Override
+        public String getIndexRootName() {
+            return rootName;
+        }
+
+
+        @Override
+        public String getIndexInitialName() {
+            return initialName;
+        }
+
+
+        @Override
+        public ApplicationScope getApplicationScope() {
+            return applicationScope;
+        }
+
+
+        @Override
+        public int getNumberOfShards() {
+            return shards;
+        }
+
+
+        @Override
+        public int getNumberOfReplicas() {
+            return replicas;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *
+ *  * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  *  contributor license agreements.  The ASF licenses this file to You
+ *  * under the Apache License, Version 2.0 (the "License"); you may not
+ *  * use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.  For additional information regarding
+ *  * copyright in this work, please see the NOTICE file in the top level
+ *  * directory of this distribution.
+ *
+ */
+package org.apache.usergrid.corepersistence.index;
+
+import org.safehaus.guicyfig.Default;
+import org.safehaus.guicyfig.FigSingleton;
+import org.safehaus.guicyfig.GuicyFig;
+import org.safehaus.guicyfig.Key;
+
+
+/**
+ * Collection size index config
+ */
+@FigSingleton
+public interface CollectionSizeFig extends GuicyFig {
+
+    /**
+     * When true collection sizes are maintained as entities are written and deleted, and size queries read them
+     * instead of aggregating over Elasticsearch
+     */
+    @Key( "usergrid.collection_size_index.enabled" )
+    @Default( "true" )
+    boolean getEnabled();
+
+    /**
+     * How often, in milliseconds, the sizes of an application are reconciled against Elasticsearch when they are
+     * read.  Sizes are always reconciled the first time they are read, 0 disables any further reconciliation.  A
+     * reconcile is put off while the index queue holds events that Elasticsearch doesn't reflect yet
+     */
+    @Key( "usergrid.collection_size_index.reconcile_interval_ms" )
+    @Default( "3600000" ) // 1 hour
+    long getReconcileInterval();
+
+    /**
+     * How long, in milliseconds, an application that has not been reconciled yet is cached as such
+     */
+    @Key( "usergrid.collection_size_index.tracking_cache_timeout_ms" )
+    @Default( "60000" )
+    long getTrackingCacheTimeout();
+
+}
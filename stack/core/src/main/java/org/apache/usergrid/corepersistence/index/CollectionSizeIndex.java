@@ -0,0 +1,77 @@
+/*
+ *
+ *  * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  *  contributor license agreements.  The ASF licenses this file to You
+ *  * under the Apache License, Version 2.0 (the "License"); you may not
+ *  * use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.  For additional information regarding
+ *  * copyright in this work, please see the NOTICE file in the top level
+ *  * directory of this distribution.
+ *
+ */
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+import com.google.common.base.Optional;
+
+
+/**
+ * The number of entities and their total size in bytes for every collection of an application.  They are kept up to
+ * date as entities are written and deleted, so reading them doesn't need to aggregate over the index.  Each version
+ * and delete of an entity is counted once, however often its event is delivered.  The counters themselves are not
+ * transactional, a failure between counting an entity and moving the counters can make them drift, which is
+ * corrected by reconciling against the index.
+ */
+public interface CollectionSizeIndex {
+
+    /**
+     * A new version of the entity has been written.  Versions older than the last one counted are ignored
+     */
+    void entityWritten( final ApplicationScope applicationScope, final Entity entity );
+
+    /**
+     * The entity has been deleted.  Versions written before the delete are ignored from then on
+     */
+    void entityDeleted( final ApplicationScope applicationScope, final Id entityId );
+
+    /**
+     * Get the size in bytes of the collections, collections without entities are not present in the map
+     */
+    Map<String, Long> getSizes( final ApplicationScope applicationScope, final Collection<String> collectionNames );
+
+    /**
+     * Get the number of entities in the collections, collections without entities are not present in the map
+     */
+    Map<String, Long> getCounts( final ApplicationScope applicationScope, final Collection<String> collectionNames );
+
+    /**
+     * Set the size and count of a collection to the values aggregated from the index
+     */
+    void reconcile( final ApplicationScope applicationScope, final String collectionName, final long count,
+                    final long size );
+
+    /**
+     * Record that every collection of the application has been reconciled at the timestamp
+     */
+    void reconciled( final ApplicationScope applicationScope, final long timestamp );
+
+    /**
+     * Get the last time the application was reconciled, absent if it never has been
+     */
+    Optional<Long> getLastReconciled( final ApplicationScope applicationScope );
+}
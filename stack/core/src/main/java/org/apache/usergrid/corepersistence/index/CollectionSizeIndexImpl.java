@@ -0,0 +1,373 @@
+/*
+ *
+ *  * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  *  contributor license agreements.  The ASF licenses this file to You
+ *  * under the Apache License, Version 2.0 (the "License"); you may not
+ *  * use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.  For additional information regarding
+ *  * copyright in this work, please see the NOTICE file in the top level
+ *  * directory of this distribution.
+ *
+ */
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.Schema;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.map.MapManager;
+import org.apache.usergrid.persistence.map.MapManagerFactory;
+import org.apache.usergrid.persistence.map.impl.MapScopeImpl;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.Field;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import com.fasterxml.uuid.UUIDComparator;
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Keeps the collection sizes as counters in map persistence, one map per application.  Every entity has an entry
+ * holding the version and size it was last counted with, so an update only moves the size of its collection by the
+ * difference and a delete knows what to subtract.  The entry is only ever changed with a conditional write, and only
+ * by a later version, so the counters are moved once per version no matter how often or in what order the events
+ * for an entity arrive.  Deletes leave an entry with the time of the delete and no size.
+ *
+ * Entities written before the application was first reconciled have no counter of their own, but are already part of
+ * the reconciled sizes.  They are recognized by their created timestamp and are not counted again.
+ */
+@Singleton
+public class CollectionSizeIndexImpl implements CollectionSizeIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger( CollectionSizeIndexImpl.class );
+
+    private static final String MAP_NAME = "collectionSizes";
+
+    private static final String COUNT_PREFIX = "count:";
+    private static final String SIZE_PREFIX = "size:";
+    private static final String ENTITY_PREFIX = "entity:";
+
+    private static final String TRACKED_KEY = "tracked";
+    private static final String RECONCILED_KEY = "reconciled";
+
+    /**
+     * How often we retry a conditional write of an entity entry that another update changed under us
+     */
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final MapManagerFactory mapManagerFactory;
+
+    /**
+     * The time the application was first reconciled, the start of tracking its sizes
+     */
+    private final LoadingCache<Id, Optional<Long>> trackedCache;
+
+
+    @Inject
+    public CollectionSizeIndexImpl( final MapManagerFactory mapManagerFactory, final CollectionSizeFig fig ) {
+        this.mapManagerFactory = mapManagerFactory;
+
+        this.trackedCache = CacheBuilder.newBuilder().maximumSize( 10000 )
+            .expireAfterWrite( fig.getTrackingCacheTimeout(), TimeUnit.MILLISECONDS )
+            .build( new CacheLoader<Id, Optional<Long>>() {
+                @Override
+                public Optional<Long> load( final Id applicationId ) {
+                    return Optional.fromNullable( getMapManager( applicationId ).getLong( TRACKED_KEY ) );
+                }
+            } );
+    }
+
+
+    @Override
+    public void entityWritten( final ApplicationScope applicationScope, final Entity entity ) {
+
+        final String collectionName = getCollectionName( entity.getId() );
+        final MapManager mapManager = getMapManager( applicationScope.getApplication() );
+        final String entityKey = ENTITY_PREFIX + entity.getId().getUuid();
+
+        final Counted written = new Counted( entity.getVersion(), Math.max( entity.getSize(), 0 ) );
+
+        for ( int attempt = 0; attempt < MAX_ATTEMPTS; attempt++ ) {
+
+            final String current = mapManager.getStringHighConsistency( entityKey );
+            final Counted previous = Counted.parse( current );
+
+            //this version, or a later version or delete, has already been counted
+            if ( previous != null && !previous.isBefore( written ) ) {
+                return;
+            }
+
+            if ( !mapManager.compareAndPutString( entityKey, current, written.toString() ) ) {
+                continue;
+            }
+
+            //an update, only the size can change
+            if ( previous != null && !previous.isDeleted() ) {
+                final long delta = written.size - previous.size;
+
+                if ( delta != 0 ) {
+                    mapManager.increment( SIZE_PREFIX + collectionName, delta );
+                }
+
+                return;
+            }
+
+            if ( previous == null && isReconciled( applicationScope, entity ) ) {
+                if ( logger.isTraceEnabled() ) {
+                    logger.trace( "Entity {} was counted when reconciling {}", entity.getId(), applicationScope );
+                }
+                return;
+            }
+
+            mapManager.increment( COUNT_PREFIX + collectionName, 1 );
+            mapManager.increment( SIZE_PREFIX + collectionName, written.size );
+            return;
+        }
+
+        logger.warn( "Unable to count version {} of {} after {} attempts, it's corrected by the next reconcile",
+            entity.getVersion(), entity.getId(), MAX_ATTEMPTS );
+    }
+
+
+    @Override
+    public void entityDeleted( final ApplicationScope applicationScope, final Id entityId ) {
+
+        final String collectionName = getCollectionName( entityId );
+        final MapManager mapManager = getMapManager( applicationScope.getApplication() );
+        final String entityKey = ENTITY_PREFIX + entityId.getUuid();
+
+        //every version was written before the delete
+        final Counted deleted = new Counted( UUIDGenerator.newTimeUUID(), Counted.DELETED );
+
+        for ( int attempt = 0; attempt < MAX_ATTEMPTS; attempt++ ) {
+
+            final String current = mapManager.getStringHighConsistency( entityKey );
+            final Counted previous = Counted.parse( current );
+
+            if ( previous != null && ( previous.isDeleted() || !previous.isBefore( deleted ) ) ) {
+                return;
+            }
+
+            if ( !mapManager.compareAndPutString( entityKey, current, deleted.toString() ) ) {
+                continue;
+            }
+
+            if ( previous != null ) {
+                mapManager.increment( COUNT_PREFIX + collectionName, -1 );
+                mapManager.increment( SIZE_PREFIX + collectionName, -previous.size );
+                return;
+            }
+
+            //never counted, but part of the reconciled sizes if it was created before.  We don't know its size, that
+            //is corrected by the next reconcile
+            final Optional<Long> tracked = getTracked( applicationScope );
+
+            if ( tracked.isPresent() && UUIDUtils.isTimeBased( entityId.getUuid() )
+                && UUIDUtils.getTimestampInMillis( entityId.getUuid() ) < tracked.get() ) {
+
+                mapManager.increment( COUNT_PREFIX + collectionName, -1 );
+            }
+
+            return;
+        }
+
+        logger.warn( "Unable to count the delete of {} after {} attempts, it's corrected by the next reconcile",
+            entityId, MAX_ATTEMPTS );
+    }
+
+
+    @Override
+    public Map<String, Long> getSizes( final ApplicationScope applicationScope,
+                                       final Collection<String> collectionNames ) {
+        return getCounters( applicationScope, SIZE_PREFIX, collectionNames );
+    }
+
+
+    @Override
+    public Map<String, Long> getCounts( final ApplicationScope applicationScope,
+                                        final Collection<String> collectionNames ) {
+        return getCounters( applicationScope, COUNT_PREFIX, collectionNames );
+    }
+
+
+    @Override
+    public void reconcile( final ApplicationScope applicationScope, final String collectionName, final long count,
+                           final long size ) {
+
+        final MapManager mapManager = getMapManager( applicationScope.getApplication() );
+
+        final String countKey = COUNT_PREFIX + collectionName.toLowerCase();
+        final String sizeKey = SIZE_PREFIX + collectionName.toLowerCase();
+
+        final Map<String, Long> current = mapManager.getCounters( Arrays.asList( countKey, sizeKey ) );
+
+        //counters can't be set, move them by the difference instead
+        final long countDelta = count - current.getOrDefault( countKey, 0L );
+        final long sizeDelta = size - current.getOrDefault( sizeKey, 0L );
+
+        if ( countDelta != 0 ) {
+            mapManager.increment( countKey, countDelta );
+        }
+
+        if ( sizeDelta != 0 ) {
+            mapManager.increment( sizeKey, sizeDelta );
+        }
+
+        if ( logger.isDebugEnabled() ) {
+            logger.debug( "Reconciled collection {} in {}, count moved by {} and size by {}", collectionName,
+                applicationScope, countDelta, sizeDelta );
+        }
+    }
+
+
+    @Override
+    public void reconciled( final ApplicationScope applicationScope, final long timestamp ) {
+
+        final MapManager mapManager = getMapManager( applicationScope.getApplication() );
+
+        mapManager.putLong( RECONCILED_KEY, timestamp );
+
+        if ( !getTracked( applicationScope ).isPresent() ) {
+            mapManager.putLong( TRACKED_KEY, timestamp );
+            trackedCache.put( applicationScope.getApplication(), Optional.of( timestamp ) );
+        }
+    }
+
+
+    @Override
+    public Optional<Long> getLastReconciled( final ApplicationScope applicationScope ) {
+        return Optional.fromNullable( getMapManager( applicationScope.getApplication() ).getLong( RECONCILED_KEY ) );
+    }
+
+
+    private Map<String, Long> getCounters( final ApplicationScope applicationScope, final String prefix,
+                                           final Collection<String> collectionNames ) {
+
+        final Map<String, String> keys = new HashMap<>( collectionNames.size() );
+
+        for ( final String collectionName : collectionNames ) {
+            keys.put( prefix + collectionName.toLowerCase(), collectionName );
+        }
+
+        final Map<String, Long> counters =
+            getMapManager( applicationScope.getApplication() ).getCounters( keys.keySet() );
+
+        final Map<String, Long> results = new HashMap<>( counters.size() );
+
+        //drift can take a counter below 0 until it is reconciled, never report that
+        counters.forEach( ( key, value ) -> results.put( keys.get( key ), Math.max( value, 0L ) ) );
+
+        return results;
+    }
+
+
+    /**
+     * True if the entity was created before the application was first reconciled, and is part of the reconciled sizes
+     */
+    private boolean isReconciled( final ApplicationScope applicationScope, final Entity entity ) {
+
+        final Optional<Long> tracked = getTracked( applicationScope );
+
+        if ( !tracked.isPresent() ) {
+            return false;
+        }
+
+        final Field<?> created = entity.getField( Schema.PROPERTY_CREATED );
+
+        return created != null && created.getValue() instanceof Long && ( Long ) created.getValue() < tracked.get();
+    }
+
+
+    /**
+     * The collection an entity belongs to, named the same as the collection edges to it
+     */
+    private static String getCollectionName( final Id entityId ) {
+        return Schema.defaultCollectionName( entityId.getType() ).toLowerCase();
+    }
+
+
+    private Optional<Long> getTracked( final ApplicationScope applicationScope ) {
+        try {
+            return trackedCache.get( applicationScope.getApplication() );
+        }
+        catch ( ExecutionException e ) {
+            throw new RuntimeException( "Unable to read the collection size tracking time", e );
+        }
+    }
+
+
+    private MapManager getMapManager( final Id applicationId ) {
+        return mapManagerFactory.createMapManager( new MapScopeImpl( applicationId, MAP_NAME ) );
+    }
+
+
+    /**
+     * The version of an entity and the size it was counted with, stored as "version:size"
+     */
+    private static final class Counted {
+
+        private static final long DELETED = -1;
+
+        private final UUID version;
+        private final long size;
+
+
+        private Counted( final UUID version, final long size ) {
+            this.version = version;
+            this.size = size;
+        }
+
+
+        private static Counted parse( final String value ) {
+            if ( value == null ) {
+                return null;
+            }
+
+            final int separator = value.indexOf( ':' );
+
+            return new Counted( UUID.fromString( value.substring( 0, separator ) ),
+                Long.parseLong( value.substring( separator + 1 ) ) );
+        }
+
+
+        private boolean isDeleted() {
+            return size == DELETED;
+        }
+
+
+        private boolean isBefore( final Counted other ) {
+            return UUIDComparator.staticCompare( version, other.version ) < 0;
+        }
+
+
+        @Override
+        public String toString() {
+            return version + ":" + size;
+        }
+    }
+}
@@ -118,4 +118,20 @@ public interface IndexProcessorFig extends GuicyFig {
     @Default("86400000")
     @Key( "elasticsearch.message.ttl" )
     int getIndexMessageTtl();
+
+    /**
+     * Send events in the compact binary encoding, packing batches of events into as few queue messages as possible.
+     * Only enable once every node reading the queue understands the encoding.
+     */
+    @Default("false")
+    @Key( "elasticsearch.queue_binary_events" )
+    boolean isBinaryEvents();
+
+    /**
+     * The most characters of encoded events to pack into one queue message.  SQS allows 256KB per message, including
+     * the envelope SNS adds
+     */
+    @Default("200000")
+    @Key( "elasticsearch.queue_max_message_size" )
+    int getMaxMessageSize();
 }
@@ -26,10 +26,7 @@ import org.apache.usergrid.corepersistence.index.IndexLocationStrategyFactory;
 import org.apache.usergrid.persistence.index.*;
 import org.apache.usergrid.persistence.index.impl.IndexProducer;
 import org.apache.usergrid.persistence.model.field.DistanceField;
-import org.apache.usergrid.persistence.model.field.DoubleField;
-import org.apache.usergrid.persistence.model.field.EntityObjectField;
-import org.apache.usergrid.persistence.model.field.Field;
-import org.apache.usergrid.persistence.model.field.value.EntityObject;
+import org.apache.usergrid.persistence.model.field.FieldProjection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -111,9 +108,14 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
                 final Observable<FilterResult<Entity>> entitySetObservable =
                     candidates.flatMap(candidatesList -> {
                         Collection<SelectFieldMapping> mappings = candidatesList.get(0).getFields();
+
+                        //compile the selects once for the whole page
+                        final FieldProjection projection = compileProjection( mappings );
+
                         Observable<EntitySet> entitySets = Observable.from(candidatesList)
                             .map(candidateEntry -> candidateEntry.getCandidateResult().getId()).toList()
-                            .flatMap(idList -> entityCollectionManager.load(idList));
+                            .flatMap(idList -> projection.isEmpty() ? entityCollectionManager.load(idList)
+                                : entityCollectionManager.load(idList, projection));
                         //now we have a collection, validate our canidate set is correct.
                         return entitySets.map(
                             entitySet -> new EntityVerifier(
@@ -122,31 +124,9 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
                             .doOnNext(entityCollector -> entityCollector.merge())
                             .flatMap(entityCollector -> Observable.from(entityCollector.getResults()))
                             .map(entityFilterResult -> {
-                                final Entity entity = entityFilterResult.getValue();
-                                if (mappings.size() > 0) {
-                                    Map<String,Field> fieldMap = new HashMap<String, Field>(mappings.size());
-                                    rx.Observable.from(mappings)
-
-                                        .filter(mapping -> {
-                                            if ( entity.getFieldMap().containsKey(mapping.getSourceFieldName())) {
-                                                return true;
-                                            }
-                                            String[] parts = mapping.getSourceFieldName().split("\\.");
-                                            return nestedFieldCheck( parts, entity.getFieldMap() );
-                                        })
-
-                                        .doOnNext(mapping -> {
-                                            Field field = entity.getField(mapping.getSourceFieldName());
-                                            if ( field != null ) {
-                                                field.setName( mapping.getTargetFieldName() );
-                                                fieldMap.put( mapping.getTargetFieldName(), field );
-                                            } else {
-                                                String[] parts = mapping.getSourceFieldName().split("\\.");
-                                                nestedFieldSet( fieldMap, parts, entity.getFieldMap() );
-                                            }
-                                        }).toBlocking().lastOrDefault(null);
-
-                                    entity.setFieldMap(fieldMap);
+                                if ( !projection.isEmpty() ) {
+                                    final Entity entity = entityFilterResult.getValue();
+                                    entity.setFieldMap( projection.project( entity.getFieldMap() ) );
                                 }
                                 return entityFilterResult;
                             });
@@ -162,58 +142,17 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
 
 
     /**
-     * Sets field in result map with support for nested fields via recursion.
-     *
-     * @param result The result map of filtered fields
-     * @param parts The parts of the field name (more than one if field is nested)
-     * @param fieldMap Map of fields of the object
-     */
-    private void nestedFieldSet( Map<String, Field> result, String[] parts, Map<String, Field> fieldMap) {
-        if ( parts.length > 0 ) {
-
-            if ( fieldMap.containsKey( parts[0] )) {
-                Field field = fieldMap.get( parts[0] );
-                if ( field instanceof EntityObjectField ) {
-                    EntityObjectField eof = (EntityObjectField)field;
-                    result.putIfAbsent( parts[0], new EntityObjectField( parts[0], new EntityObject() ) );
-
-                    // recursion
-                    nestedFieldSet(
-                        ((EntityObjectField)result.get( parts[0] )).getValue().getFieldMap(),
-                        Arrays.copyOfRange(parts, 1, parts.length),
-                        eof.getValue().getFieldMap());
-
-                } else {
-                    result.put( parts[0], field );
-                }
-            }
-        }
-    }
-
-
-    /**
-     * Check to see if field should be included in filtered result with support for nested fields via recursion.
-     *
-     * @param parts The parts of the field name (more than one if field is nested)
-     * @param fieldMap Map of fields of the object
+     * Compile the select mappings of the query into a projection that can be shared by every entity of a page
      */
-    private boolean nestedFieldCheck( String[] parts, Map<String, Field> fieldMap) {
-        if ( parts.length > 0 ) {
-
-            if ( fieldMap.containsKey( parts[0] )) {
-                Field field = fieldMap.get( parts[0] );
-                if ( field instanceof EntityObjectField ) {
-                    EntityObjectField eof = (EntityObjectField)field;
+    private static FieldProjection compileProjection( final Collection<SelectFieldMapping> mappings ) {
 
-                    // recursion
-                    return nestedFieldCheck( Arrays.copyOfRange(parts, 1, parts.length), eof.getValue().getFieldMap());
+        final Map<String, String> selects = new LinkedHashMap<>( mappings.size() );
 
-                } else {
-                    return true;
-                }
-            }
+        for ( final SelectFieldMapping mapping : mappings ) {
+            selects.put( mapping.getSourceFieldName(), mapping.getTargetFieldName() );
         }
-        return false;
+
+        return FieldProjection.compile( selects );
     }
 
 
@@ -61,4 +61,28 @@ public interface AggregationService {
      * @return
      */
     long getCollectionSize(final ApplicationScope applicationScope, final String collectionName);
+
+    /**
+     * get the number of entities in each collection of the app
+     *
+     * @param applicationScope
+     * @return
+     */
+    Map<String,Long> getEachCollectionCount(ApplicationScope applicationScope);
+
+    /**
+     * get the number of entities by collection name
+     * @param applicationScope
+     * @param collectionName
+     * @return
+     */
+    long getCollectionCount(final ApplicationScope applicationScope, final String collectionName);
+
+    /**
+     * reconcile the maintained collection sizes of the app against the index.  Once the app has been reconciled,
+     * nothing is done while the index queue holds events
+     *
+     * @param applicationScope
+     */
+    void reconcileCollectionSizes(final ApplicationScope applicationScope);
 }
@@ -22,6 +22,9 @@ package org.apache.usergrid.corepersistence.service;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
+import org.apache.usergrid.corepersistence.asyncevents.AsyncEventService;
+import org.apache.usergrid.corepersistence.index.CollectionSizeFig;
+import org.apache.usergrid.corepersistence.index.CollectionSizeIndex;
 import org.apache.usergrid.corepersistence.index.IndexLocationStrategyFactory;
 import org.apache.usergrid.corepersistence.util.CpNamingUtils;
 import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
@@ -34,40 +37,267 @@ import org.apache.usergrid.persistence.index.EntityIndex;
 import org.apache.usergrid.persistence.index.EntityIndexFactory;
 import org.apache.usergrid.persistence.index.IndexLocationStrategy;
 import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
 import rx.observables.MathObservable;
+import rx.schedulers.Schedulers;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Aggregation Service get counts for an application
+ *
+ * Collection sizes and counts are read from the {@link CollectionSizeIndex} unless it is disabled, in which case they
+ * are aggregated over the index one collection at a time.  The first read of an application seeds the
+ * {@link CollectionSizeIndex} from the index, later reads reconcile it in the background if configured.
+ *
+ * Sizes are counted when entity events are queued, the index only reflects them once they're processed.  Later
+ * reconciles are put off while the index queue holds events, otherwise they'd undo what was counted for them.
  */
 public class AggregationServiceImpl implements AggregationService {
 
+    private static final Logger logger = LoggerFactory.getLogger( AggregationServiceImpl.class );
+
+    /**
+     * Applications being reconciled.  A new service is created for every caller, so this is shared
+     */
+    private static final Set<Id> reconciling = ConcurrentHashMap.newKeySet();
+
     private final EntityIndexFactory entityIndexFactory;
     private final IndexLocationStrategyFactory indexLocationStrategyFactory;
     private final GraphManagerFactory graphManagerFactory;
     private final MetricsFactory metricsFactory;
+    private final CollectionSizeIndex collectionSizeIndex;
+    private final CollectionSizeFig collectionSizeFig;
+    private final AsyncEventService asyncEventService;
     private final Timer sumTimer;
+    private final Timer reconcileTimer;
 
     @Inject
     public AggregationServiceImpl(
         final EntityIndexFactory entityIndexFactory,
         final IndexLocationStrategyFactory indexLocationStrategyFactory,
         final GraphManagerFactory graphManagerFactory,
-        final MetricsFactory metricsFactory){
+        final MetricsFactory metricsFactory,
+        final CollectionSizeIndex collectionSizeIndex,
+        final CollectionSizeFig collectionSizeFig,
+        final AsyncEventService asyncEventService){
 
         this.entityIndexFactory = entityIndexFactory;
         this.indexLocationStrategyFactory = indexLocationStrategyFactory;
         this.graphManagerFactory = graphManagerFactory;
         this.metricsFactory = metricsFactory;
+        this.collectionSizeIndex = collectionSizeIndex;
+        this.collectionSizeFig = collectionSizeFig;
+        this.asyncEventService = asyncEventService;
         this.sumTimer = metricsFactory.getTimer(AggregationServiceImpl.class,"sum");
+        this.reconcileTimer = metricsFactory.getTimer(AggregationServiceImpl.class,"reconcile");
     }
 
 
     @Override
     public long getApplicationSize(ApplicationScope applicationScope) {
+        if(!collectionSizeFig.getEnabled()){
+            return getIndexedApplicationSize(applicationScope);
+        }
+
+        long sum = 0;
+        for(Long size : getEachCollectionSize(applicationScope).values()){
+            sum += size;
+        }
+        return sum;
+    }
+
+    @Override
+    public Map<String, Long> getEachCollectionSize(ApplicationScope applicationScope) {
+        if(!collectionSizeFig.getEnabled()){
+            return getIndexedCollectionSizes(applicationScope);
+        }
+
+        final Timer.Context timer = sumTimer.time();
+        try {
+            final List<String> collectionNames = getCollectionNames(applicationScope);
+
+            if (!checkReconciled(applicationScope, collectionNames)) {
+                return getIndexedCollectionSizes(applicationScope);
+            }
+
+            return withEmptyCollections(collectionNames, collectionSizeIndex.getSizes(applicationScope, collectionNames));
+        }finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public long getSize(ApplicationScope applicationScope, SearchEdge edge) {
         final IndexLocationStrategy indexLocationStrategy = indexLocationStrategyFactory.getIndexLocationStrategy(applicationScope);
         EntityIndex entityIndex = entityIndexFactory.createEntityIndex(indexLocationStrategy);
+        return entityIndex.getEntitySize(edge);
+    }
+
+    @Override
+    public long getCollectionSize(final ApplicationScope applicationScope, final String collectionName) {
+        if(!collectionSizeFig.getEnabled()
+            || !checkReconciled(applicationScope, Collections.<String>emptyList())){
+            return getSize(applicationScope, CpNamingUtils.createCollectionSearchEdge(applicationScope.getApplication(), collectionName));
+        }
+
+        return collectionSizeIndex.getSizes(applicationScope, Collections.singleton(collectionName))
+            .getOrDefault(collectionName, 0L);
+    }
+
+    @Override
+    public Map<String, Long> getEachCollectionCount(final ApplicationScope applicationScope) {
+        final List<String> collectionNames = getCollectionNames(applicationScope);
+
+        if(!collectionSizeFig.getEnabled() || !checkReconciled(applicationScope, collectionNames)){
+            final EntityIndex entityIndex = getEntityIndex(applicationScope);
+            final Map<String, Long> counts = new HashMap<>();
+            collectionNames.forEach(collectionName -> counts.put(collectionName,
+                entityIndex.getEntityCount(CpNamingUtils.createCollectionSearchEdge(applicationScope.getApplication(), collectionName))));
+            return counts;
+        }
+
+        return withEmptyCollections(collectionNames, collectionSizeIndex.getCounts(applicationScope, collectionNames));
+    }
+
+    @Override
+    public long getCollectionCount(final ApplicationScope applicationScope, final String collectionName) {
+        if(!collectionSizeFig.getEnabled()
+            || !checkReconciled(applicationScope, Collections.<String>emptyList())){
+            return getEntityIndex(applicationScope).getEntityCount(
+                CpNamingUtils.createCollectionSearchEdge(applicationScope.getApplication(), collectionName));
+        }
+
+        return collectionSizeIndex.getCounts(applicationScope, Collections.singleton(collectionName))
+            .getOrDefault(collectionName, 0L);
+    }
+
+    @Override
+    public void reconcileCollectionSizes(final ApplicationScope applicationScope) {
+        final Id applicationId = applicationScope.getApplication();
+
+        if(collectionSizeIndex.getLastReconciled(applicationScope).isPresent() && hasQueuedEvents()){
+            logger.info("Not reconciling collection sizes of {}, the index queue holds {} events",
+                applicationScope, asyncEventService.getQueueDepth());
+            return;
+        }
+
+        if(!reconciling.add(applicationId)){
+            logger.info("Collection sizes of {} are already being reconciled", applicationScope);
+            return;
+        }
+
+        try {
+            reconcile(applicationScope, getCollectionNames(applicationScope));
+        }finally {
+            reconciling.remove(applicationId);
+        }
+    }
+
+
+    /**
+     * Make sure the application has been reconciled at least once, and start a reconcile in the background when the
+     * last one is older than the reconcile interval.
+     *
+     * @return false if the application has never been reconciled and is being reconciled by another caller, the
+     * maintained sizes can't be used yet
+     */
+    private boolean checkReconciled(final ApplicationScope applicationScope, final List<String> collectionNames){
+        final Optional<Long> lastReconciled = collectionSizeIndex.getLastReconciled(applicationScope);
+        final Id applicationId = applicationScope.getApplication();
+
+        if(!lastReconciled.isPresent()){
+            if(!reconciling.add(applicationId)){
+                return false;
+            }
+
+            //this one is as slow as aggregating over the index, it only happens once per application.  It can't wait for
+            //the queue, anything it misses is corrected by the next reconcile
+            try {
+                reconcile(applicationScope, collectionNames.isEmpty() ? getCollectionNames(applicationScope) : collectionNames);
+            }finally {
+                reconciling.remove(applicationId);
+            }
+
+            return true;
+        }
+
+        final long interval = collectionSizeFig.getReconcileInterval();
+
+        //try again on a later read once the queue is drained
+        if(interval > 0 && System.currentTimeMillis() - lastReconciled.get() > interval && !hasQueuedEvents()
+            && reconciling.add(applicationId)){
+            Observable.just(applicationScope)
+                .doOnNext(scope -> {
+                    try {
+                        reconcile(scope, getCollectionNames(scope));
+                    }finally {
+                        reconciling.remove(applicationId);
+                    }
+                })
+                .subscribeOn(Schedulers.io())
+                .subscribe(scope -> {}, t -> logger.error("Unable to reconcile collection sizes of {}", applicationScope, t));
+        }
+
+        return true;
+    }
+
+    private void reconcile(final ApplicationScope applicationScope, final List<String> collectionNames){
+        final Timer.Context timer = reconcileTimer.time();
+        try {
+            final EntityIndex entityIndex = getEntityIndex(applicationScope);
+
+            //anything written from here on is counted as it happens
+            final long started = System.currentTimeMillis();
+
+            for (final String collectionName : collectionNames) {
+                final SearchEdge edge = CpNamingUtils.createCollectionSearchEdge(applicationScope.getApplication(), collectionName);
+
+                collectionSizeIndex.reconcile(applicationScope, collectionName,
+                    Math.max(entityIndex.getEntityCount(edge), 0), Math.max(entityIndex.getEntitySize(edge), 0));
+            }
+
+            collectionSizeIndex.reconciled(applicationScope, started);
+
+            if(logger.isDebugEnabled()){
+                logger.debug("Reconciled {} collection sizes of {}", collectionNames.size(), applicationScope);
+            }
+        }finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * True if the index queue holds events the index doesn't reflect yet
+     */
+    private boolean hasQueuedEvents(){
+        return asyncEventService.getQueueDepth() > 0;
+    }
+
+    private List<String> getCollectionNames(final ApplicationScope applicationScope){
+        GraphManager graphManager = graphManagerFactory.createEdgeManager(applicationScope);
+        return graphManager.getEdgeTypesFromSource(new SimpleSearchEdgeType(applicationScope.getApplication(), CpNamingUtils.EDGE_COLL_PREFIX, Optional.<String>absent()))
+            .map(type -> CpNamingUtils.getCollectionNameFromEdgeName(type))
+            .toList().toBlocking().last();
+    }
+
+    private static Map<String, Long> withEmptyCollections(final List<String> collectionNames, final Map<String, Long> values){
+        final Map<String, Long> results = new HashMap<>(values);
+        collectionNames.forEach(collectionName -> results.putIfAbsent(collectionName, 0L));
+        return results;
+    }
+
+    private EntityIndex getEntityIndex(final ApplicationScope applicationScope){
+        final IndexLocationStrategy indexLocationStrategy = indexLocationStrategyFactory.getIndexLocationStrategy(applicationScope);
+        return entityIndexFactory.createEntityIndex(indexLocationStrategy);
+    }
+
+    private long getIndexedApplicationSize(ApplicationScope applicationScope) {
+        EntityIndex entityIndex = getEntityIndex(applicationScope);
         GraphManager graphManager = graphManagerFactory.createEdgeManager(applicationScope);
         Long sum = ObservableTimer.time(
             MathObservable.sumLong(
@@ -79,10 +309,8 @@ public class AggregationServiceImpl implements AggregationService {
         return sum.longValue();
     }
 
-    @Override
-    public Map<String, Long> getEachCollectionSize(ApplicationScope applicationScope) {
-        final IndexLocationStrategy indexLocationStrategy = indexLocationStrategyFactory.getIndexLocationStrategy(applicationScope);
-        EntityIndex entityIndex = entityIndexFactory.createEntityIndex(indexLocationStrategy);
+    private Map<String, Long> getIndexedCollectionSizes(ApplicationScope applicationScope) {
+        EntityIndex entityIndex = getEntityIndex(applicationScope);
         GraphManager graphManager = graphManagerFactory.createEdgeManager(applicationScope);
         Map<String,Long> sumMap = ObservableTimer.time(
                 graphManager.getEdgeTypesFromSource(new SimpleSearchEdgeType(applicationScope.getApplication(), CpNamingUtils.EDGE_COLL_PREFIX, Optional.<String>absent()))
@@ -99,16 +327,4 @@ public class AggregationServiceImpl implements AggregationService {
 
     }
 
-    @Override
-    public long getSize(ApplicationScope applicationScope, SearchEdge edge) {
-        final IndexLocationStrategy indexLocationStrategy = indexLocationStrategyFactory.getIndexLocationStrategy(applicationScope);
-        EntityIndex entityIndex = entityIndexFactory.createEntityIndex(indexLocationStrategy);
-        return entityIndex.getEntitySize(edge);
-    }
-
-    @Override
-    public long getCollectionSize(final ApplicationScope applicationScope, final String collectionName) {
-        return getSize(applicationScope, CpNamingUtils.createCollectionSearchEdge(applicationScope.getApplication(), collectionName));
-    }
-
 }
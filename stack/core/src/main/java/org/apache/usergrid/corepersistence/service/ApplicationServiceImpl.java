@@ -21,6 +21,7 @@ package org.apache.usergrid.corepersistence.service;
 
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
+import org.apache.usergrid.corepersistence.EntityCache;
 import org.apache.usergrid.corepersistence.asyncevents.AsyncEventService;
 import org.apache.usergrid.corepersistence.asyncevents.EventBuilder;
 import org.apache.usergrid.corepersistence.index.CollectionSettings;
@@ -63,6 +64,7 @@ public class ApplicationServiceImpl  implements ApplicationService{
     private final GraphManagerFactory graphManagerFactory;
     private final CollectionSettingsFactory collectionSettingsFactory;
     private final ActorSystemFig actorSystemFig;
+    private final EntityCache entityCache;
 
 
     @Inject
@@ -73,7 +75,8 @@ public class ApplicationServiceImpl  implements ApplicationService{
                                   MapManagerFactory mapManagerFactory,
                                   GraphManagerFactory graphManagerFactory,
                                   CollectionSettingsFactory collectionSettingsFactory,
-                                  ActorSystemFig actorSystemFig
+                                  ActorSystemFig actorSystemFig,
+                                  EntityCache entityCache
     ){
 
         this.allEntityIdsObservable = allEntityIdsObservable;
@@ -84,6 +87,7 @@ public class ApplicationServiceImpl  implements ApplicationService{
         this.graphManagerFactory = graphManagerFactory;
         this.collectionSettingsFactory = collectionSettingsFactory;
         this.actorSystemFig = actorSystemFig;
+        this.entityCache = entityCache;
     }
 
 
@@ -118,6 +122,7 @@ public class ApplicationServiceImpl  implements ApplicationService{
         countObservable = countObservable.map(id -> {
             entityCollectionManager.mark((Id) id, null )
                 .mergeWith(graphManager.markNode((Id) id, createGraphOperationTimestamp())).toBlocking().last();
+            entityCache.invalidate(applicationScope, (Id) id);
             return id;
         })
             .doOnNext(id -> deleteAsync(mapManager, applicationScope, (Id) id));
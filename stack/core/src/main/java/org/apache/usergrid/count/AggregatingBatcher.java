@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.count;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.count.common.Count;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+
+
+/**
+ * A Batcher that rolls up {@link Count} operations for the same counter as they are added, instead of queueing every
+ * operation and merging them in the {@link CounterStore}.  Increments land in a concurrent map of striped adders keyed
+ * by {@link Count#getCounterName()}, so adds never block or drop a count.
+ *
+ * The map is swapped out atomically once it holds batchSize distinct counters or the batch interval passes.  A swap
+ * waits for adds already working against the old map to finish before it is submitted, and a failed submit is merged
+ * back into the current map to be retried with the next flush.
+ *
+ * Setting the batch size to 1 flushes and waits on every add, which tests use to read counters back immediately.
+ */
+public class AggregatingBatcher implements Batcher {
+
+    private static final Logger logger = LoggerFactory.getLogger( AggregatingBatcher.class );
+
+    protected BatchSubmitter batchSubmitter;
+
+    protected int batchSize = 500;
+    protected int batchIntervalSeconds = 10;
+    private boolean blockingSubmit = false;
+
+    private final AtomicReference<Aggregate> current = new AtomicReference<>( new Aggregate() );
+    private final AtomicLong opCount = new AtomicLong();
+    private final AtomicLong batchSubmissionCount = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final Timer addTimer =
+            Metrics.newTimer( AggregatingBatcher.class, "add_invocation", TimeUnit.MICROSECONDS, TimeUnit.SECONDS );
+    private final Timer flushTimer =
+            Metrics.newTimer( AggregatingBatcher.class, "flush_latency", TimeUnit.MILLISECONDS, TimeUnit.SECONDS );
+    protected final Counter invocationCounter = Metrics.newCounter( AggregatingBatcher.class, "batch_add_invocations" );
+    private final Counter failedFlushCounter = Metrics.newCounter( AggregatingBatcher.class, "flush_failures" );
+
+    /**
+     * Single thread for interval and size triggered flushes, this keeps submits ordered and off the caller
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor( r -> {
+        final Thread thread = new Thread( r, "AggregatingBatcherFlush" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+
+    public AggregatingBatcher() {
+        Metrics.newGauge( AggregatingBatcher.class, "pending_keys", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return current.get().counts.size();
+            }
+        } );
+    }
+
+
+    /**
+     * Set the batch interval in seconds
+     */
+    public void setBatchInterval( int batchIntervalSeconds ) {
+        this.batchIntervalSeconds = batchIntervalSeconds;
+    }
+
+
+    /**
+     * Set the number of distinct counters to hold before flushing
+     */
+    public void setBatchSize( int batchSize ) {
+        this.batchSize = batchSize;
+    }
+
+
+    public void setBlockingSubmit( boolean blockingSubmit ) {
+        this.blockingSubmit = blockingSubmit;
+    }
+
+
+    @Override
+    public void setBatchSubmitter( BatchSubmitter batchSubmitter ) {
+        this.batchSubmitter = batchSubmitter;
+    }
+
+
+    @Override
+    public void add( Count count ) {
+        invocationCounter.inc();
+        final TimerContext context = addTimer.time();
+
+        try {
+            start();
+
+            final int pending = aggregate( count );
+
+            if ( batchSize <= 1 ) {
+                flush( blockingSubmit );
+            }
+            //only queue one size triggered flush at a time, later adds roll into the same swap
+            else if ( pending >= batchSize && flushScheduled.compareAndSet( false, true ) ) {
+                scheduler.execute( () -> {
+                    flushScheduled.set( false );
+                    flush( true );
+                } );
+            }
+        }
+        finally {
+            context.stop();
+        }
+    }
+
+
+    /**
+     * Individual {@link Count} for the same counter get rolled up, so we track the individual number of operations.
+     *
+     * @return the number of operation against this AggregatingBatcher
+     */
+    @Override
+    public long getOpCount() {
+        return opCount.get();
+    }
+
+
+    @Override
+    public long getBatchSubmissionCount() {
+        return batchSubmissionCount.get();
+    }
+
+
+    /**
+     * @return the number of distinct counters waiting for the next flush
+     */
+    public int getPendingCount() {
+        return current.get().counts.size();
+    }
+
+
+    /**
+     * Swap the current aggregate and submit it.  When wait is true the submit is waited on, and a failure is merged
+     * back to be retried with the next flush
+     */
+    public void flush( boolean wait ) {
+        final Aggregate flushed = current.getAndSet( new Aggregate() );
+
+        flushed.awaitWriters();
+
+        final List<Count> counts = flushed.toCounts();
+
+        if ( counts.isEmpty() ) {
+            return;
+        }
+
+        final TimerContext context = flushTimer.time();
+
+        try {
+            if ( wait ) {
+                batchSubmitter.submit( counts ).get();
+            }
+            else {
+                batchSubmitter.submit( counts );
+            }
+
+            batchSubmissionCount.incrementAndGet();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            retry( counts, e );
+        }
+        catch ( Exception e ) {
+            retry( counts, e );
+        }
+        finally {
+            context.stop();
+        }
+    }
+
+
+    /**
+     * Flush whatever is pending and stop the flush thread
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        flush( true );
+    }
+
+
+    /**
+     * Add the count to the current aggregate, retrying against the replacement if the aggregate is swapped out before
+     * we registered with it.  Returns the number of distinct counters in the aggregate.
+     */
+    private int aggregate( Count count ) {
+        while ( true ) {
+            final Aggregate aggregate = current.get();
+
+            aggregate.writers.incrementAndGet();
+
+            try {
+                //swapped before we registered, the flush may already be reading it
+                if ( current.get() != aggregate ) {
+                    continue;
+                }
+
+                aggregate.add( count );
+                opCount.incrementAndGet();
+
+                return aggregate.counts.size();
+            }
+            finally {
+                aggregate.writers.decrementAndGet();
+            }
+        }
+    }
+
+
+    private void retry( List<Count> counts, Exception e ) {
+        failedFlushCounter.inc();
+        logger.error( "Unable to submit {} counts, retrying them with the next flush", counts.size(), e );
+
+        for ( Count count : counts ) {
+            aggregate( count );
+        }
+    }
+
+
+    /**
+     * Schedule our interval flush, this is deferred to the first add so the interval can be set after construction
+     */
+    private void start() {
+        if ( started.get() || !started.compareAndSet( false, true ) ) {
+            return;
+        }
+
+        scheduler.scheduleWithFixedDelay( () -> {
+            try {
+                flush( true );
+            }
+            catch ( Exception e ) {
+                logger.error( "Unable to flush counts", e );
+            }
+        }, batchIntervalSeconds, batchIntervalSeconds, TimeUnit.SECONDS );
+    }
+
+
+    /**
+     * A set of counter values being aggregated before a flush
+     */
+    private static final class Aggregate {
+
+        private final ConcurrentMap<String, Entry> counts = new ConcurrentHashMap<>();
+
+        /**
+         * Adds currently writing to this aggregate, a flush waits for these to finish
+         */
+        private final AtomicInteger writers = new AtomicInteger();
+
+
+        void add( Count count ) {
+            Entry entry = counts.get( count.getCounterName() );
+
+            if ( entry == null ) {
+                entry = counts.computeIfAbsent( count.getCounterName(), name -> new Entry( count ) );
+            }
+
+            entry.value.add( count.getValue() );
+        }
+
+
+        void awaitWriters() {
+            //adds are a map lookup and an increment, this never spins for long
+            while ( writers.get() > 0 ) {
+                Thread.yield();
+            }
+        }
+
+
+        List<Count> toCounts() {
+            final List<Count> flushed = new ArrayList<>( counts.size() );
+
+            for ( Entry entry : counts.values() ) {
+                final long value = entry.value.sum();
+
+                if ( value != 0 ) {
+                    flushed.add( new Count( entry.tableName, entry.keyName, entry.columnName, value ) );
+                }
+            }
+
+            return flushed;
+        }
+    }
+
+
+    private static final class Entry {
+        private final String tableName;
+        private final Object keyName;
+        private final Object columnName;
+        private final LongAdder value = new LongAdder();
+
+
+        private Entry( Count count ) {
+            this.tableName = count.getTableName();
+            this.keyName = count.getKeyName();
+            this.columnName = count.getColumnName();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.locking.cassandra;
+
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+
+
+/**
+ * The locks held by this node.  Threads of the same node contending for a path wait here, so only one of them at a
+ * time goes to Cassandra for the lock.  Entries are kept per path, rather than striped, so unrelated paths never wait
+ * on each other, and are dropped once no thread holds or waits for them.
+ *
+ * A path is held by a lock owner rather than a thread, a lock may be released by a thread other than the one that
+ * acquired it.  Like the lease in Cassandra, a hold expires, so a lock that's never released is reclaimed after the
+ * expiration instead of blocking the path on this node forever.
+ */
+class LocalLockTable {
+
+    private static final Logger logger = LoggerFactory.getLogger( LocalLockTable.class );
+
+    private final ConcurrentHashMap<String, LocalLock> locks = new ConcurrentHashMap<>();
+
+    private final long expirationNanos;
+
+    private final Meter contention;
+
+
+    /**
+     * @param expiration How long a hold lasts if it's never released, in milliseconds
+     * @param contention Marked every time a thread has to wait for another thread of this node
+     */
+    LocalLockTable( final long expiration, final Meter contention ) {
+        this.expirationNanos = TimeUnit.MILLISECONDS.toNanos( expiration );
+        this.contention = contention;
+    }
+
+
+    /**
+     * Acquire the path for the owner, waiting up to the timeout if another owner of this node holds it
+     *
+     * @return True if acquired.  The caller must call release with the same owner once done
+     */
+    boolean tryAcquire( final String path, final UUID owner, final long timeout, final TimeUnit unit )
+        throws InterruptedException {
+
+        final LocalLock lock = reference( path );
+
+        boolean acquired = false;
+
+        try {
+            synchronized ( lock ) {
+                acquired = tryHold( path, lock, owner );
+
+                if ( !acquired ) {
+                    contention.mark();
+
+                    final long deadline = System.nanoTime() + unit.toNanos( timeout );
+
+                    long remaining;
+
+                    while ( !acquired && ( remaining = deadline - System.nanoTime() ) > 0 ) {
+
+                        // wake up once the hold expires, in case it's never released
+                        TimeUnit.NANOSECONDS.timedWait( lock, Math.min( remaining, lock.expires - System.nanoTime() ) );
+
+                        acquired = tryHold( path, lock, owner );
+                    }
+                }
+            }
+        }
+        finally {
+            if ( !acquired ) {
+                dereference( path );
+            }
+        }
+
+        return acquired;
+    }
+
+
+    /**
+     * Release a path the owner acquired with tryAcquire.  If the hold expired and was reclaimed by another owner,
+     * nothing is released
+     */
+    void release( final String path, final UUID owner ) {
+        final LocalLock lock = locks.get( path );
+
+        if ( lock != null ) {
+            synchronized ( lock ) {
+                if ( owner.equals( lock.owner ) ) {
+                    lock.owner = null;
+                    lock.notifyAll();
+
+                    dereference( path );
+                    return;
+                }
+            }
+        }
+
+        logger.warn( "Local hold of {} by {} expired before it was released", path, owner );
+    }
+
+
+    /**
+     * The number of paths held or waited for
+     */
+    int size() {
+        return locks.size();
+    }
+
+
+    /**
+     * Hold the lock for the owner if it's free or its hold has expired.  Must be called synchronized on the lock
+     */
+    private boolean tryHold( final String path, final LocalLock lock, final UUID owner ) {
+        final long now = System.nanoTime();
+
+        if ( lock.owner != null ) {
+            if ( now - lock.expires < 0 ) {
+                return false;
+            }
+
+            logger.warn( "Local hold of {} by {} expired, reclaiming it for {}", path, lock.owner, owner );
+
+            // the expired owner will never release its reference, we hold one so this never drops the lock
+            dereference( path );
+        }
+
+        lock.owner = owner;
+        lock.expires = now + expirationNanos;
+
+        return true;
+    }
+
+
+    private LocalLock reference( final String path ) {
+        return locks.compute( path, ( key, lock ) -> {
+            final LocalLock referenced = lock == null ? new LocalLock() : lock;
+            referenced.references++;
+            return referenced;
+        } );
+    }
+
+
+    private void dereference( final String path ) {
+        locks.computeIfPresent( path, ( key, lock ) -> --lock.references == 0 ? null : lock );
+    }
+
+
+    /**
+     * The lock of a path.  References are only changed inside compute for the path, the owner and expiration only
+     * synchronized on the lock
+     */
+    private static final class LocalLock {
+        private UUID owner;
+        private long expires;
+        private int references;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.locking.cassandra;
+
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.usergrid.locking.Lock;
+import org.apache.usergrid.locking.exception.UGLockException;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import com.codahale.metrics.Timer;
+
+
+/**
+ * A lock of the {@link LwtLockManagerImpl}.  Re-entrant like {@link AstyanaxLockImpl}, the lease is only released when
+ * every acquisition has been unlocked.
+ */
+public class LwtLockImpl implements Lock {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final LwtLockManagerImpl lockManager;
+    private final String lockPath;
+
+    private UUID owner;
+    private Timer.Context holdTimer;
+
+
+    public LwtLockImpl( final LwtLockManagerImpl lockManager, final String lockPath ) {
+        this.lockManager = lockManager;
+        this.lockPath = lockPath;
+    }
+
+
+    @Override
+    public boolean tryLock( final long timeout, final TimeUnit time ) throws UGLockException {
+        try {
+            return acquire( timeout, time );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+
+    @Override
+    public void lock() throws UGLockException {
+
+        final boolean acquired;
+
+        try {
+            acquired = acquire( lockManager.getLockExpiration(), TimeUnit.MILLISECONDS );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new UGLockException( "Interrupted while acquiring lock with path: " + lockPath, e );
+        }
+
+        if ( !acquired ) {
+            throw new UGLockException( "Unable to acquire lock with path: " + lockPath );
+        }
+    }
+
+
+    @Override
+    public void unlock() throws UGLockException {
+
+        // all re-entrant locks to be used and only release them all when the count is 0
+        if ( count.decrementAndGet() != 0 ) {
+            return;
+        }
+
+        holdTimer.stop();
+
+        lockManager.release( lockPath, owner );
+    }
+
+
+    private boolean acquire( final long timeout, final TimeUnit time ) throws InterruptedException, UGLockException {
+
+        // already held, re-enter
+        if ( count.get() > 0 ) {
+            count.incrementAndGet();
+            return true;
+        }
+
+        final UUID newOwner = UUIDUtils.newTimeUUID();
+
+        if ( !lockManager.acquire( lockPath, newOwner, timeout, time ) ) {
+            return false;
+        }
+
+        owner = newOwner;
+        holdTimer = lockManager.getHoldTimer().time();
+        count.incrementAndGet();
+
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.locking.cassandra;
+
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.locking.Lock;
+import org.apache.usergrid.locking.LockManager;
+import org.apache.usergrid.locking.LockPathBuilder;
+import org.apache.usergrid.locking.exception.UGLockException;
+import org.apache.usergrid.persistence.core.CassandraFig;
+import org.apache.usergrid.persistence.core.datastax.CQLUtils;
+import org.apache.usergrid.persistence.core.datastax.DataStaxCluster;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Locks held as leases written with a Cassandra lightweight transaction.  Taking a lock is a single conditional
+ * insert with a TTL of the lock expiration, releasing it a conditional delete on the owner, where the row lock of
+ * {@link AstyanaxLockManagerImpl} needs a write, a read and a delete at high consistency.
+ *
+ * Threads of the same node contending for a path are resolved in the {@link LocalLockTable}, only the thread holding
+ * the path locally goes to Cassandra.
+ */
+@Singleton
+public class LwtLockManagerImpl implements LockManager {
+
+    private static final Logger logger = LoggerFactory.getLogger( LwtLockManagerImpl.class );
+
+    private static final String TABLE_NAME = "LWT_Locks";
+    private static final String PATH = "lock_path";
+    private static final String OWNER = "owner";
+
+    private static final int MINIMUM_LOCK_EXPIRATION = 60000; // 1 minute
+
+
+    private final CassandraFig cassandraFig;
+    private final DataStaxCluster dataStaxCluster;
+
+    private final String keyspace;
+    private final ConsistencyLevel consistencyLevel;
+    private final ConsistencyLevel serialConsistencyLevel;
+    private final int lockExpiration;
+    private final int retryInterval;
+
+    private final LocalLockTable localLocks;
+
+    private final Timer acquireTimer;
+    private final Timer holdTimer;
+    private final Meter remoteContention;
+    private final Meter timeouts;
+
+
+    @Inject
+    public LwtLockManagerImpl( final CassandraFig cassandraFig, final DataStaxCluster dataStaxCluster,
+                               final MetricsFactory metricsFactory ) {
+
+        this.cassandraFig = cassandraFig;
+        this.dataStaxCluster = dataStaxCluster;
+
+        this.keyspace = CQLUtils.quote( cassandraFig.getLocksKeyspace() );
+        this.consistencyLevel = getConsistencyLevel( cassandraFig );
+        this.serialConsistencyLevel =
+            consistencyLevel.isDCLocal() ? ConsistencyLevel.LOCAL_SERIAL : ConsistencyLevel.SERIAL;
+        this.lockExpiration = getLockExpiration( cassandraFig );
+        this.retryInterval = Math.max( 1, cassandraFig.getLocksRetryInterval() );
+
+        this.localLocks = new LocalLockTable( lockExpiration,
+            metricsFactory.getMeter( LwtLockManagerImpl.class, "lock.contention.local" ) );
+
+        this.acquireTimer = metricsFactory.getTimer( LwtLockManagerImpl.class, "lock.acquire" );
+        this.holdTimer = metricsFactory.getTimer( LwtLockManagerImpl.class, "lock.hold" );
+        this.remoteContention = metricsFactory.getMeter( LwtLockManagerImpl.class, "lock.contention.remote" );
+        this.timeouts = metricsFactory.getMeter( LwtLockManagerImpl.class, "lock.timeout" );
+    }
+
+
+    @Override
+    public void setup() {
+
+        final Session session = dataStaxCluster.getClusterSession();
+
+        try {
+            session.execute( String.format( "CREATE KEYSPACE IF NOT EXISTS %s WITH replication = %s", keyspace,
+                CQLUtils.getFormattedReplication( cassandraFig.getLocksKeyspaceStrategy(),
+                    cassandraFig.getLocksKeyspaceReplication() ) ) );
+
+            session.execute( String.format(
+                "CREATE TABLE IF NOT EXISTS %s.%s ( %s text PRIMARY KEY, %s uuid ) WITH gc_grace_seconds = 60",
+                keyspace, CQLUtils.quote( TABLE_NAME ), PATH, OWNER ) );
+        }
+        catch ( Exception e ) {
+            throw new RuntimeException( "Error setting up locks keyspace and table", e );
+        }
+
+        dataStaxCluster.waitForSchemaAgreement();
+
+        logger.info( "Lightweight transaction locks table {}.{} created or already exists", keyspace, TABLE_NAME );
+    }
+
+
+    @Override
+    public Lock createLock( final UUID applicationId, final String... path ) {
+        return new LwtLockImpl( this, LockPathBuilder.buildPath( applicationId, path ) );
+    }
+
+
+    /**
+     * Lock the path for the owner, waiting up to the timeout for other threads of this node and for other nodes
+     *
+     * @return True if the lock was taken
+     */
+    boolean acquire( final String path, final UUID owner, final long timeout, final TimeUnit unit )
+        throws InterruptedException, UGLockException {
+
+        final Timer.Context timer = acquireTimer.time();
+
+        try {
+            final long deadline = System.currentTimeMillis() + unit.toMillis( timeout );
+
+            if ( !localLocks.tryAcquire( path, owner, timeout, unit ) ) {
+                timeouts.mark();
+                return false;
+            }
+
+            boolean acquired = false;
+
+            try {
+                while ( !( acquired = insertLease( path, owner ) ) ) {
+
+                    remoteContention.mark();
+
+                    final long remaining = deadline - System.currentTimeMillis();
+
+                    if ( remaining <= 0 ) {
+                        timeouts.mark();
+                        return false;
+                    }
+
+                    Thread.sleep( Math.min( retryInterval, remaining ) );
+                }
+            }
+            finally {
+                if ( !acquired ) {
+                    localLocks.release( path, owner );
+                }
+            }
+
+            return true;
+        }
+        finally {
+            timer.stop();
+        }
+    }
+
+
+    /**
+     * Release the lock of the owner on the path
+     */
+    void release( final String path, final UUID owner ) throws UGLockException {
+        try {
+            final Statement delete = QueryBuilder.delete().from( keyspace, CQLUtils.quote( TABLE_NAME ) )
+                .where( QueryBuilder.eq( PATH, path ) ).onlyIf( QueryBuilder.eq( OWNER, owner ) )
+                .setConsistencyLevel( consistencyLevel ).setSerialConsistencyLevel( serialConsistencyLevel );
+
+            if ( !dataStaxCluster.getClusterSession().execute( delete ).wasApplied() ) {
+                logger.warn( "Lock {} expired before it was released by {}", path, owner );
+            }
+        }
+        catch ( DriverException e ) {
+            throw new UGLockException( "Unable to release lock with path: " + path, e );
+        }
+        finally {
+            localLocks.release( path, owner );
+        }
+    }
+
+
+    /**
+     * How long to wait for a blocking lock.  Any lease held by a failed node has expired by then
+     */
+    long getLockExpiration() {
+        return lockExpiration;
+    }
+
+
+    Timer getHoldTimer() {
+        return holdTimer;
+    }
+
+
+    /**
+     * Write the lease if no live lease exists for the path
+     */
+    private boolean insertLease( final String path, final UUID owner ) throws UGLockException {
+        try {
+            final Statement insert = QueryBuilder.insertInto( keyspace, CQLUtils.quote( TABLE_NAME ) )
+                .value( PATH, path ).value( OWNER, owner ).ifNotExists()
+                .using( QueryBuilder.ttl( ( int ) TimeUnit.MILLISECONDS.toSeconds( lockExpiration ) ) )
+                .setConsistencyLevel( consistencyLevel ).setSerialConsistencyLevel( serialConsistencyLevel );
+
+            return dataStaxCluster.getClusterSession().execute( insert ).wasApplied();
+        }
+        catch ( DriverException e ) {
+            throw new UGLockException( "Unable to acquire lock with path: " + path, e );
+        }
+    }
+
+
+    private static ConsistencyLevel getConsistencyLevel( final CassandraFig cassandraFig ) {
+
+        // the locks cl is configured with the Astyanax names
+        final String name = cassandraFig.getLocksCl().replaceFirst( "^CL_", "" );
+
+        try {
+            return ConsistencyLevel.valueOf( name );
+        }
+        catch ( IllegalArgumentException e ) {
+
+            logger.warn( "Property {} value provided: {} is not valid", CassandraFig.LOCKS_CL,
+                cassandraFig.getLocksCl() );
+
+            // just default it to local quorum if we can't parse
+            return ConsistencyLevel.LOCAL_QUORUM;
+        }
+    }
+
+
+    private static int getLockExpiration( final CassandraFig cassandraFig ) {
+
+        if ( cassandraFig.getLocksExpiration() >= MINIMUM_LOCK_EXPIRATION ) {
+            return cassandraFig.getLocksExpiration();
+        }
+
+        logger.warn( "Property {} is not valid.  Choose a value greater than or equal to {}",
+            CassandraFig.LOCKS_EXPIRATION, MINIMUM_LOCK_EXPIRATION );
+
+        // use the default if something below the minimum is provided
+        return Integer.valueOf( CassandraFig.DEFAULT_LOCKS_EXPIRATION );
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.usergrid.locking.guice;
+
+
+import org.apache.usergrid.locking.LockManager;
+import org.apache.usergrid.locking.cassandra.AstyanaxLockManagerImpl;
+import org.apache.usergrid.locking.cassandra.LwtLockManagerImpl;
+import org.apache.usergrid.persistence.core.CassandraFig;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+
+/**
+ * A provider to allow users to configure their lock manager impl via properties
+ */
+@Singleton
+public class LockManagerProvider implements Provider<LockManager> {
+
+    private final CassandraFig cassandraFig;
+    private final Provider<AstyanaxLockManagerImpl> astyanaxLockManager;
+    private final Provider<LwtLockManagerImpl> lwtLockManager;
+
+
+    @Inject
+    public LockManagerProvider( final CassandraFig cassandraFig,
+                                final Provider<AstyanaxLockManagerImpl> astyanaxLockManager,
+                                final Provider<LwtLockManagerImpl> lwtLockManager ) {
+        this.cassandraFig = cassandraFig;
+        this.astyanaxLockManager = astyanaxLockManager;
+        this.lwtLockManager = lwtLockManager;
+    }
+
+
+    @Override
+    public LockManager get() {
+
+        final String value = cassandraFig.getLocksImplementation();
+
+        final Implementations impl;
+
+        try {
+            impl = Implementations.valueOf( value );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new IllegalArgumentException(
+                "Configuration value of " + value + " for " + CassandraFig.LOCKS_IMPLEMENTATION
+                    + " is not valid, allowed values are ASTYANAX, LWT", e );
+        }
+
+        switch ( impl ) {
+            case LWT:
+                return lwtLockManager.get();
+            case ASTYANAX:
+            default:
+                return astyanaxLockManager.get();
+        }
+    }
+
+
+    /**
+     * Different implementations
+     */
+    public enum Implementations {
+        /**
+         * Row locks with the Astyanax distributed row lock recipe
+         */
+        ASTYANAX,
+
+        /**
+         * Leases taken with Cassandra lightweight transactions, with same node contention resolved locally
+         */
+        LWT
+    }
+}
@@ -21,7 +21,6 @@ package org.apache.usergrid.locking.guice;
 
 import com.google.inject.AbstractModule;
 import org.apache.usergrid.locking.LockManager;
-import org.apache.usergrid.locking.cassandra.AstyanaxLockManagerImpl;
 
 
 /**
@@ -32,7 +31,8 @@ public class LockModule extends AbstractModule {
     @Override
     protected void configure() {
 
-        bind( LockManager.class ).to( AstyanaxLockManagerImpl.class ).asEagerSingleton();
+        // the implementation is chosen by cassandra.lock.implementation
+        bind( LockManager.class ).toProvider( LockManagerProvider.class ).asEagerSingleton();
 
     }
 }
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.mq;
+
+
+/**
+ * The outcome of posting a single message as part of a batch.
+ */
+public class PostStatus {
+
+    private final Message message;
+    private final boolean posted;
+    private final Throwable error;
+
+
+    public PostStatus( Message message, boolean posted, Throwable error ) {
+        this.message = message;
+        this.posted = posted;
+        this.error = error;
+    }
+
+
+    public Message getMessage() {
+        return message;
+    }
+
+
+    /**
+     * True if the message was written to the queue it was posted to
+     */
+    public boolean isPosted() {
+        return posted;
+    }
+
+
+    /**
+     * The error that prevented the message from being written to its queue or to one of the queue's subscribers, null
+     * if it was delivered everywhere
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+
+    public boolean isDelivered() {
+        return posted && error == null;
+    }
+}
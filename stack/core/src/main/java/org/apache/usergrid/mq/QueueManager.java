@@ -39,6 +39,14 @@ public interface QueueManager {
 
     public List<Message> postToQueue( String queuePath, List<Message> messages );
 
+    /**
+     * Post the messages in size bounded batches, several batches at a time, and deliver them to the subscribers of the
+     * queue.  Messages are not posted in order.
+     *
+     * @return The status of each message, in the order of the messages
+     */
+    public List<PostStatus> postAllToQueue( String queuePath, List<Message> messages );
+
     public QueueResults getFromQueue( String queuePath, QueueQuery query );
 
     public Message getMessage( UUID messageId );
@@ -41,6 +41,7 @@ public class QueueQuery extends Query {
     boolean _synchronized;
     boolean update = true;
     long timeout;
+    boolean group;
 
 
     public QueueQuery() {
@@ -61,6 +62,7 @@ public class QueueQuery extends Query {
             position = q.position;
             _synchronized = q._synchronized;
             update = q.update;
+            group = q.group;
         }
     }
 
@@ -138,6 +140,11 @@ public class QueueQuery extends Query {
             query.setTimeout( ConversionUtils.getLong( first( params.get( "timeout" ) ) ) );
         }
 
+        if ( params.containsKey( "group" ) ) {
+            query = newQueryIfNull( query );
+            query.setGroup( ConversionUtils.getBoolean( first( params.get( "group" ) ) ) );
+        }
+
         if ( ( query != null ) && ( consumer != null ) ) {
             query.setPositionIfUnset( QueuePosition.CONSUMER );
         }
@@ -304,4 +311,22 @@ public class QueueQuery extends Query {
         setTimeout( timeout );
         return this;
     }
+
+
+    /** @return true if the consumer reads as a consumer group, see ConsumerGroupSearch */
+    public boolean isGroup() {
+        return group;
+    }
+
+
+    /** @param group true to read as a consumer group, each message is delivered to one member of the group */
+    public void setGroup( boolean group ) {
+        this.group = group;
+    }
+
+
+    public QueueQuery withGroup( boolean group ) {
+        this.group = group;
+        return this;
+    }
 }
@@ -226,6 +226,18 @@ public class CassandraMQUtils {
     }
 
 
+    /** Get a row key in format of queueId+groupId+partition */
+    public static ByteBuffer getConsumerGroupPartitionKey( UUID queueId, UUID groupId, long partition ) {
+        ByteBuffer bytes = ByteBuffer.allocate( 40 );
+        bytes.putLong( queueId.getMostSignificantBits() );
+        bytes.putLong( queueId.getLeastSignificantBits() );
+        bytes.putLong( groupId.getMostSignificantBits() );
+        bytes.putLong( groupId.getLeastSignificantBits() );
+        bytes.putLong( partition );
+        return ( ByteBuffer ) bytes.rewind();
+    }
+
+
     public static UUID getUUIDFromRowKey( ByteBuffer bytes ) {
         return ConversionUtils.uuid( bytes );
     }
@@ -17,14 +17,19 @@
 package org.apache.usergrid.mq.cassandra;
 
 
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Injector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.usergrid.locking.LockManager;
 import org.apache.usergrid.mq.QueueManager;
 import org.apache.usergrid.mq.QueueManagerFactory;
+import org.apache.usergrid.mq.cassandra.io.ConsumerGroupConfig;
 import org.apache.usergrid.persistence.cassandra.CassandraService;
 import org.apache.usergrid.persistence.cassandra.CounterUtils;
 
@@ -37,10 +42,19 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
 
     public static String IMPLEMENTATION_DESCRIPTION = "Cassandra Queue Manager Factory 1.0";
 
+    public static final String POST_BATCH_SIZE = "usergrid.queue.post.batch_size";
+    public static final String POST_CONCURRENCY = "usergrid.queue.post.concurrency";
+    public static final String GROUP_PARTITION_INTERVAL = "usergrid.queue.group.partition.interval";
+    public static final String GROUP_LEASE_TIMEOUT = "usergrid.queue.group.lease.timeout";
+    public static final String GROUP_MAX_PARTITIONS = "usergrid.queue.group.max_partitions";
+
     private CassandraService cass;
     private CounterUtils counterUtils;
     private LockManager lockManager;
     private int lockTimeout;
+    private int postBatchSize;
+    private ExecutorService postExecutor;
+    private ConsumerGroupConfig consumerGroupConfig;
 
     /**
      * Must be constructed with a CassandraClientPool.
@@ -53,6 +67,41 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
         this.counterUtils = counterUtils;
         lockManager = injector.getInstance(LockManager.class);
         this.lockTimeout = lockTimeout;
+
+        Properties properties = cass.getProperties();
+
+        postBatchSize = getInt( properties, POST_BATCH_SIZE, QueueManagerImpl.DEFAULT_POST_BATCH_SIZE );
+
+        // shared by all queue managers, so this bounds the concurrent post mutations of the node
+        int postConcurrency = getInt( properties, POST_CONCURRENCY, 4 );
+
+        if ( postConcurrency > 1 ) {
+            postExecutor = Executors.newFixedThreadPool( postConcurrency,
+                new ThreadFactoryBuilder().setNameFormat( "QueuePost-%d" ).setDaemon( true ).build() );
+        }
+
+        try {
+            consumerGroupConfig = new ConsumerGroupConfig(
+                getInt( properties, GROUP_PARTITION_INTERVAL, ( int ) ConsumerGroupConfig.DEFAULT_PARTITION_INTERVAL ),
+                getInt( properties, GROUP_LEASE_TIMEOUT, ( int ) ConsumerGroupConfig.DEFAULT_LEASE_TIMEOUT ),
+                getInt( properties, GROUP_MAX_PARTITIONS, ConsumerGroupConfig.DEFAULT_MAX_PARTITIONS ) );
+        } catch ( IllegalArgumentException e ) {
+            logger.error( "Invalid consumer group settings. Will use the defaults", e );
+            consumerGroupConfig = new ConsumerGroupConfig();
+        }
+    }
+
+
+    private static int getInt( Properties properties, String name, int defaultValue ) {
+        if ( properties == null ) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt( properties.getProperty( name, String.valueOf( defaultValue ) ) );
+        } catch ( Exception e ) {
+            logger.error( "Error parsing " + name + ". Will use " + defaultValue, e );
+            return defaultValue;
+        }
     }
 
 
@@ -65,7 +114,8 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
     @Override
     public QueueManager getQueueManager( UUID applicationId ) {
         QueueManagerImpl qm = new QueueManagerImpl();
-        qm.init( cass, counterUtils, lockManager, applicationId, lockTimeout );
+        qm.init( cass, counterUtils, lockManager, applicationId, lockTimeout, postBatchSize, postExecutor,
+            consumerGroupConfig );
         return qm;
         //return applicationContext.getAutowireCapableBeanFactory()
         //		.createBean(QueueManagerImpl.class)
@@ -28,12 +28,18 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.usergrid.locking.LockManager;
 import org.apache.usergrid.mq.CounterQuery;
 import org.apache.usergrid.mq.Message;
+import org.apache.usergrid.mq.PostStatus;
 import org.apache.usergrid.mq.Query;
 import org.apache.usergrid.mq.Query.CounterFilterPredicate;
 import org.apache.usergrid.mq.QueryProcessor;
@@ -45,6 +51,8 @@ import org.apache.usergrid.mq.QueueResults;
 import org.apache.usergrid.mq.QueueSet;
 import org.apache.usergrid.mq.QueueSet.QueueInfo;
 import org.apache.usergrid.mq.cassandra.QueueIndexUpdate.QueueIndexEntry;
+import org.apache.usergrid.mq.cassandra.io.ConsumerGroupConfig;
+import org.apache.usergrid.mq.cassandra.io.ConsumerGroupSearch;
 import org.apache.usergrid.mq.cassandra.io.ConsumerTransaction;
 import org.apache.usergrid.mq.cassandra.io.EndSearch;
 import org.apache.usergrid.mq.cassandra.io.FilterSearch;
@@ -64,6 +72,9 @@ import org.apache.usergrid.persistence.hector.CountingMutator;
 import org.apache.usergrid.utils.UUIDUtils;
 
 import com.fasterxml.uuid.UUIDComparator;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Booleans;
 
 import me.prettyprint.hector.api.Keyspace;
 import me.prettyprint.hector.api.beans.AbstractComposite.ComponentEquality;
@@ -143,11 +154,20 @@ public class QueueManagerImpl implements QueueManager {
     public static final int DEFAULT_SEARCH_COUNT = 10000;
     public static final int ALL_COUNT = 100000000;
 
+    public static final int DEFAULT_POST_BATCH_SIZE = 100;
+    public static final int SUBSCRIBER_PAGE_SIZE = 1000;
+
+    /** Used when no settings are given, the leases of a node must be held under a single owner */
+    private static final ConsumerGroupConfig DEFAULT_CONSUMER_GROUP_CONFIG = new ConsumerGroupConfig();
+
     private UUID applicationId;
     private CassandraService cass;
     private CounterUtils counterUtils;
     private LockManager lockManager;
     private int lockTimeout;
+    private int postBatchSize = DEFAULT_POST_BATCH_SIZE;
+    private ExecutorService postExecutor;
+    private ConsumerGroupConfig consumerGroupConfig = DEFAULT_CONSUMER_GROUP_CONFIG;
 
 
 
@@ -166,6 +186,22 @@ public class QueueManagerImpl implements QueueManager {
     }
 
 
+    /**
+     * @param postBatchSize The number of messages written in each mutation when posting many messages
+     * @param postExecutor Runs the mutations of posts in parallel, null to run them on the calling thread
+     * @param consumerGroupConfig The settings of consumer group reads, shared by all queue managers of the node
+     */
+    public QueueManagerImpl init( CassandraService cass, CounterUtils counterUtils, LockManager lockManager,
+                                  UUID applicationId, int lockTimeout, int postBatchSize,
+                                  ExecutorService postExecutor, ConsumerGroupConfig consumerGroupConfig ) {
+        init( cass, counterUtils, lockManager, applicationId, lockTimeout );
+        this.postBatchSize = Math.max( 1, postBatchSize );
+        this.postExecutor = postExecutor;
+        this.consumerGroupConfig = consumerGroupConfig;
+        return this;
+    }
+
+
     @Override
     public Message getMessage( UUID messageId ) {
         SliceQuery<UUID, String, ByteBuffer> q =
@@ -280,14 +316,216 @@ public class QueueManagerImpl implements QueueManager {
     @Override
     public List<Message> postToQueue( String queuePath, List<Message> messages ) {
 
+        for ( PostStatus status : postAllToQueue( queuePath, messages ) ) {
+            if ( status.getError() != null ) {
+                throw Throwables.propagate( status.getError() );
+            }
+        }
+
+        return messages;
+    }
+
+
+    @Override
+    public List<PostStatus> postAllToQueue( String queuePath, List<Message> messages ) {
+
+        if ( messages.isEmpty() ) {
+            return new ArrayList<>();
+        }
+
+        final String path = normalizeQueuePath( queuePath );
+        final long timestamp = cass.createTimestamp();
+
         // Can't do this as one big batch operation because it will
-        // time out
+        // time out, so write chunks of messages in parallel
+        final List<List<Message>> chunks = Lists.partition( messages, postBatchSize );
+        final List<List<MessageIndexUpdate>> indexUpdates = new ArrayList<>( chunks.size() );
+        final List<Future<Void>> writes = new ArrayList<>( chunks.size() );
+
+        for ( final List<Message> chunk : chunks ) {
+
+            final List<MessageIndexUpdate> chunkUpdates = new ArrayList<>( chunk.size() );
+
+            for ( Message message : chunk ) {
+                //assign ids and timestamps before the message is shared between threads
+                message.sync();
+                chunkUpdates.add( new MessageIndexUpdate( message ) );
+            }
 
-        for ( Message message : messages ) {
-            postToQueue( queuePath, message );
+            indexUpdates.add( chunkUpdates );
+
+            writes.add( submitPost( () -> {
+                writeMessages( Collections.singletonList( path ), chunk, chunkUpdates, timestamp );
+                return null;
+            } ) );
         }
 
-        return messages;
+        final Throwable[] errors = new Throwable[chunks.size()];
+        final boolean[] posted = new boolean[chunks.size()];
+
+        for ( int i = 0; i < chunks.size(); i++ ) {
+            errors[i] = await( writes.get( i ) );
+            posted[i] = errors[i] == null;
+        }
+
+        deliverToSubscribers( path, chunks, indexUpdates, timestamp, posted, errors );
+
+        final List<PostStatus> statuses = new ArrayList<>( messages.size() );
+
+        for ( int i = 0; i < chunks.size(); i++ ) {
+            for ( Message message : chunks.get( i ) ) {
+                statuses.add( new PostStatus( message, posted[i], errors[i] ) );
+            }
+        }
+
+        return statuses;
+    }
+
+
+    /**
+     * Write the posted chunks to every subscriber of the queue.  Each write has at most one chunk of messages, and
+     * the writes run in parallel
+     */
+    private void deliverToSubscribers( String queuePath, List<List<Message>> chunks,
+                                       List<List<MessageIndexUpdate>> indexUpdates, long timestamp, boolean[] posted,
+                                       Throwable[] errors ) {
+
+        if ( !Booleans.contains( posted, true ) ) {
+            return;
+        }
+
+        final List<String> subscribers;
+
+        try {
+            subscribers = getSubscriberPaths( queuePath );
+        }
+        catch ( Exception e ) {
+            logger.error( "Unable to load subscribers of queue {}", queuePath, e );
+
+            for ( int i = 0; i < chunks.size(); i++ ) {
+                if ( posted[i] ) {
+                    errors[i] = e;
+                }
+            }
+            return;
+        }
+
+        if ( subscribers.isEmpty() ) {
+            return;
+        }
+
+        final List<Future<Void>> deliveries = new ArrayList<>();
+        final List<Integer> deliveryChunks = new ArrayList<>();
+
+        for ( int i = 0; i < chunks.size(); i++ ) {
+
+            if ( !posted[i] ) {
+                continue;
+            }
+
+            final List<Message> chunk = chunks.get( i );
+            final List<MessageIndexUpdate> chunkUpdates = indexUpdates.get( i );
+
+            final int subscribersPerWrite = Math.max( 1, postBatchSize / chunk.size() );
+
+            for ( final List<String> subscriberPaths : Lists.partition( subscribers, subscribersPerWrite ) ) {
+                deliveries.add( submitPost( () -> {
+                    writeMessages( subscriberPaths, chunk, chunkUpdates, timestamp );
+                    return null;
+                } ) );
+                deliveryChunks.add( i );
+            }
+        }
+
+        for ( int i = 0; i < deliveries.size(); i++ ) {
+
+            final Throwable error = await( deliveries.get( i ) );
+            final int chunk = deliveryChunks.get( i );
+
+            if ( error != null && errors[chunk] == null ) {
+                logger.error( "Unable to deliver messages posted to {} to all subscribers", queuePath, error );
+                errors[chunk] = error;
+            }
+        }
+    }
+
+
+    /**
+     * Write the messages to each of the queues in a single mutation
+     */
+    void writeMessages( List<String> queuePaths, List<Message> messages, List<MessageIndexUpdate> indexUpdates,
+                        long timestamp ) {
+
+        Mutator<ByteBuffer> batch = CountingMutator.createFlushingMutator( cass.getApplicationKeyspace( applicationId ),
+                be );
+
+        for ( String queuePath : queuePaths ) {
+            for ( int i = 0; i < messages.size(); i++ ) {
+                batchPostToQueue( batch, queuePath, messages.get( i ), indexUpdates.get( i ), timestamp );
+            }
+        }
+
+        batchExecute( batch, RETRY_COUNT );
+    }
+
+
+    /**
+     * Get the paths of every subscriber of the queue
+     */
+    List<String> getSubscriberPaths( String queuePath ) {
+
+        List<String> paths = new ArrayList<>();
+
+        String firstSubscriberQueuePath = null;
+        while ( true ) {
+
+            QueueSet subscribers = getSubscribers( queuePath, firstSubscriberQueuePath, SUBSCRIBER_PAGE_SIZE );
+
+            if ( subscribers.getQueues().isEmpty() ) {
+                break;
+            }
+
+            for ( QueueInfo q : subscribers.getQueues() ) {
+                paths.add( q.getPath() );
+                firstSubscriberQueuePath = q.getPath();
+            }
+
+            if ( !subscribers.hasMore() ) {
+                break;
+            }
+        }
+
+        return paths;
+    }
+
+
+    private <T> Future<T> submitPost( Callable<T> task ) {
+
+        if ( postExecutor != null ) {
+            return postExecutor.submit( task );
+        }
+
+        FutureTask<T> future = new FutureTask<>( task );
+        future.run();
+        return future;
+    }
+
+
+    /**
+     * Wait for the task, returning its error if it failed
+     */
+    private static Throwable await( Future<?> future ) {
+        try {
+            future.get();
+            return null;
+        }
+        catch ( ExecutionException e ) {
+            return e.getCause();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return e;
+        }
     }
 
 
@@ -395,7 +633,10 @@ public class QueueManagerImpl implements QueueManager {
         }
 
         else if ( query.getPosition() == LAST || query.getPosition() == CONSUMER ) {
-            if ( query.getTimeout() > 0 ) {
+            if ( query.getTimeout() > 0 && query.isGroup() ) {
+                search = new ConsumerGroupSearch( ko, cass, consumerGroupConfig );
+            }
+            else if ( query.getTimeout() > 0 ) {
                 search = new ConsumerTransaction( applicationId, ko, lockManager, cass, lockTimeout );
             }
             else {
@@ -1323,6 +1564,12 @@ public class QueueManagerImpl implements QueueManager {
     public UUID renewTransaction( String queuePath, UUID transactionId, QueueQuery query )
             throws TransactionNotFoundException {
         Keyspace ko = cass.getApplicationKeyspace( applicationId );
+
+        if ( query != null && query.isGroup() ) {
+            return new ConsumerGroupSearch( ko, cass, consumerGroupConfig )
+                    .renewTransaction( queuePath, transactionId, query );
+        }
+
         return new ConsumerTransaction( applicationId, ko, lockManager, cass, lockTimeout )
                 .renewTransaction( queuePath, transactionId, query );
     }
@@ -1343,6 +1590,13 @@ public class QueueManagerImpl implements QueueManager {
     @Override
     public void commitTransaction( String queuePath, UUID transactionId, QueueQuery query ) {
         Keyspace ko = cass.getApplicationKeyspace( applicationId );
+
+        if ( query != null && query.isGroup() ) {
+            new ConsumerGroupSearch( ko, cass, consumerGroupConfig )
+                    .deleteTransaction( queuePath, transactionId, query );
+            return;
+        }
+
         new ConsumerTransaction( applicationId, ko, lockManager, cass, lockTimeout )
                 .deleteTransaction( queuePath, transactionId, query );
     }
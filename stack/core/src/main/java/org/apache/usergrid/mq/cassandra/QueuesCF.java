@@ -51,6 +51,18 @@ public enum QueuesCF implements CFEnum {
 
     CONSUMERS( "MQ_Consumers", "BytesType" ),
 
+    /**
+     * Partition leases of consumer groups, one row per queue and group. Columns are the partition start time and the
+     * owner id, or a zero owner id once the partition is complete.  A single zero byte column holds the group position
+     */
+    CONSUMER_GROUP_LEASES( "MQ_Consumer_Group_Leases", "BytesType" ),
+
+    /**
+     * The read position and the messages in flight of a consumer group partition. The value of the zero UUID is the
+     * last message read, every other column is a message that was read and the time it becomes visible again
+     */
+    CONSUMER_GROUP_PARTITIONS( "MQ_Consumer_Group_Partitions", "UUIDType" ),
+
     COUNTERS( "MQ_Counters", "BytesType", COUNTERTYPE.getClassName() ),
 
     PROPERTY_INDEX( "MQ_Property_Index",
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.mq.cassandra.io;
+
+
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.usergrid.utils.UUIDUtils;
+
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.Striped;
+
+import static org.apache.usergrid.mq.cassandra.QueueManagerImpl.QUEUE_SHARD_INTERVAL;
+
+
+/**
+ * The settings of consumer group reads, shared by every queue manager of the node.  The node holds partition leases
+ * under its own owner id, and the partition locks keep the threads of the node from reading the same partition at
+ * once.
+ *
+ * @see ConsumerGroupSearch
+ */
+public class ConsumerGroupConfig {
+
+    public static final long DEFAULT_PARTITION_INTERVAL = 60 * 1000;
+    public static final long DEFAULT_LEASE_TIMEOUT = 30 * 1000;
+    public static final int DEFAULT_MAX_PARTITIONS = 4;
+
+    private final UUID ownerId = UUIDUtils.newTimeUUID();
+    private final Striped<Lock> partitionLocks = Striped.lock( 256 );
+
+    private final long partitionInterval;
+    private final long leaseTimeout;
+    private final int maxPartitions;
+
+
+    /**
+     * @param partitionInterval The time span of the messages in each partition, in milliseconds.  Must divide the queue
+     * shard interval evenly
+     * @param leaseTimeout How long a partition lease lasts unless it is renewed, in milliseconds
+     * @param maxPartitions The most partitions of a queue the node leases at once for each group
+     */
+    public ConsumerGroupConfig( long partitionInterval, long leaseTimeout, int maxPartitions ) {
+        if ( partitionInterval <= 0 || QUEUE_SHARD_INTERVAL % partitionInterval != 0 ) {
+            throw new IllegalArgumentException(
+                    "The partition interval must divide " + QUEUE_SHARD_INTERVAL + " evenly, was " + partitionInterval );
+        }
+
+        if ( leaseTimeout < 1000 ) {
+            throw new IllegalArgumentException( "The lease timeout must be at least a second, was " + leaseTimeout );
+        }
+
+        this.partitionInterval = partitionInterval;
+        this.leaseTimeout = leaseTimeout;
+        this.maxPartitions = Math.max( 1, maxPartitions );
+    }
+
+
+    public ConsumerGroupConfig() {
+        this( DEFAULT_PARTITION_INTERVAL, DEFAULT_LEASE_TIMEOUT, DEFAULT_MAX_PARTITIONS );
+    }
+
+
+    /** The id the leases of this node are held under */
+    public UUID getOwnerId() {
+        return ownerId;
+    }
+
+
+    public long getPartitionInterval() {
+        return partitionInterval;
+    }
+
+
+    public long getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+
+    public int getMaxPartitions() {
+        return maxPartitions;
+    }
+
+
+    /** Get the partition that holds messages written at the given time */
+    public long getPartition( long timestamp ) {
+        return ( timestamp / partitionInterval ) * partitionInterval;
+    }
+
+
+    /** Get the lock reads of the partition hold on this node */
+    public Lock getPartitionLock( UUID queueId, UUID groupId, long partition ) {
+        return partitionLocks.get( Objects.hashCode( queueId, groupId, partition ) );
+    }
+}
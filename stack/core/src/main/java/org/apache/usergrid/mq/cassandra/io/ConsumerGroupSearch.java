@@ -0,0 +1,693 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.mq.cassandra.io;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.mq.Message;
+import org.apache.usergrid.mq.QueueQuery;
+import org.apache.usergrid.mq.QueueResults;
+import org.apache.usergrid.persistence.cassandra.CassandraService;
+import org.apache.usergrid.persistence.exceptions.TransactionNotFoundException;
+import org.apache.usergrid.persistence.hector.CountingMutator;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+import me.prettyprint.hector.api.query.SliceQuery;
+
+import static me.prettyprint.hector.api.factory.HFactory.createColumn;
+import static me.prettyprint.hector.api.factory.HFactory.createSliceQuery;
+import static org.apache.usergrid.mq.cassandra.CassandraMQUtils.getConsumerGroupPartitionKey;
+import static org.apache.usergrid.mq.cassandra.CassandraMQUtils.getConsumerId;
+import static org.apache.usergrid.mq.cassandra.CassandraMQUtils.getQueueClientTransactionKey;
+import static org.apache.usergrid.mq.cassandra.CassandraMQUtils.getQueueId;
+import static org.apache.usergrid.mq.cassandra.CassandraMQUtils.getQueueShardRowKey;
+import static org.apache.usergrid.mq.cassandra.QueueManagerImpl.ALL_COUNT;
+import static org.apache.usergrid.mq.cassandra.QueueManagerImpl.QUEUE_SHARD_INTERVAL;
+import static org.apache.usergrid.mq.cassandra.QueuesCF.CONSUMER_GROUP_LEASES;
+import static org.apache.usergrid.mq.cassandra.QueuesCF.CONSUMER_GROUP_PARTITIONS;
+import static org.apache.usergrid.mq.cassandra.QueuesCF.QUEUE_INBOX;
+import static org.apache.usergrid.persistence.cassandra.Serializers.be;
+import static org.apache.usergrid.persistence.cassandra.Serializers.le;
+import static org.apache.usergrid.persistence.cassandra.Serializers.ue;
+import static org.apache.usergrid.utils.NumberUtils.roundLong;
+import static org.apache.usergrid.utils.UUIDUtils.getTimestampInMillis;
+import static org.apache.usergrid.utils.UUIDUtils.maxTimeUUID;
+
+
+/**
+ * Reads from the queue as a member of a consumer group and starts a transaction.  Unlike {@link ConsumerTransaction}
+ * no lock is taken on a read.  The queue is split in partitions by the time of its messages, and each node of the
+ * group claims a few partitions with a lease it renews while it reads them.  Only the lease holder reads a partition,
+ * so members of the group read in parallel and adding members adds throughput.
+ *
+ * Messages read get a visibility timeout, the transaction id of a message is its id.  Once a partition is old enough
+ * that no more messages can be written to it, it has been read to the end and every message has been committed, it is
+ * marked complete and the group moves past it.  Each partition keeps its read position and its messages in flight in
+ * a single row, so a read costs one slice of state per partition instead of a lock and a scan of the timeouts.
+ *
+ * Delivery is at least once.  A member that loses its lease while reading, for instance on a long pause, may deliver
+ * the same messages as the new holder.
+ */
+public class ConsumerGroupSearch extends NoTransactionSearch {
+
+    private static final Logger logger = LoggerFactory.getLogger( ConsumerGroupSearch.class );
+
+    private static final int MAX_READ = 10000;
+
+    /** The most partitions visited in a single read */
+    private static final int MAX_SCAN = 100;
+
+    /** The most lease columns read at once */
+    private static final int MAX_LEASES = 10000;
+
+    /** The column of a partition that holds the last message read */
+    private static final UUID CURSOR = UUIDUtils.ZERO_UUID;
+
+    /** The owner of the lease column that marks a partition as complete */
+    private static final UUID COMPLETE = UUIDUtils.ZERO_UUID;
+
+    private static final UUID MAX_OWNER = new UUID( -1L, -1L );
+
+    /** The column of the lease row that holds the group position, it sorts before every lease column */
+    private static final byte[] POSITION = new byte[] { 0 };
+
+    private final CassandraService cass;
+    private final ConsumerGroupConfig config;
+
+
+    public ConsumerGroupSearch( Keyspace ko, CassandraService cass, ConsumerGroupConfig config ) {
+        super( ko );
+        this.cass = cass;
+        this.config = config;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.usergrid.mq.cassandra.io.QueueSearch#getResults(java.lang.String,
+     * org.apache.usergrid.mq.QueueQuery)
+     */
+    @Override
+    public QueueResults getResults( String queuePath, QueueQuery query ) {
+
+        UUID queueId = getQueueId( queuePath );
+        UUID groupId = getConsumerId( queueId, query );
+        int limit = query.getLimit( DEFAULT_READ );
+
+        if ( limit > MAX_READ ) {
+            throw new IllegalArgumentException( String.format(
+                    "You specified a size of %d, you cannot specify a size larger than %d when using transations",
+                    limit, MAX_READ ) );
+        }
+
+        long now = System.currentTimeMillis();
+
+        QueueBounds bounds = getQueueBounds( queueId );
+
+        //queue has never been written to
+        if ( bounds == null ) {
+            return createResults( new ArrayList<Message>( 0 ), queuePath, queueId, groupId );
+        }
+
+        // with transactional reads, we can't read into the future
+        bounds = new QueueBounds( bounds.getOldest(), maxTimeUUID( now ) );
+
+        //the group position is the first partition that may not be complete
+        long first = config.getPartition( getTimestampInMillis( bounds.getOldest() ) );
+        Long position = getGroupPosition( queueId, groupId );
+
+        if ( position != null ) {
+            first = Math.max( first, position );
+        }
+
+        long last = config.getPartition( now );
+
+        Leases leases = readLeases( queueId, groupId, first, now );
+
+        List<Message> messages = new ArrayList<Message>( limit );
+
+        Long lowest = null;
+        long partition = first;
+
+        for ( int scanned = 0; scanned < MAX_SCAN && partition <= last && messages.size() < limit; scanned++ ) {
+
+            Long next = getNextPartition( queueId, bounds, partition );
+
+            //nothing left to read
+            if ( next == null ) {
+                break;
+            }
+
+            partition = next;
+
+            if ( leases.complete.contains( partition ) ) {
+                partition += config.getPartitionInterval();
+                continue;
+            }
+
+            if ( lowest == null ) {
+                lowest = partition;
+            }
+
+            Lease lease = leases.held.get( partition );
+
+            if ( lease == null ) {
+                if ( leases.getOwned( config.getOwnerId() ) < config.getMaxPartitions() ) {
+                    lease = claim( queueId, groupId, partition, now );
+                }
+
+                if ( lease != null ) {
+                    leases.held.put( partition, lease );
+                }
+            }
+            else if ( config.getOwnerId().equals( lease.owner )
+                    && lease.expires - now < config.getLeaseTimeout() / 2 ) {
+                writeLease( queueId, groupId, partition, lease.acquired, now );
+            }
+
+            if ( lease != null && config.getOwnerId().equals( lease.owner ) ) {
+                readPartition( queueId, groupId, partition, limit - messages.size(), query.getTimeout(), now, bounds,
+                        messages );
+            }
+
+            partition += config.getPartitionInterval();
+        }
+
+        if ( lowest == null ) {
+            lowest = partition;
+        }
+
+        //never move the position past partitions that can still be written to
+        lowest = Math.min( lowest, last - config.getPartitionInterval() );
+
+        if ( lowest > first ) {
+            advance( queueId, groupId, leases, lowest );
+        }
+
+        return createResults( messages, queuePath, queueId, groupId );
+    }
+
+
+    /**
+     * Renew the transaction of a message by pushing back the time it becomes visible again
+     *
+     * @return The transaction id, which does not change
+     */
+    public UUID renewTransaction( String queuePath, UUID transactionId, QueueQuery query )
+            throws TransactionNotFoundException {
+
+        if ( query == null ) {
+            query = new QueueQuery();
+        }
+
+        UUID queueId = getQueueId( queuePath );
+        UUID groupId = getConsumerId( queueId, query );
+        ByteBuffer key = getConsumerGroupPartitionKey( queueId, groupId,
+                config.getPartition( getTimestampInMillis( transactionId ) ) );
+
+        HColumn<UUID, Long> col = HFactory.createColumnQuery( ko, be, ue, le ).setKey( key ).setName( transactionId )
+                                          .setColumnFamily( CONSUMER_GROUP_PARTITIONS.getColumnFamily() ).execute()
+                                          .get();
+
+        if ( col == null ) {
+            throw new TransactionNotFoundException(
+                    String.format( "No transaction with id %s exists", transactionId ) );
+        }
+
+        Mutator<ByteBuffer> mutator = createMutator();
+
+        mutator.addInsertion( key, CONSUMER_GROUP_PARTITIONS.getColumnFamily(),
+                createColumn( transactionId, System.currentTimeMillis() + query.getTimeout(), cass.createTimestamp(),
+                        ue, le ) );
+
+        mutator.execute();
+
+        return transactionId;
+    }
+
+
+    /** Delete the specified transaction, the message will not be read by the group again */
+    public void deleteTransaction( String queuePath, UUID transactionId, QueueQuery query ) {
+
+        if ( query == null ) {
+            query = new QueueQuery();
+        }
+
+        UUID queueId = getQueueId( queuePath );
+        UUID groupId = getConsumerId( queueId, query );
+        ByteBuffer key = getConsumerGroupPartitionKey( queueId, groupId,
+                config.getPartition( getTimestampInMillis( transactionId ) ) );
+
+        Mutator<ByteBuffer> mutator = createMutator();
+
+        mutator.addDeletion( key, CONSUMER_GROUP_PARTITIONS.getColumnFamily(), transactionId, ue,
+                cass.createTimestamp() );
+
+        mutator.execute();
+    }
+
+
+    /**
+     * Read the messages of a partition this node holds the lease of.  Messages whose visibility timeout has passed are
+     * read again before new messages
+     *
+     * @param count The most messages to read
+     * @param results The list to add the messages read to
+     */
+    protected void readPartition( UUID queueId, UUID groupId, long partition, int count, long timeout, long now,
+                                  QueueBounds bounds, List<Message> results ) {
+
+        Lock lock = config.getPartitionLock( queueId, groupId, partition );
+
+        //another thread of this node is reading the partition, leave it to that one
+        if ( !lock.tryLock() ) {
+            return;
+        }
+
+        try {
+            ByteBuffer key = getConsumerGroupPartitionKey( queueId, groupId, partition );
+
+            UUID cursor = null;
+            int inFlight = 0;
+            List<UUID> expired = new ArrayList<UUID>();
+
+            for ( HColumn<UUID, ByteBuffer> column : getPartitionColumns( key ) ) {
+                if ( CURSOR.equals( column.getName() ) ) {
+                    cursor = ue.fromByteBuffer( column.getValue() );
+                    continue;
+                }
+
+                inFlight++;
+
+                if ( expired.size() < count && le.fromByteBuffer( column.getValue() ) <= now ) {
+                    expired.add( column.getName() );
+                }
+            }
+
+            int wanted = count - expired.size();
+
+            List<UUID> unread = wanted > 0 ? getUnread( queueId, partition, cursor, wanted, bounds ) :
+                                new ArrayList<UUID>( 0 );
+
+            boolean closed = partition + 2 * config.getPartitionInterval() <= now;
+
+            if ( closed && wanted > 0 && inFlight == 0 && unread.isEmpty() ) {
+                complete( queueId, groupId, partition );
+                return;
+            }
+
+            List<UUID> ids = new ArrayList<UUID>( expired.size() + unread.size() );
+            ids.addAll( expired );
+            ids.addAll( unread );
+
+            if ( ids.isEmpty() ) {
+                return;
+            }
+
+            List<Message> messages = loadMessages( ids, false );
+
+            Mutator<ByteBuffer> mutator = createMutator();
+            long timestamp = cass.createTimestamp();
+
+            Set<UUID> loaded = new HashSet<UUID>( messages.size() );
+
+            for ( Message message : messages ) {
+                UUID messageId = message.getUuid();
+
+                if ( logger.isTraceEnabled() ) {
+                    logger.trace( "Message '{}' of partition {} is in flight until {}", messageId, partition,
+                            now + timeout );
+                }
+
+                mutator.addInsertion( key, CONSUMER_GROUP_PARTITIONS.getColumnFamily(),
+                        createColumn( messageId, now + timeout, timestamp, ue, le ) );
+
+                message.setTransaction( messageId );
+                loaded.add( messageId );
+            }
+
+            //these messages have been removed from the queue, stop delivering them
+            for ( UUID messageId : expired ) {
+                if ( !loaded.contains( messageId ) ) {
+                    mutator.addDeletion( key, CONSUMER_GROUP_PARTITIONS.getColumnFamily(), messageId, ue, timestamp );
+                }
+            }
+
+            if ( !unread.isEmpty() ) {
+                mutator.addInsertion( key, CONSUMER_GROUP_PARTITIONS.getColumnFamily(),
+                        createColumn( CURSOR, unread.get( unread.size() - 1 ), timestamp, ue, ue ) );
+            }
+
+            mutator.execute();
+
+            results.addAll( messages );
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+
+    /** Get the ids of the messages in the partition after the cursor */
+    protected List<UUID> getUnread( UUID queueId, long partition, UUID cursor, int count, QueueBounds bounds ) {
+
+        List<UUID> results = new ArrayList<UUID>( count );
+
+        UUID start = cursor != null ? cursor : maxTimeUUID( partition - 1 );
+        UUID finish = UUIDUtils.min( maxTimeUUID( partition + config.getPartitionInterval() - 1 ), bounds.getNewest() );
+
+        if ( UUIDUtils.compare( start, finish ) >= 0 ) {
+            return results;
+        }
+
+        //the partitions are smaller than the inbox shards, so the partition is a range of a single row
+        for ( UUID messageId : getInboxRange( queueId, roundLong( partition, QUEUE_SHARD_INTERVAL ), start, finish,
+                count + 1 ) ) {
+            if ( messageId.equals( start ) ) {
+                continue;
+            }
+
+            results.add( messageId );
+
+            if ( results.size() == count ) {
+                break;
+            }
+        }
+
+        return results;
+    }
+
+
+    /** Get the first partition at or after the given one that has messages, null if there are none */
+    protected Long getNextPartition( UUID queueId, QueueBounds bounds, long partition ) {
+        UUID start = maxTimeUUID( partition - 1 );
+
+        if ( UUIDUtils.compare( start, bounds.getNewest() ) >= 0 ) {
+            return null;
+        }
+
+        List<UUID> ids = getQueueRange( queueId, bounds, new SearchParam( start, false, false, 1 ) );
+
+        if ( ids.isEmpty() ) {
+            return null;
+        }
+
+        return config.getPartition( getTimestampInMillis( ids.get( 0 ) ) );
+    }
+
+
+    /** Read the leases and the complete partitions of the group, starting at the given partition */
+    protected Leases readLeases( UUID queueId, UUID groupId, long partition, long now ) {
+        return new Leases( getLeaseColumns( queueId, groupId, getLeaseName( partition, COMPLETE ), null, MAX_LEASES ),
+                now );
+    }
+
+
+    /** Get the first partition of the group that may not be complete, null if the group has never moved */
+    protected Long getGroupPosition( UUID queueId, UUID groupId ) {
+        List<HColumn<ByteBuffer, ByteBuffer>> columns =
+                getLeaseColumns( queueId, groupId, ByteBuffer.wrap( POSITION ), ByteBuffer.wrap( POSITION ), 1 );
+
+        if ( columns.isEmpty() ) {
+            return null;
+        }
+
+        return le.fromByteBuffer( columns.get( 0 ).getValue() );
+    }
+
+
+    /**
+     * Claim the lease of a partition.  The lease is written, then all leases of the partition are read back, and the
+     * oldest live lease wins.  The other claims are given up.
+     *
+     * @return The lease if it was granted to this node, otherwise null
+     */
+    protected Lease claim( UUID queueId, UUID groupId, long partition, long now ) {
+        writeLease( queueId, groupId, partition, now, now );
+
+        Leases leases = new Leases( getLeaseColumns( queueId, groupId, getLeaseName( partition, COMPLETE ),
+                getLeaseName( partition, MAX_OWNER ), MAX_LEASES ), now );
+
+        Lease lease = leases.held.get( partition );
+
+        if ( !leases.complete.contains( partition ) && lease != null && config.getOwnerId().equals( lease.owner ) ) {
+            if ( logger.isDebugEnabled() ) {
+                logger.debug( "Claimed partition {} of queue '{}' for group '{}'", partition, queueId, groupId );
+            }
+            return lease;
+        }
+
+        Mutator<ByteBuffer> mutator = createMutator();
+
+        mutator.addDeletion( getQueueClientTransactionKey( queueId, groupId ),
+                CONSUMER_GROUP_LEASES.getColumnFamily(), getLeaseName( partition, config.getOwnerId() ), be,
+                cass.createTimestamp() );
+
+        mutator.execute();
+
+        return null;
+    }
+
+
+    /** Write the lease of this node on the partition, the lease expires a lease timeout after now */
+    protected void writeLease( UUID queueId, UUID groupId, long partition, long acquired, long now ) {
+        ByteBuffer value = ByteBuffer.allocate( 16 );
+        value.putLong( acquired );
+        value.putLong( now + config.getLeaseTimeout() );
+        value.rewind();
+
+        HColumn<ByteBuffer, ByteBuffer> column =
+                createColumn( getLeaseName( partition, config.getOwnerId() ), value, cass.createTimestamp(), be, be );
+        column.setTtl( ( int ) ( ( config.getLeaseTimeout() + 999 ) / 1000 ) );
+
+        Mutator<ByteBuffer> mutator = createMutator();
+
+        mutator.addInsertion( getQueueClientTransactionKey( queueId, groupId ),
+                CONSUMER_GROUP_LEASES.getColumnFamily(), column );
+
+        mutator.execute();
+    }
+
+
+    /** Mark the partition as complete, release its lease and remove its state */
+    protected void complete( UUID queueId, UUID groupId, long partition ) {
+        if ( logger.isDebugEnabled() ) {
+            logger.debug( "Partition {} of queue '{}' is complete for group '{}'", partition, queueId, groupId );
+        }
+
+        ByteBuffer key = getQueueClientTransactionKey( queueId, groupId );
+        long timestamp = cass.createTimestamp();
+
+        Mutator<ByteBuffer> mutator = createMutator();
+
+        mutator.addInsertion( key, CONSUMER_GROUP_LEASES.getColumnFamily(),
+                createColumn( getLeaseName( partition, COMPLETE ), ByteBuffer.allocate( 0 ), timestamp, be, be ) );
+
+        mutator.addDeletion( key, CONSUMER_GROUP_LEASES.getColumnFamily(),
+                getLeaseName( partition, config.getOwnerId() ), be, timestamp );
+
+        mutator.addDeletion( getConsumerGroupPartitionKey( queueId, groupId, partition ),
+                CONSUMER_GROUP_PARTITIONS.getColumnFamily(), timestamp );
+
+        mutator.execute();
+    }
+
+
+    /**
+     * Move the group position to the given partition, the complete markers before it are no longer needed.  The
+     * position is kept in the lease row of the group, apart from the client pointers of plain consumers
+     */
+    protected void advance( UUID queueId, UUID groupId, Leases leases, long partition ) {
+        if ( logger.isDebugEnabled() ) {
+            logger.debug( "Moving the position of group '{}' on queue '{}' to partition {}", groupId, queueId,
+                    partition );
+        }
+
+        ByteBuffer key = getQueueClientTransactionKey( queueId, groupId );
+        long timestamp = cass.createTimestamp();
+
+        Mutator<ByteBuffer> mutator = createMutator();
+
+        //written at the time of the partition, so a node that advances with an older view can't move the position back
+        mutator.addInsertion( key, CONSUMER_GROUP_LEASES.getColumnFamily(),
+                createColumn( ByteBuffer.wrap( POSITION ), partition, partition * 1000, be, le ) );
+
+        for ( Long complete : leases.complete ) {
+            if ( complete < partition ) {
+                mutator.addDeletion( key, CONSUMER_GROUP_LEASES.getColumnFamily(),
+                        getLeaseName( complete, COMPLETE ), be, timestamp );
+            }
+        }
+
+        mutator.execute();
+    }
+
+
+    /** Get the columns of the partition row, its cursor and its messages in flight */
+    protected List<HColumn<UUID, ByteBuffer>> getPartitionColumns( ByteBuffer key ) {
+        SliceQuery<ByteBuffer, UUID, ByteBuffer> q = createSliceQuery( ko, be, ue, be );
+        q.setColumnFamily( CONSUMER_GROUP_PARTITIONS.getColumnFamily() );
+        q.setKey( key );
+        q.setRange( null, null, false, ALL_COUNT );
+
+        return q.execute().get().getColumns();
+    }
+
+
+    /** Get the columns of the lease row of the group between start and finish, a null finish reads to the end */
+    protected List<HColumn<ByteBuffer, ByteBuffer>> getLeaseColumns( UUID queueId, UUID groupId, ByteBuffer start,
+                                                                    ByteBuffer finish, int count ) {
+        SliceQuery<ByteBuffer, ByteBuffer, ByteBuffer> q = createSliceQuery( ko, be, be, be );
+        q.setColumnFamily( CONSUMER_GROUP_LEASES.getColumnFamily() );
+        q.setKey( getQueueClientTransactionKey( queueId, groupId ) );
+        q.setRange( start, finish, false, count );
+
+        return q.execute().get().getColumns();
+    }
+
+
+    /** Get the ids of the inbox shard between start and finish, both inclusive */
+    protected List<UUID> getInboxRange( UUID queueId, long shard, UUID start, UUID finish, int count ) {
+        SliceQuery<ByteBuffer, UUID, ByteBuffer> q = createSliceQuery( ko, be, ue, be );
+        q.setColumnFamily( QUEUE_INBOX.getColumnFamily() );
+        q.setKey( getQueueShardRowKey( queueId, shard ) );
+        q.setRange( start, finish, false, count );
+
+        List<UUID> ids = new ArrayList<UUID>( count );
+
+        for ( HColumn<UUID, ByteBuffer> column : swallowOrderedExecution( q ) ) {
+            ids.add( column.getName() );
+        }
+
+        return ids;
+    }
+
+
+    protected Mutator<ByteBuffer> createMutator() {
+        return CountingMutator.createFlushingMutator( ko, be );
+    }
+
+
+    /** Get the name of a lease column in format of partition+ownerId */
+    static ByteBuffer getLeaseName( long partition, UUID ownerId ) {
+        ByteBuffer bytes = ByteBuffer.allocate( 24 );
+        bytes.putLong( partition );
+        bytes.putLong( ownerId.getMostSignificantBits() );
+        bytes.putLong( ownerId.getLeastSignificantBits() );
+        return ( ByteBuffer ) bytes.rewind();
+    }
+
+
+    /** The leases of a group, only the winning live lease of each partition is kept */
+    protected static class Leases {
+
+        final Set<Long> complete = new HashSet<Long>();
+        final Map<Long, Lease> held = new HashMap<Long, Lease>();
+
+
+        Leases( List<HColumn<ByteBuffer, ByteBuffer>> columns, long now ) {
+            for ( HColumn<ByteBuffer, ByteBuffer> column : columns ) {
+                ByteBuffer name = column.getName().duplicate();
+
+                long partition = name.getLong();
+                UUID owner = new UUID( name.getLong(), name.getLong() );
+
+                if ( COMPLETE.equals( owner ) ) {
+                    complete.add( partition );
+                    continue;
+                }
+
+                ByteBuffer value = column.getValue().duplicate();
+
+                Lease lease = new Lease( owner, value.getLong(), value.getLong() );
+
+                //expired, but not yet removed by its ttl
+                if ( lease.expires <= now ) {
+                    continue;
+                }
+
+                Lease current = held.get( partition );
+
+                if ( current == null || lease.precedes( current ) ) {
+                    held.put( partition, lease );
+                }
+            }
+        }
+
+
+        /** Get the number of partitions held by the owner */
+        int getOwned( UUID owner ) {
+            int owned = 0;
+
+            for ( Lease lease : held.values() ) {
+                if ( owner.equals( lease.owner ) ) {
+                    owned++;
+                }
+            }
+
+            return owned;
+        }
+    }
+
+
+    protected static class Lease {
+
+        final UUID owner;
+        final long acquired;
+        final long expires;
+
+
+        Lease( UUID owner, long acquired, long expires ) {
+            this.owner = owner;
+            this.acquired = acquired;
+            this.expires = expires;
+        }
+
+
+        /** True if this lease was acquired before the other one, ties are broken by the owner */
+        boolean precedes( Lease other ) {
+            if ( acquired != other.acquired ) {
+                return acquired < other.acquired;
+            }
+
+            return owner.compareTo( other.owner ) < 0;
+        }
+
+
+        @Override
+        public String toString() {
+            return "Lease [owner=" + owner + ", acquired=" + acquired + ", expires=" + expires + "]";
+        }
+    }
+}
@@ -76,6 +76,18 @@ public class FileImport extends TypedEntity {
     @EntityProperty
     protected long failedConnectionCount;
 
+    /**
+     * Byte offset in the file after the last entity that is completely imported, 0 if nothing is
+     */
+    @EntityProperty
+    protected long checkpointOffset;
+
+    /**
+     * Name of the collection the checkpoint offset is in
+     */
+    @EntityProperty
+    protected String checkpointCollection;
+
 
     public FileImport() {
         setLastUpdatedUUID(" ");
@@ -208,4 +220,32 @@ public class FileImport extends TypedEntity {
     public void setFailedConnectionCount( final long failedConnectionCount ) {
         this.failedConnectionCount = failedConnectionCount;
     }
+
+
+    /**
+     * Gets the byte offset in the file a resumed import starts at
+     * @return offset, 0 if the import starts at the beginning of the file
+     */
+    public long getCheckpointOffset() {
+        return checkpointOffset;
+    }
+
+
+    public void setCheckpointOffset( final long checkpointOffset ) {
+        this.checkpointOffset = checkpointOffset;
+    }
+
+
+    /**
+     * Gets the name of the collection the checkpoint offset is in
+     * @return collection name
+     */
+    public String getCheckpointCollection() {
+        return checkpointCollection;
+    }
+
+
+    public void setCheckpointCollection( final String checkpointCollection ) {
+        this.checkpointCollection = checkpointCollection;
+    }
 }
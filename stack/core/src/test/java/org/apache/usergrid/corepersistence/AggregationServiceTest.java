@@ -76,4 +76,42 @@ public class AggregationServiceTest extends AbstractCoreIT {
         Assert.assertEquals(sum3, (long) sumEach.get("tests"));
 
     }
+
+    @Test
+    public void testEntityCount() throws Exception {
+        ApplicationScope applicationScope = CpNamingUtils.getApplicationScope(this.app.getId());
+        Injector injector = SpringResource.getInstance().getBean(Injector.class);
+        AggregationService aggregationService = injector.getInstance(AggregationServiceFactory.class).getAggregationService();
+
+        Map<String,Object> props = new HashMap<>();
+        props.put("name", "first");
+        Entity entity1 = this.app.getEntityManager().create("counted", props);
+        this.app.refreshIndex();
+
+        //the first read reconciles against the index
+        Assert.assertEquals(1, aggregationService.getCollectionCount(applicationScope, "counteds"));
+        Assert.assertEquals(entity1.getSize(), aggregationService.getCollectionSize(applicationScope, "counteds"));
+
+        props = new HashMap<>();
+        props.put("name", "second");
+        Entity entity2 = this.app.getEntityManager().create("counted", props);
+
+        //sizes are updated in the background
+        waitForCount(aggregationService, applicationScope, "counteds", 2);
+        Assert.assertEquals(entity1.getSize() + entity2.getSize(),
+            aggregationService.getCollectionSize(applicationScope, "counteds"));
+
+        this.app.getEntityManager().delete(entity1);
+
+        waitForCount(aggregationService, applicationScope, "counteds", 1);
+        Assert.assertEquals((long) aggregationService.getEachCollectionCount(applicationScope).get("counteds"), 1);
+    }
+
+    private void waitForCount(final AggregationService aggregationService, final ApplicationScope applicationScope,
+                              final String collectionName, final long expected) throws InterruptedException {
+        for(int i = 0; i < 50 && aggregationService.getCollectionCount(applicationScope, collectionName) != expected; i++){
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(expected, aggregationService.getCollectionCount(applicationScope, collectionName));
+    }
 }
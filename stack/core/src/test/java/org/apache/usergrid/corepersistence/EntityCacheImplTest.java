@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.corepersistence;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.corepersistence.util.CpNamingUtils;
+import org.apache.usergrid.persistence.actorsystem.ActorSystemFig;
+import org.apache.usergrid.persistence.actorsystem.ActorSystemManager;
+import org.apache.usergrid.persistence.collection.EntityCollectionManager;
+import org.apache.usergrid.persistence.collection.MvccLogEntry;
+import org.apache.usergrid.persistence.collection.VersionSet;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+import org.apache.usergrid.persistence.model.field.ArrayField;
+import org.apache.usergrid.persistence.model.field.EntityObjectField;
+import org.apache.usergrid.persistence.model.field.StringField;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.codahale.metrics.Meter;
+
+import rx.Observable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class EntityCacheImplTest {
+
+    private ApplicationScope scope;
+    private Id entityId;
+    private Entity entity;
+
+    private EntityCacheFig entityCacheFig;
+    private EntityCollectionManager ecm;
+    private EntityCache entityCache;
+
+
+    @Before
+    public void setup() {
+        scope = CpNamingUtils.getApplicationScope( UUIDGenerator.newTimeUUID() );
+        entityId = new SimpleId( "role" );
+        entity = new Entity( entityId, UUIDGenerator.newTimeUUID() );
+        entity.setField( new StringField( "name", "admin" ) );
+
+        entityCacheFig = mock( EntityCacheFig.class );
+        when( entityCacheFig.getEnabled() ).thenReturn( true );
+        when( entityCacheFig.getCacheSize() ).thenReturn( 100 );
+        when( entityCacheFig.getCacheTimeout() ).thenReturn( 60000 );
+        when( entityCacheFig.getMaxStaleness() ).thenReturn( 60000 );
+
+        final ActorSystemFig actorSystemFig = mock( ActorSystemFig.class );
+        when( actorSystemFig.getEnabled() ).thenReturn( false );
+
+        final MetricsFactory metricsFactory = mock( MetricsFactory.class );
+        when( metricsFactory.getMeter( any( Class.class ), any( String.class ) ) ).thenReturn( new Meter() );
+
+        ecm = mock( EntityCollectionManager.class );
+        when( ecm.load( entityId ) ).thenReturn( Observable.just( entity ) );
+
+        entityCache = new EntityCacheImpl( entityCacheFig, actorSystemFig, mock( ActorSystemManager.class ),
+            metricsFactory );
+    }
+
+
+    @Test
+    public void loadCached() {
+        final Entity first = entityCache.load( scope, entityId, ecm );
+        final Entity second = entityCache.load( scope, entityId, ecm );
+
+        assertEquals( entity, first );
+        assertEquals( entity, second );
+
+        verify( ecm, times( 1 ) ).load( entityId );
+        verify( ecm, never() ).getLatestVersion( any( Collection.class ) );
+
+        //a different application has its own entry
+        entityCache.load( CpNamingUtils.getApplicationScope( UUIDGenerator.newTimeUUID() ), entityId, ecm );
+
+        verify( ecm, times( 2 ) ).load( entityId );
+    }
+
+
+    @Test
+    public void loadReturnsCopies() {
+        entityCache.load( scope, entityId, ecm ).removeField( "name" );
+
+        assertNotNull( entityCache.load( scope, entityId, ecm ).getField( "name" ) );
+        assertNotNull( entityCache.load( scope, entityId, ecm ).getField( "name" ) );
+    }
+
+
+    @Test
+    public void loadCopiesNestedFields() {
+        final EntityObject address = new EntityObject();
+        address.setField( new StringField( "city", "Boston" ) );
+        entity.setField( new EntityObjectField( "address", address ) );
+
+        final EntityObject phone = new EntityObject();
+        phone.setField( new StringField( "number", "555-0100" ) );
+        final List<Object> phones = new ArrayList<>();
+        phones.add( phone );
+        entity.setField( new ArrayField<>( "phones", phones ) );
+
+        final Entity loaded = entityCache.load( scope, entityId, ecm );
+
+        ( ( EntityObject ) loaded.getField( "address" ).getValue() ).removeField( "city" );
+
+        final List<Object> loadedPhones = ( List<Object> ) loaded.getField( "phones" ).getValue();
+        ( ( EntityObject ) loadedPhones.get( 0 ) ).removeField( "number" );
+        loadedPhones.add( "555-0101" );
+
+        final Entity reloaded = entityCache.load( scope, entityId, ecm );
+
+        assertNotNull( ( ( EntityObject ) reloaded.getField( "address" ).getValue() ).getField( "city" ) );
+
+        final List<Object> reloadedPhones = ( List<Object> ) reloaded.getField( "phones" ).getValue();
+        assertEquals( 1, reloadedPhones.size() );
+        assertNotNull( ( ( EntityObject ) reloadedPhones.get( 0 ) ).getField( "number" ) );
+    }
+
+
+    @Test
+    public void staleValidated() {
+        when( entityCacheFig.getMaxStaleness() ).thenReturn( -1 );
+
+        latestVersion( entity.getVersion() );
+
+        entityCache.load( scope, entityId, ecm );
+        assertEquals( entity, entityCache.load( scope, entityId, ecm ) );
+
+        verify( ecm, times( 1 ) ).load( entityId );
+        verify( ecm, times( 1 ) ).getLatestVersion( any( Collection.class ) );
+    }
+
+
+    @Test
+    public void staleReloaded() {
+        when( entityCacheFig.getMaxStaleness() ).thenReturn( -1 );
+
+        latestVersion( UUIDGenerator.newTimeUUID() );
+
+        entityCache.load( scope, entityId, ecm );
+        entityCache.load( scope, entityId, ecm );
+
+        verify( ecm, times( 2 ) ).load( entityId );
+    }
+
+
+    @Test
+    public void invalidated() {
+        entityCache.load( scope, entityId, ecm );
+        entityCache.invalidate( scope, entityId );
+        entityCache.load( scope, entityId, ecm );
+
+        verify( ecm, times( 2 ) ).load( entityId );
+
+        when( ecm.load( entityId ) ).thenReturn( Observable.<Entity>empty() );
+
+        entityCache.invalidateLocal( scope, entityId );
+        assertNull( entityCache.load( scope, entityId, ecm ) );
+    }
+
+
+    @Test
+    public void disabled() {
+        when( entityCacheFig.getEnabled() ).thenReturn( false );
+
+        entityCache.load( scope, entityId, ecm );
+        entityCache.load( scope, entityId, ecm );
+
+        verify( ecm, times( 2 ) ).load( entityId );
+    }
+
+
+    private void latestVersion( final UUID version ) {
+        final MvccLogEntry logEntry = mock( MvccLogEntry.class );
+        when( logEntry.getVersion() ).thenReturn( version );
+        when( logEntry.getState() ).thenReturn( MvccLogEntry.State.COMPLETE );
+
+        final VersionSet versionSet = mock( VersionSet.class );
+        when( versionSet.getMaxVersion( entityId ) ).thenReturn( logEntry );
+
+        when( ecm.getLatestVersion( any( Collection.class ) ) ).thenReturn( Observable.just( versionSet ) );
+    }
+}
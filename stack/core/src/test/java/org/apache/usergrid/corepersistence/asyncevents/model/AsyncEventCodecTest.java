@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.asyncevents.model;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.usergrid.corepersistence.index.ReplicatedIndexLocationStrategy;
+import org.apache.usergrid.persistence.collection.serialization.impl.migration.EntityIdScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.graph.Edge;
+import org.apache.usergrid.persistence.graph.impl.SimpleEdge;
+import org.apache.usergrid.persistence.index.IndexAlias;
+import org.apache.usergrid.persistence.index.IndexLocationStrategy;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class AsyncEventCodecTest {
+
+    private final ApplicationScope scope = new ApplicationScopeImpl( new SimpleId( "application" ) );
+
+
+    @Test
+    public void roundTripEveryType() {
+
+        final Id entityId = new SimpleId( "user" );
+        final Edge edge = new SimpleEdge( new SimpleId( "group" ), "users", entityId, 1000 );
+        final EntityIdScope entityIdScope = new EntityIdScope( scope, entityId );
+
+        final List<AsyncEvent> events = Arrays.asList(
+            new EntityIndexEvent( "us-east-1", entityIdScope, 42 ),
+            new EdgeIndexEvent( "us-east-1", scope, entityId, edge ),
+            new EdgeDeleteEvent( "us-east-1", scope, edge ),
+            new EntityDeleteEvent( "us-east-1", entityIdScope ),
+            new InitializeApplicationIndexEvent( "us-east-1", new ReplicatedIndexLocationStrategy( locationStrategy() ) ),
+            new ElasticsearchIndexEvent( null, UUIDGenerator.newTimeUUID() ),
+            new DeIndexOldVersionsEvent( "us-east-1", entityIdScope, UUIDGenerator.newTimeUUID() ) );
+
+        final List<byte[]> encoded = new ArrayList<>();
+
+        for ( final AsyncEvent event : events ) {
+            encoded.add( AsyncEventCodec.encode( event ) );
+        }
+
+        final List<AsyncEvent> decoded = AsyncEventCodec.decode( AsyncEventCodec.pack( encoded ) );
+
+        assertEquals( events.size(), decoded.size() );
+
+        for ( int i = 0; i < events.size(); i++ ) {
+            assertEquals( events.get( i ).getClass(), decoded.get( i ).getClass() );
+            assertEquals( events.get( i ).getCreationTime(), decoded.get( i ).getCreationTime() );
+            assertEquals( events.get( i ).sourceRegion, decoded.get( i ).sourceRegion );
+        }
+
+        final EntityIndexEvent entityIndex = ( EntityIndexEvent ) decoded.get( 0 );
+        assertEquals( entityId, entityIndex.getEntityIdScope().getId() );
+        assertEquals( scope, entityIndex.getEntityIdScope().getApplicationScope() );
+        assertEquals( 42, entityIndex.getUpdatedAfter() );
+
+        final EdgeIndexEvent edgeIndex = ( EdgeIndexEvent ) decoded.get( 1 );
+        assertEquals( edge, edgeIndex.getEdge() );
+        assertEquals( entityId, edgeIndex.getEntityId() );
+
+        assertEquals( edge, ( ( EdgeDeleteEvent ) decoded.get( 2 ) ).getEdge() );
+
+        final IndexLocationStrategy strategy =
+            ( ( InitializeApplicationIndexEvent ) decoded.get( 4 ) ).getIndexLocationStrategy();
+        assertEquals( "read", strategy.getAlias().getReadAlias() );
+        assertEquals( "write", strategy.getAlias().getWriteAlias() );
+        assertEquals( "root", strategy.getIndexRootName() );
+        assertEquals( "initial", strategy.getIndexInitialName() );
+        assertEquals( scope, strategy.getApplicationScope() );
+        assertEquals( 6, strategy.getNumberOfShards() );
+        assertEquals( 2, strategy.getNumberOfReplicas() );
+
+        assertEquals( ( ( ElasticsearchIndexEvent ) events.get( 5 ) ).getIndexBatchId(),
+            ( ( ElasticsearchIndexEvent ) decoded.get( 5 ) ).getIndexBatchId() );
+
+        assertEquals( ( ( DeIndexOldVersionsEvent ) events.get( 6 ) ).getMarkedVersion(),
+            ( ( DeIndexOldVersionsEvent ) decoded.get( 6 ) ).getMarkedVersion() );
+    }
+
+
+    @Test
+    public void packWithinLimit() throws Exception {
+
+        final List<EntityIndexEvent> events = new ArrayList<>();
+
+        for ( int i = 0; i < 1000; i++ ) {
+            events.add( new EntityIndexEvent( "us-east-1", new EntityIdScope( scope, new SimpleId( "user" ) ), 0 ) );
+        }
+
+        final int maxPayloadSize = 10000;
+
+        final List<AsyncEventBatch> batches = AsyncEventBatch.pack( "us-east-1", events, maxPayloadSize );
+
+        assertTrue( batches.size() > 1 );
+
+        final ObjectMapper mapper = new ObjectMapper();
+
+        int count = 0;
+
+        for ( final AsyncEventBatch batch : batches ) {
+            assertTrue( batch.payload.length() <= maxPayloadSize );
+
+            // batches travel through the queue as json like any other event
+            final AsyncEvent read = mapper.readValue( mapper.writeValueAsString( batch ), AsyncEvent.class );
+
+            count += ( ( AsyncEventBatch ) read ).decodeEvents().size();
+        }
+
+        assertEquals( events.size(), count );
+    }
+
+
+    private IndexLocationStrategy locationStrategy() {
+        return new IndexLocationStrategy() {
+            @Override
+            public IndexAlias getAlias() {
+                return new IndexAlias() {
+                    @Override
+                    public String getReadAlias() {
+                        return "read";
+                    }
+
+
+                    @Override
+                    public String getWriteAlias() {
+                        return "write";
+                    }
+                };
+            }
+
+
+            @Override
+            public String getIndexRootName() {
+                return "root";
+            }
+
+
+            @Override
+            public String getIndexInitialName() {
+                return "initial";
+            }
+
+
+            @Override
+            public ApplicationScope getApplicationScope() {
+                return scope;
+            }
+
+
+            @Override
+            public int getNumberOfShards() {
+                return 6;
+            }
+
+
+            @Override
+            public int getNumberOfReplicas() {
+                return 2;
+            }
+        };
+    }
+}
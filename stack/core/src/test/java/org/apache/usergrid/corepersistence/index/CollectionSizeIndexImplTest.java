@@ -0,0 +1,190 @@
+/*
+ *
+ *  * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  *  contributor license agreements.  The ASF licenses this file to You
+ *  * under the Apache License, Version 2.0 (the "License"); you may not
+ *  * use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.  For additional information regarding
+ *  * copyright in this work, please see the NOTICE file in the top level
+ *  * directory of this distribution.
+ *
+ */
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.map.MapManager;
+import org.apache.usergrid.persistence.map.MapManagerFactory;
+import org.apache.usergrid.persistence.map.MapScope;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Checks every version and delete of an entity is counted once, whatever order its events arrive in
+ */
+public class CollectionSizeIndexImplTest {
+
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<String, Long> counters = new HashMap<>();
+
+    private MapManager mapManager;
+    private CollectionSizeIndexImpl collectionSizeIndex;
+    private ApplicationScope applicationScope;
+
+
+    @Before
+    public void setup() {
+        strings.clear();
+        counters.clear();
+
+        mapManager = mock( MapManager.class );
+
+        when( mapManager.getStringHighConsistency( anyString() ) )
+            .thenAnswer( invocation -> strings.get( invocation.getArguments()[0] ) );
+
+        when( mapManager.compareAndPutString( anyString(), any( String.class ), anyString() ) )
+            .thenAnswer( invocation -> compareAndPut( ( String ) invocation.getArguments()[0],
+                ( String ) invocation.getArguments()[1], ( String ) invocation.getArguments()[2] ) );
+
+        doAnswer( invocation -> {
+            counters.merge( ( String ) invocation.getArguments()[0], ( Long ) invocation.getArguments()[1], Long::sum );
+            return null;
+        } ).when( mapManager ).increment( anyString(), anyLong() );
+
+        final MapManagerFactory mapManagerFactory = mock( MapManagerFactory.class );
+        when( mapManagerFactory.createMapManager( any( MapScope.class ) ) ).thenReturn( mapManager );
+
+        final CollectionSizeFig fig = mock( CollectionSizeFig.class );
+        when( fig.getTrackingCacheTimeout() ).thenReturn( 60000L );
+
+        collectionSizeIndex = new CollectionSizeIndexImpl( mapManagerFactory, fig );
+        applicationScope = new ApplicationScopeImpl( new SimpleId( "application" ) );
+    }
+
+
+    @Test
+    public void redeliveredWriteCountedOnce() {
+        final Entity entity = entity( new SimpleId( "test" ), UUIDGenerator.newTimeUUID(), 10 );
+
+        collectionSizeIndex.entityWritten( applicationScope, entity );
+        collectionSizeIndex.entityWritten( applicationScope, entity );
+
+        assertSizes( 1, 10 );
+    }
+
+
+    @Test
+    public void olderVersionIgnored() {
+        final Id entityId = new SimpleId( "test" );
+
+        final UUID first = UUIDGenerator.newTimeUUID();
+        final UUID second = UUIDGenerator.newTimeUUID();
+        final UUID third = UUIDGenerator.newTimeUUID();
+
+        collectionSizeIndex.entityWritten( applicationScope, entity( entityId, second, 20 ) );
+
+        //arrives late
+        collectionSizeIndex.entityWritten( applicationScope, entity( entityId, first, 10 ) );
+
+        assertSizes( 1, 20 );
+
+        collectionSizeIndex.entityWritten( applicationScope, entity( entityId, third, 15 ) );
+
+        assertSizes( 1, 15 );
+    }
+
+
+    @Test
+    public void writeAfterDeleteIgnored() {
+        final Entity entity = entity( new SimpleId( "test" ), UUIDGenerator.newTimeUUID(), 10 );
+
+        collectionSizeIndex.entityWritten( applicationScope, entity );
+        collectionSizeIndex.entityDeleted( applicationScope, entity.getId() );
+        collectionSizeIndex.entityDeleted( applicationScope, entity.getId() );
+
+        //a redelivered event for the version before the delete
+        collectionSizeIndex.entityWritten( applicationScope, entity );
+
+        assertSizes( 0, 0 );
+    }
+
+
+    @Test
+    public void concurrentWriteCountedOnce() {
+        final Entity entity = entity( new SimpleId( "test" ), UUIDGenerator.newTimeUUID(), 10 );
+
+        final AtomicBoolean raced = new AtomicBoolean();
+
+        //another node counts the same version between our read and our conditional write
+        when( mapManager.compareAndPutString( anyString(), any( String.class ), anyString() ) )
+            .thenAnswer( invocation -> {
+                final String key = ( String ) invocation.getArguments()[0];
+                final String value = ( String ) invocation.getArguments()[2];
+
+                if ( raced.compareAndSet( false, true ) ) {
+                    strings.put( key, value );
+                    counters.merge( "count:tests", 1L, Long::sum );
+                    counters.merge( "size:tests", 10L, Long::sum );
+                    return false;
+                }
+
+                return compareAndPut( key, ( String ) invocation.getArguments()[1], value );
+            } );
+
+        collectionSizeIndex.entityWritten( applicationScope, entity );
+
+        assertSizes( 1, 10 );
+    }
+
+
+    private boolean compareAndPut( final String key, final String expected, final String value ) {
+        if ( !Objects.equals( strings.get( key ), expected ) ) {
+            return false;
+        }
+
+        strings.put( key, value );
+        return true;
+    }
+
+
+    private void assertSizes( final long count, final long size ) {
+        assertEquals( count, ( long ) counters.getOrDefault( "count:tests", 0L ) );
+        assertEquals( size, ( long ) counters.getOrDefault( "size:tests", 0L ) );
+    }
+
+
+    private static Entity entity( final Id entityId, final UUID version, final long size ) {
+        final Entity entity = new Entity( entityId, version );
+        entity.setSize( size );
+        return entity;
+    }
+}
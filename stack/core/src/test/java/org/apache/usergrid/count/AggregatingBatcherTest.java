@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.count;
+
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.apache.usergrid.count.common.Count;
+
+import com.google.common.util.concurrent.Futures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class AggregatingBatcherTest {
+
+    @Test
+    public void countsRolledUp() {
+        final CapturingSubmitter submitter = new CapturingSubmitter();
+
+        final AggregatingBatcher batcher = new AggregatingBatcher();
+        batcher.setBatchSubmitter( submitter );
+        batcher.setBatchSize( 100 );
+
+        for ( int i = 0; i < 1000; i++ ) {
+            batcher.add( new Count( "Counter", "k1", "c" + ( i % 3 ), 1 ) );
+        }
+
+        assertEquals( 3, batcher.getPendingCount() );
+        assertEquals( 1000, batcher.getOpCount() );
+
+        batcher.flush( true );
+
+        assertEquals( 1, batcher.getBatchSubmissionCount() );
+        assertEquals( 0, batcher.getPendingCount() );
+        assertEquals( 3, submitter.submittedCounts.get() );
+        assertEquals( 334L, submitter.get( "Counter", "k1", "c0" ) );
+        assertEquals( 333L, submitter.get( "Counter", "k1", "c1" ) );
+        assertEquals( 333L, submitter.get( "Counter", "k1", "c2" ) );
+    }
+
+
+    @Test
+    public void batchSizeOneSubmitsEachAdd() {
+        final CapturingSubmitter submitter = new CapturingSubmitter();
+
+        final AggregatingBatcher batcher = new AggregatingBatcher();
+        batcher.setBatchSubmitter( submitter );
+        batcher.setBatchSize( 1 );
+        batcher.setBlockingSubmit( true );
+
+        batcher.add( new Count( "Counter", "k1", "c1", 1 ) );
+        batcher.add( new Count( "Counter", "k1", "c1", 2 ) );
+
+        assertEquals( 2, batcher.getBatchSubmissionCount() );
+        assertEquals( 3L, submitter.get( "Counter", "k1", "c1" ) );
+    }
+
+
+    @Test
+    public void failedSubmitRetried() {
+        final CapturingSubmitter submitter = new CapturingSubmitter();
+        submitter.fail.set( true );
+
+        final AggregatingBatcher batcher = new AggregatingBatcher();
+        batcher.setBatchSubmitter( submitter );
+        batcher.setBatchSize( 100 );
+
+        batcher.add( new Count( "Counter", "k1", "c1", 5 ) );
+
+        batcher.flush( true );
+
+        assertEquals( 0, batcher.getBatchSubmissionCount() );
+        assertEquals( 1, batcher.getPendingCount() );
+
+        submitter.fail.set( false );
+        batcher.flush( true );
+
+        assertEquals( 1, batcher.getBatchSubmissionCount() );
+        assertEquals( 5L, submitter.get( "Counter", "k1", "c1" ) );
+    }
+
+
+    @Test
+    public void noCountsLostWhileFlushing() throws Exception {
+        final CapturingSubmitter submitter = new CapturingSubmitter();
+
+        final AggregatingBatcher batcher = new AggregatingBatcher();
+        batcher.setBatchSubmitter( submitter );
+        batcher.setBatchSize( 10000 );
+
+        final int threads = 8;
+        final int adds = 20000;
+
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final CountDownLatch done = new CountDownLatch( threads );
+
+        for ( int t = 0; t < threads; t++ ) {
+            executor.execute( () -> {
+                for ( int i = 0; i < adds; i++ ) {
+                    batcher.add( new Count( "Counter", "k1", "c" + ( i % 5 ), 1 ) );
+                }
+                done.countDown();
+            } );
+        }
+
+        //flush repeatedly while the writers are running
+        while ( !done.await( 1, TimeUnit.MILLISECONDS ) ) {
+            batcher.flush( true );
+        }
+
+        batcher.flush( true );
+        executor.shutdown();
+
+        long total = 0;
+
+        for ( int i = 0; i < 5; i++ ) {
+            total += submitter.get( "Counter", "k1", "c" + i );
+        }
+
+        assertEquals( ( long ) threads * adds, total );
+        assertTrue( batcher.getBatchSubmissionCount() > 0 );
+    }
+
+
+    /**
+     * Sums submitted counts by counter name
+     */
+    private static final class CapturingSubmitter implements BatchSubmitter {
+
+        private final Map<String, Long> totals = new ConcurrentHashMap<>();
+        private final AtomicInteger submittedCounts = new AtomicInteger();
+        private final AtomicBoolean fail = new AtomicBoolean();
+
+
+        @Override
+        public Future<?> submit( final Collection<Count> counts ) {
+            if ( fail.get() ) {
+                return Futures.immediateFailedFuture( new RuntimeException( "Test failure" ) );
+            }
+
+            for ( Count count : counts ) {
+                totals.merge( count.getCounterName(), count.getValue(), Long::sum );
+                submittedCounts.incrementAndGet();
+            }
+
+            return Futures.immediateFuture( true );
+        }
+
+
+        @Override
+        public void shutdown() {
+        }
+
+
+        private long get( String table, String key, String column ) {
+            final Long value = totals.get( new Count( table, key, column, 0 ).getCounterName() );
+            return value == null ? 0 : value;
+        }
+    }
+}
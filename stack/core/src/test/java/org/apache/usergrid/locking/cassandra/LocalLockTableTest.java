@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.locking.cassandra;
+
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.codahale.metrics.Meter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class LocalLockTableTest {
+
+    private static final long EXPIRATION = 60000;
+
+    private final UUID first = UUIDGenerator.newTimeUUID();
+    private final UUID second = UUIDGenerator.newTimeUUID();
+
+
+    @Test
+    public void samePathWaits() throws Exception {
+
+        final Meter contention = new Meter();
+        final LocalLockTable table = new LocalLockTable( EXPIRATION, contention );
+
+        assertTrue( table.tryAcquire( "/app/path", first, 0, TimeUnit.MILLISECONDS ) );
+
+        // held, a second acquire fails without blocking
+        assertFalse( table.tryAcquire( "/app/path", second, 0, TimeUnit.MILLISECONDS ) );
+        assertEquals( 1, contention.getCount() );
+
+        table.release( "/app/path", first );
+
+        assertTrue( table.tryAcquire( "/app/path", second, 0, TimeUnit.MILLISECONDS ) );
+
+        table.release( "/app/path", second );
+
+        assertEquals( 0, table.size() );
+    }
+
+
+    @Test
+    public void differentPathsDontWait() throws Exception {
+
+        final LocalLockTable table = new LocalLockTable( EXPIRATION, new Meter() );
+
+        assertTrue( table.tryAcquire( "/app/one", first, 0, TimeUnit.MILLISECONDS ) );
+        assertTrue( table.tryAcquire( "/app/two", second, 0, TimeUnit.MILLISECONDS ) );
+
+        assertEquals( 2, table.size() );
+
+        table.release( "/app/one", first );
+        table.release( "/app/two", second );
+
+        assertEquals( 0, table.size() );
+    }
+
+
+    @Test
+    public void waiterAcquiresOnRelease() throws Exception {
+
+        final LocalLockTable table = new LocalLockTable( EXPIRATION, new Meter() );
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            assertTrue( table.tryAcquire( "/app/path", first, 0, TimeUnit.MILLISECONDS ) );
+
+            final CountDownLatch waiting = new CountDownLatch( 1 );
+
+            final Future<Boolean> waiter = executor.submit( () -> {
+                waiting.countDown();
+                return table.tryAcquire( "/app/path", second, 10, TimeUnit.SECONDS );
+            } );
+
+            waiting.await();
+
+            // released from another thread than the one waiting
+            table.release( "/app/path", first );
+
+            assertTrue( waiter.get( 10, TimeUnit.SECONDS ) );
+
+            table.release( "/app/path", second );
+
+            assertEquals( 0, table.size() );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void expiredHoldReclaimed() throws Exception {
+
+        final LocalLockTable table = new LocalLockTable( 50, new Meter() );
+
+        // never released
+        assertTrue( table.tryAcquire( "/app/path", first, 0, TimeUnit.MILLISECONDS ) );
+
+        // waits for the hold to expire rather than its whole timeout
+        final long start = System.currentTimeMillis();
+
+        assertTrue( table.tryAcquire( "/app/path", second, 10, TimeUnit.SECONDS ) );
+        assertTrue( System.currentTimeMillis() - start < 5000 );
+
+        // the late release of the expired hold doesn't release the new one
+        table.release( "/app/path", first );
+
+        assertEquals( 1, table.size() );
+
+        table.release( "/app/path", second );
+
+        assertEquals( 0, table.size() );
+    }
+}
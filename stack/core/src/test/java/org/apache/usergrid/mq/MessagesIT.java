@@ -17,8 +17,11 @@
 package org.apache.usergrid.mq;
 
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -287,4 +290,86 @@ public class MessagesIT extends AbstractCoreIT {
         assertFalse( "Both transactions have been removed", qm.hasOutstandingTransactions( queuePath, null ) );
         assertFalse( "Both messages and transactions have been returned", qm.hasPendingReads( queuePath, null ) );
     }
+
+
+    @Ignore("Pending https://issues.apache.org/jira/browse/USERGRID-1116. ")
+    @Test
+    public void testPostAll() throws Exception {
+        QueueManager qm = app.getQm();
+
+        qm.subscribeToQueue( "/batch/", "/batch/subscriber/" );
+
+        // more than one batch worth of messages
+        List<Message> messages = new ArrayList<Message>();
+        for ( int i = 0; i < 250; i++ ) {
+            Message message = new Message();
+            message.setStringProperty( "foo", "bar" + i );
+            messages.add( message );
+        }
+
+        List<PostStatus> statuses = qm.postAllToQueue( "/batch/", messages );
+        assertEquals( messages.size(), statuses.size() );
+
+        for ( int i = 0; i < statuses.size(); i++ ) {
+            PostStatus status = statuses.get( i );
+            assertTrue( "Message " + i + " was delivered", status.isDelivered() );
+            assertEquals( messages.get( i ).getUuid(), status.getMessage().getUuid() );
+        }
+
+        QueueQuery qq = new QueueQuery().withConsumer( "consumer1" );
+        qq.setLimit( 1000 );
+
+        QueueResults results = qm.getFromQueue( "/batch/subscriber/", qq );
+        assertEquals( messages.size(), results.size() );
+    }
+
+
+    @Ignore("Pending https://issues.apache.org/jira/browse/USERGRID-1116. ")
+    @Test
+    public void testConsumerGroup() throws Exception {
+        QueueManager qm = app.getQm();
+
+        String queuePath = "/group/";
+
+        for ( int i = 0; i < 10; i++ ) {
+            Message message = new Message();
+            message.setStringProperty( "foo", "bar" + i );
+            qm.postToQueue( queuePath, message );
+        }
+
+        QueueQuery qq = new QueueQuery().withConsumer( "group1" ).withGroup( true ).withTimeout( 60000 );
+        qq.setLimit( 5 );
+
+        QueueResults first = qm.getFromQueue( queuePath, qq );
+        assertEquals( 5, first.size() );
+
+        QueueResults second = qm.getFromQueue( queuePath, qq );
+        assertEquals( 5, second.size() );
+
+        // each message is read once by the group, the transaction is the message
+        List<UUID> secondIds = new ArrayList<UUID>();
+        for ( Message message : second.getMessages() ) {
+            secondIds.add( message.getUuid() );
+        }
+
+        for ( Message message : first.getMessages() ) {
+            assertEquals( message.getUuid(), message.getTransaction() );
+            assertFalse( secondIds.contains( message.getUuid() ) );
+        }
+
+        assertEquals( 0, qm.getFromQueue( queuePath, qq ).size() );
+
+        for ( Message message : first.getMessages() ) {
+            qm.commitTransaction( queuePath, message.getTransaction(), qq );
+        }
+
+        UUID renewed = qm.renewTransaction( queuePath, second.getMessages().get( 0 ).getTransaction(), qq );
+        assertEquals( second.getMessages().get( 0 ).getUuid(), renewed );
+
+        // another group reads all messages again
+        QueueQuery other = new QueueQuery().withConsumer( "group2" ).withGroup( true ).withTimeout( 60000 );
+        other.setLimit( 20 );
+
+        assertEquals( 10, qm.getFromQueue( queuePath, other ).size() );
+    }
 }
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.mq.cassandra;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.locking.LockManager;
+import org.apache.usergrid.mq.Message;
+import org.apache.usergrid.mq.PostStatus;
+import org.apache.usergrid.persistence.cassandra.CassandraService;
+import org.apache.usergrid.persistence.cassandra.CounterUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Posts many messages through {@link QueueManagerImpl#postAllToQueue(String, List)} with the cassandra writes
+ * replaced by an in memory record of what was written where
+ */
+public class QueueManagerImplTest {
+
+    private static final String QUEUE = "/test/";
+    private static final List<String> SUBSCRIBERS = Arrays.asList( "/subscriber1/", "/subscriber2/" );
+
+    private ExecutorService executor;
+
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool( 2 );
+    }
+
+
+    @After
+    public void cleanup() {
+        executor.shutdownNow();
+    }
+
+
+    @Test
+    public void postLargerThanChunk() {
+        final RecordingQueueManager qm = new RecordingQueueManager( 3, null );
+
+        final List<Message> messages = messages( 7 );
+
+        final List<PostStatus> statuses = qm.postAllToQueue( QUEUE, messages );
+
+        assertEquals( 7, statuses.size() );
+
+        for ( int i = 0; i < messages.size(); i++ ) {
+            assertSame( messages.get( i ), statuses.get( i ).getMessage() );
+            assertTrue( statuses.get( i ).isDelivered() );
+        }
+
+        //three mutations to the queue, the last one partial.  They run in parallel, so in any order
+        final List<Integer> queueWriteSizes = new ArrayList<>( qm.queueWriteSizes );
+        Collections.sort( queueWriteSizes );
+
+        assertEquals( Arrays.asList( 1, 3, 3 ), queueWriteSizes );
+
+        //every message is written once to the queue and to each subscriber
+        for ( final Message message : messages ) {
+            assertEquals( Integer.valueOf( 1 ), qm.written.get( QUEUE + message.getUuid() ) );
+
+            for ( final String subscriber : SUBSCRIBERS ) {
+                assertEquals( Integer.valueOf( 1 ), qm.written.get( subscriber + message.getUuid() ) );
+            }
+        }
+    }
+
+
+    @Test
+    public void partialFailure() {
+        final List<Message> messages = messages( 7 );
+
+        //fails the second chunk, messages 3 to 5
+        final RecordingQueueManager qm = new RecordingQueueManager( 3, messages.get( 4 ) );
+
+        final List<PostStatus> statuses = qm.postAllToQueue( QUEUE, messages );
+
+        assertEquals( 7, statuses.size() );
+
+        for ( int i = 0; i < messages.size(); i++ ) {
+            final PostStatus status = statuses.get( i );
+            final Message message = messages.get( i );
+
+            if ( i >= 3 && i < 6 ) {
+                assertFalse( status.isPosted() );
+                assertNotNull( status.getError() );
+
+                //a chunk that wasn't posted is never delivered to the subscribers
+                for ( final String subscriber : SUBSCRIBERS ) {
+                    assertNull( qm.written.get( subscriber + message.getUuid() ) );
+                }
+            }
+            else {
+                assertTrue( status.isDelivered() );
+                assertEquals( Integer.valueOf( 1 ), qm.written.get( QUEUE + message.getUuid() ) );
+
+                for ( final String subscriber : SUBSCRIBERS ) {
+                    assertEquals( Integer.valueOf( 1 ), qm.written.get( subscriber + message.getUuid() ) );
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void postToQueueThrowsFirstFailure() {
+        final List<Message> messages = messages( 4 );
+
+        final RecordingQueueManager qm = new RecordingQueueManager( 2, messages.get( 3 ) );
+
+        try {
+            qm.postToQueue( QUEUE, messages );
+            fail( "Post should have failed" );
+        }
+        catch ( IllegalStateException e ) {
+            assertEquals( "Test failure", e.getMessage() );
+        }
+
+        //the first chunk was still written
+        assertEquals( Integer.valueOf( 1 ), qm.written.get( QUEUE + messages.get( 0 ).getUuid() ) );
+    }
+
+
+    private static List<Message> messages( final int count ) {
+        final List<Message> messages = new ArrayList<>( count );
+
+        for ( int i = 0; i < count; i++ ) {
+            final Message message = new Message();
+            message.setStringProperty( "index", String.valueOf( i ) );
+            messages.add( message );
+        }
+
+        return messages;
+    }
+
+
+    /**
+     * Records the writes instead of mutating cassandra, and fails any queue write holding the failing message
+     */
+    private final class RecordingQueueManager extends QueueManagerImpl {
+
+        private final Map<String, Integer> written = new ConcurrentHashMap<>();
+        private final List<Integer> queueWriteSizes = Collections.synchronizedList( new ArrayList<>() );
+        private final Message failing;
+
+
+        private RecordingQueueManager( final int postBatchSize, final Message failing ) {
+            this.failing = failing;
+
+            final CassandraService cass = mock( CassandraService.class );
+            when( cass.createTimestamp() ).thenReturn( System.currentTimeMillis() );
+
+            init( cass, mock( CounterUtils.class ), mock( LockManager.class ), UUID.randomUUID(), 1000,
+                postBatchSize, executor );
+        }
+
+
+        @Override
+        void writeMessages( final List<String> queuePaths, final List<Message> messages,
+                            final List<MessageIndexUpdate> indexUpdates, final long timestamp ) {
+
+            if ( queuePaths.contains( QUEUE ) && messages.contains( failing ) ) {
+                throw new IllegalStateException( "Test failure" );
+            }
+
+            if ( queuePaths.contains( QUEUE ) ) {
+                queueWriteSizes.add( messages.size() );
+            }
+
+            for ( final String queuePath : queuePaths ) {
+                for ( final Message message : messages ) {
+                    written.merge( queuePath + message.getUuid(), 1, Integer::sum );
+                }
+            }
+        }
+
+
+        @Override
+        List<String> getSubscriberPaths( final String queuePath ) {
+            return SUBSCRIBERS;
+        }
+    }
+}
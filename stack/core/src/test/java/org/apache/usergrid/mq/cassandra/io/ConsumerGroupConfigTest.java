@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.mq.cassandra.io;
+
+
+import org.junit.Test;
+
+import static org.apache.usergrid.mq.cassandra.QueueManagerImpl.QUEUE_SHARD_INTERVAL;
+import static org.junit.Assert.assertEquals;
+
+
+public class ConsumerGroupConfigTest {
+
+    @Test
+    public void partitionBoundaries() {
+        final ConsumerGroupConfig config = new ConsumerGroupConfig( 60000, 30000, 4 );
+
+        final long partition = 1400000000000L - ( 1400000000000L % 60000 );
+
+        assertEquals( partition, config.getPartition( partition ) );
+        assertEquals( partition, config.getPartition( partition + 59999 ) );
+        assertEquals( partition + 60000, config.getPartition( partition + 60000 ) );
+        assertEquals( partition - 60000, config.getPartition( partition - 1 ) );
+    }
+
+
+    @Test
+    public void partitionsAlignWithShards() {
+        final ConsumerGroupConfig config = new ConsumerGroupConfig( 60000, 30000, 4 );
+
+        final long shard = 1400000000000L - ( 1400000000000L % QUEUE_SHARD_INTERVAL );
+
+        //a partition never spans two inbox shards
+        assertEquals( shard, config.getPartition( shard ) );
+        assertEquals( shard + QUEUE_SHARD_INTERVAL - 60000, config.getPartition( shard + QUEUE_SHARD_INTERVAL - 1 ) );
+    }
+
+
+    @Test( expected = IllegalArgumentException.class )
+    public void intervalMustDivideShard() {
+        new ConsumerGroupConfig( 7000, 30000, 4 );
+    }
+
+
+    @Test( expected = IllegalArgumentException.class )
+    public void intervalMustBePositive() {
+        new ConsumerGroupConfig( 0, 30000, 4 );
+    }
+
+
+    @Test( expected = IllegalArgumentException.class )
+    public void leaseTimeoutAtLeastASecond() {
+        new ConsumerGroupConfig( 60000, 999, 4 );
+    }
+
+
+    @Test
+    public void holdsAtLeastOnePartition() {
+        assertEquals( 1, new ConsumerGroupConfig( 60000, 30000, 0 ).getMaxPartitions() );
+    }
+}
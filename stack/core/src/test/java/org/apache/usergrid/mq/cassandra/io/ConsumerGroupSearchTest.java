@@ -0,0 +1,569 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.mq.cassandra.io;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.mq.Message;
+import org.apache.usergrid.mq.QueueQuery;
+import org.apache.usergrid.persistence.cassandra.CassandraService;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import com.google.common.primitives.UnsignedBytes;
+
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+
+import static org.apache.usergrid.mq.cassandra.CassandraMQUtils.getConsumerGroupPartitionKey;
+import static org.apache.usergrid.mq.cassandra.CassandraMQUtils.getQueueClientTransactionKey;
+import static org.apache.usergrid.mq.cassandra.CassandraMQUtils.getQueueId;
+import static org.apache.usergrid.mq.cassandra.QueuesCF.CONSUMER_GROUP_LEASES;
+import static org.apache.usergrid.mq.cassandra.QueuesCF.CONSUMER_GROUP_PARTITIONS;
+import static org.apache.usergrid.persistence.cassandra.Serializers.be;
+import static org.apache.usergrid.persistence.cassandra.Serializers.le;
+import static org.apache.usergrid.persistence.cassandra.Serializers.ue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Runs the lease and partition logic of {@link ConsumerGroupSearch} against an in memory model of its column families.
+ * Writes follow the cassandra rule that the newest timestamp wins
+ */
+public class ConsumerGroupSearchTest {
+
+    private static final String QUEUE_PATH = "/test/group/";
+
+    private static final long INTERVAL = ConsumerGroupConfig.DEFAULT_PARTITION_INTERVAL;
+    private static final long LEASE_TIMEOUT = ConsumerGroupConfig.DEFAULT_LEASE_TIMEOUT;
+
+    private static final Comparator<ByteBuffer> NAMES =
+            ( first, second ) -> UnsignedBytes.lexicographicalComparator().compare( bytes( first ), bytes( second ) );
+
+    /** column family, row key, column name */
+    private final Map<String, Map<ByteBuffer, TreeMap<ByteBuffer, Cell>>> store = new HashMap<>();
+
+    /** The inbox of the queue, and the messages that still exist */
+    private final TreeSet<UUID> inbox = new TreeSet<>( UUIDUtils::compare );
+    private final Set<UUID> stored = new HashSet<>();
+
+    private final AtomicLong clock = new AtomicLong( System.currentTimeMillis() * 1000 );
+
+    private CassandraService cass;
+
+    private UUID queueId;
+    private UUID groupId;
+    private long partition;
+
+
+    @Before
+    public void setup() {
+        store.clear();
+        inbox.clear();
+        stored.clear();
+
+        cass = mock( CassandraService.class );
+        when( cass.createTimestamp() ).thenAnswer( invocation -> clock.incrementAndGet() );
+
+        queueId = getQueueId( QUEUE_PATH );
+
+        //transactions are committed with a plain query, which reads as the queue's own group
+        groupId = queueId;
+
+        partition = new ConsumerGroupConfig().getPartition( System.currentTimeMillis() ) - 10 * INTERVAL;
+    }
+
+
+    @Test
+    public void precedes() {
+        final UUID first = new UUID( 0, 1 );
+        final UUID second = new UUID( 0, 2 );
+
+        assertTrue( new ConsumerGroupSearch.Lease( second, 100, 200 )
+                .precedes( new ConsumerGroupSearch.Lease( first, 101, 200 ) ) );
+
+        assertFalse( new ConsumerGroupSearch.Lease( first, 101, 200 )
+                .precedes( new ConsumerGroupSearch.Lease( second, 100, 200 ) ) );
+
+        //same acquire time, the owner breaks the tie
+        assertTrue( new ConsumerGroupSearch.Lease( first, 100, 200 )
+                .precedes( new ConsumerGroupSearch.Lease( second, 100, 300 ) ) );
+
+        assertFalse( new ConsumerGroupSearch.Lease( second, 100, 300 )
+                .precedes( new ConsumerGroupSearch.Lease( first, 100, 200 ) ) );
+    }
+
+
+    @Test
+    public void oldestLiveLeaseHeld() {
+        final UUID first = new UUID( 0, 1 );
+        final UUID second = new UUID( 0, 2 );
+        final UUID third = new UUID( 0, 3 );
+
+        final long now = 1000;
+
+        final List<HColumn<ByteBuffer, ByteBuffer>> columns = Arrays.asList(
+                //the oldest, but expired
+                leaseColumn( partition, first, 10, now ),
+                leaseColumn( partition, third, 30, now + 100 ),
+                leaseColumn( partition, second, 20, now + 100 ),
+                leaseColumn( partition + INTERVAL, second, 40, now + 100 ),
+                HFactory.createColumn( ConsumerGroupSearch.getLeaseName( partition - INTERVAL, UUIDUtils.ZERO_UUID ),
+                        ByteBuffer.allocate( 0 ), be, be ) );
+
+        final ConsumerGroupSearch.Leases leases = new ConsumerGroupSearch.Leases( columns, now );
+
+        assertEquals( second, leases.held.get( partition ).owner );
+        assertEquals( second, leases.held.get( partition + INTERVAL ).owner );
+        assertEquals( 2, leases.getOwned( second ) );
+        assertEquals( 0, leases.getOwned( first ) );
+
+        assertEquals( new HashSet<>( Arrays.asList( partition - INTERVAL ) ), leases.complete );
+        assertFalse( leases.held.containsKey( partition - INTERVAL ) );
+    }
+
+
+    @Test
+    public void expiredLeaseTakenOver() {
+        final InMemorySearch first = new InMemorySearch();
+        final InMemorySearch second = new InMemorySearch();
+
+        final long now = partition + INTERVAL;
+
+        assertNotNull( first.claim( queueId, groupId, partition, now ) );
+
+        //held by the first node, the losing claim is given up
+        assertNull( second.claim( queueId, groupId, partition, now + 1 ) );
+        assertEquals( 1, leaseRow().size() );
+
+        //renewed, the second node can't claim it once the first lease timeout has passed
+        first.writeLease( queueId, groupId, partition, now, now + LEASE_TIMEOUT / 2 );
+
+        assertNull( second.claim( queueId, groupId, partition, now + LEASE_TIMEOUT ) );
+
+        //no longer renewed, the lease expires and the second node takes over
+        final long expired = now + LEASE_TIMEOUT / 2 + LEASE_TIMEOUT;
+
+        final ConsumerGroupSearch.Lease lease = second.claim( queueId, groupId, partition, expired );
+
+        assertNotNull( lease );
+        assertEquals( second.getOwnerId(), lease.owner );
+        assertEquals( second.getOwnerId(),
+                second.readLeases( queueId, groupId, partition, expired ).held.get( partition ).owner );
+    }
+
+
+    @Test
+    public void leaseNotClaimedOnceComplete() {
+        final InMemorySearch search = new InMemorySearch();
+
+        final long now = partition + 2 * INTERVAL;
+
+        search.complete( queueId, groupId, partition );
+
+        assertNull( search.claim( queueId, groupId, partition, now ) );
+        assertTrue( search.readLeases( queueId, groupId, partition, now ).complete.contains( partition ) );
+    }
+
+
+    @Test
+    public void readPartitionTransitions() {
+        final InMemorySearch search = new InMemorySearch();
+
+        //on either side of the partition
+        final UUID before = message( partition - 1, 0 );
+        final UUID after = message( partition + INTERVAL, 0 );
+
+        final UUID m0 = message( partition, 0 );
+        final UUID m1 = message( partition + 1000, 0 );
+        final UUID m2 = message( partition + 2000, 0 );
+        final UUID m3 = message( partition + 3000, 0 );
+        final UUID m4 = message( partition + INTERVAL - 1, 0 );
+
+        final QueueBounds bounds = new QueueBounds( before, after );
+
+        final long timeout = 1000;
+        long now = partition + INTERVAL;
+
+        assertNotNull( search.claim( queueId, groupId, partition, now ) );
+
+        //new messages are read in order, and stay in flight until the timeout
+        assertEquals( Arrays.asList( m0, m1 ), read( search, 2, timeout, now, bounds ) );
+        assertEquals( m1, cursor() );
+        assertEquals( Long.valueOf( now + timeout ), inFlight().get( m0 ) );
+        assertEquals( Long.valueOf( now + timeout ), inFlight().get( m1 ) );
+
+        //messages in flight are not read again before their timeout
+        assertEquals( Arrays.asList( m2, m3 ), read( search, 2, timeout, now + 10, bounds ) );
+        assertEquals( m3, cursor() );
+
+        search.deleteTransaction( QUEUE_PATH, m0, new QueueQuery() );
+        assertFalse( inFlight().containsKey( m0 ) );
+
+        //removed from the queue while in flight
+        stored.remove( m3 );
+
+        //the timed out messages come first, and the read stops at the end of the partition
+        now += 2 * timeout;
+
+        assertEquals( Arrays.asList( m1, m2, m4 ), read( search, 10, timeout, now, bounds ) );
+        assertEquals( m4, cursor() );
+        assertEquals( new HashSet<>( Arrays.asList( m1, m2, m4 ) ), inFlight().keySet() );
+        assertEquals( Long.valueOf( now + timeout ), inFlight().get( m1 ) );
+
+        for ( final UUID messageId : Arrays.asList( m1, m2, m4 ) ) {
+            search.deleteTransaction( QUEUE_PATH, messageId, new QueueQuery() );
+        }
+
+        //drained, but messages can still be written to it
+        now = partition + 2 * INTERVAL - 1;
+
+        assertTrue( read( search, 10, timeout, now, bounds ).isEmpty() );
+        assertFalse( search.readLeases( queueId, groupId, partition, now ).complete.contains( partition ) );
+
+        //closed, drained and committed
+        now = partition + 2 * INTERVAL;
+
+        assertTrue( read( search, 10, timeout, now, bounds ).isEmpty() );
+
+        final ConsumerGroupSearch.Leases leases = search.readLeases( queueId, groupId, partition, now );
+
+        assertTrue( leases.complete.contains( partition ) );
+        assertFalse( leases.held.containsKey( partition ) );
+        assertTrue( partitionRow().isEmpty() );
+    }
+
+
+    @Test
+    public void openPartitionNotComplete() {
+        final InMemorySearch search = new InMemorySearch();
+
+        final UUID m0 = message( partition, 0 );
+
+        final QueueBounds bounds = new QueueBounds( m0, m0 );
+        final long now = partition + 2 * INTERVAL;
+
+        assertEquals( Arrays.asList( m0 ), read( search, 10, 1000, now, bounds ) );
+
+        //closed and drained, but the message is still in flight
+        assertTrue( read( search, 10, 1000, now + 1, bounds ).isEmpty() );
+        assertFalse( search.readLeases( queueId, groupId, partition, now + 1 ).complete.contains( partition ) );
+    }
+
+
+    @Test
+    public void positionKeptInLeaseRow() {
+        final InMemorySearch search = new InMemorySearch();
+
+        final long now = partition + 3 * INTERVAL;
+
+        assertNull( search.getGroupPosition( queueId, groupId ) );
+
+        search.complete( queueId, groupId, partition );
+        search.complete( queueId, groupId, partition + INTERVAL );
+
+        search.advance( queueId, groupId, search.readLeases( queueId, groupId, partition, now ), partition + INTERVAL );
+
+        assertEquals( Long.valueOf( partition + INTERVAL ), search.getGroupPosition( queueId, groupId ) );
+
+        //the markers before the position are removed, the position column is not read as a lease
+        final ConsumerGroupSearch.Leases leases = search.readLeases( queueId, groupId, partition, now );
+
+        assertEquals( new HashSet<>( Arrays.asList( partition + INTERVAL ) ), leases.complete );
+        assertTrue( leases.held.isEmpty() );
+
+        //a node with an older view can't move the position back
+        search.advance( queueId, groupId, leases, partition );
+
+        assertEquals( Long.valueOf( partition + INTERVAL ), search.getGroupPosition( queueId, groupId ) );
+    }
+
+
+    private List<UUID> read( final InMemorySearch search, final int count, final long timeout, final long now,
+                             final QueueBounds bounds ) {
+        final List<Message> results = new ArrayList<>();
+
+        search.readPartition( queueId, groupId, partition, count, timeout, now, bounds, results );
+
+        final List<UUID> ids = new ArrayList<>( results.size() );
+
+        for ( final Message message : results ) {
+            assertEquals( message.getUuid(), message.getTransaction() );
+            ids.add( message.getUuid() );
+        }
+
+        return ids;
+    }
+
+
+    private UUID message( final long timestamp, final int offset ) {
+        final UUID messageId = UUIDUtils.newTimeUUID( timestamp, offset );
+        inbox.add( messageId );
+        stored.add( messageId );
+        return messageId;
+    }
+
+
+    private UUID cursor() {
+        final Cell cell = partitionRow().get( ue.toByteBuffer( UUIDUtils.ZERO_UUID ) );
+        return cell == null ? null : ue.fromByteBuffer( cell.value.duplicate() );
+    }
+
+
+    private Map<UUID, Long> inFlight() {
+        final Map<UUID, Long> inFlight = new HashMap<>();
+
+        for ( final Map.Entry<ByteBuffer, Cell> entry : partitionRow().entrySet() ) {
+            final UUID name = ue.fromByteBuffer( entry.getKey().duplicate() );
+
+            if ( !UUIDUtils.ZERO_UUID.equals( name ) ) {
+                inFlight.put( name, le.fromByteBuffer( entry.getValue().value.duplicate() ) );
+            }
+        }
+
+        return inFlight;
+    }
+
+
+    private TreeMap<ByteBuffer, Cell> partitionRow() {
+        return row( CONSUMER_GROUP_PARTITIONS.getColumnFamily(),
+                getConsumerGroupPartitionKey( queueId, groupId, partition ) );
+    }
+
+
+    private TreeMap<ByteBuffer, Cell> leaseRow() {
+        return row( CONSUMER_GROUP_LEASES.getColumnFamily(), getQueueClientTransactionKey( queueId, groupId ) );
+    }
+
+
+    private TreeMap<ByteBuffer, Cell> row( final String columnFamily, final ByteBuffer key ) {
+        return store.computeIfAbsent( columnFamily, cf -> new HashMap<>() )
+                    .computeIfAbsent( key.duplicate(), k -> new TreeMap<>( NAMES ) );
+    }
+
+
+    private static HColumn<ByteBuffer, ByteBuffer> leaseColumn( final long partition, final UUID owner,
+                                                               final long acquired, final long expires ) {
+        final ByteBuffer value = ByteBuffer.allocate( 16 );
+        value.putLong( acquired );
+        value.putLong( expires );
+        value.rewind();
+
+        return HFactory.createColumn( ConsumerGroupSearch.getLeaseName( partition, owner ), value, be, be );
+    }
+
+
+    private static byte[] bytes( final ByteBuffer buffer ) {
+        final ByteBuffer duplicate = buffer.duplicate();
+        final byte[] bytes = new byte[duplicate.remaining()];
+        duplicate.get( bytes );
+        return bytes;
+    }
+
+
+    /** A column value and its write timestamp */
+    private static final class Cell {
+
+        private final ByteBuffer value;
+        private final long clock;
+
+
+        private Cell( final ByteBuffer value, final long clock ) {
+            this.value = value;
+            this.clock = clock;
+        }
+    }
+
+
+    /**
+     * Reads and writes the in memory model instead of cassandra.  Every instance has its own config, so they act as
+     * different nodes of the group
+     */
+    private final class InMemorySearch extends ConsumerGroupSearch {
+
+        private final ConsumerGroupConfig config;
+
+
+        private InMemorySearch() {
+            this( new ConsumerGroupConfig( INTERVAL, LEASE_TIMEOUT, ConsumerGroupConfig.DEFAULT_MAX_PARTITIONS ) );
+        }
+
+
+        private InMemorySearch( final ConsumerGroupConfig config ) {
+            super( mock( Keyspace.class ), cass, config );
+            this.config = config;
+        }
+
+
+        private UUID getOwnerId() {
+            return config.getOwnerId();
+        }
+
+
+        @Override
+        protected List<HColumn<UUID, ByteBuffer>> getPartitionColumns( final ByteBuffer key ) {
+            final List<HColumn<UUID, ByteBuffer>> columns = new ArrayList<>();
+
+            for ( final Map.Entry<ByteBuffer, Cell> entry : row( CONSUMER_GROUP_PARTITIONS.getColumnFamily(), key )
+                    .entrySet() ) {
+                columns.add( HFactory.createColumn( ue.fromByteBuffer( entry.getKey().duplicate() ),
+                        entry.getValue().value.duplicate(), ue, be ) );
+            }
+
+            //uuid order, as the column family sorts them
+            columns.sort( ( first, second ) -> UUIDUtils.compare( first.getName(), second.getName() ) );
+
+            return columns;
+        }
+
+
+        @Override
+        protected List<HColumn<ByteBuffer, ByteBuffer>> getLeaseColumns( final UUID queueId, final UUID groupId,
+                                                                        final ByteBuffer start,
+                                                                        final ByteBuffer finish, final int count ) {
+            final TreeMap<ByteBuffer, Cell> row =
+                    row( CONSUMER_GROUP_LEASES.getColumnFamily(), getQueueClientTransactionKey( queueId, groupId ) );
+
+            final NavigableMap<ByteBuffer, Cell> range =
+                    finish == null ? row.tailMap( start, true ) : row.subMap( start, true, finish, true );
+
+            final List<HColumn<ByteBuffer, ByteBuffer>> columns = new ArrayList<>();
+
+            for ( final Map.Entry<ByteBuffer, Cell> entry : range.entrySet() ) {
+                if ( columns.size() == count ) {
+                    break;
+                }
+
+                columns.add( HFactory.createColumn( entry.getKey().duplicate(), entry.getValue().value.duplicate(),
+                        be, be ) );
+            }
+
+            return columns;
+        }
+
+
+        @Override
+        protected List<UUID> getInboxRange( final UUID queueId, final long shard, final UUID start,
+                                            final UUID finish, final int count ) {
+            final List<UUID> ids = new ArrayList<>();
+
+            for ( final UUID messageId : inbox.subSet( start, true, finish, true ) ) {
+                if ( ids.size() == count ) {
+                    break;
+                }
+
+                ids.add( messageId );
+            }
+
+            return ids;
+        }
+
+
+        @Override
+        protected List<Message> loadMessages( final Collection<UUID> messageIds, final boolean reversed ) {
+            final List<Message> messages = new ArrayList<>();
+
+            for ( final UUID messageId : messageIds ) {
+                if ( stored.contains( messageId ) ) {
+                    final Message message = new Message();
+                    message.setUuid( messageId );
+                    messages.add( message );
+                }
+            }
+
+            return messages;
+        }
+
+
+        @Override
+        @SuppressWarnings( "unchecked" )
+        protected Mutator<ByteBuffer> createMutator() {
+            final Mutator<ByteBuffer> mutator = mock( Mutator.class );
+
+            when( mutator.addInsertion( any( ByteBuffer.class ), anyString(), any( HColumn.class ) ) )
+                    .thenAnswer( invocation -> {
+                        final HColumn<?, ?> column = ( HColumn<?, ?> ) invocation.getArguments()[2];
+                        final TreeMap<ByteBuffer, Cell> row = row( ( String ) invocation.getArguments()[1],
+                                ( ByteBuffer ) invocation.getArguments()[0] );
+
+                        final Cell existing = row.get( column.getNameBytes() );
+
+                        if ( existing == null || existing.clock <= column.getClock() ) {
+                            row.put( column.getNameBytes(), new Cell( column.getValueBytes(), column.getClock() ) );
+                        }
+
+                        return mutator;
+                    } );
+
+            when( mutator.addDeletion( any( ByteBuffer.class ), anyString(), any(), any( Serializer.class ),
+                    anyLong() ) ).thenAnswer( invocation -> {
+                final Serializer<Object> serializer = ( Serializer<Object> ) invocation.getArguments()[3];
+                final ByteBuffer name = serializer.toByteBuffer( invocation.getArguments()[2] );
+                final TreeMap<ByteBuffer, Cell> row =
+                        row( ( String ) invocation.getArguments()[1], ( ByteBuffer ) invocation.getArguments()[0] );
+
+                final Cell existing = row.get( name );
+
+                if ( existing != null && existing.clock <= ( Long ) invocation.getArguments()[4] ) {
+                    row.remove( name );
+                }
+
+                return mutator;
+            } );
+
+            when( mutator.addDeletion( any( ByteBuffer.class ), anyString(), anyLong() ) ).thenAnswer( invocation -> {
+                final long deleted = ( Long ) invocation.getArguments()[2];
+
+                row( ( String ) invocation.getArguments()[1], ( ByteBuffer ) invocation.getArguments()[0] ).values()
+                        .removeIf( cell -> cell.clock <= deleted );
+
+                return mutator;
+            } );
+
+            return mutator;
+        }
+    }
+}
@@ -23,7 +23,7 @@ package org.apache.usergrid.utils;
 import org.junit.rules.ExternalResource;
 
 import org.apache.usergrid.cassandra.SpringResource;
-import org.apache.usergrid.count.SimpleBatcher;
+import org.apache.usergrid.count.AggregatingBatcher;
 import org.apache.usergrid.setup.ConcurrentProcessSingleton;
 
 
@@ -32,11 +32,11 @@ import org.apache.usergrid.setup.ConcurrentProcessSingleton;
  */
 public class ImmediateCounterRule extends ExternalResource {
 
-    private final SimpleBatcher batcher;
+    private final AggregatingBatcher batcher;
 
 
     public ImmediateCounterRule( ) {
-        batcher = ConcurrentProcessSingleton.getInstance().getSpringResource().getBean( SimpleBatcher.class );
+        batcher = ConcurrentProcessSingleton.getInstance().getSpringResource().getBean( AggregatingBatcher.class );
     }
 
 
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache;
+
+
+import org.safehaus.guicyfig.Default;
+import org.safehaus.guicyfig.FigSingleton;
+import org.safehaus.guicyfig.GuicyFig;
+import org.safehaus.guicyfig.Key;
+
+
+/**
+ * Configuration for the scoped cache.
+ */
+@FigSingleton
+public interface CacheFig extends GuicyFig {
+
+    /**
+     * Set to false to send every cache read straight to Cassandra
+     */
+    @Key( "usergrid.cache.local.enabled" )
+    @Default( "true" )
+    boolean isLocalCacheEnabled();
+
+    /**
+     * Maximum number of serialized value bytes held in the in-process cache tier
+     */
+    @Key( "usergrid.cache.local.max.bytes" )
+    @Default( "33554432" )
+    long getLocalCacheMaxBytes();
+
+    /**
+     * Maximum time (in milliseconds) a value is served from the in-process tier before it is re-read from Cassandra.
+     * This bounds how stale a node can be after another node invalidates or removes a value.
+     */
+    @Key( "usergrid.cache.local.ttl" )
+    @Default( "5000" )
+    long getLocalCacheTtl();
+}
@@ -22,10 +22,12 @@ import com.google.inject.Key;
 import com.google.inject.TypeLiteral;
 import com.google.inject.multibindings.Multibinder;
 import org.apache.usergrid.persistence.cache.CacheFactory;
+import org.apache.usergrid.persistence.cache.CacheFig;
 import org.apache.usergrid.persistence.cache.impl.CacheFactoryImpl;
 import org.apache.usergrid.persistence.cache.impl.ScopedCacheSerialization;
 import org.apache.usergrid.persistence.cache.impl.ScopedCacheSerializationImpl;
 import org.apache.usergrid.persistence.core.migration.schema.Migration;
+import org.safehaus.guicyfig.GuicyFigModule;
 
 import java.util.Map;
 
@@ -38,6 +40,8 @@ public class CacheModule extends AbstractModule {
     @Override
     protected void configure() {
 
+        install( new GuicyFigModule( CacheFig.class ) );
+
         bind( CacheFactory.class ).to( CacheFactoryImpl.class );
 
         bind( ScopedCacheSerialization.class ).to( ScopedCacheSerializationImpl.class );
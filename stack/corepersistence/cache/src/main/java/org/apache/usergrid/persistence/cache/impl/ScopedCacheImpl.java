@@ -17,13 +17,13 @@
 package org.apache.usergrid.persistence.cache.impl;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.google.inject.Inject;
 import org.apache.usergrid.persistence.cache.CacheScope;
 import org.apache.usergrid.persistence.cache.ScopedCache;
 
 
 /**
- * Cache divided into scopes which can be individually invalidated.
+ * Cache divided into scopes which can be individually invalidated.  Reads are served from the in-process
+ * {@link ScopedNearCache} when possible and fall through to Cassandra otherwise.
  */
 public class ScopedCacheImpl<K,V> implements ScopedCache<K,V> {
 
@@ -31,27 +31,53 @@ public class ScopedCacheImpl<K,V> implements ScopedCache<K,V> {
 
     ScopedCacheSerialization<K,V> serializer;
 
-    public ScopedCacheImpl( CacheScope scope, ScopedCacheSerialization<K,V> serializer ) {
+    ScopedNearCache nearCache;
+
+    public ScopedCacheImpl( CacheScope scope, ScopedCacheSerialization<K,V> serializer, ScopedNearCache nearCache ) {
         this.scope = scope;
         this.serializer = serializer;
+        this.nearCache = nearCache;
     }
 
     @Override
     public V put(K key, V value, Integer ttl) {
-        return serializer.writeValue( scope, key, value, ttl );
+        final byte[] bytes = serializer.serializeValue( value );
+        serializer.writeBytes( scope, key, bytes, ttl );
+        nearCache.put( scope, key, bytes, ttl );
+        return value;
     }
 
     @Override
     public V get(K key, TypeReference typeRef ) {
-        return serializer.readValue( scope, key, typeRef );
+
+        byte[] bytes = nearCache.get( scope, key );
+
+        if ( bytes == null ) {
+
+            // taken before the read, an invalidate during the read must not leave the old value held locally
+            final long generation = nearCache.getGeneration( scope );
+
+            bytes = serializer.readBytes( scope, key );
+
+            if ( bytes == null ) {
+                return null;
+            }
+
+            // we don't know the remaining ttl in Cassandra, the local age limit bounds how long we hold it
+            nearCache.put( scope, key, bytes, null, generation );
+        }
+
+        return serializer.deserializeValue( bytes, typeRef );
     }
 
     public void remove( K key ) {
         serializer.removeValue( scope, key );
+        nearCache.remove( scope, key );
     }
 
     @Override
     public void invalidate() {
         serializer.invalidate(scope);
+        nearCache.invalidate( scope );
     }
 }
@@ -34,4 +34,16 @@ public interface ScopedCacheSerialization<K,V> extends Migration {
     void removeValue( CacheScope scope, K key );
 
     void invalidate( CacheScope scope );
+
+    /** Read the serialized form of a value, null if it is not present */
+    byte[] readBytes( CacheScope scope, K key );
+
+    /** Write a value that has already been serialized with {@link #serializeValue(Object)} */
+    void writeBytes( CacheScope scope, K key, byte[] bytes, Integer ttl );
+
+    /** Serialize a value into the form stored in Cassandra */
+    byte[] serializeValue( V value );
+
+    /** Deserialize a value previously serialized with {@link #serializeValue(Object)} */
+    V deserializeValue( byte[] bytes, TypeReference typeRef );
 }
@@ -101,12 +101,26 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
     @Override
     public V readValue(CacheScope scope, K key, TypeReference typeRef ) {
 
-        return readValueCQL( scope, key, typeRef);
+        final byte[] bytes = readBytesCQL( scope, key );
+
+        if ( bytes == null ) {
+            return null;
+        }
+
+        return deserializeValue( bytes, typeRef );
+
+    }
+
+
+    @Override
+    public byte[] readBytes( CacheScope scope, K key ) {
+
+        return readBytesCQL( scope, key );
 
     }
 
 
-    private V readValueCQL(CacheScope scope, K key, TypeReference typeRef){
+    private byte[] readBytesCQL(CacheScope scope, K key){
 
         Preconditions.checkNotNull(scope, "scope is required");
         Preconditions.checkNotNull(key, "key is required");
@@ -137,32 +151,72 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
             return null;
         }
 
+        return row.getBytes("value").array();
+
+    }
+
+
+    @Override
+    public V deserializeValue( byte[] bytes, TypeReference typeRef ) {
 
         try {
 
-            return MAPPER.readValue(row.getBytes("value").array(), typeRef);
+            return MAPPER.readValue(bytes, typeRef);
 
         } catch (IOException ioe) {
             logger.error("Unable to read cached value", ioe);
             throw new RuntimeException("Unable to read cached value", ioe);
         }
 
-
     }
 
 
     @Override
     public V writeValue(CacheScope scope, K key, V value, Integer ttl) {
 
-        return writeValueCQL( scope, key, value, ttl);
+        Preconditions.checkNotNull( value, "value is required");
+
+        writeBytesCQL( scope, key, serializeValue( value ), ttl );
+
+        logger.debug("Wrote cache item to scope {}\n   key/value types {}/{}\n   key:value: {}:{}",
+            scope.getApplication().getUuid(),
+            key.getClass().getSimpleName(),
+            value.getClass().getSimpleName(),
+            key,
+            value);
+
+        return value;
 
     }
 
-    private V writeValueCQL(CacheScope scope, K key, V value, Integer ttl) {
+
+    @Override
+    public void writeBytes( CacheScope scope, K key, byte[] bytes, Integer ttl ) {
+
+        writeBytesCQL( scope, key, bytes, ttl );
+
+    }
+
+
+    @Override
+    public byte[] serializeValue( V value ) {
+
+        Preconditions.checkNotNull( value, "value is required");
+
+        try {
+            return MAPPER.writeValueAsBytes(value);
+        } catch (JsonProcessingException jpe) {
+            throw new RuntimeException("Unable to serialize cache value", jpe);
+        }
+
+    }
+
+
+    private void writeBytesCQL(CacheScope scope, K key, byte[] cacheBytes, Integer ttl) {
 
         Preconditions.checkNotNull( scope, "scope is required");
         Preconditions.checkNotNull( key, "key is required" );
-        Preconditions.checkNotNull( value, "value is required");
+        Preconditions.checkNotNull( cacheBytes, "value is required");
         Preconditions.checkNotNull( ttl, "ttl is required");
 
 
@@ -172,21 +226,11 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
         // determine column name based on K key to string
         final String columnName = key.toString();
 
-        // serialize cache item
-        byte[] cacheBytes;
-        try {
-            cacheBytes = MAPPER.writeValueAsBytes(value);
-        } catch (JsonProcessingException jpe) {
-            throw new RuntimeException("Unable to serialize cache value", jpe);
-        }
-
         final Using timeToLive = QueryBuilder.ttl(ttl);
 
 
-        // convert to ByteBuffer for the blob DataType in Cassandra
-        final ByteBuffer bb = ByteBuffer.allocate(cacheBytes.length);
-        bb.put(cacheBytes);
-        bb.flip();
+        // wrap for the blob DataType in Cassandra
+        final ByteBuffer bb = ByteBuffer.wrap(cacheBytes);
 
         final Statement cacheEntry = QueryBuilder.insertInto(SCOPED_CACHE_TABLE)
             .using(timeToLive)
@@ -197,15 +241,6 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
 
         session.execute(cacheEntry);
 
-        logger.debug("Wrote cache item to scope {}\n   key/value types {}/{}\n   key:value: {}:{}",
-            scope.getApplication().getUuid(),
-            key.getClass().getSimpleName(),
-            value.getClass().getSimpleName(),
-            key,
-            value);
-
-        return value;
-
     }
 
 
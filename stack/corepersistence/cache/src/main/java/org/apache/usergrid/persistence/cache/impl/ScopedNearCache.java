@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache.impl;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.usergrid.persistence.cache.CacheFig;
+import org.apache.usergrid.persistence.cache.CacheScope;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * In-process tier that sits in front of the SCOPED_CACHE table.  Values are held in their serialized form so callers
+ * never share mutable instances, and so the tier can be bounded by the number of bytes it holds.
+ *
+ * Every scope has a generation number that is part of each entry's key.  Invalidating a scope only bumps the
+ * generation; entries written under older generations become unreachable and age out of the cache on their own.
+ */
+@Singleton
+public class ScopedNearCache {
+
+    /**
+     * Rough per entry overhead of the key, the entry and the cache segment references
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final boolean enabled;
+    private final long maxAgeMillis;
+
+    private final Cache<NearCacheKey, NearCacheEntry> entries;
+    private final ConcurrentMap<CacheScope, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final Meter hitMeter;
+    private final Meter missMeter;
+    private final Counter evictionCounter;
+
+
+    @Inject
+    public ScopedNearCache( final CacheFig cacheFig, final MetricsFactory metricsFactory ) {
+
+        this.enabled = cacheFig.isLocalCacheEnabled();
+        this.maxAgeMillis = cacheFig.getLocalCacheTtl();
+
+        this.hitMeter = metricsFactory.getMeter( ScopedNearCache.class, "near.cache.hit" );
+        this.missMeter = metricsFactory.getMeter( ScopedNearCache.class, "near.cache.miss" );
+        this.evictionCounter = metricsFactory.getCounter( ScopedNearCache.class, "near.cache.eviction" );
+
+        final RemovalListener<NearCacheKey, NearCacheEntry> evictionListener = notification -> {
+            if ( notification.wasEvicted() ) {
+                evictionCounter.inc();
+            }
+        };
+
+        this.entries = CacheBuilder.newBuilder()
+            .maximumWeight( cacheFig.getLocalCacheMaxBytes() )
+            .weigher( ( Weigher<NearCacheKey, NearCacheEntry> ) ( key, entry ) ->
+                ENTRY_OVERHEAD + key.key.length() * 2 + entry.bytes.length )
+            .expireAfterWrite( maxAgeMillis, TimeUnit.MILLISECONDS )
+            .removalListener( evictionListener )
+            .build();
+
+        metricsFactory.addGauge( ScopedNearCache.class, "near.cache.size", ( Gauge<Long> ) entries::size );
+    }
+
+
+    /**
+     * Get the serialized value for the key in the current generation of the scope.
+     *
+     * @return The bytes, or null if the value is not held locally
+     */
+    public byte[] get( final CacheScope scope, final Object key ) {
+
+        if ( !enabled ) {
+            return null;
+        }
+
+        final NearCacheEntry entry = entries.getIfPresent( toKey( scope, key ) );
+
+        if ( entry == null || entry.isExpired( System.currentTimeMillis() ) ) {
+            missMeter.mark();
+            return null;
+        }
+
+        hitMeter.mark();
+        return entry.bytes;
+    }
+
+
+    /**
+     * Hold the serialized value locally.
+     *
+     * @param ttl The time to live of the value in seconds, or null if only the local age limit applies
+     */
+    public void put( final CacheScope scope, final Object key, final byte[] bytes, final Integer ttl ) {
+
+        if ( !enabled ) {
+            return;
+        }
+
+        put( scope, key, bytes, ttl, getGeneration( scope ) );
+    }
+
+
+    /**
+     * Hold a value read from Cassandra locally, under the generation of the scope that was current before the read.
+     * If the scope was invalidated since, the value may predate the invalidation and is not held.
+     *
+     * @param ttl The time to live of the value in seconds, or null if only the local age limit applies
+     * @param generation The generation returned by {@link #getGeneration(CacheScope)} before the value was read
+     */
+    public void put( final CacheScope scope, final Object key, final byte[] bytes, final Integer ttl,
+                     final long generation ) {
+
+        if ( !enabled ) {
+            return;
+        }
+
+        Preconditions.checkNotNull( bytes, "bytes is required" );
+
+        if ( generation != getGeneration( scope ) ) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final long maxAge = ttl == null ? maxAgeMillis : Math.min( maxAgeMillis, TimeUnit.SECONDS.toMillis( ttl ) );
+
+        // keyed by the given generation, so an invalidate racing this put leaves the entry unreachable
+        entries.put( toKey( scope, generation, key ), new NearCacheEntry( bytes, now + maxAge ) );
+    }
+
+
+    /**
+     * Remove a single value from the current generation of the scope
+     */
+    public void remove( final CacheScope scope, final Object key ) {
+
+        if ( !enabled ) {
+            return;
+        }
+
+        entries.invalidate( toKey( scope, key ) );
+    }
+
+
+    /**
+     * Drop every locally held value of the scope by moving it to a new generation
+     */
+    public void invalidate( final CacheScope scope ) {
+
+        if ( !enabled ) {
+            return;
+        }
+
+        getGenerationCounter( scope ).incrementAndGet();
+    }
+
+
+    /**
+     * Get the current generation of the scope.  Capture it before reading a value from Cassandra and pass it to
+     * {@link #put(CacheScope, Object, byte[], Integer, long)}, so a read that races an invalidate is not held.
+     */
+    public long getGeneration( final CacheScope scope ) {
+
+        Preconditions.checkNotNull( scope, "scope is required" );
+
+        return getGenerationCounter( scope ).get();
+    }
+
+
+    private NearCacheKey toKey( final CacheScope scope, final Object key ) {
+
+        Preconditions.checkNotNull( scope, "scope is required" );
+
+        return toKey( scope, getGenerationCounter( scope ).get(), key );
+    }
+
+
+    private NearCacheKey toKey( final CacheScope scope, final long generation, final Object key ) {
+
+        Preconditions.checkNotNull( key, "key is required" );
+
+        return new NearCacheKey( scope, generation, key.toString() );
+    }
+
+
+    private AtomicLong getGenerationCounter( final CacheScope scope ) {
+
+        final AtomicLong generation = generations.get( scope );
+
+        if ( generation != null ) {
+            return generation;
+        }
+
+        final AtomicLong created = new AtomicLong();
+        final AtomicLong existing = generations.putIfAbsent( scope, created );
+
+        return existing == null ? created : existing;
+    }
+
+
+    private static final class NearCacheKey {
+
+        private final CacheScope scope;
+        private final long generation;
+        private final String key;
+
+
+        private NearCacheKey( final CacheScope scope, final long generation, final String key ) {
+            this.scope = scope;
+            this.generation = generation;
+            this.key = key;
+        }
+
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( !( o instanceof NearCacheKey ) ) {
+                return false;
+            }
+
+            final NearCacheKey that = ( NearCacheKey ) o;
+
+            return generation == that.generation && key.equals( that.key ) && scope.equals( that.scope );
+        }
+
+
+        @Override
+        public int hashCode() {
+            int result = scope.hashCode();
+            result = 31 * result + ( int ) ( generation ^ ( generation >>> 32 ) );
+            result = 31 * result + key.hashCode();
+            return result;
+        }
+    }
+
+
+    private static final class NearCacheEntry {
+
+        private final byte[] bytes;
+        private final long expiresAt;
+
+
+        private NearCacheEntry( final byte[] bytes, final long expiresAt ) {
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+
+
+        private boolean isExpired( final long now ) {
+            return now >= expiresAt;
+        }
+    }
+}
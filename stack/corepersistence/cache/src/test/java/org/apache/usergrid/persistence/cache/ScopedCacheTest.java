@@ -22,6 +22,11 @@ package org.apache.usergrid.persistence.cache;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.inject.Inject;
+import org.apache.usergrid.persistence.cache.impl.ScopedCacheImpl;
+import org.apache.usergrid.persistence.cache.impl.ScopedCacheSerialization;
+import org.apache.usergrid.persistence.cache.impl.ScopedNearCache;
+import org.apache.usergrid.persistence.core.astyanax.MultiTenantColumnFamilyDefinition;
+import org.apache.usergrid.persistence.core.datastax.TableDefinition;
 import org.apache.usergrid.persistence.core.guice.MigrationManagerRule;
 import org.apache.usergrid.persistence.core.test.ITRunner;
 import org.apache.usergrid.persistence.core.test.UseModules;
@@ -30,11 +35,18 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
 
 
@@ -47,6 +59,10 @@ public class ScopedCacheTest {
 
     @Inject protected CacheFactory<String, Map<String, Object>> cf;
 
+    @Inject protected ScopedNearCache nearCache;
+
+    @Inject protected ScopedCacheSerialization<String, Map<String, Object>> serialization;
+
     TypeReference typeRef = new TypeReference<HashMap<String, Object>>() {};
 
 
@@ -175,4 +191,171 @@ public class ScopedCacheTest {
 
         assertNull( cache.get("item", typeRef));
     }
+
+
+    @Test
+    public void testNearCache() {
+
+        CacheScope scope = new CacheScope( new SimpleId( "application" ) );
+        ScopedCache<String, Map<String, Object>> cache = cf.getScopedCache(scope);
+
+        Map<String, Object> item = new HashMap<String, Object>() {{
+            put("field1", "value1");
+        }};
+        cache.put("item", item, 60);
+
+        assertNotNull( "put should populate the local tier", nearCache.get( scope, "item" ) );
+
+        // values are held serialized, callers get their own copy
+        Map<String, Object> first = cache.get("item", typeRef);
+        first.put("field1", "changed");
+        assertEquals("value1", cache.get("item", typeRef).get("field1"));
+
+        cache.remove("item");
+        assertNull( nearCache.get( scope, "item" ) );
+
+        cache.put("item", item, 60);
+        cache.invalidate();
+        assertNull( nearCache.get( scope, "item" ) );
+        assertNull( cache.get("item", typeRef) );
+
+        // a read through from Cassandra populates the local tier again
+        cache.put("item", item, 60);
+        nearCache.invalidate( scope );
+        assertNotNull( cache.get("item", typeRef) );
+        assertNotNull( nearCache.get( scope, "item" ) );
+    }
+
+
+    @Test
+    public void testInvalidateDuringRead() throws Exception {
+
+        CacheScope scope = new CacheScope( new SimpleId( "application" ) );
+
+        final CountDownLatch readDone = new CountDownLatch( 1 );
+        final CountDownLatch invalidated = new CountDownLatch( 1 );
+
+        // a read from Cassandra that is held up until the scope has been invalidated
+        final SlowReadSerialization slowReads = new SlowReadSerialization( serialization, readDone, invalidated );
+        final ScopedCache<String, Map<String, Object>> cache = new ScopedCacheImpl<>( scope, slowReads, nearCache );
+
+        Map<String, Object> item = new HashMap<String, Object>() {{
+            put("field1", "value1");
+        }};
+        cache.put("item", item, 60);
+
+        // only in Cassandra, so the next get reads through
+        nearCache.remove( scope, "item" );
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            final Future<Map<String, Object>> read = executor.submit( () -> cache.get( "item", typeRef ) );
+
+            assertTrue( readDone.await( 10, TimeUnit.SECONDS ) );
+            cache.invalidate();
+            invalidated.countDown();
+
+            // the read started before the invalidate, so it may return the old value
+            assertEquals( "value1", read.get( 10, TimeUnit.SECONDS ).get( "field1" ) );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // but it must not be held locally past the invalidate
+        assertNull( nearCache.get( scope, "item" ) );
+        assertNull( cache.get( "item", typeRef ) );
+    }
+
+
+    /**
+     * Delegates to the real serialization, blocking each read after it completes until released
+     */
+    private static final class SlowReadSerialization implements ScopedCacheSerialization<String, Map<String, Object>> {
+
+        private final ScopedCacheSerialization<String, Map<String, Object>> delegate;
+        private final CountDownLatch readDone;
+        private final CountDownLatch release;
+
+
+        private SlowReadSerialization( final ScopedCacheSerialization<String, Map<String, Object>> delegate,
+                                       final CountDownLatch readDone, final CountDownLatch release ) {
+            this.delegate = delegate;
+            this.readDone = readDone;
+            this.release = release;
+        }
+
+
+        @Override
+        public byte[] readBytes( final CacheScope scope, final String key ) {
+            final byte[] bytes = delegate.readBytes( scope, key );
+
+            readDone.countDown();
+
+            try {
+                release.await( 10, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+
+            return bytes;
+        }
+
+
+        @Override
+        public Map<String, Object> readValue( final CacheScope scope, final String key, final TypeReference typeRef ) {
+            return delegate.readValue( scope, key, typeRef );
+        }
+
+
+        @Override
+        public Map<String, Object> writeValue( final CacheScope scope, final String key,
+                                               final Map<String, Object> value, final Integer ttl ) {
+            return delegate.writeValue( scope, key, value, ttl );
+        }
+
+
+        @Override
+        public void removeValue( final CacheScope scope, final String key ) {
+            delegate.removeValue( scope, key );
+        }
+
+
+        @Override
+        public void invalidate( final CacheScope scope ) {
+            delegate.invalidate( scope );
+        }
+
+
+        @Override
+        public void writeBytes( final CacheScope scope, final String key, final byte[] bytes, final Integer ttl ) {
+            delegate.writeBytes( scope, key, bytes, ttl );
+        }
+
+
+        @Override
+        public byte[] serializeValue( final Map<String, Object> value ) {
+            return delegate.serializeValue( value );
+        }
+
+
+        @Override
+        public Map<String, Object> deserializeValue( final byte[] bytes, final TypeReference typeRef ) {
+            return delegate.deserializeValue( bytes, typeRef );
+        }
+
+
+        @Override
+        public Collection<MultiTenantColumnFamilyDefinition> getColumnFamilies() {
+            return delegate.getColumnFamilies();
+        }
+
+
+        @Override
+        public Collection<TableDefinition> getTables() {
+            return delegate.getTables();
+        }
+    }
 }
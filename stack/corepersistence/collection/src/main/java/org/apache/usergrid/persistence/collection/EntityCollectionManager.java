@@ -26,6 +26,7 @@ import org.apache.usergrid.persistence.core.util.Health;
 import org.apache.usergrid.persistence.model.entity.Entity;
 import org.apache.usergrid.persistence.model.entity.Id;
 import org.apache.usergrid.persistence.model.field.Field;
+import org.apache.usergrid.persistence.model.field.FieldProjection;
 
 import rx.Observable;
 
@@ -101,6 +102,16 @@ public interface EntityCollectionManager {
      */
     Observable<EntitySet> load( Collection<Id> entityIds );
 
+    /**
+     * @param entityIds The entityIds for loading a collection
+     * @param projection The fields that will be selected from the loaded entities
+     * Load all the entityIds into the observable entity set.  Storage formats that support it only de-serialize the
+     * fields the projection may select, the caller is still responsible for applying the projection.
+     *
+     * @return An EntitySet with the latest data of every entity that could be located
+     */
+    Observable<EntitySet> load( Collection<Id> entityIds, FieldProjection projection );
+
     /**
      * Get all versions of the log entry, from min to max
      * @param entityId
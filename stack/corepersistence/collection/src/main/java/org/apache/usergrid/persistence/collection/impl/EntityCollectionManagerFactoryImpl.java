@@ -162,6 +162,7 @@ public class EntityCollectionManagerFactoryImpl implements EntityCollectionManag
         this.cassandraConfig =          cassandraConfig;
         this.session = session;
 
+        EntityLoadCoalescer.registerGauges( metricsFactory );
     }
 
     @Override
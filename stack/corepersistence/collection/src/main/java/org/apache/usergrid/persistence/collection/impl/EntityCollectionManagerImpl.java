@@ -58,6 +58,7 @@ import org.apache.usergrid.persistence.core.util.ValidationUtils;
 import org.apache.usergrid.persistence.model.entity.Entity;
 import org.apache.usergrid.persistence.model.entity.Id;
 import org.apache.usergrid.persistence.model.field.Field;
+import org.apache.usergrid.persistence.model.field.FieldProjection;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 import rx.Observable;
 import rx.Subscriber;
@@ -112,6 +113,8 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
     private final UniqueValuesService uniqueValuesService;
     private final ActorSystemManager actorSystemManager;
 
+    private final EntityLoadCoalescer loadCoalescer;
+
 
     @Inject
     public EntityCollectionManagerImpl(
@@ -174,6 +177,9 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
         this.loadTimer = metricsFactory.getTimer(EntityCollectionManagerImpl.class, "base.load");
         this.getLatestTimer = metricsFactory.getTimer(EntityCollectionManagerImpl.class, "base.latest");
 
+        this.loadCoalescer =
+            new EntityLoadCoalescer( entitySerializationStrategy, serializationFig, metricsFactory, applicationScope );
+
         this.cassandraConfig = cassandraConfig;
     }
 
@@ -203,7 +209,9 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
             return ioEvent;
 
         }) // now extract the ioEvent we need to return and update the version
-        .map( ioEvent -> ioEvent.getEvent().getEntity().get() );
+        .map( ioEvent -> ioEvent.getEvent().getEntity().get() )
+        //loads after this write must not share a read that started before it
+        .doOnNext( written -> loadCoalescer.invalidate( written.getId() ) );
 
         return ObservableTimer.time( write, writeTimer );
     }
@@ -218,7 +226,7 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
 
         Observable<Id> o = Observable.just( new CollectionIoEvent<>( applicationScope, entityId, region ) )
             .map( markStart ).doOnNext( markCommit ).compose( uniqueCleanup ).map(
-                entityEvent -> entityEvent.getEvent().getId() );
+                entityEvent -> entityEvent.getEvent().getId() ).doOnNext( loadCoalescer::invalidate );
 
         return ObservableTimer.time( o, deleteTimer );
     }
@@ -257,8 +265,36 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
             @Override
             public void call( final Subscriber<? super EntitySet> subscriber ) {
                 try {
-                    final EntitySet results =
-                        entitySerializationStrategy.load( applicationScope, entityIds, UUIDGenerator.newTimeUUID() );
+                    final EntitySet results = loadCoalescer.load( entityIds );
+
+                    subscriber.onNext( results );
+                    subscriber.onCompleted();
+                }
+                catch ( Exception e ) {
+                    subscriber.onError( e );
+                }
+            }
+        } );
+
+
+        return ObservableTimer.time( entitySetObservable, loadTimer );
+    }
+
+
+    @Override
+    public Observable<EntitySet> load( final Collection<Id> entityIds, final FieldProjection projection ) {
+
+        Preconditions.checkNotNull( entityIds, "entityIds cannot be null" );
+        Preconditions.checkNotNull( projection, "projection cannot be null" );
+
+        final Observable<EntitySet> entitySetObservable =
+            Observable.create( new Observable.OnSubscribe<EntitySet>() {
+
+            @Override
+            public void call( final Subscriber<? super EntitySet> subscriber ) {
+                try {
+                    final EntitySet results = entitySerializationStrategy
+                        .load( applicationScope, entityIds, UUIDGenerator.newTimeUUID(), projection );
 
                     subscriber.onNext( results );
                     subscriber.onCompleted();
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.persistence.collection.impl;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.usergrid.persistence.collection.EntitySet;
+import org.apache.usergrid.persistence.collection.MvccEntity;
+import org.apache.usergrid.persistence.collection.serialization.MvccEntitySerializationStrategy;
+import org.apache.usergrid.persistence.collection.serialization.SerializationFig;
+import org.apache.usergrid.persistence.collection.serialization.impl.EntitySetImpl;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+
+
+/**
+ * Coalesces concurrent loads of the latest version of entities within a single application scope.
+ *
+ * A caller asking for an id that another caller is already reading joins that read instead of issuing its own, as
+ * long as the read started less than the configured window ago.  Writes through this scope call {@link
+ * #invalidate(Id)} once they commit, so a caller never joins a read that started before its own last write.  Ids that
+ * are not in flight are queued, and the callers take turns draining the queue into reads of up to {@link
+ * SerializationFig#getMaxLoadSize()} ids, so many small concurrent loads become a few larger ones.  A caller stops
+ * draining once the batch holding its own ids has been taken, it never reads for callers queued behind it.  A window
+ * of 0 disables coalescing and every load goes straight to the serialization strategy.
+ */
+public class EntityLoadCoalescer {
+
+    private static final String REQUESTED = "base.load.coalesce.requested";
+    private static final String JOINED = "base.load.coalesce.joined";
+    private static final String READ = "base.load.coalesce.read";
+    private static final String BATCH_SIZE = "base.load.coalesce.batch_size";
+
+
+    private final MvccEntitySerializationStrategy entitySerializationStrategy;
+    private final SerializationFig serializationFig;
+    private final ApplicationScope applicationScope;
+
+    private final ConcurrentHashMap<Id, PendingLoad> inFlight = new ConcurrentHashMap<>();
+    private final Queue<PendingLoad> queued = new ConcurrentLinkedQueue<>();
+    private final Semaphore loaders;
+
+    private final Meter requestedMeter;
+    private final Meter joinedMeter;
+    private final Meter readMeter;
+    private final Histogram batchSizeHistogram;
+
+
+    public EntityLoadCoalescer( final MvccEntitySerializationStrategy entitySerializationStrategy,
+                                final SerializationFig serializationFig, final MetricsFactory metricsFactory,
+                                final ApplicationScope applicationScope ) {
+        this.entitySerializationStrategy = entitySerializationStrategy;
+        this.serializationFig = serializationFig;
+        this.applicationScope = applicationScope;
+        //fair, so callers take turns in the order they queued
+        this.loaders = new Semaphore( Math.max( 1, serializationFig.getLoadCoalesceConcurrency() ), true );
+
+        //meters are shared by every scope, the registry hands back the same instance for the same name
+        this.requestedMeter = metricsFactory.getMeter( EntityCollectionManagerImpl.class, REQUESTED );
+        this.joinedMeter = metricsFactory.getMeter( EntityCollectionManagerImpl.class, JOINED );
+        this.readMeter = metricsFactory.getMeter( EntityCollectionManagerImpl.class, READ );
+        this.batchSizeHistogram = metricsFactory.getHistogram( EntityCollectionManagerImpl.class, BATCH_SIZE );
+    }
+
+
+    /**
+     * Register the coalescing ratio gauge, the number of ids requested for every id actually read from cassandra.
+     * Must be called once per metrics registry.
+     */
+    public static void registerGauges( final MetricsFactory metricsFactory ) {
+        final Meter requested = metricsFactory.getMeter( EntityCollectionManagerImpl.class, REQUESTED );
+        final Meter read = metricsFactory.getMeter( EntityCollectionManagerImpl.class, READ );
+
+        metricsFactory.addGauge( EntityCollectionManagerImpl.class, "base.load.coalesce.ratio",
+            ( Gauge<Double> ) () -> read.getCount() == 0 ? 1.0 : ( double ) requested.getCount() / read.getCount() );
+    }
+
+
+    /**
+     * Load the latest version of the entities, sharing reads with any concurrent callers
+     */
+    public EntitySet load( final Collection<Id> entityIds ) {
+
+        final long window = TimeUnit.MILLISECONDS.toNanos( serializationFig.getLoadCoalesceWindow() );
+
+        //too big to share a batch with anyone, or turned off.  Let the strategy validate the size as it always has
+        if ( window <= 0 || entityIds.size() > serializationFig.getMaxLoadSize() ) {
+            return entitySerializationStrategy.load( applicationScope, entityIds, UUIDGenerator.newTimeUUID() );
+        }
+
+        final Collection<Id> distinct = new LinkedHashSet<>( entityIds );
+        final List<PendingLoad> pending = new ArrayList<>( distinct.size() );
+        final List<PendingLoad> created = new ArrayList<>( distinct.size() );
+
+        requestedMeter.mark( distinct.size() );
+
+        final long now = System.nanoTime();
+
+        for ( final Id entityId : distinct ) {
+            pending.add( joinOrQueue( entityId, now, window, created ) );
+        }
+
+        drain( created );
+
+        final EntitySetImpl results = new EntitySetImpl( pending.size() );
+
+        for ( final PendingLoad load : pending ) {
+            final MvccEntity entity = await( load );
+
+            if ( entity != null ) {
+                results.addEntity( entity );
+            }
+        }
+
+        return results;
+    }
+
+
+    /**
+     * Stop sharing any read of the id in flight.  Called once a write or delete of the entity commits, reads that
+     * are already in flight may have started before it and return the old version
+     */
+    public void invalidate( final Id entityId ) {
+        inFlight.remove( entityId );
+    }
+
+
+    /**
+     * Join a read of the id that started within the window, or queue a new one and add it to created
+     */
+    private PendingLoad joinOrQueue( final Id entityId, final long now, final long window,
+                                     final List<PendingLoad> created ) {
+        final PendingLoad load = new PendingLoad( entityId, now );
+
+        while ( true ) {
+            final PendingLoad existing = inFlight.get( entityId );
+
+            if ( existing != null && now - existing.started < window ) {
+                joinedMeter.mark();
+                return existing;
+            }
+
+            //either nothing is in flight, or the read in flight is too old to trust.  Replace it, the old read
+            //still completes for the callers already waiting on it
+            final boolean installed = existing == null ? inFlight.putIfAbsent( entityId, load ) == null :
+                                      inFlight.replace( entityId, existing, load );
+
+            if ( installed ) {
+                queued.add( load );
+                created.add( load );
+                return load;
+            }
+        }
+    }
+
+
+    /**
+     * Read queued batches, in queue order, until every load we queued has been taken by a reader.  Only the
+     * configured number of callers read at once, the rest wait their turn.  Every queued load has a caller draining
+     * until it's taken, so nothing is left behind, and no caller reads past the batch holding its own ids.
+     */
+    private void drain( final List<PendingLoad> created ) {
+        final int maxLoadSize = serializationFig.getMaxLoadSize();
+
+        if ( created.isEmpty() ) {
+            return;
+        }
+
+        //queued in order, so our last load is taken last
+        final PendingLoad last = created.get( created.size() - 1 );
+
+        while ( !last.taken ) {
+
+            //our loads have to be read even if we're interrupted, other callers may have joined them
+            loaders.acquireUninterruptibly();
+
+            try {
+                if ( !last.taken ) {
+                    read( takeBatch( maxLoadSize ) );
+                }
+            }
+            finally {
+                loaders.release();
+            }
+        }
+    }
+
+
+    /**
+     * Take the next batch from the head of the queue
+     */
+    private List<PendingLoad> takeBatch( final int maxLoadSize ) {
+        final List<PendingLoad> batch = new ArrayList<>();
+
+        PendingLoad next;
+
+        while ( batch.size() < maxLoadSize && ( next = queued.poll() ) != null ) {
+            next.taken = true;
+            batch.add( next );
+        }
+
+        return batch;
+    }
+
+
+    private void read( final List<PendingLoad> batch ) {
+        if ( batch.isEmpty() ) {
+            return;
+        }
+
+        final List<Id> entityIds = new ArrayList<>( batch.size() );
+
+        for ( final PendingLoad load : batch ) {
+            entityIds.add( load.entityId );
+        }
+
+        readMeter.mark( entityIds.size() );
+        batchSizeHistogram.update( entityIds.size() );
+
+        try {
+            final EntitySet results =
+                entitySerializationStrategy.load( applicationScope, entityIds, UUIDGenerator.newTimeUUID() );
+
+            for ( final PendingLoad load : batch ) {
+                inFlight.remove( load.entityId, load );
+                load.result.complete( results.getEntity( load.entityId ) );
+            }
+        }
+        catch ( Throwable t ) {
+            for ( final PendingLoad load : batch ) {
+                inFlight.remove( load.entityId, load );
+                load.result.completeExceptionally( t );
+            }
+        }
+    }
+
+
+    private static MvccEntity await( final PendingLoad load ) {
+        try {
+            return load.result.get();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while loading entity " + load.entityId, e );
+        }
+        catch ( ExecutionException e ) {
+            final Throwable cause = e.getCause();
+
+            if ( cause instanceof RuntimeException ) {
+                throw ( RuntimeException ) cause;
+            }
+
+            throw new RuntimeException( "Unable to load entity " + load.entityId, cause );
+        }
+    }
+
+
+    /**
+     * A read of a single id, shared by every caller that joins it
+     */
+    private static final class PendingLoad {
+
+        private final Id entityId;
+        private final long started;
+        private final CompletableFuture<MvccEntity> result = new CompletableFuture<>();
+        private volatile boolean taken;
+
+
+        private PendingLoad( final Id entityId, final long started ) {
+            this.entityId = entityId;
+            this.started = started;
+        }
+    }
+}
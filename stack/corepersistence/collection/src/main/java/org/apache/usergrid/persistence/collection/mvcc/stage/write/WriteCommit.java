@@ -216,7 +216,9 @@ public class WriteCommit implements Func1<CollectionIoEvent<MvccEntity>, Collect
         } catch (UniqueValueException e) {
 
             Map<String, Field> violations = new HashMap<>();
-            violations.put( e.getField().getName(), e.getField() );
+            for ( Field field : e.getFields() ) {
+                violations.put( field.getName(), field );
+            }
 
             throw new WriteUniqueVerifyException( mvccEntity, scope, violations  );
         }
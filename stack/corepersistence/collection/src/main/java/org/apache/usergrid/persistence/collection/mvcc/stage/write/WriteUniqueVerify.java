@@ -143,8 +143,11 @@ public class WriteUniqueVerify implements Action1<CollectionIoEvent<MvccEntity>>
             akkaUvService.reserveUniqueValues( applicationScope, entity, mvccEntity.getVersion(), authoritativeRegion );
 
         } catch (UniqueValueException e) {
+            // every unique field is reserved in one round, so report all of the violations at once
             Map<String, Field> violations = new HashMap<>();
-            violations.put( e.getField().getName(), e.getField() );
+            for ( Field field : e.getFields() ) {
+                violations.put( field.getName(), field );
+            }
             throw new WriteUniqueVerifyException( mvccEntity, applicationScope, violations  );
         }
     }
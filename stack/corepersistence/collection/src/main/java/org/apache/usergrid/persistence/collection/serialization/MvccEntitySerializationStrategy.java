@@ -29,6 +29,7 @@ import org.apache.usergrid.persistence.core.migration.data.VersionedData;
 import org.apache.usergrid.persistence.core.migration.schema.Migration;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.FieldProjection;
 
 import com.google.common.base.Optional;
 import com.netflix.astyanax.MutationBatch;
@@ -57,6 +58,13 @@ public interface MvccEntitySerializationStrategy extends Migration, VersionedDat
      */
     EntitySet load( ApplicationScope scope, Collection<Id> entityIds, UUID maxVersion );
 
+    /**
+     * Load the entities into the entitySet from the specified Ids, only de-serializing the fields the projection
+     * may select.  Implementations that cannot skip fields in their storage format return whole entities, so callers
+     * must still apply the projection to the loaded entities.
+     */
+    EntitySet load( ApplicationScope scope, Collection<Id> entityIds, UUID maxVersion, FieldProjection projection );
+
     /**
      * Load a list, from highest to lowest of the entity with versions <= version up to maxSize elements
      *
@@ -54,6 +54,36 @@ public interface SerializationFig extends GuicyFig {
     @Default( "5000000" )
     int getMaxEntitySize();
 
+    /**
+     * When true, entities are written in the compact binary format instead of JSON.  Both formats are always
+     * readable, only enable this once every node in the cluster runs a version that can read the compact format.
+     */
+    @Key( "collection.entity.compact.enabled" )
+    @Default( "false" )
+    boolean isCompactEntityFormatEnabled();
+
+    /**
+     * Compact entities larger than this number of bytes are LZ4 compressed before they are written
+     */
+    @Key( "collection.entity.compression.threshold" )
+    @Default( "1024" )
+    int getEntityCompressionThreshold();
+
+    /**
+     * Concurrent loads of the same entity join a read that started less than this many milliseconds ago instead of
+     * issuing their own.  0, the default, disables load coalescing
+     */
+    @Key( "collection.load.coalesce.window" )
+    @Default( "0" )
+    long getLoadCoalesceWindow();
+
+    /**
+     * The maximum number of coalesced reads in flight per application scope
+     */
+    @Key( "collection.load.coalesce.concurrency" )
+    @Default( "4" )
+    int getLoadCoalesceConcurrency();
+
     @Key ( "usergrid.uniqueverify.poolsize" )
     @Default( "150" )
     int getUniqueVerifyPoolSize();
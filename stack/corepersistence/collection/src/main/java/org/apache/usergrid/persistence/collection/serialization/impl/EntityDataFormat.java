@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.persistence.collection.serialization.impl;
+
+
+import java.nio.ByteBuffer;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+
+/**
+ * Detects and converts the storage formats of serialized entity data.  Stored values are one of
+ *
+ * JSON, which always starts with '{'
+ *
+ * Smile, which always starts with the ":)\n" header
+ *
+ * LZ4 compressed Smile, a marker byte and the uncompressed length followed by a single LZ4 block
+ */
+final class EntityDataFormat {
+
+    /**
+     * Neither valid JSON nor Smile can start with this byte
+     */
+    private static final byte LZ4_MARKER = 0x01;
+
+    private static final int LZ4_HEADER_SIZE = 1 + 4;
+
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+
+
+    private EntityDataFormat() {}
+
+
+    /**
+     * @return true if the (uncompressed) data is in the Smile format
+     */
+    static boolean isSmile( final byte[] data ) {
+        return data.length >= 3 && data[0] == ':' && data[1] == ')' && data[2] == '\n';
+    }
+
+
+    /**
+     * Compress the data if it's larger than the threshold
+     */
+    static byte[] compress( final byte[] data, final int threshold ) {
+
+        if ( data.length <= threshold ) {
+            return data;
+        }
+
+        final LZ4Compressor compressor = LZ4_FACTORY.fastCompressor();
+
+        final byte[] compressed = new byte[LZ4_HEADER_SIZE + compressor.maxCompressedLength( data.length )];
+
+        final int compressedLength =
+            compressor.compress( data, 0, data.length, compressed, LZ4_HEADER_SIZE, compressed.length - LZ4_HEADER_SIZE );
+
+        //not worth it, store it as is
+        if ( compressedLength + LZ4_HEADER_SIZE >= data.length ) {
+            return data;
+        }
+
+        ByteBuffer.wrap( compressed ).put( LZ4_MARKER ).putInt( data.length );
+
+        final byte[] trimmed = new byte[LZ4_HEADER_SIZE + compressedLength];
+        System.arraycopy( compressed, 0, trimmed, 0, trimmed.length );
+
+        return trimmed;
+    }
+
+
+    /**
+     * Decompress the data if it was compressed, otherwise return it as is.  Callers treat failures here as data
+     * corruption.
+     */
+    static byte[] decompress( final byte[] data ) {
+
+        if ( data.length == 0 || data[0] != LZ4_MARKER ) {
+            return data;
+        }
+
+        if ( data.length < LZ4_HEADER_SIZE ) {
+            throw new IllegalArgumentException( "Compressed entity data is missing its header" );
+        }
+
+        final int length = ByteBuffer.wrap( data, 1, 4 ).getInt();
+
+        final byte[] decompressed = new byte[length];
+
+        LZ4_FACTORY.fastDecompressor().decompress( data, LZ4_HEADER_SIZE, decompressed, 0, length );
+
+        return decompressed;
+    }
+}
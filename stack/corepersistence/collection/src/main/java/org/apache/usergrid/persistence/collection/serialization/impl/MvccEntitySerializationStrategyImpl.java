@@ -50,6 +50,7 @@ import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.model.entity.Entity;
 import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.FieldProjection;
 import org.apache.usergrid.persistence.model.util.EntityUtils;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 
@@ -113,6 +114,15 @@ public abstract class MvccEntitySerializationStrategyImpl implements MvccEntityS
     }
 
 
+    @Override
+    public EntitySet load( final ApplicationScope applicationScope, final Collection<Id> entityIds,
+                           final UUID maxVersion, final FieldProjection projection ) {
+
+        //the field serialization can't skip fields, load the whole entity and let the caller project it
+        return load( applicationScope, entityIds, maxVersion );
+    }
+
+
     @Override
     public EntitySet load( final ApplicationScope applicationScope, final Collection<Id> entityIds,
                            final UUID maxVersion ) {
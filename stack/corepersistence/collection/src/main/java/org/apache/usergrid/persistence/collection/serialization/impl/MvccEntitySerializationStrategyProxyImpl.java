@@ -33,6 +33,7 @@ import org.apache.usergrid.persistence.core.migration.data.MigrationRelationship
 import org.apache.usergrid.persistence.core.migration.data.VersionedMigrationSet;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.FieldProjection;
 
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
@@ -97,6 +98,20 @@ public class MvccEntitySerializationStrategyProxyImpl implements MvccEntitySeria
     }
 
 
+    @Override
+    public EntitySet load( final ApplicationScope scope, final Collection<Id> entityIds, final UUID maxVersion,
+                           final FieldProjection projection ) {
+
+        final MigrationRelationship<MvccEntitySerializationStrategy> migration = getMigrationRelationShip();
+
+        if ( migration.needsMigration() ) {
+            return migration.from.load( scope, entityIds, maxVersion, projection );
+        }
+
+        return migration.to.load( scope, entityIds, maxVersion, projection );
+    }
+
+
 
     @Override
     public Iterator<MvccEntity> loadDescendingHistory( final ApplicationScope context, final Id entityId,
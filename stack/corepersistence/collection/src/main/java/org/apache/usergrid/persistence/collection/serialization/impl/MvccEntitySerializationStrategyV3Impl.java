@@ -1,6 +1,7 @@
 package org.apache.usergrid.persistence.collection.serialization.impl;
 
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -13,8 +14,12 @@ import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import com.netflix.astyanax.serializers.StringSerializer;
 import org.apache.usergrid.persistence.core.datastax.TableDefinition;
 import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
@@ -43,6 +48,7 @@ import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.model.entity.Entity;
 import org.apache.usergrid.persistence.model.entity.EntityMap;
 import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.FieldProjection;
 import org.apache.usergrid.persistence.model.util.EntityUtils;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 
@@ -125,6 +131,25 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
     @Override
     public EntitySet load( final ApplicationScope applicationScope, final Collection<Id> entityIds,
                            final UUID maxVersion ) {
+        return doLoad( applicationScope, entityIds, maxVersion, null );
+    }
+
+
+    @Override
+    public EntitySet load( final ApplicationScope applicationScope, final Collection<Id> entityIds,
+                           final UUID maxVersion, final FieldProjection projection ) {
+
+        Preconditions.checkNotNull( projection, "projection is required" );
+
+        return doLoad( applicationScope, entityIds, maxVersion, projection.isEmpty() ? null : projection );
+    }
+
+
+    /**
+     * Load the entities, de-serializing only the fields the projection may select if one is present
+     */
+    private EntitySet doLoad( final ApplicationScope applicationScope, final Collection<Id> entityIds,
+                              final UUID maxVersion, final FieldProjection projection ) {
 
 
         Preconditions.checkNotNull( applicationScope, "applicationScope is required" );
@@ -216,7 +241,7 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
                     final Column<Boolean> column = columns.getColumnByIndex( 0 );
 
                     final MvccEntity parsedEntity =
-                        new MvccColumnParser( entityId, entitySerializer ).parseColumn( column );
+                        new MvccColumnParser( entityId, entitySerializer, projection ).parseColumn( column );
 
 
                     entitySet.addEntity( parsedEntity );
@@ -343,12 +368,15 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
     private static final class MvccColumnParser implements ColumnParser<Boolean, MvccEntity> {
 
         private final Id id;
-        private final AbstractSerializer<EntityWrapper> entityJsonSerializer;
+        private final EntitySerializer entityJsonSerializer;
+        private final FieldProjection projection;
 
 
-        private MvccColumnParser( final Id id, final AbstractSerializer<EntityWrapper> entityJsonSerializer ) {
+        private MvccColumnParser( final Id id, final EntitySerializer entityJsonSerializer,
+                                  final FieldProjection projection ) {
             this.id = id;
             this.entityJsonSerializer = entityJsonSerializer;
+            this.projection = projection;
         }
 
 
@@ -358,7 +386,12 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
             final EntityWrapper deSerialized;
 
             try {
-                deSerialized = column.getValue( entityJsonSerializer );
+                if ( projection == null ) {
+                    deSerialized = column.getValue( entityJsonSerializer );
+                }
+                else {
+                    deSerialized = entityJsonSerializer.fromByteBuffer( column.getByteBufferValue(), projection );
+                }
             }
             catch ( DataCorruptionException e ) {
                 log.error(
@@ -383,6 +416,10 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
         private final JsonFactory  JSON_FACTORY = new JsonFactory();
 
         private final ObjectMapper MAPPER = new ObjectMapper( JSON_FACTORY );
+
+        private final SmileFactory SMILE_FACTORY = new SmileFactory();
+
+        private final ObjectMapper SMILE_MAPPER = new ObjectMapper( SMILE_FACTORY );
         private final Histogram bytesInHistorgram;
         private final Histogram bytesOutHistorgram;
         private final Timer bytesOutTimer;
@@ -400,6 +437,12 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
             //                mapper.enable(SerializationFeature.INDENT_OUTPUT); don't indent output,
             // causes slowness
             MAPPER.enableDefaultTypingAsProperty( ObjectMapper.DefaultTyping.JAVA_LANG_OBJECT, "@class" );
+
+            //back reference repeated field names and short strings such as the "@class" type names instead of
+            //writing them out in every nested value
+            SMILE_FACTORY.enable( SmileGenerator.Feature.CHECK_SHARED_NAMES );
+            SMILE_FACTORY.enable( SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES );
+            SMILE_MAPPER.enableDefaultTypingAsProperty( ObjectMapper.DefaultTyping.JAVA_LANG_OBJECT, "@class" );
         }
 
 
@@ -413,7 +456,7 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
             if (wrapper.getEntityMap() == null) {
                 //we're empty
                 try {
-                    return ByteBuffer.wrap(MAPPER.writeValueAsBytes(wrapper));
+                    return ByteBuffer.wrap(getWriteMapper().writeValueAsBytes(wrapper));
                 } catch (JsonProcessingException jpe) {
                     throw new RuntimeException("Unable to serialize entity", jpe);
                 }
@@ -428,7 +471,7 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
 
             //Convert to internal entity map
             try {
-                wrapperBytes = MAPPER.writeValueAsBytes(wrapper);
+                wrapperBytes = getWriteMapper().writeValueAsBytes(wrapper);
 
                 final int maxEntrySize = serializationFig.getMaxEntitySize();
 
@@ -442,10 +485,32 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
                 throw new RuntimeException("Unable to serialize entity", jpe);
             }
 
+            if ( serializationFig.isCompactEntityFormatEnabled() ) {
+                return ByteBuffer.wrap(
+                    EntityDataFormat.compress( wrapperBytes, serializationFig.getEntityCompressionThreshold() ) );
+            }
+
             return ByteBuffer.wrap(wrapperBytes);
         }
 
 
+        /**
+         * Get the mapper new data is written with
+         */
+        private ObjectMapper getWriteMapper() {
+            return serializationFig.isCompactEntityFormatEnabled() ? SMILE_MAPPER : MAPPER;
+        }
+
+
+        /**
+         * Get the mapper that reads data in this (uncompressed) format.  JSON and compact data can live side by side,
+         * JSON is rewritten in the compact format the next time the entity is written.
+         */
+        private ObjectMapper getReadMapper( final byte[] data ) {
+            return EntityDataFormat.isSmile( data ) ? SMILE_MAPPER : MAPPER;
+        }
+
+
         @Override
         public EntityWrapper fromByteBuffer( final ByteBuffer byteBuffer ) {
 
@@ -464,7 +529,8 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
                 Timer.Context time = bytesOutTimer.time();
                 byte[] arr = byteBuffer.array();
                 bytesOutHistorgram.update( arr == null ? 0 : arr.length);
-                entityWrapper = MAPPER.readValue(arr, EntityWrapper.class);
+                final byte[] data = EntityDataFormat.decompress( arr );
+                entityWrapper = getReadMapper( data ).readValue(data, EntityWrapper.class);
                 entityWrapper.size = arr.length;
                 time.stop();
             }
@@ -485,6 +551,99 @@ public class MvccEntitySerializationStrategyV3Impl implements MvccEntitySerializ
             // it's partial by default
             return entityWrapper;
         }
+
+
+        /**
+         * De-serialize the wrapper, only reading entity map values whose top level name the projection includes.
+         * Every other value is skipped in the parser without being bound.
+         */
+        public EntityWrapper fromByteBuffer( final ByteBuffer byteBuffer, final FieldProjection projection ) {
+
+            final EntityWrapper entityWrapper = new EntityWrapper();
+
+            try {
+                Timer.Context time = bytesOutTimer.time();
+                byte[] arr = byteBuffer.array();
+                bytesOutHistorgram.update( arr == null ? 0 : arr.length);
+
+                final byte[] data = EntityDataFormat.decompress( arr );
+                final ObjectMapper mapper = getReadMapper( data );
+
+                try ( JsonParser jp = mapper.getFactory().createParser( data ) ) {
+
+                    if ( jp.nextToken() != JsonToken.START_OBJECT ) {
+                        throw new IOException( "Expected the start of the entity wrapper" );
+                    }
+
+                    while ( jp.nextToken() == JsonToken.FIELD_NAME ) {
+                        final String name = jp.getCurrentName();
+                        jp.nextToken();
+
+                        switch ( name ) {
+                            case "id":
+                                entityWrapper.id = mapper.readValue( jp, Id.class );
+                                break;
+                            case "version":
+                                entityWrapper.version = mapper.readValue( jp, UUID.class );
+                                break;
+                            case "entityMap":
+                                entityWrapper.entityMap = readEntityMap( mapper, jp, projection );
+                                break;
+                            default:
+                                jp.skipChildren();
+                        }
+                    }
+                }
+
+                entityWrapper.size = arr.length;
+                time.stop();
+            }
+            catch ( Exception e ) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Entity Wrapper Deserialized: " + StringSerializer.get().fromByteBuffer(byteBuffer));
+                }
+                throw new DataCorruptionException("Unable to read entity data", e);
+            }
+
+            // it's been deleted, remove it
+            if ( entityWrapper.getEntityMap() == null) {
+                return new EntityWrapper( entityWrapper.getId(), entityWrapper.getVersion(),MvccEntity.Status.DELETED,null,0 );
+            }
+
+            entityWrapper.setStatus(MvccEntity.Status.COMPLETE);
+
+            return entityWrapper;
+        }
+
+
+        private EntityMap readEntityMap( final ObjectMapper mapper, final JsonParser jp,
+                                         final FieldProjection projection ) throws IOException {
+
+            if ( jp.getCurrentToken() == JsonToken.VALUE_NULL ) {
+                return null;
+            }
+
+            if ( jp.getCurrentToken() != JsonToken.START_OBJECT ) {
+                throw new IOException( "Expected the start of the entity map" );
+            }
+
+            final EntityMap entityMap = new EntityMap();
+
+            while ( jp.nextToken() == JsonToken.FIELD_NAME ) {
+                final String fieldName = jp.getCurrentName();
+                jp.nextToken();
+
+                if ( projection.includes( fieldName ) ) {
+                    //values are Object typed, so they carry the same default typing as when the map is bound whole
+                    entityMap.put( fieldName, mapper.readValue( jp, Object.class ) );
+                }
+                else {
+                    jp.skipChildren();
+                }
+            }
+
+            return entityMap;
+        }
     }
 
     /**
@@ -16,37 +16,70 @@
  */
 package org.apache.usergrid.persistence.collection.uniquevalues;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheStats;
-import org.apache.usergrid.persistence.actorsystem.ClientActor;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.model.entity.Id;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.TimeUnit;
 
 
+/**
+ * Local cache of unique value reservations, kept up to date by the {@link ReservationCacheActor}.
+ *
+ * Reservations held by other owners let a reservation fail without a round trip.  A second, short lived cache remembers
+ * values the actors recently granted to an owner, so the same owner reserving the same value again (every update of an
+ * entity re-reserves its unique fields) can skip the round trip.  Those entries are dropped as soon as another owner's
+ * reservation, a cancellation or a failed response for the value is seen.
+ */
 public class ReservationCache {
-    private static final Logger logger = LoggerFactory.getLogger( ClientActor.class );
+    private static final Logger logger = LoggerFactory.getLogger( ReservationCache.class );
 
     Cache<String, UniqueValueActor.Reservation> cache;
+    Cache<String, Id> freeCache;
     long ttl;
+    long freeTtl;
+
+    private final Meter hitMeter;
+    private final Meter missMeter;
+    private final Meter freeHitMeter;
 
     // use hokey old-style singleton because its not that easy to get Guice into an actor
     private static ReservationCache instance = null;
 
-    ReservationCache( long ttl ) {
-        this.ttl = ttl;
+    ReservationCache( UniqueValuesFig uniqueValuesFig, MetricsFactory metricsFactory ) {
+        this.ttl = uniqueValuesFig.getUniqueValueCacheTtl();
+        this.freeTtl = uniqueValuesFig.getUniqueValueFreeCacheTtl();
+
         cache = CacheBuilder.newBuilder()
-            .maximumSize(1000)
-            .concurrencyLevel( 300 )
-            .expireAfterWrite(ttl, TimeUnit.SECONDS)
+            .maximumSize( uniqueValuesFig.getUniqueValueCacheSize() )
+            .concurrencyLevel( uniqueValuesFig.getUniqueValueCacheConcurrency() )
+            .expireAfterWrite( ttl, TimeUnit.SECONDS )
             .recordStats()
             .build();
+
+        freeCache = CacheBuilder.newBuilder()
+            .maximumSize( uniqueValuesFig.getUniqueValueCacheSize() )
+            .concurrencyLevel( uniqueValuesFig.getUniqueValueCacheConcurrency() )
+            .expireAfterWrite( freeTtl, TimeUnit.MILLISECONDS )
+            .build();
+
+        hitMeter = metricsFactory.getMeter( ReservationCache.class, "reservation.cache.hit" );
+        missMeter = metricsFactory.getMeter( ReservationCache.class, "reservation.cache.miss" );
+        freeHitMeter = metricsFactory.getMeter( ReservationCache.class, "reservation.cache.free.hit" );
+
+        metricsFactory.addGauge( ReservationCache.class, "reservation.cache.size", ( Gauge<Long> ) cache::size );
+        metricsFactory.addGauge( ReservationCache.class, "reservation.cache.free.size",
+            ( Gauge<Long> ) freeCache::size );
     }
 
-    public static void init( long ttl ) {
-        instance = new ReservationCache( ttl );
+    public static void init( UniqueValuesFig uniqueValuesFig, MetricsFactory metricsFactory ) {
+        instance = new ReservationCache( uniqueValuesFig, metricsFactory );
     }
 
     public static ReservationCache getInstance() {
@@ -59,20 +92,53 @@ public class ReservationCache {
     public UniqueValueActor.Reservation get( String rowKey ) {
         if ( ttl == 0 ) { return null; }
         UniqueValueActor.Reservation res = cache.getIfPresent( rowKey );
+        ( res != null ? hitMeter : missMeter ).mark();
         return res;
     }
 
+    /**
+     * True if the actors granted this value to the owner within the free cache TTL
+     */
+    public boolean isFree( String rowKey, Id owner ) {
+        if ( freeTtl == 0 ) { return false; }
+        Id freeFor = freeCache.getIfPresent( rowKey );
+        if ( freeFor != null && freeFor.equals( owner ) ) {
+            freeHitMeter.mark();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remember that the actors granted this value to the owner
+     */
+    public void cacheFree( String rowKey, Id owner ) {
+        if ( freeTtl == 0 ) { return; }
+        freeCache.put( rowKey, owner );
+    }
+
     public void cacheReservation( UniqueValueActor.Reservation reservation ) {
+        Id freeFor = freeCache.getIfPresent( reservation.getConsistentHashKey() );
+        if ( freeFor != null && !freeFor.equals( reservation.getOwner() ) ) {
+            freeCache.invalidate( reservation.getConsistentHashKey() );
+        }
+
         if ( ttl == 0 ) { return; }
         cache.put( reservation.getConsistentHashKey(), reservation );
     }
 
     public void cancelReservation( UniqueValueActor.Cancellation cancellation ) {
+        freeCache.invalidate( cancellation.getConsistentHashKey() );
+
         if ( ttl == 0 ) { return; }
         cache.invalidate( cancellation.getConsistentHashKey() );
     }
 
     public void cancelReservation( UniqueValueActor.Response response ) {
+        if ( response.getStatus() != UniqueValueActor.Response.Status.IS_UNIQUE ) {
+            freeCache.invalidate( response.getConsistentHashKey() );
+        }
+
         if ( ttl == 0 ) { return; }
         cache.invalidate( response.getConsistentHashKey() );
     }
@@ -17,17 +17,34 @@
  */
 package org.apache.usergrid.persistence.collection.uniquevalues;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.usergrid.persistence.model.field.Field;
 
 public class UniqueValueException extends Exception {
-    final Field field;
+    final List<Field> fields;
 
     public UniqueValueException(String message, Field field ) {
+        this( message, Collections.singletonList( field ) );
+    }
+
+    public UniqueValueException(String message, List<Field> fields ) {
         super( message );
-        this.field = field;
+        this.fields = fields;
     }
 
+    /**
+     * The first field that is not unique
+     */
     public Field getField() {
-        return field;
+        return fields.get( 0 );
+    }
+
+    /**
+     * Every field that is not unique
+     */
+    public List<Field> getFields() {
+        return fields;
     }
 }
@@ -40,6 +40,12 @@ public interface UniqueValuesFig extends GuicyFig, Serializable {
 
     String UNIQUEVALUE_REQUEST_RETRY_COUNT = "collection.uniquevalues.request.retrycount";
 
+    String UNIQUEVALUE_CACHE_SIZE = "collection.uniquevalues.cache.size";
+
+    String UNIQUEVALUE_CACHE_CONCURRENCY = "collection.uniquevalues.cache.concurrency";
+
+    String UNIQUEVALUE_CACHE_FREE_TTL = "collection.uniquevalues.cache.free.ttl";
+
 
     /**
      * Unique Value cache TTL in seconds.
@@ -81,4 +87,26 @@ public interface UniqueValuesFig extends GuicyFig, Serializable {
     @Key(UNIQUEVALUE_REQUEST_RETRY_COUNT)
     @Default("2")
     int getRequestRetryCount();
+
+    /**
+     * Max number of reservations held in the local reservation cache.
+     */
+    @Key(UNIQUEVALUE_CACHE_SIZE)
+    @Default("10000")
+    int getUniqueValueCacheSize();
+
+    /**
+     * Number of concurrent writers the local reservation cache is sized for.
+     */
+    @Key(UNIQUEVALUE_CACHE_CONCURRENCY)
+    @Default("16")
+    int getUniqueValueCacheConcurrency();
+
+    /**
+     * Milliseconds to remember that a value was granted to an owner, so the same owner reserving it again can skip
+     * the round trip to the unique value actors.  Must be shorter than the reservation TTL, 0 disables.
+     */
+    @Key(UNIQUEVALUE_CACHE_FREE_TTL)
+    @Default("2000")
+    long getUniqueValueFreeCacheTtl();
 }
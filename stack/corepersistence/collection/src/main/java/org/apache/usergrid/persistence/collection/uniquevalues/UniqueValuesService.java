@@ -42,7 +42,7 @@ public interface UniqueValuesService extends RouterProducer {
      * @param entity Entity with unique values to be confirmed.
      * @param version Version of entity claiming unique values.
      * @param region Authoritative Region to be used for this entity or null to use current region.
-     * @throws UniqueValueException if unique values cannot be confirmed.
+     * @throws UniqueValueException if unique values cannot be confirmed, with every field that is not unique.
      */
     void reserveUniqueValues( ApplicationScope scope, Entity entity, UUID version, String region )
         throws UniqueValueException;
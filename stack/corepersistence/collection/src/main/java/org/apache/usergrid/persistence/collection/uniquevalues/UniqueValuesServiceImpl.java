@@ -35,6 +35,7 @@ import com.google.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.usergrid.persistence.actorsystem.ActorSystemManager;
 import org.apache.usergrid.persistence.actorsystem.GuiceActorProducer;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.model.entity.Entity;
 import org.apache.usergrid.persistence.model.entity.Id;
@@ -64,14 +65,15 @@ public class UniqueValuesServiceImpl implements UniqueValuesService {
         Injector inj,
         UniqueValuesFig uniqueValuesFig,
         ActorSystemManager actorSystemManager,
-        UniqueValuesTable table ) {
+        UniqueValuesTable table,
+        MetricsFactory metricsFactory ) {
 
         injector = inj;
         this.actorSystemManager = actorSystemManager;
         this.uniqueValuesFig = uniqueValuesFig;
         this.table = table;
 
-        ReservationCache.init( uniqueValuesFig.getUniqueValueCacheTtl() );
+        ReservationCache.init( uniqueValuesFig, metricsFactory );
         this.reservationCache = ReservationCache.getInstance();
     }
 
@@ -92,93 +94,201 @@ public class UniqueValuesServiceImpl implements UniqueValuesService {
     public void reserveUniqueValues(
         ApplicationScope scope, Entity entity, UUID version, String region ) throws UniqueValueException {
 
+        throwIfViolated( sendRequests( scope, entity, version, region, true ) );
+    }
+
+
+    @Override
+    public void confirmUniqueValues(
+        ApplicationScope scope, Entity entity, UUID version, String region ) throws UniqueValueException {
+
+        throwIfViolated( sendRequests( scope, entity, version, region, false ) );
+    }
+
+
+    /**
+     * Send a reservation or confirmation for every unique field of the entity, then wait for all of the responses.
+     * Every unique field is cancelled if any of them is violated.
+     *
+     * @return the violating fields
+     */
+    private List<Field> sendRequests(
+        ApplicationScope scope, Entity entity, UUID version, String requestedRegion, boolean reserve ) {
+
         ready();
 
-        try {
-            for (Field field : entity.getFields()) {
-                if (field.isUnique()) {
-                    reserveUniqueField( scope, entity, version, field, region );
-                }
+        String region = requestedRegion;
+        if ( StringUtils.isEmpty( region ) ) {
+            region = uniqueValuesFig.getAuthoritativeRegion();
+        }
+        if ( StringUtils.isEmpty( region ) ) {
+            region = actorSystemManager.getCurrentRegion();
+        }
+
+        final List<Field> violations = new ArrayList<>();
+        final List<UniqueValueActor.Request> requests = new ArrayList<>();
+
+        for ( Field field : entity.getFields() ) {
+            if ( !field.isUnique() ) {
+                continue;
             }
 
-        } catch ( UniqueValueException e ) {
+            if ( !reserve ) {
+                requests.add( new UniqueValueActor.Confirmation( scope, entity.getId(), version, field ) );
+                continue;
+            }
 
-            for (Field field : entity.getFields()) {
-                if (field.isUnique()) {
-                    try {
-                        cancelUniqueField( scope, entity, version, field, region );
-                    } catch (Throwable ignored) {
-                        logger.error( "Error canceling unique field", ignored );
-                    }
-                }
+            UniqueValueActor.Reservation request = new UniqueValueActor.Reservation(
+                scope, entity.getId(), version, field );
+
+            UniqueValueActor.Reservation res = reservationCache.get( request.getConsistentHashKey() );
+
+            if ( res != null && !res.getOwner().equals( request.getOwner() ) ) {
+                logger.debug( "Error property not unique (cache) for entity {} rowkey {}",
+                    request.getOwner().getUuid(), request.getConsistentHashKey() );
+                violations.add( field );
+                continue;
+            }
+
+            // this owner was granted the value moments ago, no need to ask again
+            if ( reservationCache.isFree( request.getConsistentHashKey(), request.getOwner() ) ) {
+                continue;
             }
-            throw e;
+
+            requests.add( request );
         }
-    }
 
+        final Map<UniqueValueActor.Request, UniqueValueActor.Response> responses = askAll( requests, region );
 
-    @Override
-    public void confirmUniqueValues(
-        ApplicationScope scope, Entity entity, UUID version, String region ) throws UniqueValueException {
+        for ( Map.Entry<UniqueValueActor.Request, UniqueValueActor.Response> entry : responses.entrySet() ) {
 
-        ready();
+            final UniqueValueActor.Request request = entry.getKey();
+            final UniqueValueActor.Response.Status status = entry.getValue().getStatus();
 
-        try {
-            for (Field field : entity.getFields()) {
-                if (field.isUnique()) {
-                    confirmUniqueField( scope, entity, version, field, region );
-                }
-            }
+            if ( status.equals( UniqueValueActor.Response.Status.NOT_UNIQUE ) ) {
+                violations.add( request.getField() );
 
-        } catch ( UniqueValueException e ) {
+            } else if ( reserve && status.equals( UniqueValueActor.Response.Status.IS_UNIQUE ) ) {
+                reservationCache.cacheFree( request.getConsistentHashKey(), request.getOwner() );
+            }
+        }
 
-            for (Field field : entity.getFields()) {
-                if (field.isUnique()) {
+        if ( !violations.isEmpty() ) {
+            for ( Field field : entity.getFields() ) {
+                if ( field.isUnique() ) {
                     try {
-                        cancelUniqueField( scope, entity, version, field, region );
-                    } catch (Throwable ex ) {
+                        cancelUniqueField( scope, entity.getId(), version, field, region );
+                    } catch ( Throwable ex ) {
                         logger.error( "Error canceling unique field", ex );
                     }
                 }
             }
-            throw e;
         }
 
+        return violations;
     }
 
 
-    private void reserveUniqueField(
-        ApplicationScope scope, Entity entity, UUID version, Field field, String region ) throws UniqueValueException {
+    /**
+     * Send all of the requests at once, then wait for their responses.  Requests that time out or fail are resent
+     * together, up to the retry count.
+     *
+     * @return the responses, every request has an IS_UNIQUE, NOT_UNIQUE or other non error response
+     */
+    private Map<UniqueValueActor.Request, UniqueValueActor.Response> askAll(
+        List<UniqueValueActor.Request> requests, String region ) {
+
+        final Map<UniqueValueActor.Request, UniqueValueActor.Response> responses = new IdentityHashMap<>();
+
+        int maxRetries = uniqueValuesFig.getRequestRetryCount();
+        int retries = 0;
+
+        List<UniqueValueActor.Request> remaining = requests;
+
+        while ( !remaining.isEmpty() && retries++ < maxRetries ) {
 
-        UniqueValueActor.Request request = new UniqueValueActor.Reservation(
-            scope, entity.getId(), version, field );
+            Timeout t = new Timeout( uniqueValuesFig.getRequestTimeout(), TimeUnit.MILLISECONDS );
 
-        UniqueValueActor.Reservation res = reservationCache.get( request.getConsistentHashKey() );
-        // if ( res != null ) {
-        //    getCacheCounter().inc();
-        // }
-        if ( res != null && !res.getOwner().equals( request.getOwner() )) {
-            throw new UniqueValueException( "Error property not unique (cache)", field);
+            // send everything before waiting on anything, the actors work on them concurrently
+            final List<Future<Object>> futures = new ArrayList<>( remaining.size() );
+            for ( UniqueValueActor.Request request : remaining ) {
+                futures.add( ask( request, region, t ) );
+            }
+
+            final List<UniqueValueActor.Request> retry = new ArrayList<>();
+
+            for ( int i = 0; i < remaining.size(); i++ ) {
+
+                final UniqueValueActor.Request request = remaining.get( i );
+
+                UniqueValueActor.Response response = null;
+
+                try {
+                    // wait (up to timeout) for response
+                    response = (UniqueValueActor.Response) Await.result( futures.get( i ), t.duration() );
+
+                } catch ( Exception e ) {
+                    logger.error("{} caused retry {} for entity {} rowkey {}",
+                        e.getClass().getSimpleName(), retries, request.getOwner().getUuid(),
+                        request.getConsistentHashKey());
+                }
+
+                if ( response != null && (
+                        response.getStatus().equals( UniqueValueActor.Response.Status.IS_UNIQUE )
+                                || response.getStatus().equals( UniqueValueActor.Response.Status.NOT_UNIQUE ))) {
+                    if ( retries > 1 ) {
+                        logger.debug("IS_UNIQUE after retrying {} for entity {} rowkey {}",
+                                retries, request.getOwner().getUuid(), request.getConsistentHashKey());
+                    }
+                    responses.put( request, response );
+
+                } else {
+                    if ( response != null ) {
+                        logger.warn("ERROR status retrying {} entity {} rowkey {}",
+                                retries, request.getOwner().getUuid(), request.getConsistentHashKey());
+                        responses.put( request, response );
+                    } else {
+                        logger.warn("Timed-out retrying {} entity {} rowkey {}",
+                                retries, request.getOwner().getUuid(), request.getConsistentHashKey());
+                    }
+                    retry.add( request );
+                }
+            }
+
+            remaining = retry;
         }
 
-        sendUniqueValueRequest( entity, region, request );
-    }
+        for ( UniqueValueActor.Request request : remaining ) {
 
+            final UniqueValueActor.Response response = responses.get( request );
 
-    private void confirmUniqueField(
-        ApplicationScope scope, Entity entity, UUID version, Field field, String region) throws UniqueValueException {
+            if ( response == null || response.getStatus().equals( UniqueValueActor.Response.Status.ERROR )) {
+                logger.debug("ERROR after retrying {} for entity {} rowkey {}",
+                        retries, request.getOwner().getUuid(), request.getConsistentHashKey());
 
-        UniqueValueActor.Confirmation request = new UniqueValueActor.Confirmation(
-            scope, entity.getId(), version, field );
+                // should result in an HTTP 503
+                throw new RuntimeException( "Error verifying unique value after " + retries + " retries");
+            }
+        }
 
-        sendUniqueValueRequest( entity, region, request );
+        return responses;
     }
 
 
-    private void cancelUniqueField( ApplicationScope scope,
-        Entity entity, UUID version, Field field, String region ) throws UniqueValueException {
+    private Future<Object> ask( UniqueValueActor.Request request, String region, Timeout t ) {
+
+        if ( actorSystemManager.getCurrentRegion().equals( region ) ) {
+
+            // sending to current region, use local clientActor
+            ActorRef clientActor = actorSystemManager.getClientActor();
+            return Patterns.ask( clientActor, request, t );
 
-        cancelUniqueField( scope, entity.getId(), version, field, region );
+        } else {
+
+            // sending to remote region, send via cluster client for that region
+            ActorRef clusterClient = actorSystemManager.getClusterClient( region );
+            return Patterns.ask( clusterClient, new ClusterClient.Send("/user/clientActor", request), t );
+        }
     }
 
 
@@ -217,70 +327,10 @@ public class UniqueValuesServiceImpl implements UniqueValuesService {
     }
 
 
-    private void sendUniqueValueRequest(
-        Entity entity, String region, UniqueValueActor.Request request ) throws UniqueValueException {
-
-        int maxRetries = uniqueValuesFig.getRequestRetryCount();
-        int retries = 0;
-
-        UniqueValueActor.Response response = null;
-        while ( retries++ < maxRetries ) {
-            try {
-                Timeout t = new Timeout( uniqueValuesFig.getRequestTimeout(), TimeUnit.MILLISECONDS );
-
-                Future<Object> fut;
-
-                if ( actorSystemManager.getCurrentRegion().equals( region ) ) {
-
-                    // sending to current region, use local clientActor
-                    ActorRef clientActor = actorSystemManager.getClientActor();
-                    fut = Patterns.ask( clientActor, request, t );
-
-                } else {
-
-                    // sending to remote region, send via cluster client for that region
-                    ActorRef clusterClient = actorSystemManager.getClusterClient( region );
-                    fut = Patterns.ask( clusterClient, new ClusterClient.Send("/user/clientActor", request), t );
-                }
-
-                // wait (up to timeout) for response
-                response = (UniqueValueActor.Response) Await.result( fut, t.duration() );
-
-                if ( response != null && (
-                        response.getStatus().equals( UniqueValueActor.Response.Status.IS_UNIQUE )
-                                || response.getStatus().equals( UniqueValueActor.Response.Status.NOT_UNIQUE ))) {
-                    if ( retries > 1 ) {
-                        logger.debug("IS_UNIQUE after retrying {} for entity {} rowkey {}",
-                                retries, entity.getId().getUuid(), request.getConsistentHashKey());
-                    }
-                    break;
-
-                } else if ( response != null  ) {
-                    logger.warn("ERROR status retrying {} entity {} rowkey {}",
-                            retries, entity.getId().getUuid(), request.getConsistentHashKey());
-                } else {
-                    logger.warn("Timed-out retrying {} entity {} rowkey",
-                            retries, entity.getId().getUuid(), request.getConsistentHashKey());
-                }
-
-            } catch ( Exception e ) {
-                logger.error("{} caused retry {} for entity {} rowkey {}",
-                    e.getClass().getSimpleName(), retries, entity.getId().getUuid(), request.getConsistentHashKey());
-            }
-        }
-
-        if ( response == null || response.getStatus().equals( UniqueValueActor.Response.Status.ERROR )) {
-            logger.debug("ERROR after retrying {} for entity {} rowkey {}",
-                    retries, entity.getId().getUuid(), request.getConsistentHashKey());
-
-            // should result in an HTTP 503
-            throw new RuntimeException( "Error verifying unique value after " + retries + " retries");
-        }
-
-        if ( response.getStatus().equals( UniqueValueActor.Response.Status.NOT_UNIQUE )) {
-
+    private static void throwIfViolated( List<Field> violations ) throws UniqueValueException {
+        if ( !violations.isEmpty() ) {
             // should result in an HTTP 409 (conflict)
-            throw new UniqueValueException( "Error property not unique", request.getField() );
+            throw new UniqueValueException( "Error property not unique", violations );
         }
     }
 
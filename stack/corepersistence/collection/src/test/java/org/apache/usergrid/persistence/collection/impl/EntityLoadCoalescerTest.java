@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.persistence.collection.impl;
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.collection.EntitySet;
+import org.apache.usergrid.persistence.collection.MvccEntity;
+import org.apache.usergrid.persistence.collection.serialization.MvccEntitySerializationStrategy;
+import org.apache.usergrid.persistence.collection.serialization.SerializationFig;
+import org.apache.usergrid.persistence.collection.serialization.impl.EntitySetImpl;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class EntityLoadCoalescerTest {
+
+    private MvccEntitySerializationStrategy strategy;
+    private SerializationFig serializationFig;
+    private MetricsFactory metricsFactory;
+    private ApplicationScope scope;
+    private ExecutorService executor;
+
+
+    @Before
+    public void setup() {
+        strategy = mock( MvccEntitySerializationStrategy.class );
+        serializationFig = mock( SerializationFig.class );
+        metricsFactory = mock( MetricsFactory.class );
+        scope = mock( ApplicationScope.class );
+
+        when( serializationFig.getMaxLoadSize() ).thenReturn( 100 );
+        when( serializationFig.getLoadCoalesceWindow() ).thenReturn( 60000L );
+        when( serializationFig.getLoadCoalesceConcurrency() ).thenReturn( 1 );
+
+        when( metricsFactory.getMeter( any( Class.class ), anyString() ) ).thenReturn( new Meter() );
+        when( metricsFactory.getHistogram( any( Class.class ), anyString() ) )
+            .thenReturn( new Histogram( new ExponentiallyDecayingReservoir() ) );
+
+        executor = Executors.newCachedThreadPool();
+    }
+
+
+    @After
+    public void cleanup() {
+        executor.shutdownNow();
+    }
+
+
+    @Test
+    public void concurrentLoadsShareRead() throws Exception {
+        final Id first = new SimpleId( "test" );
+        final Id second = new SimpleId( "test" );
+
+        final CountDownLatch reading = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger reads = new AtomicInteger();
+
+        when( strategy.load( any( ApplicationScope.class ), any( Collection.class ), any( UUID.class ) ) )
+            .thenAnswer( invocation -> {
+                reads.incrementAndGet();
+                reading.countDown();
+                release.await( 10, TimeUnit.SECONDS );
+                return results( ( Collection<Id> ) invocation.getArguments()[1] );
+            } );
+
+        final EntityLoadCoalescer coalescer = new EntityLoadCoalescer( strategy, serializationFig, metricsFactory, scope );
+
+        final Future<EntitySet> owner = executor.submit( () -> coalescer.load( Collections.singleton( first ) ) );
+
+        reading.await( 10, TimeUnit.SECONDS );
+
+        //joins the read of first, second waits for the single loader and is read in the next batch
+        final Future<EntitySet> joiner = executor.submit( () -> coalescer.load( Arrays.asList( first, second ) ) );
+
+        Thread.sleep( 100 );
+        release.countDown();
+
+        final EntitySet ownerResults = owner.get( 10, TimeUnit.SECONDS );
+        final EntitySet joinerResults = joiner.get( 10, TimeUnit.SECONDS );
+
+        assertEquals( 2, reads.get() );
+        assertSame( ownerResults.getEntity( first ), joinerResults.getEntity( first ) );
+        assertEquals( second, joinerResults.getEntity( second ).getId() );
+    }
+
+
+    @Test
+    public void invalidatedReadNotShared() throws Exception {
+        final Id entityId = new SimpleId( "test" );
+
+        final CountDownLatch reading = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger reads = new AtomicInteger();
+
+        when( strategy.load( any( ApplicationScope.class ), any( Collection.class ), any( UUID.class ) ) )
+            .thenAnswer( invocation -> {
+                if ( reads.incrementAndGet() == 1 ) {
+                    reading.countDown();
+                    release.await( 10, TimeUnit.SECONDS );
+                }
+                return results( ( Collection<Id> ) invocation.getArguments()[1] );
+            } );
+
+        //two loaders, so the second read doesn't wait for the first
+        when( serializationFig.getLoadCoalesceConcurrency() ).thenReturn( 2 );
+
+        final EntityLoadCoalescer coalescer = new EntityLoadCoalescer( strategy, serializationFig, metricsFactory, scope );
+
+        final Future<EntitySet> beforeWrite = executor.submit( () -> coalescer.load( Collections.singleton( entityId ) ) );
+
+        reading.await( 10, TimeUnit.SECONDS );
+
+        //the write commits while the first read is in flight, the next load has to read again
+        coalescer.invalidate( entityId );
+
+        final EntitySet afterWrite = coalescer.load( Collections.singleton( entityId ) );
+
+        release.countDown();
+
+        assertEquals( 2, reads.get() );
+        assertNotSame( beforeWrite.get( 10, TimeUnit.SECONDS ).getEntity( entityId ), afterWrite.getEntity( entityId ) );
+    }
+
+
+    @Test
+    public void callersReadOnlyTheirOwnBatches() throws Exception {
+        final Id first = new SimpleId( "test" );
+        final Id second = new SimpleId( "test" );
+        final Id third = new SimpleId( "test" );
+
+        final CountDownLatch reading = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final Map<Id, Thread> readers = new ConcurrentHashMap<>();
+
+        when( serializationFig.getMaxLoadSize() ).thenReturn( 1 );
+
+        when( strategy.load( any( ApplicationScope.class ), any( Collection.class ), any( UUID.class ) ) )
+            .thenAnswer( invocation -> {
+                final Collection<Id> ids = ( Collection<Id> ) invocation.getArguments()[1];
+
+                for ( final Id id : ids ) {
+                    readers.put( id, Thread.currentThread() );
+                }
+
+                if ( ids.contains( first ) ) {
+                    reading.countDown();
+                    release.await( 10, TimeUnit.SECONDS );
+                }
+
+                return results( ids );
+            } );
+
+        final EntityLoadCoalescer coalescer = new EntityLoadCoalescer( strategy, serializationFig, metricsFactory, scope );
+
+        final Map<Id, Thread> callers = new ConcurrentHashMap<>();
+
+        final Future<EntitySet> firstLoad = executor.submit( () -> coalescer.load( Collections.singleton( first ) ) );
+
+        reading.await( 10, TimeUnit.SECONDS );
+
+        //both queue behind the single loader, second ahead of third
+        final Future<EntitySet> secondLoad = executor.submit( () -> {
+            callers.put( second, Thread.currentThread() );
+            return coalescer.load( Collections.singleton( second ) );
+        } );
+
+        Thread.sleep( 100 );
+
+        final Future<EntitySet> thirdLoad = executor.submit( () -> {
+            callers.put( third, Thread.currentThread() );
+            return coalescer.load( Collections.singleton( third ) );
+        } );
+
+        Thread.sleep( 100 );
+        release.countDown();
+
+        firstLoad.get( 10, TimeUnit.SECONDS );
+        secondLoad.get( 10, TimeUnit.SECONDS );
+        thirdLoad.get( 10, TimeUnit.SECONDS );
+
+        //the caller of second stops after its own batch, third is read by its own caller
+        assertSame( callers.get( second ), readers.get( second ) );
+        assertSame( callers.get( third ), readers.get( third ) );
+    }
+
+
+    @Test
+    public void missingEntitiesNotReturned() {
+        final Id found = new SimpleId( "test" );
+        final Id missing = new SimpleId( "test" );
+
+        final EntitySet stored = results( Collections.singleton( found ) );
+
+        when( strategy.load( any( ApplicationScope.class ), any( Collection.class ), any( UUID.class ) ) )
+            .thenReturn( stored );
+
+        final EntityLoadCoalescer coalescer = new EntityLoadCoalescer( strategy, serializationFig, metricsFactory, scope );
+
+        final EntitySet results = coalescer.load( Arrays.asList( found, missing, found ) );
+
+        assertEquals( 1, results.size() );
+        assertEquals( found, results.getEntity( found ).getId() );
+        assertNull( results.getEntity( missing ) );
+    }
+
+
+    @Test
+    public void failureReachesEveryCaller() {
+        when( strategy.load( any( ApplicationScope.class ), any( Collection.class ), any( UUID.class ) ) )
+            .thenThrow( new IllegalStateException( "Test failure" ) );
+
+        final EntityLoadCoalescer coalescer = new EntityLoadCoalescer( strategy, serializationFig, metricsFactory, scope );
+
+        try {
+            coalescer.load( Collections.singleton( new SimpleId( "test" ) ) );
+            fail( "Load should have failed" );
+        }
+        catch ( IllegalStateException e ) {
+            assertEquals( "Test failure", e.getMessage() );
+        }
+    }
+
+
+    @Test
+    public void disabledLoadsDirectly() {
+        when( serializationFig.getLoadCoalesceWindow() ).thenReturn( 0L );
+
+        final Collection<Id> ids = Collections.singleton( new SimpleId( "test" ) );
+        final EntitySet expected = results( ids );
+
+        when( strategy.load( any( ApplicationScope.class ), any( Collection.class ), any( UUID.class ) ) )
+            .thenReturn( expected );
+
+        final EntityLoadCoalescer coalescer = new EntityLoadCoalescer( strategy, serializationFig, metricsFactory, scope );
+
+        assertSame( expected, coalescer.load( ids ) );
+        verify( strategy, times( 1 ) ).load( any( ApplicationScope.class ), any( Collection.class ), any( UUID.class ) );
+    }
+
+
+    private static EntitySet results( final Collection<Id> ids ) {
+        final EntitySetImpl results = new EntitySetImpl( ids.size() );
+
+        for ( final Id id : ids ) {
+            final MvccEntity entity = mock( MvccEntity.class );
+            when( entity.getId() ).thenReturn( id );
+            results.addEntity( entity );
+        }
+
+        return results;
+    }
+}
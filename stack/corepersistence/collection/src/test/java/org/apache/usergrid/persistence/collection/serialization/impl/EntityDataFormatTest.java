@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.persistence.collection.serialization.impl;
+
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class EntityDataFormatTest {
+
+    @Test
+    public void detectFormats() {
+        assertTrue( EntityDataFormat.isSmile( new byte[] { ':', ')', '\n', 0 } ) );
+        assertFalse( EntityDataFormat.isSmile( "{\"id\":1}".getBytes( StandardCharsets.UTF_8 ) ) );
+        assertFalse( EntityDataFormat.isSmile( new byte[0] ) );
+    }
+
+
+    @Test
+    public void smallValuesAreNotCompressed() {
+        final byte[] data = "{\"id\":1}".getBytes( StandardCharsets.UTF_8 );
+
+        assertSame( data, EntityDataFormat.compress( data, 1024 ) );
+        assertSame( data, EntityDataFormat.decompress( data ) );
+    }
+
+
+    @Test
+    public void compressRoundTrip() {
+
+        final StringBuilder builder = new StringBuilder( ":)\n" );
+
+        for ( int i = 0; i < 500; i++ ) {
+            builder.append( "java.util.ArrayList" );
+        }
+
+        final byte[] data = builder.toString().getBytes( StandardCharsets.UTF_8 );
+
+        final byte[] compressed = EntityDataFormat.compress( data, 1024 );
+
+        assertTrue( "repeated values should compress", compressed.length < data.length );
+        assertFalse( EntityDataFormat.isSmile( compressed ) );
+
+        assertArrayEquals( data, EntityDataFormat.decompress( compressed ) );
+    }
+}
@@ -1,24 +1,48 @@
 package org.apache.usergrid.persistence.collection.serialization.impl;
 
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import org.apache.usergrid.persistence.collection.MvccEntity;
 import org.apache.usergrid.persistence.collection.guice.TestCollectionModule;
+import org.apache.usergrid.persistence.collection.mvcc.entity.impl.MvccEntityImpl;
+import org.apache.usergrid.persistence.collection.EntitySet;
 import org.apache.usergrid.persistence.collection.serialization.MvccEntitySerializationStrategy;
+import org.apache.usergrid.persistence.core.guicyfig.SetConfigTestBypass;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
 import org.apache.usergrid.persistence.core.test.ITRunner;
 import org.apache.usergrid.persistence.core.test.UseModules;
+import org.apache.usergrid.persistence.model.entity.Entity;
 import org.apache.usergrid.persistence.model.entity.Id;
 import org.apache.usergrid.persistence.model.entity.SimpleId;
+import org.apache.usergrid.persistence.model.field.EntityObjectField;
+import org.apache.usergrid.persistence.model.field.FieldProjection;
+import org.apache.usergrid.persistence.model.field.LongField;
+import org.apache.usergrid.persistence.model.field.StringField;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+import org.apache.usergrid.persistence.model.util.EntityUtils;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 
+import com.google.common.base.Optional;
 import com.google.inject.Inject;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 
 /**
  * Same tests as v2, we just override some methods to ensure they throw the correct exceptions
@@ -30,12 +54,27 @@ public class MvccEntitySerializationStrategyV3ImplTest extends MvccEntitySeriali
     private MvccEntitySerializationStrategyV3Impl serializationStrategy;
 
 
+    private boolean compactEnabled;
+
+
     @Override
     protected MvccEntitySerializationStrategy getMvccEntitySerializationStrategy() {
         return serializationStrategy;
     }
 
 
+    @Before
+    public void saveCompactFormat() {
+        compactEnabled = serializationFig.isCompactEntityFormatEnabled();
+    }
+
+
+    @After
+    public void restoreCompactFormat() {
+        setCompactFormat( compactEnabled );
+    }
+
+
     @Test( expected = UnsupportedOperationException.class )
     public void loadAscendingHistory() throws ConnectionException {
         final Id applicationId = new SimpleId( "application" );
@@ -65,5 +104,174 @@ public class MvccEntitySerializationStrategyV3ImplTest extends MvccEntitySeriali
 
         serializationStrategy.loadDescendingHistory( context, entityId, version1, 20 );
     }
-}
 
+
+    @Test
+    public void loadProjected() throws ConnectionException {
+
+        final Id applicationId = new SimpleId( "application" );
+
+        ApplicationScope context = new ApplicationScopeImpl( applicationId );
+
+        final Id id = new SimpleId( UUIDGenerator.newTimeUUID(), "test" );
+        final UUID version = UUIDGenerator.newTimeUUID();
+
+        final EntityObject address = new EntityObject();
+        address.setField( new StringField( "city", "Boston" ) );
+
+        final Entity entity = new Entity( id );
+        EntityUtils.setVersion( entity, version );
+        entity.setField( new StringField( "name", "test" ) );
+        entity.setField( new LongField( "count", 5l ) );
+        entity.setField( new StringField( "description", "not selected" ) );
+        entity.setField( new EntityObjectField( "address", address ) );
+
+        serializationStrategy
+            .write( context, new MvccEntityImpl( id, version, MvccEntity.Status.COMPLETE, Optional.of( entity ) ) )
+            .execute();
+
+        final Map<String, String> selects = new LinkedHashMap<>();
+        selects.put( "name", "name" );
+        selects.put( "count", "count" );
+        selects.put( "address.city", "address.city" );
+
+        final MvccEntity returned = serializationStrategy
+            .load( context, Collections.singleton( id ), version, FieldProjection.compile( selects ) ).getEntity( id );
+
+        assertNotNull( returned );
+        assertEquals( MvccEntity.Status.COMPLETE, returned.getStatus() );
+        assertEquals( version, returned.getVersion() );
+
+        final Entity projected = returned.getEntity().get();
+
+        assertEquals( id, projected.getId() );
+        assertEquals( "test", projected.getField( "name" ).getValue() );
+        assertEquals( 5l, projected.getField( "count" ).getValue() );
+        assertNotNull( projected.getField( "address" ) );
+        assertNull( projected.getField( "description" ) );
+    }
+
+
+    /**
+     * Tests entities written before the compact format was enabled are read alongside compact and compressed
+     * entities, both whole and projected
+     */
+    @Test
+    public void compactFormatMixedReads() throws ConnectionException {
+
+        final Id applicationId = new SimpleId( "application" );
+
+        ApplicationScope context = new ApplicationScopeImpl( applicationId );
+
+        //large enough to be compressed once compact, and compressible
+        final StringBuilder description = new StringBuilder();
+
+        for ( int i = 0; i < 200; i++ ) {
+            description.append( "description " ).append( i ).append( ' ' );
+        }
+
+        assertTrue( description.length() > serializationFig.getEntityCompressionThreshold() );
+
+        //written as JSON, before the flag is flipped
+        setCompactFormat( false );
+
+        final MvccEntity json = writeEntity( context, description.toString() );
+
+        setCompactFormat( true );
+
+        //small enough to stay uncompressed Smile
+        final MvccEntity smile = writeEntity( context, "short" );
+        final MvccEntity compressed = writeEntity( context, description.toString() );
+
+        assertTrue( "compact format should be smaller", compressed.getSize() < json.getSize() );
+
+        final Collection<Id> ids = Arrays.asList( json.getId(), smile.getId(), compressed.getId() );
+        final UUID maxVersion = UUIDGenerator.newTimeUUID();
+
+        final EntitySet loaded = serializationStrategy.load( context, ids, maxVersion );
+
+        for ( final MvccEntity written : Arrays.asList( json, smile, compressed ) ) {
+            final MvccEntity returned = loaded.getEntity( written.getId() );
+
+            assertNotNull( returned );
+            assertEquals( written.getVersion(), returned.getVersion() );
+            assertEquals( written.getSize(), returned.getSize() );
+
+            final Entity expected = written.getEntity().get();
+            final Entity entity = returned.getEntity().get();
+
+            assertEquals( expected.getId(), entity.getId() );
+            assertEquals( expected.getField( "name" ).getValue(), entity.getField( "name" ).getValue() );
+            assertEquals( expected.getField( "count" ).getValue(), entity.getField( "count" ).getValue() );
+            assertEquals( expected.getField( "description" ).getValue(), entity.getField( "description" ).getValue() );
+            assertEquals( "Boston", getCity( entity ) );
+        }
+
+        final Map<String, String> selects = new LinkedHashMap<>();
+        selects.put( "name", "name" );
+        selects.put( "address.city", "address.city" );
+
+        final EntitySet projected =
+            serializationStrategy.load( context, ids, maxVersion, FieldProjection.compile( selects ) );
+
+        for ( final MvccEntity written : Arrays.asList( json, smile, compressed ) ) {
+            final MvccEntity returned = projected.getEntity( written.getId() );
+
+            assertNotNull( returned );
+            assertEquals( written.getVersion(), returned.getVersion() );
+
+            final Entity entity = returned.getEntity().get();
+
+            assertEquals( written.getId(), entity.getId() );
+            assertEquals( "test-" + written.getId().getUuid(), entity.getField( "name" ).getValue() );
+            assertEquals( "Boston", getCity( entity ) );
+            assertNull( entity.getField( "count" ) );
+            assertNull( entity.getField( "description" ) );
+        }
+
+        //and still readable once the flag is turned off again
+        setCompactFormat( false );
+
+        final MvccEntity reread = serializationStrategy.load( context, compressed.getId() ).get();
+
+        assertEquals( compressed.getVersion(), reread.getVersion() );
+        assertEquals( description.toString(), reread.getEntity().get().getField( "description" ).getValue() );
+    }
+
+
+    private MvccEntity writeEntity( final ApplicationScope context, final String description )
+        throws ConnectionException {
+
+        final Id id = new SimpleId( UUIDGenerator.newTimeUUID(), "test" );
+        final UUID version = UUIDGenerator.newTimeUUID();
+
+        final EntityObject address = new EntityObject();
+        address.setField( new StringField( "city", "Boston" ) );
+
+        final Entity entity = new Entity( id );
+        EntityUtils.setVersion( entity, version );
+        entity.setField( new StringField( "name", "test-" + id.getUuid() ) );
+        entity.setField( new LongField( "count", 5l ) );
+        entity.setField( new StringField( "description", description ) );
+        entity.setField( new EntityObjectField( "address", address ) );
+
+        final MvccEntity mvccEntity =
+            new MvccEntityImpl( id, version, MvccEntity.Status.COMPLETE, Optional.of( entity ) );
+
+        serializationStrategy.write( context, mvccEntity ).execute();
+
+        return mvccEntity;
+    }
+
+
+    private static String getCity( final Entity entity ) {
+        final EntityObject address = ( EntityObject ) entity.getField( "address" ).getValue();
+
+        return ( String ) address.getField( "city" ).getValue();
+    }
+
+
+    private void setCompactFormat( final boolean enabled ) {
+        SetConfigTestBypass.setValueByPass( serializationFig, "isCompactEntityFormatEnabled", enabled + "" );
+    }
+}
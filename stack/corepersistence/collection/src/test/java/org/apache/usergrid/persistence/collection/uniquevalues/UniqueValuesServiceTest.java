@@ -36,7 +36,9 @@ import org.apache.usergrid.persistence.core.test.ITRunner;
 import org.apache.usergrid.persistence.core.test.UseModules;
 import org.apache.usergrid.persistence.model.entity.Entity;
 import org.apache.usergrid.persistence.model.entity.SimpleId;
+import org.apache.usergrid.persistence.model.field.Field;
 import org.apache.usergrid.persistence.model.field.StringField;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -46,7 +48,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -124,6 +129,61 @@ public class UniqueValuesServiceTest extends AbstractUniqueValueTest {
     }
 
 
+    /**
+     * Reserve every unique field of an entity in one round, every taken value is reported.
+     */
+    @Test
+    public void testReservationReportsEveryField() throws Exception {
+
+        initAkka();
+
+        ApplicationScope scope = new ApplicationScopeImpl( new SimpleId( "organization" ) );
+
+        String username = "fields_" + UUID.randomUUID().toString();
+        Entity owner = createUser( username, username + "@example.org" );
+        UUID ownerVersion = UUIDGenerator.newTimeUUID();
+
+        uniqueValuesService.reserveUniqueValues( scope, owner, ownerVersion, null );
+
+        // a new entity claiming both of the owner's values
+        try {
+            uniqueValuesService.reserveUniqueValues(
+                scope, createUser( username, username + "@example.org" ), UUIDGenerator.newTimeUUID(), null );
+            Assert.fail( "Values should not be unique" );
+
+        } catch ( UniqueValueException e ) {
+            Set<String> names = new HashSet<>();
+            for ( Field field : e.getFields() ) {
+                names.add( field.getName() );
+            }
+            Assert.assertEquals( new HashSet<>( Arrays.asList( "username", "email" ) ), names );
+        }
+
+        // one that only shares the email
+        try {
+            String other = "fields_" + UUID.randomUUID().toString();
+            uniqueValuesService.reserveUniqueValues(
+                scope, createUser( other, username + "@example.org" ), UUIDGenerator.newTimeUUID(), null );
+            Assert.fail( "Email should not be unique" );
+
+        } catch ( UniqueValueException e ) {
+            Assert.assertEquals( 1, e.getFields().size() );
+            Assert.assertEquals( "email", e.getField().getName() );
+        }
+
+        // the owner re-reserving its values is still unique
+        uniqueValuesService.reserveUniqueValues( scope, owner, ownerVersion, null );
+    }
+
+
+    private Entity createUser( String username, String email ) {
+        Entity entity = new Entity( new SimpleId( "user" ) );
+        entity.setField( new StringField( "username", username, true ) );
+        entity.setField( new StringField( "email", email, true ) );
+        return entity;
+    }
+
+
     private Multimap<String, Entity> generateDuplicateUsers(
         int numUsers, AtomicInteger successCounter, AtomicInteger errorCounter ) {
 
@@ -55,6 +55,8 @@ public interface CassandraFig extends GuicyFig {
     String LOCKS_SHARED_POOL_FLAG = "cassandra.lock.use_shared_pool";
     String LOCKS_CONNECTIONS = "cassandra.lock.connections";
     String LOCKS_EXPIRATION = "cassandra.lock.expiration.milliseconds";
+    String LOCKS_IMPLEMENTATION = "cassandra.lock.implementation";
+    String LOCKS_RETRY_INTERVAL = "cassandra.lock.retry.interval.milliseconds";
 
     String LOCK_MANAGER_INIT_RETRIES = "cassandra.lock.init.retries";
     String LOCK_MANAGER_INIT_INTERVAL = "cassandra.lock.init.interval";
@@ -222,6 +224,20 @@ public interface CassandraFig extends GuicyFig {
     @Default(DEFAULT_LOCKS_EXPIRATION)
     int getLocksExpiration();
 
+    /**
+     * Returns the lock manager to use, ASTYANAX for row locks or LWT for lightweight transaction leases
+     */
+    @Key( LOCKS_IMPLEMENTATION )
+    @Default( "ASTYANAX" )
+    String getLocksImplementation();
+
+    /**
+     * Return how long to wait between attempts to take a lock held by another node
+     */
+    @Key( LOCKS_RETRY_INTERVAL )
+    @Default( "50" )
+    int getLocksRetryInterval();
+
     /**
      * How many times to attempt lock keyspace and column family creation
      */
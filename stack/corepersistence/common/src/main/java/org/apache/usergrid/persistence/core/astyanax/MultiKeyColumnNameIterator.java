@@ -25,17 +25,17 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.CountDownLatch;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.core.rx.OrderedMerge;
 
 import rx.Observable;
 import rx.Subscriber;
-import rx.schedulers.Schedulers;
 
 
 /**
@@ -54,7 +54,11 @@ public class MultiKeyColumnNameIterator<C, T> implements Iterable<T>, Iterator<T
     private Iterator<T> iterator;
 
 
-    public MultiKeyColumnNameIterator( final Collection<ColumnNameIterator<C, T>> columnNameIterators,
+    /**
+     * @param metricsFactory Records the depth and stalls of the merge
+     */
+    public MultiKeyColumnNameIterator( final MetricsFactory metricsFactory,
+                                       final Collection<ColumnNameIterator<C, T>> columnNameIterators,
                                        final Comparator<T> comparator, final int bufferSize ) {
 
 
@@ -66,8 +70,8 @@ public class MultiKeyColumnNameIterator<C, T> implements Iterable<T>, Iterator<T
 
 
         /**
-         * We have more than 1 iterator, subscribe to all of them on their own thread so they can
-         * produce in parallel.  This way our inner iterator will be filled and processed the fastest
+         * We have more than 1 iterator, merge them on the calling thread.  The merge only pages from an iterator once
+         * its buffered columns have been emitted, so no iterator reads further ahead than the buffer size
          */
         Observable<T>[] observables = new Observable[columnNameIterators.size()];
 
@@ -77,14 +81,15 @@ public class MultiKeyColumnNameIterator<C, T> implements Iterable<T>, Iterator<T
 
 
 
-            observables[i] = Observable.from( columnNameIterator ).subscribeOn( Schedulers.io() );
+            observables[i] = Observable.from( columnNameIterator );
 
             i++;
         }
 
 
         //merge them into 1 observable, and remove duplicates from the stream
-        Observable<T> merged = OrderedMerge.orderedMerge( comparator, bufferSize, observables ).distinctUntilChanged();
+        Observable<T> merged =
+            OrderedMerge.orderedMerge( metricsFactory, comparator, bufferSize, observables ).distinctUntilChanged();
 
 
         InnerIterator innerIterator = new InnerIterator( bufferSize );
@@ -120,28 +125,40 @@ public class MultiKeyColumnNameIterator<C, T> implements Iterable<T>, Iterator<T
 
 
     /**
-     * Internal iterator that will put next elements into a blocking queue until it reaches capacity. At this point it
-     * will block then emitting thread until more elements are taken.  Assumed the Observable is run on a I/O thread,
-     * NOT the current thread.
+     * Internal iterator that requests elements from the merge as they are taken.  The merged sources run on the
+     * thread calling hasNext, unless they were subscribed on another scheduler, in which case we wait on them.
      */
     private final class InnerIterator<T> extends Subscriber<T> implements Iterator<T> {
 
-        private final CountDownLatch startLatch = new CountDownLatch( 1 );
+        /**
+         * Never holds more than we requested
+         */
+        private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+
+        private final int bufferSize;
 
         /**
-         * Use an ArrayBlockingQueue for faster access since our upper bounds is static
+         * Request more once this many elements have been taken
          */
-        private final ArrayBlockingQueue<T> queue;
+        private final int replenish;
 
+        private int taken;
 
-        private Throwable error;
-        private boolean done = false;
+        private volatile Throwable error;
+        private volatile boolean done = false;
 
         private T next;
 
 
-        private InnerIterator( int maxSize ) {
-            queue = new ArrayBlockingQueue<>( maxSize );
+        private InnerIterator( int bufferSize ) {
+            this.bufferSize = Math.max( 1, bufferSize );
+            this.replenish = Math.max( 1, this.bufferSize / 2 );
+        }
+
+
+        @Override
+        public void onStart() {
+            request( bufferSize );
         }
 
 
@@ -155,20 +172,25 @@ public class MultiKeyColumnNameIterator<C, T> implements Iterable<T>, Iterator<T
             }
 
 
-            try {
-                startLatch.await();
-            }
-            catch ( InterruptedException e ) {
-                throw new RuntimeException( "Unable to wait for start of submission" );
+            //this is a busy wait only when the sources run on other threads, otherwise the queue is filled by
+            //our requests before we poll it
+            do {
+                //read completion before polling, we complete after the last element is queued
+                final boolean completed = done;
+
+                next = queue.poll();
+
+                if ( next != null || completed ) {
+                    break;
+                }
             }
+            while ( true );
 
 
-            //this is almost a busy wait, and is intentional, if we have nothing to poll, we want to get it as soon
-            //as it's available.  We generally only hit this once
-            do {
-                next = queue.poll();
+            if ( next != null && ++taken == replenish ) {
+                taken = 0;
+                request( replenish );
             }
-            while ( next == null && !done );
 
 
             return next != null;
@@ -202,7 +224,6 @@ public class MultiKeyColumnNameIterator<C, T> implements Iterable<T>, Iterator<T
         @Override
         public void onCompleted() {
             done = true;
-            startLatch.countDown();
         }
 
 
@@ -210,24 +231,13 @@ public class MultiKeyColumnNameIterator<C, T> implements Iterable<T>, Iterator<T
         public void onError( final Throwable e ) {
             error = e;
             done = true;
-            startLatch.countDown();
         }
 
 
         @Override
         public void onNext( final T t ) {
-
-            //may block if we get full, that's expected behavior
-
-            try {
-                if (logger.isTraceEnabled()) logger.trace( "Received element {}" , t );
-                queue.put( t );
-            }
-            catch ( InterruptedException e ) {
-                throw new RuntimeException( "Unable to insert to queue" );
-            }
-
-            startLatch.countDown();
+            if (logger.isTraceEnabled()) logger.trace( "Received element {}" , t );
+            queue.offer( t );
         }
     }
 }
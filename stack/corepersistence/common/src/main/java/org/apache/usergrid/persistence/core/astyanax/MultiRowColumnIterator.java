@@ -33,12 +33,12 @@ import org.slf4j.LoggerFactory;
 
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.model.ByteBufferRange;
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ColumnList;
 import com.netflix.astyanax.model.ConsistencyLevel;
 import com.netflix.astyanax.model.Rows;
-import com.netflix.astyanax.query.RowSliceQuery;
 import com.netflix.astyanax.util.RangeBuilder;
 
 
@@ -77,6 +77,8 @@ public class MultiRowColumnIterator<R, C, T> implements Iterator<T> {
 
     private Iterator<T> currentColumnIterator;
 
+    private final PrefetchWindow<R, C> prefetchWindow;
+
 
     /**
      * Remove after finding bug
@@ -99,6 +101,20 @@ public class MultiRowColumnIterator<R, C, T> implements Iterator<T> {
                                    final ConsistencyLevel consistencyLevel, final ColumnParser<C, T> columnParser,
                                    final ColumnSearch<T> columnSearch, final Comparator<T> comparator,
                                    final Collection<R> rowKeys, final int pageSize ) {
+        this( keyspace, cf, consistencyLevel, columnParser, columnSearch, comparator, rowKeys, pageSize, null );
+    }
+
+
+    /**
+     * Create the iterator
+     *
+     * @param prefetcher Reads the next page while the current one is consumed, null to read each page on demand
+     */
+    public MultiRowColumnIterator( final Keyspace keyspace, final ColumnFamily<R, C> cf,
+                                   final ConsistencyLevel consistencyLevel, final ColumnParser<C, T> columnParser,
+                                   final ColumnSearch<T> columnSearch, final Comparator<T> comparator,
+                                   final Collection<R> rowKeys, final int pageSize,
+                                   final PagePrefetcher prefetcher ) {
         this.cf = cf;
         this.pageSize = pageSize;
         this.columnParser = columnParser;
@@ -108,6 +124,7 @@ public class MultiRowColumnIterator<R, C, T> implements Iterator<T> {
         this.keyspace = keyspace;
         this.consistencyLevel = consistencyLevel;
         this.moreToReturn = true;
+        this.prefetchWindow = new PrefetchWindow<>( keyspace, cf, consistencyLevel, prefetcher );
 
         //        seenResults = new HashMap<>( pageSize * 10 );
     }
@@ -159,33 +176,14 @@ public class MultiRowColumnIterator<R, C, T> implements Iterator<T> {
 
         final int selectSize = skipFirstColumn ? pageSize + 1 : pageSize;
 
-        final RangeBuilder rangeBuilder = new RangeBuilder();
-
-
-        //set the range into the search
-
-        if ( startColumn == null ) {
-            columnSearch.buildRange( rangeBuilder );
-        }
-        else {
-            columnSearch.buildRange( rangeBuilder, startColumn, null );
-        }
-
-
-        rangeBuilder.setLimit( selectSize );
-
         if (logger.isTraceEnabled()) logger.trace( "Executing cassandra query" );
 
         /**
          * Get our list of slices
          */
-        final RowSliceQuery<R, C> query =
-            keyspace.prepareQuery( cf ).setConsistencyLevel( consistencyLevel ).getKeySlice( rowKeys )
-                .withColumnRange( rangeBuilder.build() );
-
         final Rows<R, C> result;
         try {
-            result = query.execute().getResult();
+            result = prefetchWindow.fetch( rowKeys, buildRange( startColumn ) );
         }
         catch ( ConnectionException e ) {
             throw new RuntimeException( "Unable to connect to casandra", e );
@@ -238,6 +236,9 @@ public class MultiRowColumnIterator<R, C, T> implements Iterator<T> {
 
         if(moreToReturn && mergedResults.size() > 0){
             startColumn = mergedResults.get( mergedResults.size()  - 1 );
+
+            //read the next page while this one is consumed
+            prefetchWindow.prefetch( rowKeys, buildRange( startColumn ) );
         }
 
 
@@ -247,6 +248,30 @@ public class MultiRowColumnIterator<R, C, T> implements Iterator<T> {
     }
 
 
+    /**
+     * Build the range of the page that starts at the given column, or the first page if it's null
+     */
+    private ByteBufferRange buildRange( final T start ) {
+
+        final RangeBuilder rangeBuilder = new RangeBuilder();
+
+
+        //set the range into the search
+
+        if ( start == null ) {
+            columnSearch.buildRange( rangeBuilder );
+        }
+        else {
+            columnSearch.buildRange( rangeBuilder, start, null );
+        }
+
+
+        rangeBuilder.setLimit( start == null ? pageSize : pageSize + 1 );
+
+        return rangeBuilder.build();
+    }
+
+
     /**
      * Return true if we have < 2 rows with columns, false otherwise
      */
@@ -29,12 +29,12 @@ import org.slf4j.LoggerFactory;
 
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.model.ByteBufferRange;
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ColumnList;
 import com.netflix.astyanax.model.ConsistencyLevel;
 import com.netflix.astyanax.model.Rows;
-import com.netflix.astyanax.query.RowSliceQuery;
 import com.netflix.astyanax.util.RangeBuilder;
 
 
@@ -82,12 +82,29 @@ public class MultiRowShardColumnIterator<R, C, T> implements Iterator<T> {
 
     private Optional<Long> lastTimestamp;
 
+    private final PrefetchWindow<R, C> prefetchWindow;
+
 
     public MultiRowShardColumnIterator( final Keyspace keyspace, final ColumnFamily<R, C> cf,
                                         final ConsistencyLevel consistencyLevel, final ColumnParser<C, T> columnParser,
                                         final ColumnSearch<T> columnSearch, final Comparator<T> comparator,
                                         final int pageSize, final List<SmartShard> rowKeysWithShardEnd,
                                         final boolean ascending, final Optional<Long> lastTimestamp) {
+        this( keyspace, cf, consistencyLevel, columnParser, columnSearch, comparator, pageSize, rowKeysWithShardEnd,
+            ascending, lastTimestamp, null );
+    }
+
+
+    /**
+     * @param prefetcher Reads the next page of the current shard and the first pages of the shards that follow while
+     * the current page is consumed, null to read each page on demand
+     */
+    public MultiRowShardColumnIterator( final Keyspace keyspace, final ColumnFamily<R, C> cf,
+                                        final ConsistencyLevel consistencyLevel, final ColumnParser<C, T> columnParser,
+                                        final ColumnSearch<T> columnSearch, final Comparator<T> comparator,
+                                        final int pageSize, final List<SmartShard> rowKeysWithShardEnd,
+                                        final boolean ascending, final Optional<Long> lastTimestamp,
+                                        final PagePrefetcher prefetcher ) {
         this.cf = cf;
         this.pageSize = pageSize;
         this.columnParser = columnParser;
@@ -100,6 +117,7 @@ public class MultiRowShardColumnIterator<R, C, T> implements Iterator<T> {
         this.resultsTracking = new ArrayList<>();
         this.ascending = ascending;
         this.lastTimestamp = lastTimestamp;
+        this.prefetchWindow = new PrefetchWindow<>( keyspace, cf, consistencyLevel, prefetcher );
 
 
     }
@@ -190,8 +208,6 @@ public class MultiRowShardColumnIterator<R, C, T> implements Iterator<T> {
 
         final int selectSize = skipFirstColumn ? pageSize + 1 : pageSize;
 
-        final RangeBuilder rangeBuilder = new RangeBuilder();
-
         SmartShard startShard = null;
 
 
@@ -262,99 +278,14 @@ public class MultiRowShardColumnIterator<R, C, T> implements Iterator<T> {
 
 
 
-        // initial request, build the range with no start and no end
-        if ( startColumn == null && currentShard.getShardEnd() == null ){
-
-            columnSearch.buildRange( rangeBuilder );
-
-            if(logger.isTraceEnabled()){
-                logger.trace("initial search (no start or shard end)");
-            }
-
-        }
-        // if there's only a startColumn set the range start startColumn always
-        else if ( startColumn != null && currentShard.getShardEnd() == null ){
-
-            columnSearch.buildRange( rangeBuilder, startColumn, null );
-
-            if(logger.isTraceEnabled()){
-                logger.trace("search (no shard end) with start: {}", startColumn);
-            }
-
-        }
-        // if there's only a shardEnd, set the start/end according based on the search order
-        else if ( startColumn == null && currentShard.getShardEnd() != null ){
-
-            T shardEnd = (T) currentShard.getShardEnd();
-
-            // if we have a shardEnd and it's not an ascending search, use the shardEnd as a start
-            if(!ascending) {
-
-                columnSearch.buildRange(rangeBuilder, shardEnd, null);
-
-                if(logger.isTraceEnabled()){
-                    logger.trace("search descending with start: {}", shardEnd);
-                }
-
-            }
-            // if we have a shardEnd and it is an ascending search, use the shardEnd as the end
-            else{
-
-                columnSearch.buildRange( rangeBuilder, null, shardEnd );
-
-                if(logger.isTraceEnabled()){
-                    logger.trace("search ascending with end: {}", shardEnd);
-                }
-
-            }
-
-        }
-        // if there's both a startColumn and a shardEnd, decide which should be used as start/end based on search order
-        else if ( startColumn != null && currentShard.getShardEnd() != null) {
-
-            T shardEnd = (T) currentShard.getShardEnd();
-
-
-            // if the search is not ascending, set the start to be the older edge
-            if(!ascending){
-
-                T searchStart = comparator.compare(shardEnd, startColumn) > 0 ? shardEnd : startColumn;
-                columnSearch.buildRange( rangeBuilder, searchStart, null);
-
-                if(logger.isTraceEnabled()){
-                    logger.trace("search descending with start: {} in shard", searchStart, currentShard);
-                }
-
-            }
-            // if the search is ascending, then always use the startColumn for the start and shardEnd for the range end
-            else{
-
-                columnSearch.buildRange( rangeBuilder, startColumn , shardEnd);
-
-                if(logger.isTraceEnabled()){
-                    logger.trace("search with start: {}, end: {}", startColumn, shardEnd);
-                }
-
-
-
-            }
-
-        }
-
-        rangeBuilder.setLimit( selectSize );
-
         if (logger.isTraceEnabled()) logger.trace( "Executing cassandra query with shard {}", currentShard );
 
         /**
          * Get our list of slices
          */
-        final RowSliceQuery<R, C> query =
-            keyspace.prepareQuery( cf ).setConsistencyLevel( consistencyLevel ).getKeySlice( (R) currentShard.getRowKey() )
-                .withColumnRange( rangeBuilder.build() );
-
         final Rows<R, C> result;
         try {
-            result = query.execute().getResult();
+            result = prefetchWindow.fetch( getRowKeys( currentShard ), buildRange( currentShard, startColumn ) );
         }
         catch ( ConnectionException e ) {
             throw new RuntimeException( "Unable to connect to casandra", e );
@@ -420,6 +351,13 @@ public class MultiRowShardColumnIterator<R, C, T> implements Iterator<T> {
         if(moreToReturn && mergedResults.size() > 0){
             startColumn = mergedResults.get( mergedResults.size()  - 1 );
 
+            // read the next page of this shard while this one is consumed
+            prefetchWindow.prefetch( getRowKeys( currentShard ), buildRange( currentShard, startColumn ) );
+
+        }
+        // this shard is done, read the first pages of the shards that follow
+        else if ( !moreToReturn ){
+            prefetchShards();
         }
 
 
@@ -441,6 +379,138 @@ public class MultiRowShardColumnIterator<R, C, T> implements Iterator<T> {
     }
 
 
+    /**
+     * Build the range of the page of the shard that starts at the given column, or the first page of the shard if the
+     * start is null
+     */
+    private ByteBufferRange buildRange( final SmartShard shard, final T start ) {
+
+        final RangeBuilder rangeBuilder = new RangeBuilder();
+
+        // initial request, build the range with no start and no end
+        if ( start == null && shard.getShardEnd() == null ){
+
+            columnSearch.buildRange( rangeBuilder );
+
+            if(logger.isTraceEnabled()){
+                logger.trace("initial search (no start or shard end)");
+            }
+
+        }
+        // if there's only a start column set the range start to it always
+        else if ( start != null && shard.getShardEnd() == null ){
+
+            columnSearch.buildRange( rangeBuilder, start, null );
+
+            if(logger.isTraceEnabled()){
+                logger.trace("search (no shard end) with start: {}", start);
+            }
+
+        }
+        // if there's only a shardEnd, set the start/end according based on the search order
+        else if ( start == null && shard.getShardEnd() != null ){
+
+            T shardEnd = (T) shard.getShardEnd();
+
+            // if we have a shardEnd and it's not an ascending search, use the shardEnd as a start
+            if(!ascending) {
+
+                columnSearch.buildRange(rangeBuilder, shardEnd, null);
+
+                if(logger.isTraceEnabled()){
+                    logger.trace("search descending with start: {}", shardEnd);
+                }
+
+            }
+            // if we have a shardEnd and it is an ascending search, use the shardEnd as the end
+            else{
+
+                columnSearch.buildRange( rangeBuilder, null, shardEnd );
+
+                if(logger.isTraceEnabled()){
+                    logger.trace("search ascending with end: {}", shardEnd);
+                }
+
+            }
+
+        }
+        // if there's both a start column and a shardEnd, decide which should be used as start/end based on search order
+        else if ( start != null && shard.getShardEnd() != null) {
+
+            T shardEnd = (T) shard.getShardEnd();
+
+
+            // if the search is not ascending, set the start to be the older edge
+            if(!ascending){
+
+                T searchStart = comparator.compare(shardEnd, start) > 0 ? shardEnd : start;
+                columnSearch.buildRange( rangeBuilder, searchStart, null);
+
+                if(logger.isTraceEnabled()){
+                    logger.trace("search descending with start: {} in shard", searchStart, shard);
+                }
+
+            }
+            // if the search is ascending, then always use the start column for the start and shardEnd for the range end
+            else{
+
+                columnSearch.buildRange( rangeBuilder, start , shardEnd);
+
+                if(logger.isTraceEnabled()){
+                    logger.trace("search with start: {}, end: {}", start, shardEnd);
+                }
+
+
+
+            }
+
+        }
+
+        rangeBuilder.setLimit( start == null ? pageSize : pageSize + 1 );
+
+        return rangeBuilder.build();
+    }
+
+
+    /**
+     * Prefetch the first page of the shards after the current one, as they will be read with the current start column
+     */
+    private void prefetchShards() {
+
+        final int current = indexOf( currentShard );
+
+        int prefetched = 0;
+
+        for ( int i = current + 1; i < rowKeysWithShardEnd.size() && prefetched < prefetchWindow.getWindow(); i++ ) {
+
+            final SmartShard shard = rowKeysWithShardEnd.get( i );
+
+            if ( shard.isDeleted() ) {
+                continue;
+            }
+
+            prefetchWindow.prefetch( getRowKeys( shard ), buildRange( shard, startColumn ) );
+            prefetched++;
+        }
+    }
+
+
+    private int indexOf( final SmartShard shard ) {
+        for ( int i = 0; i < rowKeysWithShardEnd.size(); i++ ) {
+            if ( rowKeysWithShardEnd.get( i ) == shard ) {
+                return i;
+            }
+        }
+
+        return rowKeysWithShardEnd.size();
+    }
+
+
+    private List<R> getRowKeys( final SmartShard shard ) {
+        return Collections.singletonList( ( R ) shard.getRowKey() );
+    }
+
+
     /**
      * Process the result set and filter any duplicates that may have already been seen in previous shards.  During
      * a shard transition, there could be the same columns in multiple shards (rows).  This will also allow for
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.core.astyanax;
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+
+import com.codahale.metrics.Meter;
+import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.query.RowSliceQuery;
+
+
+/**
+ * Reads pages of the multi row column iterators ahead of their consumers.  The iterators issue the query of the page
+ * they expect to read next while the current page is consumed, and only use the prefetched page if the query they end
+ * up issuing is exactly the one that was prefetched, so a wrong guess costs a read but never changes the results.
+ *
+ * Shared by all iterators.  Each iterator keeps at most a window of pages in flight, and the executor bounds the
+ * prefetches of the node, a prefetch that can't be run right away is skipped.
+ *
+ * Meters prefetch.hit and prefetch.miss count the pages read from a prefetch and the pages read synchronously,
+ * prefetch.wasted counts prefetched pages that were never used.
+ */
+public class PagePrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger( PagePrefetcher.class );
+
+    private final ExecutorService executor;
+    private final int window;
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter wasted;
+
+
+    /**
+     * @param executor The executor the prefetches run on.  Should reject work when it is saturated rather than queue
+     * it
+     * @param window The most pages each iterator prefetches at once
+     */
+    public PagePrefetcher( final ExecutorService executor, final int window, final MetricsFactory metricsFactory ) {
+        this.executor = executor;
+        this.window = Math.max( 1, window );
+        this.hits = metricsFactory.getMeter( PagePrefetcher.class, "prefetch.hit" );
+        this.misses = metricsFactory.getMeter( PagePrefetcher.class, "prefetch.miss" );
+        this.wasted = metricsFactory.getMeter( PagePrefetcher.class, "prefetch.wasted" );
+    }
+
+
+    public int getWindow() {
+        return window;
+    }
+
+
+    /**
+     * Start executing the query
+     *
+     * @return The future of the page, or null if the executor has no capacity
+     */
+    <R, C> Future<Rows<R, C>> submit( final RowSliceQuery<R, C> query ) {
+        try {
+            return executor.submit( new Callable<Rows<R, C>>() {
+                @Override
+                public Rows<R, C> call() throws Exception {
+                    return query.execute().getResult();
+                }
+            } );
+        }
+        catch ( RejectedExecutionException ree ) {
+            if ( logger.isTraceEnabled() ) {
+                logger.trace( "Prefetch executor is saturated, skipping prefetch" );
+            }
+            return null;
+        }
+    }
+
+
+    void hit() {
+        hits.mark();
+    }
+
+
+    void miss() {
+        misses.mark();
+    }
+
+
+    void wasted( final int count ) {
+        if ( count > 0 ) {
+            wasted.mark( count );
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.core.astyanax;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Objects;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.model.ByteBufferRange;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ConsistencyLevel;
+import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.query.RowSliceQuery;
+
+
+/**
+ * The pages a single iterator has in flight.  Pages are keyed by their rows and column range, a page is only used if
+ * the iterator reads exactly the same slice.  Not thread safe, it's only used by the thread consuming the iterator.
+ *
+ * Without a prefetcher every page is read synchronously.
+ */
+class PrefetchWindow<R, C> {
+
+    private final Keyspace keyspace;
+    private final ColumnFamily<R, C> cf;
+    private final ConsistencyLevel consistencyLevel;
+    private final PagePrefetcher prefetcher;
+
+    private final Map<PageKey<R>, Future<Rows<R, C>>> pending = new LinkedHashMap<>();
+
+
+    PrefetchWindow( final Keyspace keyspace, final ColumnFamily<R, C> cf, final ConsistencyLevel consistencyLevel,
+                    final PagePrefetcher prefetcher ) {
+        this.keyspace = keyspace;
+        this.cf = cf;
+        this.consistencyLevel = consistencyLevel;
+        this.prefetcher = prefetcher;
+    }
+
+
+    /**
+     * The most pages in flight at once, 0 if pages are not prefetched
+     */
+    int getWindow() {
+        return prefetcher == null ? 0 : prefetcher.getWindow();
+    }
+
+
+    /**
+     * Start reading the slice in the background, if there is room in the window
+     */
+    void prefetch( final Collection<R> rowKeys, final ByteBufferRange range ) {
+        if ( prefetcher == null || pending.size() >= prefetcher.getWindow() ) {
+            return;
+        }
+
+        final PageKey<R> key = new PageKey<>( rowKeys, range );
+
+        if ( pending.containsKey( key ) ) {
+            return;
+        }
+
+        final Future<Rows<R, C>> future = prefetcher.submit( query( rowKeys, range ) );
+
+        if ( future != null ) {
+            pending.put( key, future );
+        }
+    }
+
+
+    /**
+     * Read the slice, from a prefetch if the same slice was prefetched.  Prefetches of other slices of the same rows
+     * are discarded, the iterator has moved past them
+     */
+    Rows<R, C> fetch( final Collection<R> rowKeys, final ByteBufferRange range ) throws ConnectionException {
+        if ( prefetcher == null ) {
+            return query( rowKeys, range ).execute().getResult();
+        }
+
+        final PageKey<R> key = new PageKey<>( rowKeys, range );
+
+        final Future<Rows<R, C>> future = pending.remove( key );
+
+        discard( key.rowKeys );
+
+        if ( future == null ) {
+            prefetcher.miss();
+            return query( rowKeys, range ).execute().getResult();
+        }
+
+        prefetcher.hit();
+
+        try {
+            return future.get();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while waiting for a prefetched page", e );
+        }
+        catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof ConnectionException ) {
+                throw ( ConnectionException ) e.getCause();
+            }
+
+            throw new RuntimeException( "Unable to read prefetched page", e.getCause() );
+        }
+    }
+
+
+    /**
+     * Cancel the pages of the given rows
+     */
+    private void discard( final List<R> rowKeys ) {
+        int discarded = 0;
+
+        for ( final Iterator<Map.Entry<PageKey<R>, Future<Rows<R, C>>>> itr = pending.entrySet().iterator();
+              itr.hasNext(); ) {
+
+            final Map.Entry<PageKey<R>, Future<Rows<R, C>>> entry = itr.next();
+
+            if ( rowKeys.equals( entry.getKey().rowKeys ) ) {
+                entry.getValue().cancel( false );
+                itr.remove();
+                discarded++;
+            }
+        }
+
+        prefetcher.wasted( discarded );
+    }
+
+
+    private RowSliceQuery<R, C> query( final Collection<R> rowKeys, final ByteBufferRange range ) {
+        return keyspace.prepareQuery( cf ).setConsistencyLevel( consistencyLevel ).getKeySlice( rowKeys )
+                       .withColumnRange( range );
+    }
+
+
+    /**
+     * The rows and column range of a slice
+     */
+    private static final class PageKey<R> {
+
+        private final List<R> rowKeys;
+        private final ByteBuffer start;
+        private final ByteBuffer end;
+        private final boolean reversed;
+        private final int limit;
+
+
+        private PageKey( final Collection<R> rowKeys, final ByteBufferRange range ) {
+            this.rowKeys = new ArrayList<>( rowKeys );
+            this.start = duplicate( range.getStart() );
+            this.end = duplicate( range.getEnd() );
+            this.reversed = range.isReversed();
+            this.limit = range.getLimit();
+        }
+
+
+        private static ByteBuffer duplicate( final ByteBuffer buffer ) {
+            return buffer == null ? null : buffer.duplicate();
+        }
+
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( !( o instanceof PageKey ) ) {
+                return false;
+            }
+
+            final PageKey<?> other = ( PageKey<?> ) o;
+
+            return reversed == other.reversed && limit == other.limit && rowKeys.equals( other.rowKeys ) && Objects
+                .equal( start, other.start ) && Objects.equal( end, other.end );
+        }
+
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode( rowKeys, start, end, reversed, limit );
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.persistence.core.metrics;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+
+/**
+ * A fixed size, HDR style reservoir.  Values are counted in buckets that are linear within each power of 2, so every
+ * value is kept with roughly 6% relative precision no matter how large it is.  Updates increment a single counter and
+ * never allocate, which makes this safe to use on request paths where the default decaying reservoir would create
+ * garbage for every update.
+ *
+ * Counts are kept for the current and the previous window, a snapshot covers both.  Windows are rotated when a
+ * snapshot is taken, so recording never has to look at the clock.
+ */
+public class LogLinearReservoir implements Reservoir {
+
+    /**
+     * Values below this are counted exactly
+     */
+    private static final int LINEAR_LIMIT = 32;
+
+    /**
+     * Number of buckets each power of 2 above the linear limit is split in to
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Largest power of 2 we track, anything larger is counted in the last bucket
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int LINEAR_EXPONENT = Integer.numberOfTrailingZeros( LINEAR_LIMIT );
+
+    static final int BUCKET_COUNT = LINEAR_LIMIT + ( MAX_EXPONENT - LINEAR_EXPONENT + 1 ) * SUB_BUCKETS;
+
+    /**
+     * The most values a snapshot will be built from
+     */
+    private static final int MAX_SNAPSHOT_SIZE = 2048;
+
+    private final long windowNanos;
+
+    private volatile AtomicLongArray current = new AtomicLongArray( BUCKET_COUNT );
+    private volatile AtomicLongArray previous = new AtomicLongArray( BUCKET_COUNT );
+    private volatile long windowStart = System.nanoTime();
+
+
+    /**
+     * @param window The length of a window, a snapshot covers between one and two windows of values
+     */
+    public LogLinearReservoir( final long window, final TimeUnit unit ) {
+        this.windowNanos = unit.toNanos( window );
+    }
+
+
+    public LogLinearReservoir() {
+        this( 1, TimeUnit.MINUTES );
+    }
+
+
+    @Override
+    public int size() {
+        final AtomicLongArray current = this.current;
+        final AtomicLongArray previous = this.previous;
+
+        long size = 0;
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            size += current.get( i ) + previous.get( i );
+        }
+
+        return ( int ) Math.min( Integer.MAX_VALUE, size );
+    }
+
+
+    @Override
+    public void update( final long value ) {
+        current.incrementAndGet( bucket( value ) );
+    }
+
+
+    @Override
+    public Snapshot getSnapshot() {
+        rotate();
+
+        final AtomicLongArray current = this.current;
+        final AtomicLongArray previous = this.previous;
+
+        final long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            counts[i] = current.get( i ) + previous.get( i );
+            total += counts[i];
+        }
+
+        //scale the counts down so the snapshot stays small.  Every non empty bucket keeps at least one value
+        final double scale = total > MAX_SNAPSHOT_SIZE ? ( double ) MAX_SNAPSHOT_SIZE / total : 1;
+
+        int size = 0;
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            if ( counts[i] > 0 ) {
+                counts[i] = Math.max( 1, Math.round( counts[i] * scale ) );
+                size += counts[i];
+            }
+        }
+
+        final long[] values = new long[size];
+        int position = 0;
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            final long value = value( i );
+
+            for ( long j = 0; j < counts[i]; j++ ) {
+                values[position++] = value;
+            }
+        }
+
+        return new Snapshot( values );
+    }
+
+
+    /**
+     * Start a new window once the current one is over.  Updates racing with the rotation may land in the window that
+     * just became the previous one, they are still part of the next snapshot.
+     */
+    private synchronized void rotate() {
+        final long now = System.nanoTime();
+
+        if ( now - windowStart < windowNanos ) {
+            return;
+        }
+
+        //more than 2 windows ago, nothing we have is recent
+        previous = now - windowStart < 2 * windowNanos ? current : new AtomicLongArray( BUCKET_COUNT );
+        current = new AtomicLongArray( BUCKET_COUNT );
+        windowStart = now;
+    }
+
+
+    /**
+     * Get the bucket a value is counted in
+     */
+    static int bucket( final long value ) {
+        if ( value < LINEAR_LIMIT ) {
+            return value < 0 ? 0 : ( int ) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros( value );
+
+        if ( exponent > MAX_EXPONENT ) {
+            return BUCKET_COUNT - 1;
+        }
+
+        final int subBucket = ( int ) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+
+        return LINEAR_LIMIT + ( exponent - LINEAR_EXPONENT ) * SUB_BUCKETS + subBucket;
+    }
+
+
+    /**
+     * Get the value reported for a bucket, the middle of the range of values it counts
+     */
+    static long value( final int bucket ) {
+        if ( bucket < LINEAR_LIMIT ) {
+            return bucket;
+        }
+
+        final int exponent = ( bucket - LINEAR_LIMIT ) / SUB_BUCKETS + LINEAR_EXPONENT;
+        final int subBucket = ( bucket - LINEAR_LIMIT ) % SUB_BUCKETS;
+        final long width = 1L << ( exponent - SUB_BUCKET_BITS );
+
+        return ( 1L << exponent ) + subBucket * width + width / 2;
+    }
+}
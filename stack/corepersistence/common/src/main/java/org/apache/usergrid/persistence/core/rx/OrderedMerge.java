@@ -21,32 +21,37 @@ package org.apache.usergrid.persistence.core.rx;
 
 
 import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.Deque;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.NavigableSet;
-import java.util.concurrent.Semaphore;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.TreeMultimap;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 
 import rx.Observable;
+import rx.Producer;
 import rx.Subscriber;
-import rx.Subscription;
-import rx.observers.SerializedSubscriber;
-import rx.subscriptions.CompositeSubscription;
+import rx.exceptions.Exceptions;
+import rx.exceptions.OnErrorThrowable;
 
 
 /**
  * Produces a single Observable from multiple ordered source observables.  The same as the "merge" step in a merge sort.
- * Ensure that your comparator matches the ordering of your inputs, or you may get strange results. The current
- * implementation requires each Observable to be running in it's own thread.  Once backpressure in RX is implemented,
- * this requirement can be removed.
+ * Ensure that your comparator matches the ordering of your inputs, or you may get strange results.
+ *
+ * The merge is pull based.  Each source is requested up to the prefetch size, the head of every source is kept in a
+ * heap, and a source is only requested more once its buffered items have been emitted downstream.  No threads are
+ * needed, all sources may run on the subscribing thread, and at most (sources * prefetch) items are buffered as long as
+ * the sources honor backpressure.  Whenever a source has no buffered head and is not complete the merge stalls until
+ * that source produces, since its next item could be the lowest.
  */
 public final class OrderedMerge<T> implements Observable.OnSubscribe<T> {
 
@@ -57,15 +62,22 @@ public final class OrderedMerge<T> implements Observable.OnSubscribe<T> {
 
     private final Observable<? extends T>[] observables;
 
+    //the max amount to request from each source at a time
+    private final int prefetch;
 
-    //The max amount to buffer before blowing up
-    private final int maxBufferSize;
+    //the number of sources of each merge, null if not metered
+    private final Histogram depth;
 
+    //the number of times a merge waited on a source, null if not metered
+    private final Counter stalls;
 
-    private OrderedMerge( final Comparator<T> comparator, final int maxBufferSize,
-                          Observable<? extends T>... observables ) {
+
+    private OrderedMerge( final Comparator<T> comparator, final int prefetch, final Histogram depth,
+                          final Counter stalls, Observable<? extends T>... observables ) {
         this.comparator = comparator;
-        this.maxBufferSize = maxBufferSize;
+        this.prefetch = Math.max( 1, prefetch );
+        this.depth = depth;
+        this.stalls = stalls;
         this.observables = observables;
     }
 
@@ -73,258 +85,329 @@ public final class OrderedMerge<T> implements Observable.OnSubscribe<T> {
     @Override
     public void call( final Subscriber<? super T> outerOperation ) {
 
+        if ( depth != null ) {
+            depth.update( observables.length );
+        }
 
-        CompositeSubscription csub = new CompositeSubscription();
-
-
-        //when a subscription is received, we need to subscribe on each observable
-        SubscriberCoordinator coordinator = new SubscriberCoordinator( comparator, outerOperation, observables.length );
-
-        InnerObserver<T>[] innerObservers = new InnerObserver[observables.length];
-
-
-        //we have to do this in 2 steps to get the synchronization correct.  We must set up our total inner observers
-        //before starting subscriptions otherwise our assertions for completion or starting won't work properly
-        for ( int i = 0; i < observables.length; i++ ) {
-            //subscribe to each one and add it to the composite
-            //create a new inner and subscribe
-            final InnerObserver<T> inner = new InnerObserver<T>( coordinator, maxBufferSize, i );
-
-            coordinator.add( inner );
+        final MergeCoordinator<T> coordinator =
+            new MergeCoordinator<>( comparator, outerOperation, observables.length, prefetch, stalls );
 
-            innerObservers[i] = inner;
-        }
         /**
-         * Once we're set up, begin the subscription to sub observables
+         * Subscribe to our sources before we accept requests, so every source is already prefetching by the time
+         * we are asked to emit
          */
         for ( int i = 0; i < observables.length; i++ ) {
-            //subscribe after setting them up
-            //add our subscription to the composite for future cancellation
-            Subscription subscription = observables[i].subscribe( innerObservers[i] );
+            final InnerSubscriber<T> inner = coordinator.inners[i];
 
-            csub.add( subscription );
+            //unsubscribing from the merge unsubscribes from every source
+            outerOperation.add( inner );
 
-            //add the internal composite subscription
-            outerOperation.add( csub );
+            observables[i].unsafeSubscribe( inner );
         }
+
+        outerOperation.setProducer( coordinator );
     }
 
 
     /**
-     * Our coordinator.  It coordinates all the
+     * Our coordinator.  It tracks the downstream demand and emits the lowest head while every source has either a
+     * buffered head or has completed.  Only one thread drains at a time, any other thread signalling while a drain is
+     * running causes the draining thread to loop again.
      */
-    private static final class SubscriberCoordinator<T> {
+    private static final class MergeCoordinator<T> implements Producer {
 
+        private final Subscriber<? super T> subscriber;
+        private final InnerSubscriber<T>[] inners;
+        private final Counter stalls;
 
-        private final AtomicInteger completedCount = new AtomicInteger();
-        private volatile boolean readyToProduce = false;
+        /**
+         * Sources with a buffered head, ordered by their head.  Only accessed while draining
+         */
+        private final PriorityQueue<InnerSubscriber<T>> heads;
 
+        /**
+         * Sources we need the next head of before we can emit.  Only accessed while draining
+         */
+        private final ArrayDeque<InnerSubscriber<T>> waiting;
 
-        private final Subscriber<? super T> subscriber;
-        private final TreeMultimap<T, InnerObserver<T>> nextValues;
-        private final List<InnerObserver<T>> innerSubscribers;
-        private final ArrayDeque<InnerObserver<T>> toProduce;
-
-
-        private SubscriberCoordinator( final Comparator<T> comparator, final Subscriber<? super T> subscriber,
-                                       final int innerSize ) {
-            //we only want to emit events serially
-            this.subscriber = new SerializedSubscriber( subscriber );
-            this.innerSubscribers = new ArrayList<>( innerSize );
-            this.nextValues = TreeMultimap.create( comparator, InnerObserverComparator.INSTANCE );
-            this.toProduce = new ArrayDeque<>( innerSize );
-        }
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
 
+        private volatile Throwable error;
 
-        public void onCompleted() {
+        //only accessed while draining
+        private boolean terminated;
+        private boolean stalled;
 
-            /**
-             * Invoke next to remove any elements from other Q's from this event
-             */
-            next();
 
-            final int completed = completedCount.incrementAndGet();
+        private MergeCoordinator( final Comparator<T> comparator, final Subscriber<? super T> subscriber,
+                                  final int innerSize, final int prefetch, final Counter stalls ) {
+            this.subscriber = subscriber;
+            this.stalls = stalls;
+            this.inners = new InnerSubscriber[innerSize];
+            this.heads = new PriorityQueue<>( Math.max( 1, innerSize ), new HeadComparator<>( comparator ) );
+            this.waiting = new ArrayDeque<>( Math.max( 1, innerSize ) );
+
+            for ( int i = 0; i < innerSize; i++ ) {
+                inners[i] = new InnerSubscriber<>( this, prefetch, i );
+                waiting.add( inners[i] );
+            }
+        }
 
 
-            //we're done, just drain the queue since there are no more running producers
-            if ( completed == innerSubscribers.size() ) {
+        @Override
+        public void request( final long n ) {
+            if ( n < 0 ) {
+                throw new IllegalArgumentException( "n >= 0 required but it was " + n );
+            }
 
-                if (logger.isTraceEnabled()) logger.trace( "Completing Observable.  Draining {} elements from the subscribers", innerSubscribers.size() );
+            if ( n == 0 ) {
+                return;
+            }
 
-                //Drain the queues
-                while ( !subscriber.isUnsubscribed() && (!nextValues.isEmpty() || !toProduce.isEmpty()) ) {
-                    next();
+            //add to our demand, capping it at unbounded
+            long current;
+            long next;
+
+            do {
+                current = requested.get();
+
+                if ( current == Long.MAX_VALUE ) {
+                    break;
                 }
 
-                //signal completion
-                subscriber.onCompleted();
+                next = current + n;
+
+                if ( next < 0 ) {
+                    next = Long.MAX_VALUE;
+                }
             }
+            while ( !requested.compareAndSet( current, next ) );
+
+            drain();
         }
 
 
-        public void add( InnerObserver<T> inner ) {
-            this.innerSubscribers.add( inner );
-            this.toProduce.add( inner );
+        private void onError( final Throwable e ) {
+            //only the first error is reported
+            if ( error == null ) {
+                error = e;
+            }
+
+            drain();
         }
 
 
-        public void onError( Throwable e ) {
-            subscriber.onError( e );
-        }
+        private void drain() {
+            if ( wip.getAndIncrement() != 0 ) {
+                return;
+            }
 
+            int missed = 1;
+
+            do {
+                emit();
+                missed = wip.addAndGet( -missed );
+            }
+            while ( missed != 0 );
+        }
 
-        public void next() {
 
-            //we want to emit items in order, so we synchronize our next
-            synchronized ( this ) {
-                /**
-                 * Init before our loop
-                 */
-                while ( !toProduce.isEmpty() ) {
+        /**
+         * Emit as many items as we have demand for, in order, until we're out of demand or waiting on a source
+         */
+        private void emit() {
 
-                    InnerObserver<T> inner = toProduce.pop();
+            if ( terminated ) {
+                return;
+            }
 
-                    //This has nothing left to produce, skip it
-                    if ( inner.drained ) {
-                        continue;
-                    }
+            final long demand = requested.get();
+            long emitted = 0;
 
-                    final T nextKey = inner.peek();
+            while ( !subscriber.isUnsubscribed() ) {
 
-                    //we can't produce, not everything has an element to inspect, leave it in the set to produce next
-                    // time
-                    if ( nextKey == null ) {
-                        toProduce.push( inner );
-                        return;
-                    }
+                final Throwable e = error;
 
-                    //add it to our fast access set
-                    nextValues.put( nextKey, inner );
+                if ( e != null ) {
+                    terminate();
+                    subscriber.onError( e );
+                    return;
                 }
 
+                //we can't emit without knowing the head of every source that has not completed
+                if ( !fillHeads() ) {
 
-                //take as many elements as we can until we hit a case where we can't take anymore
-                while ( !nextValues.isEmpty() ) {
+                    if ( emitted != demand && !stalled ) {
+                        stalled = true;
 
+                        if ( stalls != null ) {
+                            stalls.inc();
+                        }
+                    }
 
-                    /**
-                     * Get our lowest key and begin producing until we can't produce any longer
-                     */
-                    final T lowestKey = nextValues.keySet().first();
+                    break;
+                }
 
+                stalled = false;
 
-                    //we need to create a copy, otherwise we receive errors. We use ArrayDque
+                //every source completed and everything has been emitted
+                if ( heads.isEmpty() ) {
+                    if (logger.isTraceEnabled()) logger.trace( "Completing Observable. All {} sources drained", inners.length );
 
-                    NavigableSet<InnerObserver<T>> nextObservers = nextValues.get( lowestKey );
+                    terminate();
+                    subscriber.onCompleted();
+                    return;
+                }
 
-                    while ( !nextObservers.isEmpty() ) {
+                if ( emitted == demand ) {
+                    break;
+                }
 
-                        final InnerObserver<T> inner = nextObservers.pollFirst();
+                final InnerSubscriber<T> inner = heads.poll();
 
-                        nextValues.remove( lowestKey, inner );
+                final T value = inner.poll();
 
-                        final T value = inner.pop();
+                if (logger.isTraceEnabled()) logger.trace( "Emitting value {}", value );
 
-                        if (logger.isTraceEnabled()) logger.trace( "Emitting value {}", value );
+                try {
+                    subscriber.onNext( value );
+                }
+                catch ( Throwable t ) {
+                    Exceptions.throwIfFatal( t );
+                    terminate();
+                    subscriber.onError( OnErrorThrowable.addValueAsLastCause( t, value ) );
+                    return;
+                }
 
-                        subscriber.onNext( value );
+                emitted++;
 
-                        final T nextKey = inner.peek();
+                //re-insert with the new head, or wait on the source for its next head
+                if ( inner.peek() != null ) {
+                    heads.add( inner );
+                }
+                else {
+                    waiting.add( inner );
+                }
+            }
 
-                        //nothing to peek, it's either drained or slow
-                        if ( nextKey == null ) {
+            if ( emitted != 0 && demand != Long.MAX_VALUE ) {
+                requested.addAndGet( -emitted );
+            }
+        }
 
-                            //it's drained, nothing left to do
-                            if ( inner.drained ) {
-                                continue;
-                            }
 
-                            //it's slow, we can't process because we don't know if this is another min value without
-                            // inspecting it. Stop emitting and try again next pass through
-                            toProduce.push( inner );
-                            return;
-                        }
+        /**
+         * Move every waiting source that now has a head into the heap, dropping completed sources
+         *
+         * @return false if a source has neither a head nor completed, and we need to wait on it
+         */
+        private boolean fillHeads() {
+            while ( !waiting.isEmpty() ) {
 
-                        //we have a next value, insert it and keep running
-                        nextValues.put( nextKey, inner );
-                    }
+                final InnerSubscriber<T> inner = waiting.peek();
+
+                //read completion before the head, the source completes after its last item is buffered
+                final boolean done = inner.done;
+
+                if ( inner.peek() != null ) {
+                    waiting.poll();
+                    heads.add( inner );
+                }
+                else if ( done ) {
+                    waiting.poll();
+                }
+                else {
+                    return false;
                 }
             }
+
+            return true;
         }
 
 
-//        /**
-//         * Return true if every inner observer has been drained
-//         */
-//        private boolean drained() {
-//            //perform an audit
-//            for ( InnerObserver<T> inner : innerSubscribers ) {
-//                if ( !inner.drained ) {
-//                    return false;
-//                }
-//            }
-//
-//            return true;
-//        }
+        private void terminate() {
+            terminated = true;
+
+            for ( InnerSubscriber<T> inner : inners ) {
+                inner.unsubscribe();
+            }
+
+            heads.clear();
+            waiting.clear();
+        }
     }
 
 
-    private static final class InnerObserverComparator implements Comparator<InnerObserver> {
+    /**
+     * Compares sources by their buffered head.  Equal heads are emitted in source order
+     */
+    private static final class HeadComparator<T> implements Comparator<InnerSubscriber<T>> {
+
+        private final Comparator<T> comparator;
 
-        private static final InnerObserverComparator INSTANCE = new InnerObserverComparator();
+
+        private HeadComparator( final Comparator<T> comparator ) {this.comparator = comparator;}
 
 
         @Override
-        public int compare( final InnerObserver o1, final InnerObserver o2 ) {
+        public int compare( final InnerSubscriber<T> o1, final InnerSubscriber<T> o2 ) {
+            final int compare = comparator.compare( o1.peek(), o2.peek() );
+
+            if ( compare != 0 ) {
+                return compare;
+            }
+
             return Integer.compare( o1.id, o2.id );
         }
     }
 
 
-    private static final class InnerObserver<T> extends Subscriber<T> {
+    private static final class InnerSubscriber<T> extends Subscriber<T> {
+
+        private final MergeCoordinator<T> coordinator;
 
-        private final SubscriberCoordinator<T> coordinator;
-        private final Deque<T> items = new LinkedList<>();
-        private final int maxQueueSize;
         /**
-         * TODO: T.N. Once backpressure makes it into RX Java, this needs to be remove and should use backpressure
+         * Written by the source, read and polled by the draining thread
          */
-        private final Semaphore semaphore;
+        private final Queue<T> items = new ConcurrentLinkedQueue<>();
+
+        private final int prefetch;
 
         /**
-         * Our id so we have something unique to compare in the multimap
+         * Request more once this many items have been consumed
          */
-        public final int id;
-
+        private final int replenish;
 
         /**
-         * Flags for synchronization with coordinator. Multiple threads may be used, so volatile is required
+         * Our id so equal heads have a stable order
          */
-        private volatile boolean started = false;
-        private volatile boolean completed = false;
-        private volatile boolean drained = false;
+        private final int id;
+
+        //items consumed since we last requested more, only accessed while draining
+        private int consumed;
 
+        private volatile boolean done = false;
 
-        public InnerObserver( final SubscriberCoordinator<T> coordinator, final int maxQueueSize, final int id ) {
+
+        private InnerSubscriber( final MergeCoordinator<T> coordinator, final int prefetch, final int id ) {
             this.coordinator = coordinator;
-            this.maxQueueSize = maxQueueSize;
+            this.prefetch = prefetch;
+            this.replenish = Math.max( 1, prefetch / 2 );
             this.id = id;
+        }
 
-            this.semaphore = new Semaphore( maxQueueSize );
+
+        @Override
+        public void onStart() {
+            request( prefetch );
         }
 
 
         @Override
         public void onCompleted() {
-            started = true;
-            completed = true;
-            checkDrained();
-
-            /**
-             * release this semaphore and invoke next.  Both these calls can be removed when backpressure is added.
-             * We need the next to force removal of other inner consumers
-             */
-            coordinator.onCompleted();
+            done = true;
+            coordinator.drain();
         }
 
 
@@ -336,56 +419,52 @@ public final class OrderedMerge<T> implements Observable.OnSubscribe<T> {
 
         @Override
         public void onNext( T a ) {
-
-            try {
-                this.semaphore.acquire();
-            }
-            catch ( InterruptedException e ) {
-                onError( e );
-            }
-
-
-            items.add( a );
-
-            started = true;
-
-            //for each subscriber, emit to the parent wrapper then evaluate calling on next
-            coordinator.next();
+            items.offer( a );
+            coordinator.drain();
         }
 
 
-        public T peek() {
-            return items.peekFirst();
+        private T peek() {
+            return items.peek();
         }
 
 
-        public T pop() {
-            T item = items.pollFirst();
+        private T poll() {
+            final T item = items.poll();
 
-            //release the semaphore since we just took an item
-            this.semaphore.release();
-
-            checkDrained();
+            if ( ++consumed == replenish ) {
+                consumed = 0;
+                request( replenish );
+            }
 
             return item;
         }
-
-
-        /**
-         * if we've started and finished, and this is the last element, we want to mark ourselves as completely drained
-         */
-        private void checkDrained() {
-            drained = started && completed && items.size() == 0;
-        }
     }
 
 
     /**
      * Create our ordered merge
+     *
+     * @param prefetch The maximum number of items to buffer from each source
      */
-    public static <T> Observable<T> orderedMerge( Comparator<T> comparator, int maxBufferSize,
+    public static <T> Observable<T> orderedMerge( Comparator<T> comparator, int prefetch,
                                                   Observable<? extends T>... observables ) {
 
-        return Observable.create( new OrderedMerge<T>( comparator, maxBufferSize, observables ) );
+        return Observable.create( new OrderedMerge<T>( comparator, prefetch, null, null, observables ) );
+    }
+
+
+    /**
+     * Create our ordered merge, recording the number of sources of each merge in the "merge.depth" histogram and the
+     * number of times a merge had to wait on a source in the "merge.stalls" counter
+     *
+     * @param prefetch The maximum number of items to buffer from each source
+     */
+    public static <T> Observable<T> orderedMerge( MetricsFactory metricsFactory, Comparator<T> comparator,
+                                                  int prefetch, Observable<? extends T>... observables ) {
+
+        return Observable.create( new OrderedMerge<T>( comparator, prefetch,
+            metricsFactory.getHistogram( OrderedMerge.class, "merge.depth" ),
+            metricsFactory.getCounter( OrderedMerge.class, "merge.stalls" ), observables ) );
     }
 }
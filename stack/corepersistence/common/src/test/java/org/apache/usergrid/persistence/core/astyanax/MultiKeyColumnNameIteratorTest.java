@@ -33,6 +33,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import org.apache.usergrid.persistence.core.guice.TestCommonModule;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.core.test.ITRunner;
 import org.apache.usergrid.persistence.core.test.UseModules;
@@ -66,6 +67,9 @@ public class MultiKeyColumnNameIteratorTest {
     @Inject
     public CassandraCluster cassandraCluster;
 
+    @Inject
+    public MetricsFactory metricsFactory;
+
     protected static Keyspace keyspace;
 
     protected ApplicationScope scope;
@@ -195,7 +199,8 @@ public class MultiKeyColumnNameIteratorTest {
              * Again, arbitrary buffer size to attempt we buffer at some point
              */
             final MultiKeyColumnNameIterator<Long, Long> ascendingItr =
-                new MultiKeyColumnNameIterator<>( Arrays.asList( row1Iterator, row2Iterator, row3Iterator ),
+                new MultiKeyColumnNameIterator<>( metricsFactory,
+                    Arrays.asList( row1Iterator, row2Iterator, row3Iterator ),
                     ascendingComparator, 900 );
 
 
@@ -225,7 +230,8 @@ public class MultiKeyColumnNameIteratorTest {
              * Again, arbitrary buffer size to attempt we buffer at some point
              */
             final MultiKeyColumnNameIterator<Long, Long> descendingItr =
-                new MultiKeyColumnNameIterator<>( Arrays.asList( row1IteratorDesc, row2IteratorDesc, row3IteratorDesc ),
+                new MultiKeyColumnNameIterator<>( metricsFactory,
+                    Arrays.asList( row1IteratorDesc, row2IteratorDesc, row3IteratorDesc ),
                     descendingComparator, 900 );
 
 
@@ -287,7 +293,7 @@ public class MultiKeyColumnNameIteratorTest {
             * Again, arbitrary buffer size to attempt we buffer at some point
             */
            final MultiKeyColumnNameIterator<Long, Long> ascendingItr =
-                   new MultiKeyColumnNameIterator<>( Arrays.asList( row1Iterator ),
+                   new MultiKeyColumnNameIterator<>( metricsFactory, Arrays.asList( row1Iterator ),
                            ascendingComparator, 900 );
 
 
@@ -316,7 +322,7 @@ public class MultiKeyColumnNameIteratorTest {
             * Again, arbitrary buffer size to attempt we buffer at some point
             */
            final MultiKeyColumnNameIterator<Long, Long> descendingItr =
-                   new MultiKeyColumnNameIterator<>( Arrays.asList( row1IteratorDesc),
+                   new MultiKeyColumnNameIterator<>( metricsFactory, Arrays.asList( row1IteratorDesc),
                            descendingComparator, 900 );
 
 
@@ -27,6 +27,8 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.usergrid.persistence.core.CassandraConfig;
 import org.apache.usergrid.persistence.core.CassandraFig;
@@ -35,6 +37,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import org.apache.usergrid.persistence.core.guice.TestCommonModule;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.core.test.ITRunner;
 import org.apache.usergrid.persistence.core.test.UseModules;
@@ -70,6 +73,9 @@ public class MultiRowColumnIteratorTest {
     @Inject
     public CassandraCluster cassandraCluster;
 
+    @Inject
+    public MetricsFactory metricsFactory;
+
     protected static Keyspace keyspace;
 
     protected ApplicationScope scope;
@@ -513,6 +519,90 @@ public class MultiRowColumnIteratorTest {
     }
 
 
+    @Test
+    public void multiIteratorPrefetch() throws InterruptedException {
+
+        final String rowKey1 = UUIDGenerator.newTimeUUID().toString();
+
+        final String rowKey2 = UUIDGenerator.newTimeUUID().toString();
+
+        final String rowKey3 = UUIDGenerator.newTimeUUID().toString();
+
+
+        final long maxValue = 1000;
+
+        final CountDownLatch latch = new CountDownLatch( 3 );
+
+
+        writeData( latch, rowKey1, maxValue, 1 );
+        writeData( latch, rowKey2, maxValue, 2 );
+        writeData( latch, rowKey3, maxValue, 10 );
+
+
+        latch.await();
+
+
+        final ColumnParser<Long, Long> longParser = new ColumnParser<Long, Long>() {
+            @Override
+            public Long parseColumn( final Column<Long> column ) {
+                return column.getName();
+            }
+        };
+
+
+        final ColumnSearch<Long> ascendingSearch = new ColumnSearch<Long>() {
+            @Override
+            public void buildRange(final RangeBuilder rangeBuilder, final Long value, Long end) {
+                rangeBuilder.setStart( value );
+            }
+
+
+            @Override
+            public void buildRange( final RangeBuilder rangeBuilder ) {
+
+            }
+
+
+            @Override
+            public boolean skipFirst( final Long first ) {
+                return false;
+            }
+        };
+
+
+        final Comparator<Long> ascendingComparator = new Comparator<Long>() {
+
+            @Override
+            public int compare( final Long o1, final Long o2 ) {
+                return Long.compare( o1, o2 );
+            }
+        };
+
+
+        final Collection<String> rowKeys = Arrays.asList( rowKey1, rowKey2, rowKey3 );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+
+        try {
+            final PagePrefetcher prefetcher = new PagePrefetcher( executor, 2, metricsFactory );
+
+            //small pages so nearly every page is read from a prefetch, results must match the synchronous reads
+            MultiRowColumnIterator<String, Long, Long> ascendingItr =
+                    new MultiRowColumnIterator<>( keyspace, COLUMN_FAMILY, ConsistencyLevel.CL_QUORUM, longParser,
+                            ascendingSearch, ascendingComparator, rowKeys, 37, prefetcher );
+
+            for ( long i = 0; i < maxValue; i++ ) {
+                assertEquals( i, ascendingItr.next().longValue() );
+            }
+
+            assertFalse( "Should not have more values", ascendingItr.hasNext() );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+
     private void writeData( final CountDownLatch latch, final String rowKey, final long maxValue, final long mod ) {
 
         Observable.just( rowKey ).doOnNext( new Action1<String>() {
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.persistence.core.metrics;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class LogLinearReservoirTest {
+
+    @Test
+    public void bucketsCoverValues() {
+        assertEquals( 0, LogLinearReservoir.bucket( -5 ) );
+        assertEquals( 31, LogLinearReservoir.bucket( 31 ) );
+        assertEquals( 31, LogLinearReservoir.value( 31 ) );
+
+        //every value maps to a bucket whose reported value is within the relative precision
+        for ( long value = 1; value < 1L << 40; value = value * 3 + 1 ) {
+            final long reported = LogLinearReservoir.value( LogLinearReservoir.bucket( value ) );
+            final double error = Math.abs( reported - value ) / ( double ) value;
+
+            assertTrue( "Value " + value + " reported as " + reported, error <= 1.0 / 16 );
+        }
+
+        assertEquals( LogLinearReservoir.BUCKET_COUNT - 1, LogLinearReservoir.bucket( Long.MAX_VALUE ) );
+    }
+
+
+    @Test
+    public void snapshotQuantiles() {
+        final LogLinearReservoir reservoir = new LogLinearReservoir();
+
+        for ( int i = 1; i <= 10000; i++ ) {
+            reservoir.update( i );
+        }
+
+        assertEquals( 10000, reservoir.size() );
+
+        final Snapshot snapshot = reservoir.getSnapshot();
+
+        assertTrue( snapshot.size() <= 2048 + LogLinearReservoir.BUCKET_COUNT );
+        assertEquals( 5000, snapshot.getMedian(), 5000 / 10.0 );
+        assertEquals( 9900, snapshot.get99thPercentile(), 9900 / 10.0 );
+        assertEquals( 10000, snapshot.getMax(), 10000 / 10.0 );
+    }
+
+
+    @Test
+    public void oldWindowsDropped() throws Exception {
+        final LogLinearReservoir reservoir = new LogLinearReservoir( 10, TimeUnit.MILLISECONDS );
+
+        reservoir.update( 100 );
+
+        Thread.sleep( 50 );
+
+        assertEquals( 0, reservoir.getSnapshot().size() );
+    }
+}
@@ -31,6 +31,12 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.UniformReservoir;
+
 import rx.Observable;
 import rx.Subscriber;
 import rx.schedulers.Schedulers;
@@ -38,6 +44,8 @@ import rx.schedulers.Schedulers;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 
 public class OrderedMergeTest {
@@ -148,7 +156,7 @@ public class OrderedMergeTest {
 
 
     @Test
-    @Ignore( "Pending implementation of backpressure" )
+    @Ignore( "Sources are requested on demand, the buffer size can no longer be exceeded" )
     public void multipleOperatorSingleThreadSizeException() throws InterruptedException {
 
         List<Integer> expected1List = Arrays.asList( 5, 3, 2, 0 );
@@ -269,7 +277,7 @@ public class OrderedMergeTest {
 
 
     @Test
-    @Ignore("Pending implementation of backpressure")
+    @Ignore( "Sources are requested on demand, the buffer size can no longer be exceeded" )
     public void multipleOperatorMultipleThreadSizeException() throws InterruptedException {
 
         List<Integer> expected1List = Arrays.asList( 10, 4, 3, 2, 1 );
@@ -566,6 +574,187 @@ public class OrderedMergeTest {
 
 
 
+    /**
+     * Tests that sources on the subscribing thread are only read as far ahead as the buffer size
+     */
+    @Test
+    public void multipleOperatorSameThreadBounded() {
+
+        final int size = 1000;
+        final int bufferSize = 2;
+
+        final AtomicInteger produced = new AtomicInteger();
+
+        Observable<Integer>[] sources = new Observable[3];
+
+        for ( int i = 0; i < sources.length; i++ ) {
+            final List<Integer> values = new ArrayList<>( size );
+
+            for ( int j = i; j < size * sources.length; j += sources.length ) {
+                values.add( j );
+            }
+
+            sources[i] = Observable.from( values ).doOnNext( value -> produced.incrementAndGet() );
+        }
+
+        final List<Integer> results = new ArrayList<>();
+
+        OrderedMerge.orderedMerge( new IntegerComparator(), bufferSize, sources ).subscribe(
+            new Subscriber<Integer>() {
+                @Override
+                public void onStart() {
+                    request( 1 );
+                }
+
+
+                @Override
+                public void onCompleted() {
+                }
+
+
+                @Override
+                public void onError( final Throwable e ) {
+                    logger.error( "Test failed due to exception", e );
+                    fail( "An error was thrown " );
+                }
+
+
+                @Override
+                public void onNext( final Integer integer ) {
+                    results.add( integer );
+
+                    assertTrue( "Sources buffered more than the buffer size",
+                        produced.get() - results.size() <= sources.length * bufferSize );
+
+                    request( 1 );
+                }
+            } );
+
+        assertEquals( size * sources.length, results.size() );
+
+        for ( int i = 0; i < results.size(); i++ ) {
+            assertEquals( "Same element expected", Integer.valueOf( i ), results.get( i ) );
+        }
+    }
+
+
+    /**
+     * Tests that we only emit what was requested, and don't complete until everything was emitted
+     */
+    @Test
+    public void requestHonored() {
+
+        Observable<Integer> expected1 = Observable.from( Arrays.asList( 0, 3, 6 ) );
+
+        Observable<Integer> expected2 = Observable.from( Arrays.asList( 1, 4, 7 ) );
+
+        Observable<Integer> expected3 = Observable.from( Arrays.asList( 2, 5, 8 ) );
+
+        final RequestSubscriber subscriber = new RequestSubscriber( 4 );
+
+        OrderedMerge.orderedMerge( new IntegerComparator(), 1, expected1, expected2, expected3 )
+                    .subscribe( subscriber );
+
+        assertEquals( Arrays.asList( 0, 1, 2, 3 ), subscriber.results );
+        assertTrue( "Should not complete before everything is emitted", !subscriber.completed );
+
+        subscriber.requestMore( 5 );
+
+        assertEquals( Arrays.asList( 0, 1, 2, 3, 4, 5, 6, 7, 8 ), subscriber.results );
+        assertTrue( "Should complete once everything is emitted", subscriber.completed );
+    }
+
+
+    /**
+     * Tests an error from any source is emitted
+     */
+    @Test
+    public void errorEmitted() {
+
+        Observable<Integer> expected1 = Observable.from( Arrays.asList( 0, 2, 4 ) );
+
+        Observable<Integer> expected2 =
+            Observable.concat( Observable.just( 1 ), Observable.<Integer>error( new RuntimeException( "test" ) ) );
+
+        final Throwable[] error = new Throwable[1];
+
+        OrderedMerge.orderedMerge( new IntegerComparator(), 10, expected1, expected2 )
+                    .subscribe( integer -> { }, e -> error[0] = e );
+
+        assertEquals( "test", error[0].getMessage() );
+    }
+
+
+    /**
+     * Tests the metered merge records its depth
+     */
+    @Test
+    public void metered() {
+
+        final Histogram depth = new Histogram( new UniformReservoir() );
+
+        final MetricsFactory metricsFactory = mock( MetricsFactory.class );
+        when( metricsFactory.getHistogram( OrderedMerge.class, "merge.depth" ) ).thenReturn( depth );
+        when( metricsFactory.getCounter( OrderedMerge.class, "merge.stalls" ) ).thenReturn( new Counter() );
+
+        Observable<Integer> expected1 = Observable.from( Arrays.asList( 0, 3, 6 ) );
+        Observable<Integer> expected2 = Observable.from( Arrays.asList( 1, 4, 7 ) );
+        Observable<Integer> expected3 = Observable.from( Arrays.asList( 2, 5, 8 ) );
+
+        final List<Integer> results =
+            OrderedMerge.orderedMerge( metricsFactory, new IntegerComparator(), 10, expected1, expected2, expected3 )
+                        .toList().toBlocking().single();
+
+        assertEquals( Arrays.asList( 0, 1, 2, 3, 4, 5, 6, 7, 8 ), results );
+        assertEquals( 1, depth.getCount() );
+        assertEquals( 3, depth.getSnapshot().getMax() );
+    }
+
+
+    /**
+     * Only requests what it's told to
+     */
+    private static class RequestSubscriber extends Subscriber<Integer> {
+
+        private final List<Integer> results = new ArrayList<>();
+        private final long initialRequest;
+        private boolean completed;
+
+
+        private RequestSubscriber( final long initialRequest ) {this.initialRequest = initialRequest;}
+
+
+        @Override
+        public void onStart() {
+            request( initialRequest );
+        }
+
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+
+
+        @Override
+        public void onError( final Throwable e ) {
+            logger.error( "Test failed due to exception", e );
+            fail( "An error was thrown " );
+        }
+
+
+        @Override
+        public void onNext( final Integer integer ) {
+            results.add( integer );
+        }
+
+
+        public void requestMore( final long n ) {
+            request( n );
+        }
+    }
+
+
     private static class IntegerComparator implements Comparator<Integer> {
 
         @Override
@@ -98,6 +98,21 @@ public interface GraphFig extends GuicyFig {
 
     String SMART_SHARD_SEEK_ENABLED = "usergrid.graph.smartshard.seek.enabled";
 
+    /**
+     * Read the next pages of edge shards while the current page is consumed
+     */
+    String SHARD_PREFETCH_ENABLED = "usergrid.graph.shard.prefetch.enabled";
+
+    /**
+     * The most pages each edge iterator prefetches at once
+     */
+    String SHARD_PREFETCH_WINDOW = "usergrid.graph.shard.prefetch.window";
+
+    /**
+     * The number of threads prefetching pages, shared by all iterators.  Prefetches are skipped when all are busy
+     */
+    String SHARD_PREFETCH_WORKERS = "usergrid.graph.shard.prefetch.worker.count";
+
 
 
 
@@ -170,6 +185,18 @@ public interface GraphFig extends GuicyFig {
     @Key(SMART_SHARD_SEEK_ENABLED)
     boolean getSmartShardSeekEnabled();
 
+    @Default("false")
+    @Key(SHARD_PREFETCH_ENABLED)
+    boolean getShardPrefetchEnabled();
+
+    @Default("2")
+    @Key(SHARD_PREFETCH_WINDOW)
+    int getShardPrefetchWindow();
+
+    @Default("20")
+    @Key(SHARD_PREFETCH_WORKERS)
+    int getShardPrefetchWorkerCount();
+
 
 }
 
@@ -59,6 +59,7 @@ import org.apache.usergrid.persistence.graph.serialization.impl.shard.EdgeColumn
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.EdgeShardSerialization;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.EdgeShardStrategy;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardAllocation;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardApproximation;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardCache;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardGroupCompaction;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardGroupDeletion;
@@ -72,6 +73,9 @@ import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.Shard
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.ShardedEdgeSerializationImpl;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.SizebasedEdgeColumnFamilies;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.SizebasedEdgeShardStrategy;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.count.NodeShardApproximationImpl;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.count.NodeShardCounterSerialization;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.count.NodeShardCounterSerializationImpl;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
@@ -112,6 +116,12 @@ public abstract class GraphModule extends AbstractModule {
         bind(NodeShardAllocation.class).to( NodeShardAllocationImpl.class );
         bind( NodeShardCache.class ).to( NodeShardCacheImpl.class );
 
+        /**
+         * Bindings for approximate shard counts
+         */
+        bind( NodeShardApproximation.class ).to( NodeShardApproximationImpl.class );
+        bind( NodeShardCounterSerialization.class ).to( NodeShardCounterSerializationImpl.class );
+
         /**
          * Binding for task tracker
          */
@@ -177,6 +187,8 @@ public abstract class GraphModule extends AbstractModule {
 
         migrationBinding.addBinding().to( Key.get( EdgeShardSerialization.class ) );
 
+        migrationBinding.addBinding().to( Key.get( NodeShardCounterSerialization.class ) );
+
         //Get the old version and the new one
         migrationBinding.addBinding().to( Key.get( EdgeMetadataSerializationV1Impl.class) );
         migrationBinding.addBinding().to( Key.get( EdgeMetadataSerializationV2Impl.class ) );
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard;
+
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+
+
+/**
+ * Keeps an approximate count of the edges written to each shard.  Counts are accumulated in memory and flushed to
+ * cassandra in the background, so they may lag or slightly overshoot the real number of edges in a shard.
+ */
+public interface NodeShardApproximation {
+
+
+    /**
+     * Increment the count of edges in the shard
+     *
+     * @param scope The application scope
+     * @param shard The shard the edges were written to
+     * @param count The number of edges written
+     * @param directedEdgeMeta The directed edge metadata of the shard
+     */
+    public void increment( final ApplicationScope scope, final Shard shard, final long count,
+                           final DirectedEdgeMeta directedEdgeMeta );
+
+
+    /**
+     * Get the approximate count of edges in the shard.  This includes both flushed and in memory counts.
+     *
+     * @param scope The application scope
+     * @param shard The shard to count
+     * @param directedEdgeMeta The directed edge metadata of the shard
+     */
+    public long getCount( final ApplicationScope scope, final Shard shard, final DirectedEdgeMeta directedEdgeMeta );
+
+
+    /**
+     * Returns true if the count of the shard covers all its edges.  Shards written before counting was introduced
+     * only count their recent edges, until a scan of the whole shard sets their count
+     *
+     * @param scope The application scope
+     * @param shard The shard to check
+     * @param directedEdgeMeta The directed edge metadata of the shard
+     */
+    public boolean isCounted( final ApplicationScope scope, final Shard shard,
+                              final DirectedEdgeMeta directedEdgeMeta );
+
+
+    /**
+     * Set the count of the shard to the number of edges it has, after which it counts all its edges
+     *
+     * @param scope The application scope
+     * @param shard The shard to set the count of
+     * @param edgeCount The number of edges in the shard, 0 for a shard that's being created
+     * @param directedEdgeMeta The directed edge metadata of the shard
+     */
+    public void setCount( final ApplicationScope scope, final Shard shard, final long edgeCount,
+                          final DirectedEdgeMeta directedEdgeMeta );
+
+
+    /**
+     * Flush all in memory counts to cassandra and wait for the write to complete
+     */
+    public void flush();
+}
@@ -59,6 +59,7 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
     private final GraphFig graphFig;
     private final ShardGroupCompaction shardGroupCompaction;
     private final NodeShardCache nodeShardCache;
+    private final NodeShardApproximation nodeShardApproximation;
 
 
     @Inject
@@ -66,7 +67,8 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
                                     final EdgeColumnFamilies edgeColumnFamilies,
                                     final ShardedEdgeSerialization shardedEdgeSerialization, final TimeService timeService,
                                     final GraphFig graphFig, final ShardGroupCompaction shardGroupCompaction,
-                                    final NodeShardCache nodeShardCache) {
+                                    final NodeShardCache nodeShardCache,
+                                    final NodeShardApproximation nodeShardApproximation ) {
         this.edgeShardSerialization = edgeShardSerialization;
         this.edgeColumnFamilies = edgeColumnFamilies;
         this.shardedEdgeSerialization = shardedEdgeSerialization;
@@ -74,6 +76,7 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
         this.graphFig = graphFig;
         this.shardGroupCompaction = shardGroupCompaction;
         this.nodeShardCache = nodeShardCache;
+        this.nodeShardApproximation = nodeShardApproximation;
     }
 
 
@@ -160,9 +163,23 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
          * Check out if we have a count for our shard allocation
          */
 
+        final long shardSize = graphFig.getShardSize();
+
+        /**
+         * Shards written before counting was introduced only count their recent edges, an oversized shard would look
+         * small.  Fall back to scanning the whole shard for those, the scan sets their count
+         */
+        final boolean countKnown = nodeShardApproximation.isCounted( scope, shard, directedEdgeMeta );
 
+        final long count = countKnown ? nodeShardApproximation.getCount( scope, shard, directedEdgeMeta ) : 0;
 
-        final long shardSize = graphFig.getShardSize();
+        if ( countKnown && count < shardSize ) {
+            if (logger.isTraceEnabled()) logger.trace( "Shard {} in shard group {} has an approximate count of {}, not splitting", shard, shardEntryGroup, count );
+            return false;
+        }
+
+        //the last edge we need to read to find our pivot
+        final long maxScan = countKnown ? ( count / shardSize ) * shardSize : Long.MAX_VALUE;
 
 
 
@@ -209,7 +226,7 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
          */
 
         long edgeCount = 0;
-        for ( long i = 1; edges.hasNext(); i++ ) {
+        for ( long i = 1; edges.hasNext() && i <= maxScan; i++ ) {
             //we hit a pivot shard, set it since it could be the last one we encounter
             if ( i % shardSize == 0 ) {
                 marked = edges.next();
@@ -229,6 +246,12 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
                 logger.trace( "Shard {} in shard group {} not full, " +
                     "not splitting. Edge count: {}",  shard, shardEntryGroup, edgeCount );
             }
+
+            //we read every edge of the shard, its count covers them from now on
+            if ( !edges.hasNext() ) {
+                nodeShardApproximation.setCount( scope, shard, edgeCount, directedEdgeMeta );
+            }
+
             return false;
         }
 
@@ -240,6 +263,9 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
             logger.trace("Allocating new shard {} for edge meta {}", newShard, directedEdgeMeta);
         }
 
+        //count the new shard from its creation, edges compacted into it are counted as they're written
+        nodeShardApproximation.setCount( scope, newShard, 0, directedEdgeMeta );
+
         final MutationBatch batch = this.edgeShardSerialization.writeShardMeta( scope, newShard, directedEdgeMeta );
 
         try {
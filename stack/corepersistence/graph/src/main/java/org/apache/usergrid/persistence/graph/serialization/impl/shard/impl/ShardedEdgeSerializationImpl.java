@@ -31,9 +31,12 @@ import javax.inject.Inject;
 
 import com.google.common.base.Optional;
 import org.apache.usergrid.persistence.core.CassandraConfig;
+import org.apache.usergrid.persistence.core.astyanax.PagePrefetcher;
 import org.apache.usergrid.persistence.core.astyanax.MultiTenantColumnFamily;
 import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
 import org.apache.usergrid.persistence.core.consistency.TimeService;
+import org.apache.usergrid.persistence.core.executor.TaskExecutorFactory;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.core.util.ValidationUtils;
 import org.apache.usergrid.persistence.graph.Edge;
@@ -81,6 +84,8 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
     protected final EdgeShardStrategy writeEdgeShardStrategy;
     protected final TimeService timeService;
     protected final EdgeShardSerialization edgeShardSerialization;
+    protected final NodeShardApproximation nodeShardApproximation;
+    protected final PagePrefetcher pagePrefetcher;
 
 
 
@@ -88,7 +93,9 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
     public ShardedEdgeSerializationImpl( final Keyspace keyspace, final CassandraConfig cassandraConfig,
                                          final GraphFig graphFig, final EdgeShardStrategy writeEdgeShardStrategy,
                                          final TimeService timeService,
-                                         final EdgeShardSerialization edgeShardSerialization ) {
+                                         final EdgeShardSerialization edgeShardSerialization,
+                                         final NodeShardApproximation nodeShardApproximation,
+                                         final MetricsFactory metricsFactory ) {
 
 
         checkNotNull( "keyspace required", keyspace );
@@ -97,6 +104,8 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
         checkNotNull( "writeEdgeShardStrategy required", writeEdgeShardStrategy );
         checkNotNull( "timeService required", timeService );
         checkNotNull( "edgeShardSerialization required", edgeShardSerialization );
+        checkNotNull( "nodeShardApproximation required", nodeShardApproximation );
+        checkNotNull( "metricsFactory required", metricsFactory );
 
 
 
@@ -106,6 +115,20 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
         this.writeEdgeShardStrategy = writeEdgeShardStrategy;
         this.timeService = timeService;
         this.edgeShardSerialization = edgeShardSerialization;
+        this.nodeShardApproximation = nodeShardApproximation;
+
+        //no queue, a prefetch is skipped if no thread is free to run it
+        this.pagePrefetcher = new PagePrefetcher( TaskExecutorFactory
+            .createTaskExecutor( "GraphPrefetchExecutor", graphFig.getShardPrefetchWorkerCount(), 0,
+                TaskExecutorFactory.RejectionAction.ABORT ), graphFig.getShardPrefetchWindow(), metricsFactory );
+    }
+
+
+    /**
+     * The prefetcher for edge iterators, null if prefetching is disabled
+     */
+    private PagePrefetcher getPagePrefetcher() {
+        return graphFig.getShardPrefetchEnabled() ? pagePrefetcher : null;
     }
 
 
@@ -127,7 +150,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
 
                 batch.withRow( columnFamily, ScopedRowKey.fromKey( scope.getApplication(), rowKey ) ).putColumn( edge, isDeleted );
             }
-        }.createBatch( scope, shards, timestamp );
+        }.createBatch( scope, shards, timestamp, true );
     }
 
 
@@ -153,7 +176,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
 
                 batch.withRow( columnFamily, ScopedRowKey.fromKey( scope.getApplication(), rowKey ) ).putColumn( edge, isDeleted );
             }
-        }.createBatch( scope, shards, timestamp );
+        }.createBatch( scope, shards, timestamp, true );
     }
 
 
@@ -177,7 +200,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                 batch.withRow( columnFamily, ScopedRowKey.fromKey( scope.getApplication(), rowKey ) ).putColumn( edge, isDeleted );
 
             }
-        }.createBatch( scope, shards, timestamp );
+        }.createBatch( scope, shards, timestamp, true );
     }
 
 
@@ -203,7 +226,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                 batch.withRow( columnFamilies.getTargetNodeSourceTypeCfName(), ScopedRowKey.fromKey( scope.getApplication(), rowKey ) )
                      .putColumn( edge, isDeleted );
             }
-        }.createBatch( scope, shards, timestamp );
+        }.createBatch( scope, shards, timestamp, true );
     }
 
 
@@ -227,7 +250,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                 batch.withRow( columnFamilies.getGraphEdgeVersions(), ScopedRowKey.fromKey( scope.getApplication(), rowKey ) )
                      .putColumn( column, isDeleted );
             }
-        }.createBatch( scope, shards, timestamp );
+        }.createBatch( scope, shards, timestamp, true );
     }
 
 
@@ -246,7 +269,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
 
                 batch.withRow( columnFamily, ScopedRowKey.fromKey( scope.getApplication(), rowKey ) ).deleteColumn( edge );
             }
-        }.createBatch( scope, shards, timestamp );
+        }.createBatch( scope, shards, timestamp, false );
     }
 
 
@@ -268,7 +291,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                 batch.withRow( columnFamilies.getSourceNodeTargetTypeCfName(), ScopedRowKey.fromKey( scope.getApplication(), rowKey ) )
                      .deleteColumn( edge );
             }
-        }.createBatch( scope, shards, timestamp );
+        }.createBatch( scope, shards, timestamp, false );
     }
 
 
@@ -287,7 +310,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
 
                 batch.withRow( columnFamily, ScopedRowKey.fromKey( scope.getApplication(), rowKey ) ).deleteColumn( edge );
             }
-        }.createBatch( scope, shards, timestamp );
+        }.createBatch( scope, shards, timestamp, false );
     }
 
 
@@ -309,7 +332,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                 batch.withRow( columnFamilies.getTargetNodeSourceTypeCfName(), ScopedRowKey.fromKey( scope.getApplication(), rowKey ) )
                      .deleteColumn( edge );
             }
-        }.createBatch( scope, shards, timestamp );
+        }.createBatch( scope, shards, timestamp, false );
     }
 
 
@@ -328,7 +351,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                 batch.withRow( columnFamilies.getGraphEdgeVersions(), ScopedRowKey.fromKey( scope.getApplication(), rowKey ) )
                      .deleteColumn( column );
             }
-        }.createBatch( scope, shards, timestamp );
+        }.createBatch( scope, shards, timestamp, false );
     }
 
 
@@ -397,7 +420,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                 };
 
         return new ShardsColumnIterator<>( searcher, columnFamily, keyspace, cassandraConfig.getReadCL(),
-                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled() );
+                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled(), getPagePrefetcher() );
     }
 
 
@@ -468,7 +491,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
 
 
         return new ShardsColumnIterator<>( searcher, columnFamily, keyspace, cassandraConfig.getReadCL(),
-                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled() );
+                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled(), getPagePrefetcher() );
     }
 
 
@@ -533,7 +556,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                 };
 
         return new ShardsColumnIterator( searcher, columnFamily, keyspace, cassandraConfig.getReadCL(),
-                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled() );
+                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled(), getPagePrefetcher() );
     }
 
 
@@ -595,7 +618,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
 
 
         return new ShardsColumnIterator<>( searcher, columnFamily, keyspace, cassandraConfig.getReadCL(),
-                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled() );
+                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled(), getPagePrefetcher() );
     }
 
 
@@ -658,7 +681,7 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                 };
 
         return new ShardsColumnIterator<>( searcher, columnFamily, keyspace, cassandraConfig.getReadCL(),
-                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled() );
+                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled(), getPagePrefetcher() );
     }
 
 
@@ -711,9 +734,12 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
 
         /**
          * Create a mutation batch
+         *
+         * @param countEdge True if the op writes the edge and it should be counted in the shard approximation.
+         * Deletes of the edge columns are never counted, compaction deletes edges that are not marked
          */
         public MutationBatch createBatch( final ApplicationScope scope, final Collection<Shard> shards,
-                                          final UUID opTimestamp ) {
+                                          final UUID opTimestamp, final boolean countEdge ) {
 
             final MutationBatch batch =
                     keyspace.prepareMutationBatch().withConsistencyLevel( cassandraConfig.getWriteCL() )
@@ -748,6 +774,12 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                     batch.mergeShallow(edgeShardSerialization.writeShardMeta(scope, shard, getDirectedEdgeMeta()));
                 }
 
+                // count new edges so the shard audit can decide on splits without scanning the shard, marks
+                // re-write an existing edge and are not counted
+                if ( countEdge && !isDeleted ) {
+                    nodeShardApproximation.increment( scope, shard, 1, getDirectedEdgeMeta() );
+                }
+
             }
 
 
@@ -23,6 +23,7 @@ import java.util.*;
 
 import org.apache.usergrid.persistence.core.astyanax.MultiRowColumnIterator;
 import org.apache.usergrid.persistence.core.astyanax.MultiRowShardColumnIterator;
+import org.apache.usergrid.persistence.core.astyanax.PagePrefetcher;
 import org.apache.usergrid.persistence.core.shard.SmartShard;
 import org.apache.usergrid.persistence.graph.SearchByEdgeType;
 import org.slf4j.Logger;
@@ -62,17 +63,20 @@ public class ShardsColumnIterator<R, C, T> implements Iterator<T> {
 
     private final boolean smartShardSeekEnabled;
 
+    private final PagePrefetcher prefetcher;
+
 
     public ShardsColumnIterator(final EdgeSearcher<R, C, T> searcher,
                                 final MultiTenantColumnFamily<ScopedRowKey<R>, C> cf, final Keyspace keyspace,
                                 final ConsistencyLevel consistencyLevel, final int pageSize,
-                                final boolean smartShardSeekEnabled) {
+                                final boolean smartShardSeekEnabled, final PagePrefetcher prefetcher) {
         this.searcher = searcher;
         this.cf = cf;
         this.keyspace = keyspace;
         this.pageSize = pageSize;
         this.consistencyLevel = consistencyLevel;
         this.smartShardSeekEnabled = smartShardSeekEnabled;
+        this.prefetcher = prefetcher;
     }
 
 
@@ -130,7 +134,7 @@ public class ShardsColumnIterator<R, C, T> implements Iterator<T> {
             final boolean ascending = searcher.getOrder() == SearchByEdgeType.Order.ASCENDING;
 
             currentColumnIterator = new MultiRowShardColumnIterator<>( keyspace, cf,  consistencyLevel, searcher, searcher,
-                searcher.getComparator(), pageSize, rowKeysWithShardEnd, ascending, searcher.getLastTimestamp() );
+                searcher.getComparator(), pageSize, rowKeysWithShardEnd, ascending, searcher.getLastTimestamp(), prefetcher );
 
         }else{
 
@@ -138,7 +142,7 @@ public class ShardsColumnIterator<R, C, T> implements Iterator<T> {
             final List<ScopedRowKey<R>> rowKeys = searcher.getRowKeys();
 
             currentColumnIterator = new MultiRowColumnIterator<>( keyspace, cf,  consistencyLevel, searcher, searcher,
-                searcher.getComparator(), rowKeys, pageSize );
+                searcher.getComparator(), rowKeys, pageSize, prefetcher );
 
 
         }
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.count;
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
+
+
+/**
+ * An in memory set of shard counts waiting to be flushed.  Each shard gets its own striped adder so concurrent writers
+ * to the same hot shard don't contend on a single value.
+ */
+public class Counter {
+
+    private final ConcurrentHashMap<ScopedRowKey<ShardKey>, LongAdder> counts = new ConcurrentHashMap<>();
+
+    private final LongAdder invokeCount = new LongAdder();
+
+    private final long createTimestamp;
+
+
+    public Counter( final long createTimestamp ) {
+        this.createTimestamp = createTimestamp;
+    }
+
+
+    /**
+     * Add the count to the shard's value
+     */
+    public void add( final ScopedRowKey<ShardKey> key, final long count ) {
+        counts.computeIfAbsent( key, k -> new LongAdder() ).add( count );
+        invokeCount.increment();
+    }
+
+
+    /**
+     * Add all the values of the other counter to this one
+     */
+    public void merge( final Counter other ) {
+        for ( final Map.Entry<ScopedRowKey<ShardKey>, LongAdder> entry : other.counts.entrySet() ) {
+            add( entry.getKey(), entry.getValue().sum() );
+        }
+    }
+
+
+    /**
+     * Get the current in memory count of the shard
+     */
+    public long get( final ScopedRowKey<ShardKey> key ) {
+        final LongAdder adder = counts.get( key );
+
+        return adder == null ? 0 : adder.sum();
+    }
+
+
+    /**
+     * Get the counts of every shard in this counter
+     */
+    public Map<ScopedRowKey<ShardKey>, LongAdder> getEntries() {
+        return counts;
+    }
+
+
+    /**
+     * Get the number of increments this counter has received
+     */
+    public long getInvokeCount() {
+        return invokeCount.sum();
+    }
+
+
+    public long getCreateTimestamp() {
+        return createTimestamp;
+    }
+
+
+    public boolean isEmpty() {
+        return counts.isEmpty();
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.count;
+
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
+import org.apache.usergrid.persistence.core.consistency.TimeService;
+import org.apache.usergrid.persistence.core.executor.TaskExecutorFactory;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.util.ValidationUtils;
+import org.apache.usergrid.persistence.graph.GraphFig;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.DirectedEdgeMeta;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardApproximation;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.Shard;
+import org.apache.usergrid.persistence.graph.serialization.util.GraphValidation;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+
+
+/**
+ * Approximates shard sizes with in memory counters.  The current counter is swapped out and flushed to cassandra once
+ * it has received {@link GraphFig#COUNTER_WRITE_FLUSH_COUNT} increments or is older than {@link
+ * GraphFig#COUNTER_WRITE_FLUSH_INTERVAL}.  Counts that are being flushed are still visible to readers until the write
+ * completes.
+ */
+@Singleton
+public class NodeShardApproximationImpl implements NodeShardApproximation {
+
+    private static final Logger logger = LoggerFactory.getLogger( NodeShardApproximationImpl.class );
+
+
+    private final GraphFig graphFig;
+    private final NodeShardCounterSerialization nodeShardCounterSerialization;
+    private final TimeService timeService;
+
+    private final ThreadPoolExecutor flushExecutor;
+
+    private final AtomicReference<Counter> currentCounter;
+    private final Queue<Counter> flushingCounters = new ConcurrentLinkedQueue<>();
+
+    private final Timer flushTimer;
+    private final Meter flushFailureMeter;
+
+
+    @Inject
+    public NodeShardApproximationImpl( final GraphFig graphFig,
+                                       final NodeShardCounterSerialization nodeShardCounterSerialization,
+                                       final TimeService timeService, final MetricsFactory metricsFactory ) {
+        this.graphFig = graphFig;
+        this.nodeShardCounterSerialization = nodeShardCounterSerialization;
+        this.timeService = timeService;
+
+        this.currentCounter = new AtomicReference<>( new Counter( timeService.getCurrentTime() ) );
+
+        //run flushes in the caller when the queue is full, this slows writers down instead of dropping counts
+        this.flushExecutor = TaskExecutorFactory
+                .createTaskExecutor( "GraphShardCounterFlush", 1, graphFig.getCounterFlushQueueSize(),
+                        TaskExecutorFactory.RejectionAction.CALLERRUNS );
+
+        this.flushTimer = metricsFactory.getTimer( NodeShardApproximationImpl.class, "shard.counter.flush" );
+        this.flushFailureMeter = metricsFactory.getMeter( NodeShardApproximationImpl.class, "shard.counter.flush.failure" );
+
+        metricsFactory.addGauge( NodeShardApproximationImpl.class, "shard.counter.flush.pending",
+                ( Gauge<Integer> ) flushingCounters::size );
+    }
+
+
+    @Override
+    public void increment( final ApplicationScope scope, final Shard shard, final long count,
+                           final DirectedEdgeMeta directedEdgeMeta ) {
+
+        final ScopedRowKey<ShardKey> key = createKey( scope, shard, directedEdgeMeta );
+
+        final Counter counter = currentCounter.get();
+
+        counter.add( key, count );
+
+        checkFlush( counter );
+    }
+
+
+    @Override
+    public long getCount( final ApplicationScope scope, final Shard shard, final DirectedEdgeMeta directedEdgeMeta ) {
+
+        final ScopedRowKey<ShardKey> key = createKey( scope, shard, directedEdgeMeta );
+
+        return getIncrements( key ) + nodeShardCounterSerialization.getBase( key ).or( 0L );
+    }
+
+
+    @Override
+    public boolean isCounted( final ApplicationScope scope, final Shard shard,
+                              final DirectedEdgeMeta directedEdgeMeta ) {
+
+        return nodeShardCounterSerialization.getBase( createKey( scope, shard, directedEdgeMeta ) ).isPresent();
+    }
+
+
+    @Override
+    public void setCount( final ApplicationScope scope, final Shard shard, final long edgeCount,
+                          final DirectedEdgeMeta directedEdgeMeta ) {
+
+        final ScopedRowKey<ShardKey> key = createKey( scope, shard, directedEdgeMeta );
+
+        //the counter can't be set, so keep what it's missing as the base
+        final long base = edgeCount - getIncrements( key );
+
+        try {
+            nodeShardCounterSerialization.writeBase( key, base ).execute();
+        }
+        catch ( ConnectionException e ) {
+            throw new RuntimeException( "Unable to connect to casandra", e );
+        }
+    }
+
+
+    @Override
+    public void flush() {
+
+        final Counter counter = currentCounter.get();
+
+        if ( swap( counter ) ) {
+            flushCounter( counter );
+        }
+    }
+
+
+    /**
+     * Swap and flush the counter in the background if it has reached either of our flush thresholds
+     */
+    private void checkFlush( final Counter counter ) {
+
+        final boolean countExceeded = counter.getInvokeCount() >= graphFig.getCounterFlushCount();
+
+        final boolean intervalExceeded =
+                timeService.getCurrentTime() - counter.getCreateTimestamp() >= graphFig.getCounterFlushInterval();
+
+        if ( !countExceeded && !intervalExceeded ) {
+            return;
+        }
+
+        //another thread has already swapped it
+        if ( !swap( counter ) ) {
+            return;
+        }
+
+        flushExecutor.execute( () -> flushCounter( counter ) );
+    }
+
+
+    /**
+     * Replace the counter with a new one.  Returns false if the counter is no longer the current counter
+     */
+    private boolean swap( final Counter counter ) {
+
+        if ( !currentCounter.compareAndSet( counter, new Counter( timeService.getCurrentTime() ) ) ) {
+            return false;
+        }
+
+        flushingCounters.add( counter );
+
+        return true;
+    }
+
+
+    private void flushCounter( final Counter counter ) {
+
+        try {
+            if ( counter.isEmpty() ) {
+                return;
+            }
+
+            final Timer.Context timer = flushTimer.time();
+
+            try {
+                nodeShardCounterSerialization.flush( counter ).execute();
+            }
+            finally {
+                timer.stop();
+            }
+        }
+        catch ( ConnectionException | RuntimeException e ) {
+            flushFailureMeter.mark();
+
+            logger.error( "Unable to flush shard counts, retrying them with the next flush", e );
+
+            currentCounter.get().merge( counter );
+        }
+        finally {
+            flushingCounters.remove( counter );
+        }
+    }
+
+
+    /**
+     * The increments of the shard, in memory and persisted
+     */
+    private long getIncrements( final ScopedRowKey<ShardKey> key ) {
+
+        final Counter counter = currentCounter.get();
+
+        //flush idle counters as well, otherwise a quiet node never persists its counts
+        checkFlush( counter );
+
+        long count = counter.get( key );
+
+        for ( final Counter flushing : flushingCounters ) {
+            count += flushing.get( key );
+        }
+
+        return count + nodeShardCounterSerialization.getCount( key );
+    }
+
+
+    private ScopedRowKey<ShardKey> createKey( final ApplicationScope scope, final Shard shard,
+                                              final DirectedEdgeMeta directedEdgeMeta ) {
+
+        ValidationUtils.validateApplicationScope( scope );
+        GraphValidation.validateDirectedEdgeMeta( directedEdgeMeta );
+        Preconditions.checkNotNull( shard, "shard must be specified" );
+
+        return ScopedRowKey.fromKey( scope.getApplication(), new ShardKey( shard.getShardIndex(), directedEdgeMeta ) );
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.count;
+
+
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
+import org.apache.usergrid.persistence.core.migration.schema.Migration;
+
+import com.google.common.base.Optional;
+import com.netflix.astyanax.MutationBatch;
+
+
+/**
+ * Serialization for the persisted shard edge counts
+ */
+public interface NodeShardCounterSerialization extends Migration {
+
+
+    /**
+     * Create a mutation that adds every count in the counter to the persisted counts
+     */
+    public MutationBatch flush( final Counter counter );
+
+
+    /**
+     * Get the persisted count of the shard.  Returns 0 if no count has been flushed
+     */
+    public long getCount( final ScopedRowKey<ShardKey> key );
+
+
+    /**
+     * Create a mutation that sets the base of the shard's count, the number of edges in the shard the persisted count
+     * is missing.  A shard with a base has a count that covers all its edges
+     */
+    public MutationBatch writeBase( final ScopedRowKey<ShardKey> key, final long base );
+
+
+    /**
+     * Get the base of the shard's count.  Absent if the count of the shard was never known to cover all its edges
+     */
+    public Optional<Long> getBase( final ScopedRowKey<ShardKey> key );
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.count;
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.db.marshal.CounterColumnType;
+
+import org.apache.usergrid.persistence.core.CassandraConfig;
+import org.apache.usergrid.persistence.core.astyanax.ColumnTypes;
+import org.apache.usergrid.persistence.core.astyanax.MultiTenantColumnFamily;
+import org.apache.usergrid.persistence.core.astyanax.MultiTenantColumnFamilyDefinition;
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKeySerializer;
+import org.apache.usergrid.persistence.core.datastax.TableDefinition;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.serializers.BooleanSerializer;
+
+
+@Singleton
+public class NodeShardCounterSerializationImpl implements NodeShardCounterSerialization {
+
+
+    private static final Boolean COLUMN_NAME = true;
+
+    /**
+     * Edge shard counts.  A single counter column per shard row
+     */
+    private static final MultiTenantColumnFamily<ScopedRowKey<ShardKey>, Boolean> EDGE_SHARD_COUNTS =
+            new MultiTenantColumnFamily<>( "Edge_Shard_Counts",
+                    new ScopedRowKeySerializer<>( ShardKeySerializer.INSTANCE ), BooleanSerializer.get() );
+
+
+    /**
+     * The base of each shard count, written once the count is known to cover all the edges of the shard.  Counter
+     * columns can't be set, so the base is kept as a regular column
+     */
+    private static final MultiTenantColumnFamily<ScopedRowKey<ShardKey>, Boolean> EDGE_SHARD_COUNT_BASES =
+            new MultiTenantColumnFamily<>( "Edge_Shard_Count_Bases",
+                    new ScopedRowKeySerializer<>( ShardKeySerializer.INSTANCE ), BooleanSerializer.get() );
+
+
+    protected final Keyspace keyspace;
+    protected final CassandraConfig cassandraConfig;
+
+
+    @Inject
+    public NodeShardCounterSerializationImpl( final Keyspace keyspace, final CassandraConfig cassandraConfig ) {
+        this.keyspace = keyspace;
+        this.cassandraConfig = cassandraConfig;
+    }
+
+
+    @Override
+    public MutationBatch flush( final Counter counter ) {
+
+        Preconditions.checkNotNull( counter, "counter must be specified" );
+
+        final MutationBatch batch = keyspace.prepareMutationBatch().withConsistencyLevel( cassandraConfig.getWriteCL() );
+
+        for ( final Map.Entry<ScopedRowKey<ShardKey>, LongAdder> entry : counter.getEntries().entrySet() ) {
+
+            final long value = entry.getValue().sum();
+
+            if ( value == 0 ) {
+                continue;
+            }
+
+            batch.withRow( EDGE_SHARD_COUNTS, entry.getKey() ).incrementCounterColumn( COLUMN_NAME, value );
+        }
+
+        return batch;
+    }
+
+
+    @Override
+    public long getCount( final ScopedRowKey<ShardKey> key ) {
+
+        try {
+            final Column<Boolean> result =
+                    keyspace.prepareQuery( EDGE_SHARD_COUNTS ).setConsistencyLevel( cassandraConfig.getReadCL() )
+                            .getKey( key ).getColumn( COLUMN_NAME ).execute().getResult();
+
+            return result.getLongValue();
+        }
+        catch ( NotFoundException nfe ) {
+            //swallow, the shard has never been flushed
+            return 0;
+        }
+        catch ( ConnectionException e ) {
+            throw new RuntimeException( "Unable to connect to casandra", e );
+        }
+    }
+
+
+    @Override
+    public MutationBatch writeBase( final ScopedRowKey<ShardKey> key, final long base ) {
+
+        final MutationBatch batch = keyspace.prepareMutationBatch().withConsistencyLevel( cassandraConfig.getWriteCL() );
+
+        batch.withRow( EDGE_SHARD_COUNT_BASES, key ).putColumn( COLUMN_NAME, base );
+
+        return batch;
+    }
+
+
+    @Override
+    public Optional<Long> getBase( final ScopedRowKey<ShardKey> key ) {
+
+        try {
+            final Column<Boolean> result =
+                    keyspace.prepareQuery( EDGE_SHARD_COUNT_BASES ).setConsistencyLevel( cassandraConfig.getReadCL() )
+                            .getKey( key ).getColumn( COLUMN_NAME ).execute().getResult();
+
+            return Optional.of( result.getLongValue() );
+        }
+        catch ( NotFoundException nfe ) {
+            //swallow, the count of the shard doesn't cover all its edges
+            return Optional.absent();
+        }
+        catch ( ConnectionException e ) {
+            throw new RuntimeException( "Unable to connect to casandra", e );
+        }
+    }
+
+
+    @Override
+    public Collection<MultiTenantColumnFamilyDefinition> getColumnFamilies() {
+        return Arrays.asList(
+                new MultiTenantColumnFamilyDefinition( EDGE_SHARD_COUNTS, BytesType.class.getSimpleName(),
+                        ColumnTypes.BOOLEAN, CounterColumnType.class.getSimpleName(),
+                        MultiTenantColumnFamilyDefinition.CacheOption.KEYS ),
+                new MultiTenantColumnFamilyDefinition( EDGE_SHARD_COUNT_BASES, BytesType.class.getSimpleName(),
+                        ColumnTypes.BOOLEAN, BytesType.class.getSimpleName(),
+                        MultiTenantColumnFamilyDefinition.CacheOption.KEYS ) );
+    }
+
+
+    @Override
+    public Collection<TableDefinition> getTables() {
+        return Collections.emptyList();
+    }
+}
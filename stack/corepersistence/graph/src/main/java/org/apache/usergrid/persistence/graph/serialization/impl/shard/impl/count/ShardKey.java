@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.count;
+
+
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.DirectedEdgeMeta;
+
+
+/**
+ * The key of a shard counter.  Shards are identified by their index only, since their compacted flag changes over
+ * their lifetime
+ */
+public class ShardKey {
+
+    public final long shardIndex;
+    public final DirectedEdgeMeta directedEdgeMeta;
+
+
+    public ShardKey( final long shardIndex, final DirectedEdgeMeta directedEdgeMeta ) {
+        this.shardIndex = shardIndex;
+        this.directedEdgeMeta = directedEdgeMeta;
+    }
+
+
+    @Override
+    public boolean equals( final Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() ) {
+            return false;
+        }
+
+        final ShardKey shardKey = ( ShardKey ) o;
+
+        if ( shardIndex != shardKey.shardIndex ) {
+            return false;
+        }
+
+        return directedEdgeMeta.equals( shardKey.directedEdgeMeta );
+    }
+
+
+    @Override
+    public int hashCode() {
+        int result = ( int ) ( shardIndex ^ ( shardIndex >>> 32 ) );
+        result = 31 * result + directedEdgeMeta.hashCode();
+        return result;
+    }
+
+
+    @Override
+    public String toString() {
+        return "ShardKey{" +
+                "shardIndex=" + shardIndex +
+                ", directedEdgeMeta=" + directedEdgeMeta +
+                '}';
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.count;
+
+
+import org.apache.usergrid.persistence.core.astyanax.CompositeFieldSerializer;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.DirectedEdgeMeta;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.serialize.EdgeShardRowKeySerializer;
+
+import com.netflix.astyanax.model.CompositeBuilder;
+import com.netflix.astyanax.model.CompositeParser;
+
+
+/**
+ * Serializes the shard index followed by the directed edge meta of the shard
+ */
+public class ShardKeySerializer implements CompositeFieldSerializer<ShardKey> {
+
+    private static final EdgeShardRowKeySerializer EDGE_META_SER = EdgeShardRowKeySerializer.INSTANCE;
+
+    public static final ShardKeySerializer INSTANCE = new ShardKeySerializer();
+
+
+    @Override
+    public void toComposite( final CompositeBuilder builder, final ShardKey key ) {
+        builder.addLong( key.shardIndex );
+        EDGE_META_SER.toComposite( builder, key.directedEdgeMeta );
+    }
+
+
+    @Override
+    public ShardKey fromComposite( final CompositeParser composite ) {
+        final long shardIndex = composite.readLong();
+        final DirectedEdgeMeta directedEdgeMeta = EDGE_META_SER.fromComposite( composite );
+
+        return new ShardKey( shardIndex, directedEdgeMeta );
+    }
+}
@@ -52,8 +52,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 
@@ -62,6 +65,8 @@ public class NodeShardAllocationTest {
 
     private GraphFig graphFig;
 
+    private NodeShardApproximation nodeShardApproximation;
+
 
     protected ApplicationScope scope;
 
@@ -85,6 +90,9 @@ public class NodeShardAllocationTest {
         final long timeout = 30000;
         when( graphFig.getShardCacheTimeout() ).thenReturn( timeout );
         when( graphFig.getShardMinDelta() ).thenReturn( ( long ) (timeout * 2.5) );
+
+        //no counts by default, audits fall back to scanning the shard
+        nodeShardApproximation = mock( NodeShardApproximation.class );
     }
 
 
@@ -106,7 +114,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                         timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                         timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
 
         final long timeservicetime = System.currentTimeMillis();
@@ -139,7 +148,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                      timeService, graphFig, shardGroupCompaction, nodeShardCache);
+                      timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -182,7 +192,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                        timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                        timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -229,7 +240,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                        timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                        timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -323,6 +335,297 @@ public class NodeShardAllocationTest {
     }
 
 
+    @Test
+    public void countBelowShardSizeNoScan() {
+        final ShardGroupCompaction shardGroupCompaction = mock( ShardGroupCompaction.class );
+
+        final EdgeShardSerialization edgeShardSerialization = mock( EdgeShardSerialization.class );
+
+        final EdgeColumnFamilies edgeColumnFamilies = mock( EdgeColumnFamilies.class );
+
+        final ShardedEdgeSerialization shardedEdgeSerialization = mock( ShardedEdgeSerialization.class );
+
+
+        final TimeService timeService = mock( TimeService.class );
+
+        final NodeShardCache nodeShardCache = mock( NodeShardCache.class);
+
+        final NodeShardApproximation countingApproximation = mock( NodeShardApproximation.class );
+
+
+        NodeShardAllocation approximation =
+                new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
+                        timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        countingApproximation );
+
+        final Id nodeId = IdGenerator.createId( "test" );
+        final String type = "type";
+        final String subType = "subType";
+
+
+        final long timeservicetime = System.currentTimeMillis();
+
+        when( timeService.getCurrentTime() ).thenReturn( timeservicetime );
+
+        final Shard futureShard = new Shard( 0l, 0l, true );
+
+        final ShardEntryGroup shardEntryGroup = new ShardEntryGroup( 1000l );
+        shardEntryGroup.addShard( futureShard );
+
+        final DirectedEdgeMeta targetEdgeMeta = DirectedEdgeMeta.fromSourceNodeTargetType( nodeId, type, subType );
+
+        when( countingApproximation.isCounted( same( scope ), same( futureShard ), same( targetEdgeMeta ) ) )
+                .thenReturn( true );
+
+        when( countingApproximation.getCount( same( scope ), same( futureShard ), same( targetEdgeMeta ) ) )
+                .thenReturn( graphFig.getShardSize() - 1 );
+
+
+        final boolean result = approximation.auditShard( scope, shardEntryGroup, targetEdgeMeta );
+
+        assertFalse( "No shard allocated", result );
+
+        //we should never read the shard when the count says it isn't full
+        verifyZeroInteractions( shardedEdgeSerialization );
+    }
+
+
+    @Test
+    public void countStopsScanAtPivot() {
+        final ShardGroupCompaction shardGroupCompaction = mock( ShardGroupCompaction.class );
+
+        final EdgeShardSerialization edgeShardSerialization = mock( EdgeShardSerialization.class );
+
+        final EdgeColumnFamilies edgeColumnFamilies = mock( EdgeColumnFamilies.class );
+
+        final ShardedEdgeSerialization shardedEdgeSerialization = mock( ShardedEdgeSerialization.class );
+
+
+        final TimeService timeService = mock( TimeService.class );
+
+        final NodeShardCache nodeShardCache = mock( NodeShardCache.class);
+
+        final NodeShardApproximation countingApproximation = mock( NodeShardApproximation.class );
+
+
+        NodeShardAllocation approximation =
+                new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
+                        timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        countingApproximation );
+
+        final Id nodeId = IdGenerator.createId( "test" );
+        final String type = "type";
+        final String subType = "subType";
+
+
+        final long timeservicetime = System.currentTimeMillis();
+
+        when( timeService.getCurrentTime() ).thenReturn( timeservicetime );
+
+        final Shard futureShard = new Shard( 0l, 0l, true );
+
+        final ShardEntryGroup shardEntryGroup = new ShardEntryGroup( 1000l );
+        shardEntryGroup.addShard( futureShard );
+
+        final DirectedEdgeMeta targetEdgeMeta = DirectedEdgeMeta.fromSourceNodeTargetType( nodeId, type, subType );
+
+        final long shardSize = graphFig.getShardSize();
+
+        when( countingApproximation.isCounted( same( scope ), same( futureShard ), same( targetEdgeMeta ) ) )
+                .thenReturn( true );
+
+        //the count is 2.5x the shard size, so our pivot is at 2x
+        when( countingApproximation.getCount( same( scope ), same( futureShard ), same( targetEdgeMeta ) ) )
+                .thenReturn( ( long ) ( shardSize * 2.5 ) );
+
+
+        SimpleMarkedEdge skipped = new SimpleMarkedEdge( nodeId, type, IdGenerator.createId( subType ), 10000, false );
+        SimpleMarkedEdge keep = new SimpleMarkedEdge( nodeId, type, IdGenerator.createId( subType ), 20000, false );
+        SimpleMarkedEdge tail = new SimpleMarkedEdge( nodeId, type, IdGenerator.createId( subType ), 30000, false );
+
+        List<MarkedEdge> edges = new ArrayList<>();
+
+        for ( long i = 1; i < shardSize * 2; i++ ) {
+            edges.add( skipped );
+        }
+
+        edges.add( keep );
+
+        //these should never be read
+        for ( long i = 0; i < shardSize; i++ ) {
+            edges.add( tail );
+        }
+
+
+        final Iterator<MarkedEdge> edgeIterator = edges.iterator();
+
+        when( shardedEdgeSerialization
+                .getEdgesFromSourceByTargetType( same( edgeColumnFamilies ), same( scope ), any( SearchByIdType.class ),
+                        any( Collection.class ) ) ).thenReturn( edgeIterator );
+
+
+        ArgumentCaptor<Shard> shardValue = ArgumentCaptor.forClass( Shard.class );
+
+        when( edgeShardSerialization.writeShardMeta( same( scope ), shardValue.capture(), same( targetEdgeMeta ) ) )
+                .thenReturn( mock( MutationBatch.class ) );
+
+
+        final boolean result = approximation.auditShard( scope, shardEntryGroup, targetEdgeMeta );
+
+        assertTrue( "Shard was split", result );
+
+        assertEquals( "Expected pivot at the counted shard boundary", keep.getTimestamp(),
+                shardValue.getValue().getShardIndex() );
+
+        assertTrue( "Scan stopped at the pivot", edgeIterator.hasNext() );
+
+        //the new shard is counted from its creation
+        verify( countingApproximation ).setCount( same( scope ), same( shardValue.getValue() ), eq( 0l ),
+                same( targetEdgeMeta ) );
+    }
+
+
+    @Test
+    public void uncountedShardScans() {
+        final ShardGroupCompaction shardGroupCompaction = mock( ShardGroupCompaction.class );
+
+        final EdgeShardSerialization edgeShardSerialization = mock( EdgeShardSerialization.class );
+
+        final EdgeColumnFamilies edgeColumnFamilies = mock( EdgeColumnFamilies.class );
+
+        final ShardedEdgeSerialization shardedEdgeSerialization = mock( ShardedEdgeSerialization.class );
+
+
+        final TimeService timeService = mock( TimeService.class );
+
+        final NodeShardCache nodeShardCache = mock( NodeShardCache.class);
+
+        final NodeShardApproximation countingApproximation = mock( NodeShardApproximation.class );
+
+
+        NodeShardAllocation approximation =
+                new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
+                        timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        countingApproximation );
+
+        final Id nodeId = IdGenerator.createId( "test" );
+        final String type = "type";
+        final String subType = "subType";
+
+
+        final long timeservicetime = System.currentTimeMillis();
+
+        when( timeService.getCurrentTime() ).thenReturn( timeservicetime );
+
+        final Shard futureShard = new Shard( 0l, 0l, true );
+
+        final ShardEntryGroup shardEntryGroup = new ShardEntryGroup( 1000l );
+        shardEntryGroup.addShard( futureShard );
+
+        final DirectedEdgeMeta targetEdgeMeta = DirectedEdgeMeta.fromSourceNodeTargetType( nodeId, type, subType );
+
+        final long shardSize = graphFig.getShardSize();
+
+        //written before counting, the count only covers a few recent edges
+        when( countingApproximation.isCounted( same( scope ), same( futureShard ), same( targetEdgeMeta ) ) )
+                .thenReturn( false );
+
+        when( countingApproximation.getCount( same( scope ), same( futureShard ), same( targetEdgeMeta ) ) )
+                .thenReturn( 10l );
+
+
+        SimpleMarkedEdge skipped = new SimpleMarkedEdge( nodeId, type, IdGenerator.createId( subType ), 10000, false );
+        SimpleMarkedEdge keep = new SimpleMarkedEdge( nodeId, type, IdGenerator.createId( subType ), 20000, false );
+
+        List<MarkedEdge> edges = new ArrayList<>();
+
+        for ( long i = 1; i < shardSize; i++ ) {
+            edges.add( skipped );
+        }
+
+        edges.add( keep );
+
+        when( shardedEdgeSerialization
+                .getEdgesFromSourceByTargetType( same( edgeColumnFamilies ), same( scope ), any( SearchByIdType.class ),
+                        any( Collection.class ) ) ).thenReturn( edges.iterator() );
+
+
+        ArgumentCaptor<Shard> shardValue = ArgumentCaptor.forClass( Shard.class );
+
+        when( edgeShardSerialization.writeShardMeta( same( scope ), shardValue.capture(), same( targetEdgeMeta ) ) )
+                .thenReturn( mock( MutationBatch.class ) );
+
+
+        final boolean result = approximation.auditShard( scope, shardEntryGroup, targetEdgeMeta );
+
+        assertTrue( "Oversized shard was split despite its small count", result );
+
+        assertEquals( "Expected pivot at the shard size", keep.getTimestamp(), shardValue.getValue().getShardIndex() );
+    }
+
+
+    @Test
+    public void scanSetsCount() {
+        final ShardGroupCompaction shardGroupCompaction = mock( ShardGroupCompaction.class );
+
+        final EdgeShardSerialization edgeShardSerialization = mock( EdgeShardSerialization.class );
+
+        final EdgeColumnFamilies edgeColumnFamilies = mock( EdgeColumnFamilies.class );
+
+        final ShardedEdgeSerialization shardedEdgeSerialization = mock( ShardedEdgeSerialization.class );
+
+
+        final TimeService timeService = mock( TimeService.class );
+
+        final NodeShardCache nodeShardCache = mock( NodeShardCache.class);
+
+        final NodeShardApproximation countingApproximation = mock( NodeShardApproximation.class );
+
+
+        NodeShardAllocation approximation =
+                new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
+                        timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        countingApproximation );
+
+        final Id nodeId = IdGenerator.createId( "test" );
+        final String type = "type";
+        final String subType = "subType";
+
+
+        final long timeservicetime = System.currentTimeMillis();
+
+        when( timeService.getCurrentTime() ).thenReturn( timeservicetime );
+
+        final Shard futureShard = new Shard( 0l, 0l, true );
+
+        final ShardEntryGroup shardEntryGroup = new ShardEntryGroup( 1000l );
+        shardEntryGroup.addShard( futureShard );
+
+        final DirectedEdgeMeta targetEdgeMeta = DirectedEdgeMeta.fromSourceNodeTargetType( nodeId, type, subType );
+
+        when( countingApproximation.isCounted( same( scope ), same( futureShard ), same( targetEdgeMeta ) ) )
+                .thenReturn( false );
+
+
+        SimpleMarkedEdge edge = new SimpleMarkedEdge( nodeId, type, IdGenerator.createId( subType ), 10000, false );
+
+        final List<MarkedEdge> edges = Collections.<MarkedEdge>nCopies( 100, edge );
+
+        when( shardedEdgeSerialization
+                .getEdgesFromSourceByTargetType( same( edgeColumnFamilies ), same( scope ), any( SearchByIdType.class ),
+                        any( Collection.class ) ) ).thenReturn( edges.iterator() );
+
+
+        final boolean result = approximation.auditShard( scope, shardEntryGroup, targetEdgeMeta );
+
+        assertFalse( "No shard allocated", result );
+
+        //the scan read every edge, the count covers them from now on
+        verify( countingApproximation ).setCount( same( scope ), same( futureShard ), eq( 100l ),
+                same( targetEdgeMeta ) );
+    }
+
+
     @Test
     public void equalCountFutureShard() {
 
@@ -342,7 +645,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                         timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                         timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -431,7 +735,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                       timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                       timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -498,7 +803,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                         timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                         timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -638,7 +944,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                       timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                       timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -732,7 +1039,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                      timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                      timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
 
         /**
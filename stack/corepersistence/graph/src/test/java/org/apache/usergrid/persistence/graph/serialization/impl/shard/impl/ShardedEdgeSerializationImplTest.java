@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard.impl;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.CassandraConfig;
+import org.apache.usergrid.persistence.core.consistency.TimeService;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.graph.GraphFig;
+import org.apache.usergrid.persistence.graph.MarkedEdge;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.DirectedEdgeMeta;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.EdgeColumnFamilies;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.EdgeShardSerialization;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.EdgeShardStrategy;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardApproximation;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.Shard;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.netflix.astyanax.ColumnListMutation;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.model.ColumnFamily;
+
+import static org.apache.usergrid.persistence.core.util.IdGenerator.createId;
+import static org.apache.usergrid.persistence.graph.test.util.EdgeTestUtils.createEdge;
+import static org.apache.usergrid.persistence.graph.test.util.EdgeTestUtils.createMarkedEdge;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Checks which edge writes are counted in the shard approximation
+ */
+public class ShardedEdgeSerializationImplTest {
+
+    private NodeShardApproximation nodeShardApproximation;
+    private EdgeColumnFamilies columnFamilies;
+    private ShardedEdgeSerializationImpl serialization;
+
+    private ApplicationScope scope;
+    private Shard shard;
+    private Collection<Shard> shards;
+
+
+    @Before
+    public void setup() {
+        final MutationBatch batch = mock( MutationBatch.class );
+
+        when( batch.withConsistencyLevel( any() ) ).thenReturn( batch );
+        when( batch.withTimestamp( anyLong() ) ).thenReturn( batch );
+        doReturn( mock( ColumnListMutation.class ) ).when( batch ).withRow( any( ColumnFamily.class ), any() );
+
+        final Keyspace keyspace = mock( Keyspace.class );
+
+        when( keyspace.prepareMutationBatch() ).thenReturn( batch );
+
+        final GraphFig graphFig = mock( GraphFig.class );
+
+        when( graphFig.getShardPrefetchWorkerCount() ).thenReturn( 1 );
+
+        nodeShardApproximation = mock( NodeShardApproximation.class );
+        columnFamilies = mock( EdgeColumnFamilies.class );
+
+        serialization = new ShardedEdgeSerializationImpl( keyspace, mock( CassandraConfig.class ), graphFig,
+            mock( EdgeShardStrategy.class ), mock( TimeService.class ), mock( EdgeShardSerialization.class ),
+            nodeShardApproximation, mock( MetricsFactory.class ) );
+
+        scope = new ApplicationScopeImpl( createId( "application" ) );
+        shard = new Shard( 0, 0, true );
+        shards = Collections.singleton( shard );
+    }
+
+
+    @Test
+    public void writesCounted() {
+        final MarkedEdge edge = createEdge( createId( "source" ), "test", createId( "target" ) );
+        final DirectedEdgeMeta meta = DirectedEdgeMeta.fromSourceNode( edge.getSourceNode(), edge.getType() );
+        final UUID timestamp = UUIDGenerator.newTimeUUID();
+
+        serialization.writeEdgeFromSource( columnFamilies, scope, edge, shards, meta, timestamp );
+        serialization.writeEdgeFromSourceWithTargetType( columnFamilies, scope, edge, shards, meta, timestamp );
+        serialization.writeEdgeToTarget( columnFamilies, scope, edge, shards, meta, timestamp );
+        serialization.writeEdgeToTargetWithSourceType( columnFamilies, scope, edge, shards, meta, timestamp );
+        serialization.writeEdgeVersions( columnFamilies, scope, edge, shards, meta, timestamp );
+
+        verify( nodeShardApproximation, times( 5 ) ).increment( scope, shard, 1, meta );
+    }
+
+
+    @Test
+    public void marksNotCounted() {
+        final MarkedEdge edge = createMarkedEdge( createId( "source" ), "test", createId( "target" ) );
+        final DirectedEdgeMeta meta = DirectedEdgeMeta.fromSourceNode( edge.getSourceNode(), edge.getType() );
+
+        serialization.writeEdgeFromSource( columnFamilies, scope, edge, shards, meta, UUIDGenerator.newTimeUUID() );
+
+        verifyZeroInteractions( nodeShardApproximation );
+    }
+
+
+    /**
+     * Compaction deletes edges that are not marked from the shards they are copied out of
+     */
+    @Test
+    public void deletesNotCounted() {
+        final MarkedEdge edge = createEdge( createId( "source" ), "test", createId( "target" ) );
+        final DirectedEdgeMeta meta = DirectedEdgeMeta.fromSourceNode( edge.getSourceNode(), edge.getType() );
+        final UUID timestamp = UUIDGenerator.newTimeUUID();
+
+        serialization.deleteEdgeFromSource( columnFamilies, scope, edge, shards, meta, timestamp );
+        serialization.deleteEdgeFromSourceWithTargetType( columnFamilies, scope, edge, shards, meta, timestamp );
+        serialization.deleteEdgeToTarget( columnFamilies, scope, edge, shards, meta, timestamp );
+        serialization.deleteEdgeToTargetWithSourceType( columnFamilies, scope, edge, shards, meta, timestamp );
+        serialization.deleteEdgeVersions( columnFamilies, scope, edge, shards, meta, timestamp );
+
+        verifyZeroInteractions( nodeShardApproximation );
+    }
+}
@@ -63,6 +63,14 @@ public interface MapManager {
      */
     void putString( final String key, final String value, final int ttl );
 
+    /**
+     * Write the string only if the current value is the expected one, null to expect no value.  The write is a
+     * lightweight transaction, use getStringHighConsistency to read the current value
+     *
+     * @return false if the current value was not the expected one and nothing was written
+     */
+    boolean compareAndPutString( final String key, final String expected, final String value );
+
 
     /**
      * Return the uuid, null if not found
@@ -84,6 +92,21 @@ public interface MapManager {
      */
     void putLong( final String key, final Long value );
 
+    /**
+     * Add the delta to the counter with the given key.  Counters are kept apart from the other values in the map
+     */
+    void increment( final String key, final long delta );
+
+    /**
+     * Return the counter, null if it has never been incremented
+     */
+    Long getCounter( final String key );
+
+    /**
+     * Get the counters for all the keys.  If a counter does not exist, it won't be present in the map
+     */
+    Map<String, Long> getCounters( final Collection<String> keys );
+
     /**
      * Delete the key
      *
@@ -83,6 +83,12 @@ public class MapManagerImpl implements MapManager {
     }
 
 
+    @Override
+    public boolean compareAndPutString( final String key, final String expected, final String value ) {
+        return mapSerialization.compareAndPutString( scope, key, expected, value );
+    }
+
+
     @Override
     public UUID getUuid( final String key ) {
         return mapSerialization.getUuid(scope,key);
@@ -107,6 +113,24 @@ public class MapManagerImpl implements MapManager {
     }
 
 
+    @Override
+    public void increment( final String key, final long delta ) {
+        mapSerialization.increment( scope, key, delta );
+    }
+
+
+    @Override
+    public Long getCounter( final String key ) {
+        return mapSerialization.getCounter( scope, key );
+    }
+
+
+    @Override
+    public Map<String, Long> getCounters( final Collection<String> keys ) {
+        return mapSerialization.getCounters( scope, keys );
+    }
+
+
     @Override
     public void delete( final String key ) {
         mapSerialization.delete(scope,key);
@@ -62,6 +62,12 @@ public interface MapSerialization extends Migration {
      */
     void putString( final MapScope scope, final String key, final String value, final int ttl );
 
+    /**
+     * Write the string only if the current value is the expected one, null to expect no value.  Returns false if
+     * the value was not written
+     */
+    boolean compareAndPutString( final MapScope scope, final String key, final String expected, final String value );
+
 
     /**
      * Return the uuid, null if not found
@@ -83,6 +89,21 @@ public interface MapSerialization extends Migration {
      */
     void putLong( final MapScope scope, final String key, final Long value );
 
+    /**
+     * Add the delta to the counter
+     */
+    void increment( final MapScope scope, final String key, final long delta );
+
+    /**
+     * Return the counter, null if not found
+     */
+    Long getCounter( final MapScope scope, final String key );
+
+    /**
+     * Get the counters for the keys, missing counters are not present in the map
+     */
+    Map<String, Long> getCounters( final MapScope scope, final Collection<String> keys );
+
     /**
      * Delete the key
      *
@@ -75,6 +75,18 @@ public class MapSerializationImpl implements MapSerialization {
 
 
 
+    private static final String MAP_COUNTERS_TABLE = CQLUtils.quote("Map_Counters");
+    private static final Collection<String> MAP_COUNTERS_PARTITION_KEYS = Collections.singletonList("key");
+    private static final Collection<String> MAP_COUNTERS_COLUMN_KEYS = Collections.singletonList("column1");
+    private static final Map<String, DataType.Name> MAP_COUNTERS_COLUMNS =
+        new HashMap<String, DataType.Name>() {{
+            put( "key", DataType.Name.BLOB );
+            put( "column1", DataType.Name.BLOB );
+            put( "value", DataType.Name.COUNTER ); }};
+    private static final Map<String, String> MAP_COUNTERS_CLUSTERING_ORDER =
+        new HashMap<String, String>(){{ put( "column1", "ASC" ); }};
+
+
     private static final StringResultsBuilderCQL STRING_RESULTS_BUILDER_CQL = new StringResultsBuilderCQL();
 
 
@@ -144,6 +156,55 @@ public class MapSerializationImpl implements MapSerialization {
     }
 
 
+    @Override
+    public boolean compareAndPutString( final MapScope scope, final String key, final String expected,
+                                        final String value ) {
+
+        Preconditions.checkNotNull( scope, "mapscope is required" );
+        Preconditions.checkNotNull( key, "key is required" );
+        Preconditions.checkNotNull( value, "value is required" );
+
+        final ByteBuffer serializedValue = DataType.text().serialize( value, ProtocolVersion.NEWEST_SUPPORTED );
+
+        final Statement mapEntry;
+
+        if ( expected == null ) {
+            mapEntry = QueryBuilder.insertInto( MAP_ENTRIES_TABLE )
+                .value( "key", getMapEntryPartitionKey( scope, key ) )
+                .value( "column1", DataType.cboolean().serialize( true, ProtocolVersion.NEWEST_SUPPORTED ) )
+                .value( "value", serializedValue )
+                .ifNotExists();
+        }
+        else {
+            mapEntry = QueryBuilder.update( MAP_ENTRIES_TABLE )
+                .with( QueryBuilder.set( "value", serializedValue ) )
+                .where( QueryBuilder.eq( "key", getMapEntryPartitionKey( scope, key ) ) )
+                .and( QueryBuilder.eq( "column1", DataType.cboolean().serialize( true, ProtocolVersion.NEWEST_SUPPORTED ) ) )
+                .onlyIf( QueryBuilder.eq( "value", DataType.text().serialize( expected, ProtocolVersion.NEWEST_SUPPORTED ) ) );
+        }
+
+        final ConsistencyLevel writeCl = cassandraConfig.getDataStaxWriteCl();
+
+        mapEntry.setConsistencyLevel( writeCl )
+            .setSerialConsistencyLevel( writeCl.isDCLocal() ? ConsistencyLevel.LOCAL_SERIAL : ConsistencyLevel.SERIAL );
+
+        if ( !session.execute( mapEntry ).wasApplied() ) {
+            return false;
+        }
+
+        final int bucket = BUCKET_LOCATOR.getCurrentBucket( scope.getName() );
+
+        final Statement mapKey = QueryBuilder.insertInto( MAP_KEYS_TABLE )
+            .value( "key", getMapKeyPartitionKey( scope, bucket ) )
+            .value( "column1", DataType.text().serialize( key, ProtocolVersion.NEWEST_SUPPORTED ) )
+            .value( "value", DataType.cboolean().serialize( true, ProtocolVersion.NEWEST_SUPPORTED ) );
+
+        session.execute( mapKey );
+
+        return true;
+    }
+
+
     /**
      * Write our string index with the specified row op
      */
@@ -267,6 +328,66 @@ public class MapSerializationImpl implements MapSerialization {
     }
 
 
+    @Override
+    public void increment( final MapScope scope, final String key, final long delta ) {
+
+        Preconditions.checkNotNull( scope, "mapscope is required" );
+        Preconditions.checkNotNull( key, "key is required" );
+
+        Statement increment = QueryBuilder.update(MAP_COUNTERS_TABLE)
+            .with(QueryBuilder.incr("value", delta))
+            .where(QueryBuilder.eq("key", getMapEntryPartitionKey(scope, key)))
+            .and(QueryBuilder.eq("column1", DataType.cboolean().serialize(true, ProtocolVersion.NEWEST_SUPPORTED)));
+
+        session.execute(increment);
+    }
+
+
+    @Override
+    public Long getCounter( final MapScope scope, final String key ) {
+
+        Clause equalsKey = QueryBuilder.eq("key", getMapEntryPartitionKey(scope, key));
+        Statement statement = QueryBuilder.select().all().from(MAP_COUNTERS_TABLE)
+            .where(equalsKey)
+            .setConsistencyLevel(cassandraConfig.getDataStaxReadCl());
+
+        Row row = session.execute(statement).one();
+
+        return row != null ? row.getLong("value") : null;
+    }
+
+
+    @Override
+    public Map<String, Long> getCounters( final MapScope scope, final Collection<String> keys ) {
+
+        final Map<String, Long> results = new HashMap<>();
+
+        if ( keys.isEmpty() ) {
+            return results;
+        }
+
+        final List<ByteBuffer> serializedKeys = new ArrayList<>();
+
+        keys.forEach(key -> serializedKeys.add(getMapEntryPartitionKey(scope,key)));
+
+        Clause in = QueryBuilder.in("key", serializedKeys );
+        Statement statement = QueryBuilder.select().all().from(MAP_COUNTERS_TABLE)
+            .where(in)
+            .setConsistencyLevel(cassandraConfig.getDataStaxReadCl());
+
+        session.execute(statement).all().forEach( row -> {
+
+            @SuppressWarnings("unchecked")
+            List<Object> rowKeys = (List) deserializeMapEntryKey(row.getBytes("key"));
+
+            // the actual string key value is the last element
+            results.put((String)rowKeys.get(rowKeys.size() -1), row.getLong("value"));
+        });
+
+        return results;
+    }
+
+
     @Override
     public void delete( final MapScope scope, final String key ) {
 
@@ -316,9 +437,12 @@ public class MapSerializationImpl implements MapSerialization {
             new TableDefinition( MAP_KEYS_TABLE, MAP_KEYS_PARTITION_KEYS, MAP_KEYS_COLUMN_KEYS,
                 MAP_KEYS_COLUMNS, TableDefinition.CacheOption.KEYS, MAP_KEYS_CLUSTERING_ORDER);
 
+        final TableDefinition mapCounters =
+            new TableDefinition( MAP_COUNTERS_TABLE, MAP_COUNTERS_PARTITION_KEYS, MAP_COUNTERS_COLUMN_KEYS,
+                MAP_COUNTERS_COLUMNS, TableDefinition.CacheOption.KEYS, MAP_COUNTERS_CLUSTERING_ORDER);
 
 
-        return Arrays.asList( mapEntries, mapKeys );
+        return Arrays.asList( mapEntries, mapKeys, mapCounters );
 
     }
 
@@ -41,6 +41,7 @@ import com.google.inject.Inject;
 
 import static junit.framework.TestCase.assertNotNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -82,6 +83,25 @@ public class MapManagerTest {
         assertEquals( value, returned );
     }
 
+    @Test
+    public void compareAndPutString() {
+        MapManager mm = mmf.createMapManager( this.scope );
+
+        final String key = UUIDGenerator.newTimeUUID().toString();
+
+        assertTrue( mm.compareAndPutString( key, null, "first" ) );
+
+        //already exists
+        assertFalse( mm.compareAndPutString( key, null, "other" ) );
+
+        //not the current value
+        assertFalse( mm.compareAndPutString( key, "other", "second" ) );
+
+        assertTrue( mm.compareAndPutString( key, "first", "second" ) );
+
+        assertEquals( "second", mm.getStringHighConsistency( key ) );
+    }
+
     @Test
     public void getAllKeys(){
 
@@ -371,6 +391,33 @@ public class MapManagerTest {
     }
 
 
+    @Test
+    public void incrementReadCounters() {
+        MapManager mm = mmf.createMapManager( this.scope );
+
+        //counters can't be reset, so use keys unique to this run
+        final String key1 = UUIDGenerator.newTimeUUID().toString();
+        final String key2 = UUIDGenerator.newTimeUUID().toString();
+        final String missing = UUIDGenerator.newTimeUUID().toString();
+
+        mm.increment( key1, 10 );
+        mm.increment( key1, -3 );
+        mm.increment( key2, 5 );
+
+        assertEquals( Long.valueOf( 7 ), mm.getCounter( key1 ) );
+        assertNull( mm.getCounter( missing ) );
+
+        final Map<String, Long> returned = mm.getCounters( Arrays.asList( key1, key2, missing ) );
+
+        assertEquals( 2, returned.size() );
+        assertEquals( Long.valueOf( 7 ), returned.get( key1 ) );
+        assertEquals( Long.valueOf( 5 ), returned.get( key2 ) );
+
+        //counters are kept apart from the values
+        assertNull( mm.getLong( key1 ) );
+    }
+
+
     @Test
     public void readMissingEntry() {
         MapManager mm = mmf.createMapManager( this.scope );
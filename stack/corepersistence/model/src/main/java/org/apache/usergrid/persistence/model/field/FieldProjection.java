@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.persistence.model.field;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * A precompiled set of field paths to select out of an entity.  Paths may be nested with '.', and each path can be
+ * renamed in the output.  Compile once per query and share the instance across every entity of a page.
+ */
+public final class FieldProjection {
+
+    private static final char PATH_SEPARATOR = '.';
+
+    private final String[] sources;
+    private final String[] targets;
+    private final String[][] paths;
+    private final Set<String> topLevelNames;
+
+
+    private FieldProjection( final String[] sources, final String[] targets, final String[][] paths,
+                             final Set<String> topLevelNames ) {
+        this.sources = sources;
+        this.targets = targets;
+        this.paths = paths;
+        this.topLevelNames = topLevelNames;
+    }
+
+
+    /**
+     * Compile a projection from source field names to target field names.  Iteration order of the map is the order
+     * the fields are selected in.
+     */
+    public static FieldProjection compile( final Map<String, String> sourceToTarget ) {
+
+        Preconditions.checkNotNull( sourceToTarget, "sourceToTarget is required" );
+
+        final int size = sourceToTarget.size();
+
+        final String[] sources = new String[size];
+        final String[] targets = new String[size];
+        final String[][] paths = new String[size][];
+        //entity field names are case insensitive
+        final Set<String> topLevelNames = new TreeSet<>( String.CASE_INSENSITIVE_ORDER );
+
+        int index = 0;
+
+        for ( final Map.Entry<String, String> entry : sourceToTarget.entrySet() ) {
+            final String source = entry.getKey();
+
+            sources[index] = source;
+            targets[index] = entry.getValue();
+            paths[index] = splitPath( source );
+
+            //the literal name covers top level fields containing a '.', the first part covers nested selects
+            topLevelNames.add( source );
+            topLevelNames.add( paths[index][0] );
+
+            index++;
+        }
+
+        return new FieldProjection( sources, targets, paths, Collections.unmodifiableSet( topLevelNames ) );
+    }
+
+
+    /**
+     * @return true if no fields are selected, and the whole entity should be returned
+     */
+    public boolean isEmpty() {
+        return sources.length == 0;
+    }
+
+
+    /**
+     * @return true if a top level field with this name may contribute to the projection
+     */
+    public boolean includes( final String topLevelName ) {
+        return isEmpty() || topLevelNames.contains( topLevelName );
+    }
+
+
+    /**
+     * Select the projected fields out of the field map in a single walk per selected path.  Fields selected by their
+     * full name are renamed to their target name, nested selects are returned inside their parent objects.
+     */
+    public Map<String, Field> project( final Map<String, Field> fieldMap ) {
+
+        if ( isEmpty() ) {
+            return fieldMap;
+        }
+
+        final Map<String, Field> result = new HashMap<>( sources.length );
+
+        for ( int i = 0; i < sources.length; i++ ) {
+
+            final Field field = fieldMap.get( sources[i] );
+
+            if ( field != null ) {
+                field.setName( targets[i] );
+                result.put( targets[i], field );
+            }
+            else if ( paths[i].length > 1 && nestedFieldCheck( paths[i], 0, fieldMap ) ) {
+                nestedFieldSet( result, paths[i], 0, fieldMap );
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Sets field in result map with support for nested fields via recursion.
+     */
+    private static void nestedFieldSet( final Map<String, Field> result, final String[] parts, final int depth,
+                                        final Map<String, Field> fieldMap ) {
+
+        if ( depth == parts.length ) {
+            return;
+        }
+
+        final String part = parts[depth];
+        final Field field = fieldMap.get( part );
+
+        if ( field == null ) {
+            return;
+        }
+
+        if ( field instanceof EntityObjectField ) {
+            result.putIfAbsent( part, new EntityObjectField( part, new EntityObject() ) );
+
+            nestedFieldSet( ( ( EntityObjectField ) result.get( part ) ).getValue().getFieldMap(), parts, depth + 1,
+                ( ( EntityObjectField ) field ).getValue().getFieldMap() );
+        }
+        else {
+            result.put( part, field );
+        }
+    }
+
+
+    /**
+     * Check to see if field should be included in filtered result with support for nested fields via recursion.
+     */
+    private static boolean nestedFieldCheck( final String[] parts, final int depth, final Map<String, Field> fieldMap ) {
+
+        if ( depth == parts.length ) {
+            return false;
+        }
+
+        final Field field = fieldMap.get( parts[depth] );
+
+        if ( field == null ) {
+            return false;
+        }
+
+        if ( field instanceof EntityObjectField ) {
+            return nestedFieldCheck( parts, depth + 1, ( ( EntityObjectField ) field ).getValue().getFieldMap() );
+        }
+
+        return true;
+    }
+
+
+    private static String[] splitPath( final String path ) {
+
+        int count = 1;
+
+        for ( int i = 0; i < path.length(); i++ ) {
+            if ( path.charAt( i ) == PATH_SEPARATOR ) {
+                count++;
+            }
+        }
+
+        final String[] parts = new String[count];
+
+        int start = 0;
+        int part = 0;
+
+        for ( int i = 0; i < path.length(); i++ ) {
+            if ( path.charAt( i ) == PATH_SEPARATOR ) {
+                parts[part++] = path.substring( start, i );
+                start = i + 1;
+            }
+        }
+
+        parts[part] = path.substring( start );
+
+        return parts;
+    }
+}
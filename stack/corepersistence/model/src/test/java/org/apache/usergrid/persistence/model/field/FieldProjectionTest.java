@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.persistence.model.field;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class FieldProjectionTest {
+
+    @Test
+    public void selectAndRename() {
+
+        final Map<String, String> selects = new LinkedHashMap<>();
+        selects.put( "name", "name" );
+        selects.put( "age", "years" );
+
+        final FieldProjection projection = FieldProjection.compile( selects );
+
+        assertTrue( projection.includes( "name" ) );
+        assertTrue( projection.includes( "age" ) );
+        assertTrue( projection.includes( "Age" ) );
+        assertFalse( projection.includes( "other" ) );
+
+        final Entity entity = new Entity( new SimpleId( "test" ) );
+        entity.setField( new StringField( "name", "fred" ) );
+        entity.setField( new IntegerField( "age", 30 ) );
+        entity.setField( new StringField( "other", "dropped" ) );
+
+        final Map<String, Field> projected = projection.project( entity.getFieldMap() );
+
+        assertEquals( 2, projected.size() );
+        assertEquals( "fred", projected.get( "name" ).getValue() );
+        assertEquals( 30, projected.get( "years" ).getValue() );
+        assertEquals( "years", projected.get( "years" ).getName() );
+    }
+
+
+    @Test
+    public void selectNested() {
+
+        final Map<String, String> selects = new LinkedHashMap<>();
+        selects.put( "address.city", "address.city" );
+        selects.put( "missing.field", "missing.field" );
+
+        final FieldProjection projection = FieldProjection.compile( selects );
+
+        assertTrue( projection.includes( "address" ) );
+        assertTrue( projection.includes( "address.city" ) );
+        assertTrue( projection.includes( "missing" ) );
+
+        final EntityObject address = new EntityObject();
+        address.setField( new StringField( "city", "Boston" ) );
+        address.setField( new StringField( "street", "Main" ) );
+
+        final Entity entity = new Entity( new SimpleId( "test" ) );
+        entity.setField( new EntityObjectField( "address", address ) );
+        entity.setField( new StringField( "name", "fred" ) );
+
+        final Map<String, Field> projected = projection.project( entity.getFieldMap() );
+
+        assertEquals( 1, projected.size() );
+
+        final EntityObject projectedAddress = ( ( EntityObjectField ) projected.get( "address" ) ).getValue();
+
+        assertEquals( 1, projectedAddress.getFieldMap().size() );
+        assertEquals( "Boston", projectedAddress.getField( "city" ).getValue() );
+        assertNull( projectedAddress.getField( "street" ) );
+    }
+
+
+    @Test
+    public void emptyProjection() {
+
+        final FieldProjection projection = FieldProjection.compile( new LinkedHashMap<>() );
+
+        assertTrue( projection.isEmpty() );
+        assertTrue( projection.includes( "anything" ) );
+
+        final Entity entity = new Entity( new SimpleId( "test" ) );
+        entity.setField( new StringField( "name", "fred" ) );
+
+        assertEquals( 1, projection.project( entity.getFieldMap() ).size() );
+    }
+}
@@ -77,6 +77,14 @@ public interface EntityIndex extends CPManager {
      */
     long getEntitySize(final SearchEdge edge);
 
+    /**
+     * get the number of documents indexed by an edge ->   "term":{"edgeName":"zzzcollzzz|roles"}
+     *
+     * @param edge
+     * @return
+     */
+    long getEntityCount(final SearchEdge edge);
+
     /**
      * Initialize the index if necessary.  This is an idempotent operation and should not create an index
      * if a write and read alias already exist
@@ -64,6 +64,16 @@ public interface IndexFig extends GuicyFig {
 
     String ELASTICSEARCH_VERSION_QUERY_LIMIT = "elasticsearch.version_query_limit";
 
+    String INDEX_BATCH_SIZE_MIN = "elasticsearch.batch_size_min";
+
+    String INDEX_BATCH_SIZE_BYTES = "elasticsearch.batch_size_bytes";
+
+    String INDEX_BULK_CONCURRENCY = "elasticsearch.bulk.concurrency";
+
+    String INDEX_BULK_TARGET_LATENCY = "elasticsearch.bulk.target_latency_ms";
+
+    String INDEX_QUERY_CACHE_SIZE = "index.query.cache.size";
+
 
     /**
      * Comma-separated list of Elasticsearch hosts.
@@ -165,12 +175,42 @@ public interface IndexFig extends GuicyFig {
     int getIndexFlushWorkerCount();
 
     /**
-     * The batch size to use when sending batched index write requests to Elasticsearch.
+     * The batch size to use when sending batched index write requests to Elasticsearch.  Bulk requests start at this
+     * size and it is the ceiling the adaptive batch size grows back to.
      */
     @Default( "1000" )
     @Key( INDEX_BATCH_SIZE )
     int getIndexBatchSize();
 
+    /**
+     * The smallest batch size the adaptive batch size will shrink to when Elasticsearch is slow or rejecting requests.
+     */
+    @Default( "50" )
+    @Key( INDEX_BATCH_SIZE_MIN )
+    int getIndexBatchSizeMin();
+
+    /**
+     * The max estimated size in bytes of a single bulk request, a request is sent once it reaches either this or the
+     * batch size.
+     */
+    @Default( "5242880" )
+    @Key( INDEX_BATCH_SIZE_BYTES )
+    long getIndexBatchSizeBytes();
+
+    /**
+     * The max number of bulk requests in flight to Elasticsearch at once from this node.
+     */
+    @Default( "4" )
+    @Key( INDEX_BULK_CONCURRENCY )
+    int getIndexBulkConcurrency();
+
+    /**
+     * Bulk requests slower than this shrink the batch size, faster ones grow it. (in milliseconds)
+     */
+    @Default( "1000" )
+    @Key( INDEX_BULK_TARGET_LATENCY )
+    long getIndexBulkTargetLatency();
+
     /**
      * The write consistency level for writing into the Elasticsearch index.  The
      * default value is 'one', and you can configure 'all' and 'quorum'.
@@ -208,4 +248,12 @@ public interface IndexFig extends GuicyFig {
     @Default("100")
     @Key( ELASTICSEARCH_VERSION_QUERY_LIMIT )
     int getVersionQueryLimit();
+
+    /**
+     * The number of query shapes whose parse is kept, so queries differing only in their literals aren't parsed by
+     * the grammar again.  0 disables the cache
+     */
+    @Default( "1000" )
+    @Key( INDEX_QUERY_CACHE_SIZE )
+    int getQueryCacheSize();
 }
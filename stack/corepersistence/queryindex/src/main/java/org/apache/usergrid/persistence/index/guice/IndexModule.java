@@ -31,6 +31,8 @@ import org.apache.usergrid.persistence.index.impl.*;
 import org.apache.usergrid.persistence.index.migration.EsIndexMappingMigrationPlugin;
 import org.apache.usergrid.persistence.index.migration.EsIndexMigrationPlugin;
 import org.apache.usergrid.persistence.index.migration.IndexMigration;
+import org.apache.usergrid.persistence.index.query.ParsedQueryCache;
+import org.apache.usergrid.persistence.index.query.ParsedQueryCacheImpl;
 import org.apache.usergrid.persistence.map.guice.MapModule;
 import org.apache.usergrid.persistence.queue.guice.QueueModule;
 
@@ -50,6 +52,7 @@ public abstract class IndexModule extends AbstractModule {
 
         bind( EntityIndexFactory.class ).to( EsEntityIndexFactoryImpl.class );
         bind(IndexCache.class).to(EsIndexCacheImpl.class);
+        bind(ParsedQueryCache.class).to(ParsedQueryCacheImpl.class);
 
         bind(IndexProducer.class).to(EsIndexProducerImpl.class).asEagerSingleton();
 
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * Additive increase, multiplicative decrease sizing for bulk requests.  Each bulk that completes within the target
+ * latency grows the batch size by a fixed step, a slow or rejected bulk halves it.  The size is kept between the min
+ * and max.
+ */
+public class AdaptiveBatchSize {
+
+    private final int min;
+    private final int max;
+    private final int step;
+    private final long targetLatency;
+
+    private final AtomicInteger size;
+
+
+    public AdaptiveBatchSize( final int min, final int max, final long targetLatency ) {
+        Preconditions.checkArgument( min > 0, "min must be greater than 0" );
+        Preconditions.checkArgument( max >= min, "max must be greater than or equal to min" );
+
+        this.min = min;
+        this.max = max;
+        this.targetLatency = targetLatency;
+
+        //grow back from the floor to the ceiling in roughly 20 good requests
+        this.step = Math.max( 1, ( max - min ) / 20 );
+
+        this.size = new AtomicInteger( max );
+    }
+
+
+    /**
+     * @return the number of operations to put in the next bulk request
+     */
+    public int get() {
+        return size.get();
+    }
+
+
+    /**
+     * A bulk completed without rejections in the given time
+     */
+    public void onSuccess( final long latency ) {
+        if ( latency > targetLatency ) {
+            decrease();
+        }
+        else {
+            size.updateAndGet( current -> Math.min( max, current + step ) );
+        }
+    }
+
+
+    /**
+     * A bulk was rejected or failed, back off
+     */
+    public void onRejected() {
+        decrease();
+    }
+
+
+    private void decrease() {
+        size.updateAndGet( current -> Math.max( min, current / 2 ) );
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.index.IndexEdge;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.EntityMap;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.ArrayField;
+import org.apache.usergrid.persistence.model.field.ByteArrayField;
+import org.apache.usergrid.persistence.model.field.DistanceField;
+import org.apache.usergrid.persistence.model.field.Field;
+import org.apache.usergrid.persistence.model.field.ListField;
+import org.apache.usergrid.persistence.model.field.LocationField;
+import org.apache.usergrid.persistence.model.field.SerializedObjectField;
+import org.apache.usergrid.persistence.model.field.SetField;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+import org.apache.usergrid.persistence.model.field.value.Location;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.google.common.base.Optional;
+
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.APPLICATION_ID_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.EDGE_NAME_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.EDGE_NODE_ID_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.EDGE_NODE_TYPE_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.EDGE_SEARCH_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.EDGE_TIMESTAMP_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_FIELDS;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_ID_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_SIZE_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_TYPE_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_VERSION_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_BOOLEAN;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_DOUBLE;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_LOCATION;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_LONG;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_NAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_NULL;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_STRING;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.applicationId;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.entityId;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.getType;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.nodeId;
+import static org.apache.usergrid.persistence.model.entity.EntityToMapConverter.LAT;
+import static org.apache.usergrid.persistence.model.entity.EntityToMapConverter.LON;
+import static org.apache.usergrid.persistence.model.entity.EntityToMapConverter.getCorruptedTypes;
+
+
+/**
+ * Write a CP entity as an elasticsearch document.  This produces the same document as {@link EntityToMapConverter},
+ * but walks the fields of the entity once and writes each one straight into the json source, without building the
+ * entity map or the set of field maps first.  Fields that are not in the fields to index are dropped as they are
+ * visited.
+ */
+public final class EntityDocumentWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger( EntityDocumentWriter.class );
+
+    private static final String METADATA = "metadata";
+
+    private static final Map<String, Boolean> CORRUPTED_TYPES = getCorruptedTypes();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule( new GuavaModule() );
+
+    /**
+     * The buffer each thread writes documents into.  Resetting it shrinks it back to a single page, so a large
+     * document doesn't stay pinned to the thread
+     */
+    private static final ThreadLocal<BytesStreamOutput> BUFFER = new ThreadLocal<BytesStreamOutput>() {
+        @Override
+        protected BytesStreamOutput initialValue() {
+            return new BytesStreamOutput();
+        }
+    };
+
+
+    private final XContentBuilder builder;
+    private final Optional<Set<String>> fieldsToIndex;
+
+
+    private EntityDocumentWriter( final XContentBuilder builder, final Optional<Set<String>> fieldsToIndex ) {
+        this.builder = builder;
+        this.fieldsToIndex = fieldsToIndex;
+    }
+
+
+    public static byte[] write( final ApplicationScope applicationScope, final IndexEdge indexEdge,
+                                final Entity entity ) {
+        return write( applicationScope, indexEdge, entity, Optional.absent() );
+    }
+
+
+    /**
+     * Write the entity with its context as the json source of a document
+     *
+     * @param applicationScope
+     * @param entity The entity
+     * @param indexEdge The edge this entity is indexed on
+     * @param fieldsToIndex A set of fields that will be indexed should they exist on the entity. Other fields will be
+     * filtered out.
+     */
+    public static byte[] write( final ApplicationScope applicationScope, final IndexEdge indexEdge,
+                                final Entity entity, final Optional<Set<String>> fieldsToIndex ) {
+
+        final BytesStreamOutput buffer = BUFFER.get();
+        buffer.reset();
+
+        try {
+            final XContentBuilder builder = XContentFactory.jsonBuilder( buffer );
+
+            final Id entityId = entity.getId();
+
+            builder.startObject();
+
+            /***
+             * Add our static fields for easier admin/debugging/reporting
+             ****/
+
+            builder.field( ENTITY_ID_FIELDNAME, entityId( entityId ) );
+            builder.field( ENTITY_VERSION_FIELDNAME, entity.getVersion() );
+            builder.field( ENTITY_TYPE_FIELDNAME, getType( applicationScope, entityId ) );
+            builder.field( APPLICATION_ID_FIELDNAME, applicationId( applicationScope.getApplication() ) );
+            builder.field( EDGE_NODE_ID_FIELDNAME, nodeId( indexEdge.getNodeId() ) );
+            builder.field( EDGE_NODE_TYPE_FIELDNAME, indexEdge.getNodeType().toString() );
+            builder.field( EDGE_NAME_FIELDNAME, indexEdge.getEdgeName() );
+            builder.field( EDGE_TIMESTAMP_FIELDNAME, indexEdge.getTimestamp() );
+            builder.field( ENTITY_SIZE_FIELDNAME, entity.getSize() );
+
+            //add the context for filtering later
+            builder.field( EDGE_SEARCH_FIELDNAME, IndexingUtils.createContextName( applicationScope, indexEdge ) );
+
+            builder.startArray( ENTITY_FIELDS );
+
+            new EntityDocumentWriter( builder, fieldsToIndex ).writeFields( null, entity.getFields() );
+
+            builder.endArray();
+
+            builder.endObject();
+
+            builder.close();
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to write document for entity " + entity.getId(), e );
+        }
+
+        return buffer.bytes().toBytes();
+    }
+
+
+    /**
+     * True if the field should be indexed.  A field is indexed if it's in the fields to index, or if one of the fields
+     * to index is an object the field is nested in
+     */
+    static boolean isIndexed( final String fieldName, final Optional<Set<String>> fieldsToIndex ) {
+        if ( !fieldsToIndex.isPresent() ) {
+            return true;
+        }
+
+        final Set<String> fieldsToKeep = fieldsToIndex.get();
+
+        if ( fieldsToKeep.contains( fieldName ) ) {
+            return true;
+        }
+
+        //keep one.two.three when indexing one.two, but not one.twoexample.three
+        for ( final String fieldToKeep : fieldsToKeep ) {
+            if ( fieldName.length() > fieldToKeep.length() && fieldName.contains( fieldToKeep )
+                && fieldName.charAt( fieldToKeep.length() ) == '.' ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Write all the fields of an entity or a nested object
+     */
+    private void writeFields( final String parent, final Collection<Field> fields ) throws IOException {
+        for ( final Field field : fields ) {
+            writeField( parent, field );
+        }
+    }
+
+
+    private void writeField( final String parent, final Field field ) throws IOException {
+
+        if ( field instanceof DistanceField ) {
+            writeValue( path( path( parent, METADATA ), DistanceField.NAME ), field.getValue(), false );
+            return;
+        }
+
+        final String name = path( parent, field.getName() );
+
+        if ( field instanceof LocationField ) {
+            final Location location = ( ( LocationField ) field ).getValue();
+            writeLocation( name, location.getLatitude(), location.getLongitude() );
+        }
+        else if ( field instanceof ByteArrayField ) {
+            final ByteArrayField byteArrayField = ( ByteArrayField ) field;
+
+            //do not deserialize this contains Query and Query has changed
+            if ( CORRUPTED_TYPES.containsKey( byteArrayField.getClassinfo().getName() ) ) {
+                return;
+            }
+
+            final byte[] serialized = byteArrayField.getValue();
+
+            try {
+                writeValue( name, MAPPER.readValue( serialized, byteArrayField.getClassinfo() ), false );
+            }
+            catch ( IOException e ) {
+                throw new RuntimeException(
+                    "Can't deserialize object from field:" + field.getName() + " classinfo: " + byteArrayField
+                        .getClassinfo() + " byteArray of length:" + serialized.length, e );
+            }
+        }
+        else if ( field instanceof SerializedObjectField ) {
+            final SerializedObjectField serializedField = ( SerializedObjectField ) field;
+
+            final String serialized = serializedField.getValue();
+
+            try {
+                writeValue( name, MAPPER.readValue( serialized, serializedField.getClassinfo() ), false );
+            }
+            catch ( IOException e ) {
+                throw new RuntimeException( "Can't deserialize object " + serialized, e );
+            }
+        }
+        else {
+            //lists, sets, arrays, objects and primitives are written by their values
+            writeValue( name, field.getValue(), false );
+        }
+    }
+
+
+    /**
+     * Write a value, and everything nested in it
+     *
+     * @param name The full name of the field the value is in
+     * @param value The value
+     * @param inCollection True if the value is an element of a collection
+     */
+    private void writeValue( final String name, final Object value, final boolean inCollection )
+        throws IOException {
+
+        if ( value instanceof EntityObject ) {
+            final EntityObject entityObject = ( EntityObject ) value;
+
+            if ( isLocation( entityObject ) ) {
+                writeLocation( name, entityObject.getField( LAT ).getValue(),
+                    entityObject.getField( LON ).getValue() );
+                return;
+            }
+
+            writeFields( name, entityObject.getFields() );
+        }
+        else if ( value instanceof Map ) {
+            final Map<String, ?> map = ( Map<String, ?> ) value;
+
+            if ( EntityMap.isLocationField( map ) ) {
+                writeLocation( name, map.get( LAT ), map.get( LON ) );
+                return;
+            }
+
+            for ( final Map.Entry<String, ?> entry : map.entrySet() ) {
+                writeValue( path( name, entry.getKey() ), entry.getValue(), false );
+            }
+        }
+        else if ( value instanceof ListField || value instanceof ArrayField || value instanceof SetField ) {
+            writeValue( name, ( ( Field ) value ).getValue(), inCollection );
+        }
+        else if ( value instanceof Collection ) {
+
+            //we don't support indexing 2 dimensional arrays.  Short circuit with a warning so we can track
+            // operationally
+            if ( inCollection ) {
+                logger.warn( "Encountered 2 collections consecutively.  N+1 dimensional arrays are unsupported, "
+                    + "only arrays of depth 1 are supported" );
+                return;
+            }
+
+            for ( final Object element : ( Collection<?> ) value ) {
+                writeValue( name, element, true );
+            }
+        }
+        else {
+            writePrimitive( name, value );
+        }
+    }
+
+
+    /**
+     * Write a single entry into the fields of the document, if it's indexed
+     */
+    private void writePrimitive( final String name, final Object value ) throws IOException {
+        if ( value instanceof String || value instanceof UUID ) {
+            if ( startField( name ) ) {
+                builder.field( FIELD_STRING, value.toString().toLowerCase() ).endObject();
+            }
+        }
+        else if ( value instanceof Boolean ) {
+            if ( startField( name ) ) {
+                builder.field( FIELD_BOOLEAN, ( boolean ) value ).endObject();
+            }
+        }
+        else if ( value instanceof Integer || value instanceof Long ) {
+            if ( startField( name ) ) {
+                builder.field( FIELD_LONG, value ).endObject();
+            }
+        }
+        else if ( value instanceof Float || value instanceof Double ) {
+            if ( startField( name ) ) {
+                builder.field( FIELD_DOUBLE, value ).endObject();
+            }
+        }
+        else if ( value == null ) {
+            if ( startField( name ) ) {
+                builder.nullField( FIELD_NULL ).endObject();
+            }
+        }
+    }
+
+
+    /**
+     * Write a location, with the lat and lon names elasticsearch expects
+     */
+    private void writeLocation( final String name, final Object latitude, final Object longitude )
+        throws IOException {
+
+        if ( startField( name ) ) {
+            builder.startObject( FIELD_LOCATION ).field( "lat", latitude ).field( "lon", longitude ).endObject()
+                   .endObject();
+        }
+    }
+
+
+    /**
+     * Start the entry of a field, or return false if the field isn't indexed
+     */
+    private boolean startField( final String name ) throws IOException {
+        if ( !isIndexed( name, fieldsToIndex ) ) {
+            return false;
+        }
+
+        builder.startObject().field( FIELD_NAME, name );
+
+        return true;
+    }
+
+
+    /**
+     * True if the object is only a latitude and a longitude, the same rule {@link EntityMap#isLocationField(Map)}
+     * applies to the entity map
+     */
+    private static boolean isLocation( final EntityObject entityObject ) {
+        final Collection<Field> fields = entityObject.getFields();
+
+        if ( fields.size() != 2 ) {
+            return false;
+        }
+
+        for ( final Field field : fields ) {
+            if ( !LAT.equals( field.getName() ) && !LON.equals( field.getName() ) ) {
+                return false;
+            }
+
+            final Object value = field.getValue();
+
+            if ( !( value instanceof Number ) && !EntityMap.isDouble( String.valueOf( value ) ) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * The lower case name of a nested field
+     */
+    private static String path( final String parent, final String name ) {
+        final String lowerCase = name.toLowerCase();
+
+        return parent == null ? lowerCase : parent + "." + lowerCase;
+    }
+}
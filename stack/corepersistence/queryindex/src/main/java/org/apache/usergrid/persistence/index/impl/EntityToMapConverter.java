@@ -49,7 +49,8 @@ import static org.apache.usergrid.persistence.index.impl.IndexingUtils.nodeId;
 
 
 /**
- * Convert a CP entity to an elasticsearch document
+ * Convert a CP entity to an elasticsearch document.  Index requests stream the same document with
+ * {@link EntityDocumentWriter}
  */
 public class EntityToMapConverter {
 
@@ -38,7 +38,7 @@ import org.apache.usergrid.persistence.index.ElasticSearchQueryBuilder.SearchReq
 import org.apache.usergrid.persistence.index.exceptions.IndexException;
 import org.apache.usergrid.persistence.index.migration.IndexDataVersions;
 import org.apache.usergrid.persistence.index.query.ParsedQuery;
-import org.apache.usergrid.persistence.index.query.ParsedQueryBuilder;
+import org.apache.usergrid.persistence.index.query.ParsedQueryCache;
 import org.apache.usergrid.persistence.index.utils.IndexValidationUtils;
 import org.apache.usergrid.persistence.model.entity.Id;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
@@ -119,6 +119,7 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
     private final int cursorTimeout;
     private final long queryTimeout;
     private final FailureMonitorImpl failureMonitor;
+    private final ParsedQueryCache parsedQueryCache;
     private final Timer aggregationTimer;
     private final Timer refreshTimer;
 
@@ -132,6 +133,7 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
                               final IndexCache indexCache,
                               final IndexFig indexFig,
                               final MetricsFactory metricsFactory,
+                              final ParsedQueryCache parsedQueryCache,
                               final IndexLocationStrategy indexLocationStrategy
     ) {
 
@@ -139,6 +141,7 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
         this.indexLocationStrategy = indexLocationStrategy;
         this.failureMonitor = new FailureMonitorImpl( indexFig, provider );
         this.esProvider = provider;
+        this.parsedQueryCache = parsedQueryCache;
         this.alias = indexLocationStrategy.getAlias();
         this.aliasCache = indexCache;
         this.applicationScope = indexLocationStrategy.getApplicationScope();
@@ -420,7 +423,7 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
 
         SearchResponse searchResponse;
 
-        final ParsedQuery parsedQuery = ParsedQueryBuilder.build(query);
+        final ParsedQuery parsedQuery = parsedQueryCache.get( query );
 
         final SearchRequestBuilder srb = searchRequest.getBuilder( searchEdge, searchTypes, parsedQuery, limit, offset )
             .setTimeout(TimeValue.timeValueMillis(queryTimeout));
@@ -794,6 +797,17 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
         return  getEntitySizeAggregation(builder);
     }
 
+    @Override
+    public long getEntityCount(final SearchEdge edge){
+        SearchRequestBuilder builder = searchRequestBuilderStrategyV2.getBuilder();
+        builder.setQuery(new TermQueryBuilder("edgeSearch",IndexingUtils.createContextName(applicationScope,edge)));
+        builder.setSize(0);
+
+        Observable<Long> o = Observable.from(builder.execute())
+            .map(response -> response.getHits().getTotalHits());
+        return ObservableTimer.time(o,aggregationTimer).toBlocking().lastOrDefault(-1L);
+    }
+
     private long getEntitySizeAggregation( final SearchRequestBuilder builder ) {
         final String key = "entitySize";
         SumBuilder sumBuilder = new SumBuilder(key);
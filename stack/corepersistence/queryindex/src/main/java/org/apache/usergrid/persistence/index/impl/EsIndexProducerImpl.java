@@ -18,14 +18,17 @@
 package org.apache.usergrid.persistence.index.impl;
 
 
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.codahale.metrics.Histogram;
 
 
 import org.apache.usergrid.persistence.index.EntityIndexBatch;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ListenableActionFuture;
 import org.elasticsearch.action.WriteConsistencyLevel;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
@@ -39,6 +42,7 @@ import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.index.IndexFig;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
@@ -48,7 +52,9 @@ import rx.Observable;
 
 
 /**
- * Consumer for IndexOperationMessages
+ * Consumer for IndexOperationMessages.  Operations are packed into bulk requests capped by both an adaptive operation
+ * count and {@link IndexFig#getIndexBatchSizeBytes()}, and up to {@link IndexFig#getIndexBulkConcurrency()} bulk
+ * requests are in flight at once across all messages.
  */
 @Singleton
 public class EsIndexProducerImpl implements IndexProducer {
@@ -62,9 +68,16 @@ public class EsIndexProducerImpl implements IndexProducer {
     private final Counter indexSizeCounter;
     private final Histogram roundtripTimer;
     private final Timer indexTimer;
+    private final Histogram bulkLatency;
+    private final Histogram bulkSize;
+    private final Meter rejectedMeter;
+
+    private final AdaptiveBatchSize batchSize;
+    private final Semaphore bulkPermits;
 
 
     private AtomicLong inFlight = new AtomicLong();
+    private AtomicLong inFlightBytes = new AtomicLong();
 
 
     @Inject
@@ -73,9 +86,20 @@ public class EsIndexProducerImpl implements IndexProducer {
         this.flushTimer = metricsFactory.getTimer(EsIndexProducerImpl.class, "index_buffer.flush");
         this.indexSizeCounter = metricsFactory.getCounter(EsIndexProducerImpl.class, "index_buffer.size");
         this.roundtripTimer = metricsFactory.getHistogram(EsIndexProducerImpl.class, "index_buffer.message_cycle");
+        this.bulkLatency = metricsFactory.getHistogram( EsIndexProducerImpl.class, "index.bulk.latency" );
+        this.bulkSize = metricsFactory.getHistogram( EsIndexProducerImpl.class, "index.bulk.bytes" );
+        this.rejectedMeter = metricsFactory.getMeter( EsIndexProducerImpl.class, "index.bulk.rejected" );
+
+        this.batchSize = new AdaptiveBatchSize( Math.min( indexFig.getIndexBatchSizeMin(), indexFig.getIndexBatchSize() ),
+            indexFig.getIndexBatchSize(), indexFig.getIndexBulkTargetLatency() );
+
+        this.bulkPermits = new Semaphore( Math.max( 1, indexFig.getIndexBulkConcurrency() ) );
 
-        //wire up the gauge of inflight messages
+        //wire up the gauge of inflight bulk requests and their bytes
         metricsFactory.addGauge(EsIndexProducerImpl.class, "index_buffer.inflight", () -> inFlight.longValue());
+        metricsFactory.addGauge( EsIndexProducerImpl.class, "index_buffer.inflight_bytes",
+            () -> inFlightBytes.longValue() );
+        metricsFactory.addGauge( EsIndexProducerImpl.class, "index.bulk.batch_size", () -> batchSize.get() );
 
 
         this.indexTimer = metricsFactory.getTimer( EsIndexProducerImpl.class, "index" );
@@ -84,10 +108,6 @@ public class EsIndexProducerImpl implements IndexProducer {
         this.failureMonitor = new FailureMonitorImpl(config, provider);
         this.client = provider.getClient();
         this.indexFig = indexFig;
-
-
-        //batch up sets of some size and send them in batch
-
     }
 
     @Override
@@ -110,62 +130,115 @@ public class EsIndexProducerImpl implements IndexProducer {
      */
     private Observable<IndexOperationMessage> processBatch( final IndexOperationMessage batch ) {
 
-        //take our stream of batches, then stream then into individual ops for consumption on ES
-        final Set<IndexOperation> indexOperationSet = batch.getIndexRequests();
-        final Set<DeIndexOperation> deIndexOperationSet = batch.getDeIndexRequests();
+        return Observable.defer( () -> {
+
+            final int indexOperationSetSize = batch.getIndexRequests().size();
+            final int deIndexOperationSetSize = batch.getDeIndexRequests().size();
+
+            if (logger.isTraceEnabled()) {
+                logger.trace("Emitting {} add and {} remove operations", indexOperationSetSize, deIndexOperationSetSize);
+            }
+
+            indexSizeCounter.dec(indexOperationSetSize);
+            indexSizeCounter.dec(deIndexOperationSetSize);
+
+            final List<BulkRequestBuilder> requests = createRequests( batch );
+
+            if ( requests.isEmpty() ) {
+                return Observable.empty();
+            }
+
+            final Timer.Context timer = flushTimer.time();
+
+            try {
+                sendRequests( requests );
+            }
+            finally {
+                timer.stop();
+            }
+
+            return Observable.just( batch );
+        } )
+            //mark this as done
+            .doOnNext( processedIndexOp -> {
+                roundtripTimer.update( System.currentTimeMillis() - processedIndexOp.getCreationTime() );
+            } );
+    }
+
+
+    /**
+     * Pack the operations into bulk requests, starting a new request once the current one reaches the adaptive batch
+     * size or the max bytes
+     */
+    private List<BulkRequestBuilder> createRequests( final IndexOperationMessage batch ) {
+
+        final int maxOperations = batchSize.get();
+        final long maxBytes = indexFig.getIndexBatchSizeBytes();
+
+        final List<BulkRequestBuilder> requests = new ArrayList<>();
+
+        BulkRequestBuilder current = initRequest();
+
+        final List<BatchOperation> operations = new ArrayList<>( batch.getIndexRequests() );
+        operations.addAll( batch.getDeIndexRequests() );
+
+        for ( final BatchOperation batchOperation : operations ) {
+            if ( logger.isTraceEnabled() ) {
+                logger.trace( "adding operation {} to bulkRequestBuilder {}", batchOperation, current );
+            }
 
-        final int indexOperationSetSize = indexOperationSet.size();
-        final int deIndexOperationSetSize = deIndexOperationSet.size();
+            batchOperation.doOperation( client, current );
 
-        if (logger.isTraceEnabled()) {
-            logger.trace("Emitting {} add and {} remove operations", indexOperationSetSize, deIndexOperationSetSize);
+            if ( current.numberOfActions() >= maxOperations
+                || current.request().estimatedSizeInBytes() >= maxBytes ) {
+                requests.add( current );
+                current = initRequest();
+            }
         }
 
-        indexSizeCounter.dec(indexOperationSetSize);
-        indexSizeCounter.dec(deIndexOperationSetSize);
-
-        final Observable<IndexOperation> index = Observable.from(batch.getIndexRequests());
-        final Observable<DeIndexOperation> deIndex = Observable.from(batch.getDeIndexRequests());
-
-        //TODO: look at indexing ordering
-        final Observable<BatchOperation> batchOps = Observable.merge(index, deIndex);
-
-        //buffer into the max size we can send ES and fire them all off until we're completed
-        final Observable<BulkRequestBuilder> requests = batchOps
-            .buffer(250, TimeUnit.MILLISECONDS, indexFig.getIndexBatchSize())
-
-            //flatten the buffer into a single batch execution
-            .flatMap(individualOps -> Observable.from(individualOps)
-                //collect them
-                .collect(() -> initRequest(), (bulkRequestBuilder, batchOperation) -> {
-                    if (logger.isTraceEnabled()) {
-                        logger.trace("adding operation {} to bulkRequestBuilder {}", batchOperation, bulkRequestBuilder);
-                    }
-                    batchOperation.doOperation(client, bulkRequestBuilder);
-                }))
-                //write them
-            .doOnNext(bulkRequestBuilder -> sendRequest(bulkRequestBuilder));
-
-
-        //now that we've processed them all, ack the futures after our last batch comes through
-        final Observable<IndexOperationMessage> processedIndexOperations =
-            requests.flatMap(lastRequest -> {
-                if (lastRequest != null) {
-                    return Observable.just(batch);
-                } else {
-                    return Observable.empty();
-                }
-            });
+        if ( current.numberOfActions() > 0 ) {
+            requests.add( current );
+        }
 
-        //subscribe to the operations that generate requests on a new thread so that we can execute them quickly
-        //mark this as done
-        return processedIndexOperations.doOnNext(processedIndexOp -> {
-            roundtripTimer.update(System.currentTimeMillis() - processedIndexOp.getCreationTime());
-        });
+        return requests;
     }
 
 
-    /*
+    /**
+     * Send all the requests, waiting for a permit before each one so the node never has more than the configured
+     * number of bulks in flight.  Every request is waited on before the first failure is rethrown
+     */
+    private void sendRequests( final List<BulkRequestBuilder> requests ) {
+
+        final List<InFlightBulk> sent = new ArrayList<>( requests.size() );
+
+        RuntimeException failure = null;
+
+        try {
+            for ( final BulkRequestBuilder request : requests ) {
+                sent.add( sendRequest( request ) );
+            }
+        }
+        catch ( RuntimeException e ) {
+            failure = e;
+        }
+
+        for ( final InFlightBulk bulk : sent ) {
+            try {
+                handleResponse( bulk.future.actionGet() );
+            }
+            catch ( RuntimeException e ) {
+                if ( failure == null ) {
+                    failure = e;
+                }
+            }
+        }
+
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
 
     /**
      * initialize request
@@ -179,29 +252,97 @@ public class EsIndexProducerImpl implements IndexProducer {
 
 
     /**
-     * send bulk request
+     * Send the bulk request asynchronously once a permit is available.  The permit is released when ES responds
      */
-    private void sendRequest( BulkRequestBuilder bulkRequest ) {
-        //nothing to do, we haven't added anything to the index
-        if ( bulkRequest.numberOfActions() == 0 ) {
-            return;
-        }
+    private InFlightBulk sendRequest( final BulkRequestBuilder bulkRequest ) {
+
+        final long bytes = bulkRequest.request().estimatedSizeInBytes();
 
-        final BulkResponse responses;
+        try {
+            bulkPermits.acquire();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted waiting to send bulk request", e );
+        }
 
+        inFlight.incrementAndGet();
+        inFlightBytes.addAndGet( bytes );
+        bulkSize.update( bytes );
 
         final Timer.Context timer = indexTimer.time();
+        final long start = System.currentTimeMillis();
+
+        final ListenableActionFuture<BulkResponse> future;
 
         try {
-            responses = bulkRequest.execute().actionGet( );
-        } catch ( Throwable t ) {
+            future = bulkRequest.execute();
+        }
+        catch ( Throwable t ) {
+            release( bytes, timer );
             logger.error( "Unable to communicate with elasticsearch", t );
             failureMonitor.fail( "Unable to execute batch", t );
+            batchSize.onRejected();
             throw t;
-        }finally{
-            timer.stop();
         }
 
+        future.addListener( new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse( final BulkResponse bulkItemResponses ) {
+                release( bytes, timer );
+
+                final long latency = System.currentTimeMillis() - start;
+                bulkLatency.update( latency );
+
+                if ( !hasRejections( bulkItemResponses ) ) {
+                    batchSize.onSuccess( latency );
+                }
+            }
+
+
+            @Override
+            public void onFailure( final Throwable t ) {
+                release( bytes, timer );
+
+                logger.error( "Unable to communicate with elasticsearch", t );
+                failureMonitor.fail( "Unable to execute batch", t );
+                batchSize.onRejected();
+            }
+        } );
+
+        return new InFlightBulk( future );
+    }
+
+
+    private void release( final long bytes, final Timer.Context timer ) {
+        timer.stop();
+        inFlight.decrementAndGet();
+        inFlightBytes.addAndGet( -bytes );
+        bulkPermits.release();
+    }
+
+
+    private boolean hasRejections( final BulkResponse responses ) {
+        if ( !responses.hasFailures() ) {
+            return false;
+        }
+
+        for ( BulkItemResponse response : responses ) {
+            if ( response.isFailed() && response.getFailure() != null
+                && response.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Check the bulk response, throwing if any of the operations failed
+     */
+    private void handleResponse( final BulkResponse responses ) {
+
         failureMonitor.success();
 
         boolean error = false;
@@ -227,6 +368,8 @@ public class EsIndexProducerImpl implements IndexProducer {
 
         if ( error ) {
             if(hasTooManyRequests){
+                rejectedMeter.mark();
+                batchSize.onRejected();
                 try{
                     logger.warn("Encountered Queue Capacity Exception from ElasticSearch slowing by {}",
                         indexFig.getSleepTimeForQueueError() );
@@ -239,4 +382,17 @@ public class EsIndexProducerImpl implements IndexProducer {
                 "Error during processing of bulk index operations one of the responses failed. \n" + errorString);
         }
     }
+
+
+    /**
+     * A bulk request that has been sent to ES
+     */
+    private static final class InFlightBulk {
+        private final ListenableActionFuture<BulkResponse> future;
+
+
+        private InFlightBulk( final ListenableActionFuture<BulkResponse> future ) {
+            this.future = future;
+        }
+    }
 }
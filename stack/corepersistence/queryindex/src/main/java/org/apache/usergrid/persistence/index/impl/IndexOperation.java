@@ -20,7 +20,10 @@
 package org.apache.usergrid.persistence.index.impl;
 
 
-import java.util.Map;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Set;
 
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
@@ -32,6 +35,15 @@ import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.client.Client;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.google.common.base.Optional;
 
 
@@ -45,19 +57,25 @@ public class IndexOperation implements BatchOperation {
     @JsonProperty
     public String documentId;
 
+    /**
+     * The json source of the document.  It's serialized as a json object, the same as the map of the document used to
+     * be, so messages can be read by nodes on either side of an upgrade
+     */
     @JsonProperty
-    public Map<String, Object> data;
+    @JsonSerialize( using = SourceSerializer.class )
+    @JsonDeserialize( using = SourceDeserializer.class )
+    public byte[] data;
 
     public IndexOperation( final String writeAlias, final ApplicationScope applicationScope, IndexEdge indexEdge,
                            Entity entity, Optional<Set<String>> fieldsToIndex ) {
 
         this( writeAlias, IndexingUtils.createIndexDocId( applicationScope, entity, indexEdge ),
-            EntityToMapConverter.convert( applicationScope, indexEdge, entity, fieldsToIndex ) );
+            EntityDocumentWriter.write( applicationScope, indexEdge, entity, fieldsToIndex ) );
 
     }
 
 
-    public IndexOperation( final String writeAlias, String documentId, Map<String, Object> data ) {
+    public IndexOperation( final String writeAlias, String documentId, byte[] data ) {
         this.writeAlias = writeAlias;
         this.data = data;
         this.documentId = documentId;
@@ -90,7 +108,7 @@ public class IndexOperation implements BatchOperation {
 
         final IndexOperation that = ( IndexOperation ) o;
 
-        if ( !data.equals( that.data ) ) {
+        if ( !Arrays.equals( data, that.data ) ) {
             return false;
         }
         if ( !documentId.equals( that.documentId ) ) {
@@ -109,7 +127,41 @@ public class IndexOperation implements BatchOperation {
     public int hashCode() {
         int result = writeAlias.hashCode();
         result = 31 * result + documentId.hashCode();
-        result = 31 * result + data.hashCode();
+        result = 31 * result + Arrays.hashCode( data );
         return result;
     }
+
+
+    /**
+     * Write the json source into the message as it is
+     */
+    public static class SourceSerializer extends JsonSerializer<byte[]> {
+
+        @Override
+        public void serialize( final byte[] value, final JsonGenerator gen, final SerializerProvider serializers )
+            throws IOException {
+            gen.writeRawValue( new String( value, StandardCharsets.UTF_8 ) );
+        }
+    }
+
+
+    /**
+     * Copy the json object of the document out of the message, token by token
+     */
+    public static class SourceDeserializer extends JsonDeserializer<byte[]> {
+
+        private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+
+        @Override
+        public byte[] deserialize( final JsonParser p, final DeserializationContext ctxt ) throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            try ( JsonGenerator generator = JSON_FACTORY.createGenerator( out ) ) {
+                generator.copyCurrentStructure( p );
+            }
+
+            return out.toByteArray();
+        }
+    }
 }
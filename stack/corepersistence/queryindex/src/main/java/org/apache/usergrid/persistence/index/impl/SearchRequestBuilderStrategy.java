@@ -88,6 +88,9 @@ public class SearchRequestBuilderStrategy {
             esProvider.getClient().prepareSearch( alias.getReadAlias() ).setTypes( IndexingUtils.ES_ENTITY_TYPE )
                       .setSearchType( SearchType.QUERY_THEN_FETCH );
 
+        //candidates are built from the document id and sort values, selected fields are read from cassandra
+        srb.setFetchSource( false );
+
 
         final QueryVisitor visitor = visitParsedQuery( query );
 
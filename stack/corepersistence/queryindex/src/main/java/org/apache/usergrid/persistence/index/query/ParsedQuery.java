@@ -195,6 +195,22 @@ public class ParsedQuery {
     }
 
 
+    /**
+     * Copy the selects and sorts of this query into a new query with the given root operand
+     */
+    ParsedQuery copy( final Operand rootOperand ) {
+        final ParsedQuery copy = new ParsedQuery();
+
+        copy.sortPropertyNames.addAll( sortPropertyNames );
+        copy.sortPredicateList.addAll( sortPredicateList );
+        copy.fieldMappings.putAll( fieldMappings );
+        copy.rootOperand = rootOperand;
+        copy.originalQuery = originalQuery;
+
+        return copy;
+    }
+
+
     /**
      * Get the root operand
      * @return
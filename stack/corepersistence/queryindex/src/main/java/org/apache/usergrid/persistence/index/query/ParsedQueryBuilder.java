@@ -57,8 +57,15 @@ public class ParsedQueryBuilder {
             logger.trace("Processing raw query: {}", ql);
         }
 
-        final String trimmedLowercaseQuery = ql.trim().toLowerCase();
+        return parse( ql, normalize( ql ) );
+    }
+
 
+    /**
+     * Lowercase the ql and rewrite it to the select form of the grammar
+     */
+    static String normalize( final String ql ) {
+        final String trimmedLowercaseQuery = ql.trim().toLowerCase();
 
         //the output query after post processing
         final String outputQuery;
@@ -82,6 +89,14 @@ public class ParsedQueryBuilder {
             outputQuery = trimmedLowercaseQuery;
         }
 
+        return outputQuery;
+    }
+
+
+    /**
+     * Run the grammar over the normalized form of the ql
+     */
+    static ParsedQuery parse( final String ql, final String outputQuery ) throws QueryParseException {
         ANTLRStringStream in = new ANTLRStringStream( outputQuery );
         CpQueryFilterLexer lexer = new CpQueryFilterLexer( in );
         CommonTokenStream tokens = new CommonTokenStream( lexer );
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.query;
+
+
+import java.util.Optional;
+
+import org.apache.commons.lang.StringUtils;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.index.IndexFig;
+import org.apache.usergrid.persistence.index.exceptions.QueryParseException;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Keeps the templates of the most recent query shapes.  A query whose shape is cached is bound from the template,
+ * any other query is parsed by the grammar and its template kept for the next query of the same shape.
+ */
+@Singleton
+public class ParsedQueryCacheImpl implements ParsedQueryCache {
+
+    /** Kept for shapes whose literals can't be bound, so they aren't checked again on every query */
+    private static final Optional<ParsedQueryTemplate> UNBINDABLE = Optional.empty();
+
+    private final boolean enabled;
+    private final Cache<String, Optional<ParsedQueryTemplate>> templates;
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Timer parseTimer;
+
+
+    @Inject
+    public ParsedQueryCacheImpl( final IndexFig indexFig, final MetricsFactory metricsFactory ) {
+
+        this.enabled = indexFig.getQueryCacheSize() > 0;
+        this.templates = CacheBuilder.newBuilder().maximumSize( Math.max( 0, indexFig.getQueryCacheSize() ) ).build();
+
+        this.hits = metricsFactory.getMeter( ParsedQueryCacheImpl.class, "query.cache.hit" );
+        this.misses = metricsFactory.getMeter( ParsedQueryCacheImpl.class, "query.cache.miss" );
+        this.parseTimer = metricsFactory.getTimer( ParsedQueryCacheImpl.class, "query.parse" );
+
+        metricsFactory.addGauge( ParsedQueryCacheImpl.class, "query.cache.hit.ratio", ( Gauge<Double> ) () -> {
+            final long total = hits.getCount() + misses.getCount();
+            return total == 0 ? 0.0 : ( double ) hits.getCount() / total;
+        } );
+    }
+
+
+    @Override
+    public ParsedQuery get( final String ql ) throws QueryParseException {
+        if ( StringUtils.isEmpty( ql ) ) {
+            return null;
+        }
+
+        final String normalized = ParsedQueryBuilder.normalize( ql );
+
+        final ParsedQueryTemplate.Shape shape = enabled ? ParsedQueryTemplate.scan( normalized ) : null;
+
+        if ( shape == null ) {
+            return parse( ql, normalized );
+        }
+
+        final Optional<ParsedQueryTemplate> template = templates.getIfPresent( shape.getKey() );
+
+        if ( template != null && template.isPresent() ) {
+            hits.mark();
+            return template.get().bind( ql, shape );
+        }
+
+        misses.mark();
+
+        final ParsedQuery parsed = parse( ql, normalized );
+
+        if ( template == null ) {
+            final ParsedQueryTemplate created = ParsedQueryTemplate.create( parsed, shape );
+            templates.put( shape.getKey(), created == null ? UNBINDABLE : Optional.of( created ) );
+        }
+
+        return parsed;
+    }
+
+
+    private ParsedQuery parse( final String ql, final String normalized ) {
+        final Timer.Context timer = parseTimer.time();
+
+        try {
+            return ParsedQueryBuilder.parse( ql, normalized );
+        }
+        finally {
+            timer.stop();
+        }
+    }
+}
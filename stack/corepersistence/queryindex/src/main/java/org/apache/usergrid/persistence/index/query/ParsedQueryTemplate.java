@@ -0,0 +1,387 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.query;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.CommonTree;
+
+import org.apache.usergrid.persistence.index.query.tree.AndOperand;
+import org.apache.usergrid.persistence.index.query.tree.BooleanLiteral;
+import org.apache.usergrid.persistence.index.query.tree.ContainsOperand;
+import org.apache.usergrid.persistence.index.query.tree.ContainsProperty;
+import org.apache.usergrid.persistence.index.query.tree.Equal;
+import org.apache.usergrid.persistence.index.query.tree.FloatLiteral;
+import org.apache.usergrid.persistence.index.query.tree.GreaterThan;
+import org.apache.usergrid.persistence.index.query.tree.GreaterThanEqual;
+import org.apache.usergrid.persistence.index.query.tree.LessThan;
+import org.apache.usergrid.persistence.index.query.tree.LessThanEqual;
+import org.apache.usergrid.persistence.index.query.tree.LongLiteral;
+import org.apache.usergrid.persistence.index.query.tree.NotOperand;
+import org.apache.usergrid.persistence.index.query.tree.Operand;
+import org.apache.usergrid.persistence.index.query.tree.OrOperand;
+import org.apache.usergrid.persistence.index.query.tree.Property;
+import org.apache.usergrid.persistence.index.query.tree.StringLiteral;
+import org.apache.usergrid.persistence.index.query.tree.UUIDLiteral;
+import org.apache.usergrid.persistence.index.query.tree.WithinOperand;
+import org.apache.usergrid.persistence.index.query.tree.WithinProperty;
+
+
+/**
+ * A parsed query with its string, long, float and uuid literals as parameters.  Queries that only differ in those
+ * literals share a template, the parsed tree is copied with the literals of each query bound in, without running the
+ * grammar again.
+ *
+ * The literals are found by a scan of the normalized query that follows the token rules of the grammar.  A template
+ * is only created when the literals the scan found are exactly the literals the grammar parsed, in the same order and
+ * of the same types, otherwise the shape of the query can't be cached.
+ */
+final class ParsedQueryTemplate {
+
+    /** Stands for a literal in the key of a shape, never part of a valid query */
+    private static final char PLACEHOLDER = '\u0000';
+
+    private static final char STRING = 's';
+    private static final char LONG = 'l';
+    private static final char FLOAT = 'f';
+    private static final char UUID = 'u';
+
+    private static final Pattern LONG_PATTERN = Pattern.compile( "-?[0-9]+" );
+
+    private static final Pattern FLOAT_PATTERN =
+        Pattern.compile( "-?([0-9]+\\.[0-9]*([eE][+-]?[0-9]+)?|\\.[0-9]+([eE][+-]?[0-9]+)?|[0-9]+[eE][+-]?[0-9]+)" );
+
+    private static final Pattern UUID_PATTERN =
+        Pattern.compile( "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}" );
+
+    /** The escapes the grammar allows in a string, other than unicode and octal escapes */
+    private static final String ESCAPES = "btnfr\"'\\";
+
+    /** How to create each type of node of the tree from its token */
+    private static final Map<Class<?>, Function<Token, CommonTree>> NODES = new HashMap<>();
+
+    static {
+        NODES.put( AndOperand.class, AndOperand::new );
+        NODES.put( OrOperand.class, OrOperand::new );
+        NODES.put( NotOperand.class, NotOperand::new );
+        NODES.put( Equal.class, Equal::new );
+        NODES.put( LessThan.class, LessThan::new );
+        NODES.put( LessThanEqual.class, LessThanEqual::new );
+        NODES.put( GreaterThan.class, GreaterThan::new );
+        NODES.put( GreaterThanEqual.class, GreaterThanEqual::new );
+        NODES.put( ContainsOperand.class, ContainsOperand::new );
+        NODES.put( WithinOperand.class, WithinOperand::new );
+        NODES.put( Property.class, Property::new );
+        NODES.put( ContainsProperty.class, ContainsProperty::new );
+        NODES.put( WithinProperty.class, WithinProperty::new );
+        NODES.put( StringLiteral.class, StringLiteral::new );
+        NODES.put( LongLiteral.class, LongLiteral::new );
+        NODES.put( FloatLiteral.class, FloatLiteral::new );
+        NODES.put( UUIDLiteral.class, UUIDLiteral::new );
+        NODES.put( BooleanLiteral.class, token -> new BooleanLiteral( Boolean.valueOf( token.getText() ) ) );
+    }
+
+
+    /** The parsed query, never returned to a caller */
+    private final ParsedQuery parsedQuery;
+
+
+    private ParsedQueryTemplate( final ParsedQuery parsedQuery ) {
+        this.parsedQuery = parsedQuery;
+    }
+
+
+    /**
+     * Create a template from the query parsed from the shape, or null if the shape's literals are not the literals of
+     * the parsed query
+     */
+    static ParsedQueryTemplate create( final ParsedQuery parsed, final Shape shape ) {
+
+        final Operand root = parsed.getRootOperand();
+
+        final int[] next = new int[1];
+
+        if ( root != null && !matches( root, shape, next ) ) {
+            return null;
+        }
+
+        // every literal of the shape must be in the tree
+        if ( next[0] != shape.literals.size() ) {
+            return null;
+        }
+
+        // copy the tree, the parsed query goes to the caller
+        return new ParsedQueryTemplate(
+            parsed.copy( root == null ? null : ( Operand ) copy( root, shape.literals, new int[1] ) ) );
+    }
+
+
+    /**
+     * Scan the normalized query for literals, or null if it can't be scanned
+     */
+    static Shape scan( final String query ) {
+        if ( query.indexOf( PLACEHOLDER ) != -1 ) {
+            return null;
+        }
+
+        final int length = query.length();
+
+        final StringBuilder key = new StringBuilder( length );
+        final List<String> literals = new ArrayList<>();
+
+        int i = 0;
+
+        while ( i < length ) {
+            final char c = query.charAt( i );
+
+            if ( c == '\'' ) {
+                final int end = endOfString( query, i );
+
+                // unterminated or an escape the grammar handles specially, leave it to the grammar
+                if ( end == -1 ) {
+                    return null;
+                }
+
+                literals.add( query.substring( i, end + 1 ) );
+                key.append( PLACEHOLDER ).append( STRING );
+                i = end + 1;
+            }
+            else if ( isDelimiter( c ) ) {
+                key.append( c );
+                i++;
+            }
+            else {
+                int end = i + 1;
+
+                while ( end < length && !isDelimiter( query.charAt( end ) ) && query.charAt( end ) != '\'' ) {
+                    end++;
+                }
+
+                final String word = query.substring( i, end );
+                final char type = literalType( word );
+
+                if ( type == 0 ) {
+                    key.append( word );
+                }
+                else {
+                    literals.add( word );
+                    key.append( PLACEHOLDER ).append( type );
+                }
+
+                i = end;
+            }
+        }
+
+        return new Shape( key.toString(), literals );
+    }
+
+
+    /**
+     * Copy the template with the literals of the shape
+     */
+    ParsedQuery bind( final String originalQuery, final Shape shape ) {
+        final Operand root = parsedQuery.getRootOperand();
+
+        final ParsedQuery bound =
+            parsedQuery.copy( root == null ? null : ( Operand ) copy( root, shape.literals, new int[1] ) );
+
+        bound.setOriginalQuery( originalQuery );
+
+        return bound;
+    }
+
+
+    /**
+     * Copy the node and its children, replacing literals with the next literals of the list
+     */
+    private static CommonTree copy( final CommonTree node, final List<String> literals, final int[] next ) {
+        final Function<Token, CommonTree> factory = NODES.get( node.getClass() );
+
+        final CommonTree copy = isLiteral( node )
+                                ? factory.apply( new CommonToken( node.getType(), literals.get( next[0]++ ) ) )
+                                : factory.apply( node.getToken() );
+
+        for ( int i = 0; i < node.getChildCount(); i++ ) {
+            copy.addChild( copy( ( CommonTree ) node.getChild( i ), literals, next ) );
+        }
+
+        return copy;
+    }
+
+
+    /**
+     * True if the tree can be copied, and its literals are the literals of the shape
+     */
+    private static boolean matches( final CommonTree node, final Shape shape, final int[] next ) {
+        if ( !NODES.containsKey( node.getClass() ) ) {
+            return false;
+        }
+
+        if ( isLiteral( node ) ) {
+            final int index = next[0]++;
+
+            if ( index >= shape.literals.size() || typeOf( node ) != shape.types.get( index )
+                || !node.getToken().getText().equals( shape.literals.get( index ) ) ) {
+                return false;
+            }
+        }
+
+        for ( int i = 0; i < node.getChildCount(); i++ ) {
+            if ( !( node.getChild( i ) instanceof CommonTree ) || !matches( ( CommonTree ) node.getChild( i ), shape,
+                next ) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * True if the node is a literal bound from the shape.  Booleans are kept in the key
+     */
+    private static boolean isLiteral( final CommonTree node ) {
+        return node instanceof StringLiteral || node instanceof LongLiteral || node instanceof FloatLiteral
+            || node instanceof UUIDLiteral;
+    }
+
+
+    private static char typeOf( final CommonTree node ) {
+        if ( node instanceof StringLiteral ) {
+            return STRING;
+        }
+        if ( node instanceof LongLiteral ) {
+            return LONG;
+        }
+        if ( node instanceof FloatLiteral ) {
+            return FLOAT;
+        }
+        return UUID;
+    }
+
+
+    private static char literalType( final String word ) {
+        if ( LONG_PATTERN.matcher( word ).matches() ) {
+            return LONG;
+        }
+        if ( FLOAT_PATTERN.matcher( word ).matches() ) {
+            return FLOAT;
+        }
+        if ( UUID_PATTERN.matcher( word ).matches() ) {
+            return UUID;
+        }
+        return 0;
+    }
+
+
+    /**
+     * The index of the quote closing the string starting at the given index, or -1
+     */
+    private static int endOfString( final String query, final int start ) {
+        int i = start + 1;
+
+        while ( i < query.length() ) {
+            final char c = query.charAt( i );
+
+            if ( c == '\'' ) {
+                return i;
+            }
+
+            if ( c == '\\' ) {
+                if ( i + 1 >= query.length() || ESCAPES.indexOf( query.charAt( i + 1 ) ) == -1 ) {
+                    return -1;
+                }
+                i += 2;
+            }
+            else {
+                i++;
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Characters that end an id or a literal in the grammar
+     */
+    private static boolean isDelimiter( final char c ) {
+        switch ( c ) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+            case '\f':
+            case '(':
+            case ')':
+            case ',':
+            case '=':
+            case '<':
+            case '>':
+            case '&':
+            case '|':
+            case '{':
+            case '}':
+            case ':':
+            case '*':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+
+    /**
+     * A normalized query with its literals taken out.  Queries with the same key share a template
+     */
+    static final class Shape {
+
+        private final String key;
+        private final List<String> literals;
+        private final List<Character> types;
+
+
+        private Shape( final String key, final List<String> literals ) {
+            this.key = key;
+            this.literals = literals;
+            this.types = new ArrayList<>( literals.size() );
+
+            for ( int i = 0; i < key.length(); i++ ) {
+                if ( key.charAt( i ) == PLACEHOLDER ) {
+                    types.add( key.charAt( ++i ) );
+                }
+            }
+        }
+
+
+        String getKey() {
+            return key;
+        }
+
+    }
+}
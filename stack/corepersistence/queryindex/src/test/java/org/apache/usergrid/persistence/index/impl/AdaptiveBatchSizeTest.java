@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+package org.apache.usergrid.persistence.index.impl;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class AdaptiveBatchSizeTest {
+
+    @Test
+    public void startsAtMax() {
+        final AdaptiveBatchSize size = new AdaptiveBatchSize( 50, 1000, 100 );
+
+        assertEquals( 1000, size.get() );
+
+        size.onSuccess( 10 );
+
+        assertEquals( 1000, size.get() );
+    }
+
+
+    @Test
+    public void rejectionHalvesToMin() {
+        final AdaptiveBatchSize size = new AdaptiveBatchSize( 50, 1000, 100 );
+
+        size.onRejected();
+        assertEquals( 500, size.get() );
+
+        size.onSuccess( 200 );
+        assertEquals( 250, size.get() );
+
+        for ( int i = 0; i < 10; i++ ) {
+            size.onRejected();
+        }
+
+        assertEquals( 50, size.get() );
+    }
+
+
+    @Test
+    public void successGrowsBackToMax() {
+        final AdaptiveBatchSize size = new AdaptiveBatchSize( 50, 1000, 100 );
+
+        for ( int i = 0; i < 10; i++ ) {
+            size.onRejected();
+        }
+
+        size.onSuccess( 10 );
+
+        //step is (1000 - 50) / 20
+        assertEquals( 97, size.get() );
+
+        for ( int i = 0; i < 30; i++ ) {
+            size.onSuccess( 10 );
+        }
+
+        assertEquals( 1000, size.get() );
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.index.IndexEdge;
+import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.field.ArrayField;
+import org.apache.usergrid.persistence.model.field.BooleanField;
+import org.apache.usergrid.persistence.model.field.DoubleField;
+import org.apache.usergrid.persistence.model.field.EntityObjectField;
+import org.apache.usergrid.persistence.model.field.FloatField;
+import org.apache.usergrid.persistence.model.field.IntegerField;
+import org.apache.usergrid.persistence.model.field.ListField;
+import org.apache.usergrid.persistence.model.field.LocationField;
+import org.apache.usergrid.persistence.model.field.LongField;
+import org.apache.usergrid.persistence.model.field.NullField;
+import org.apache.usergrid.persistence.model.field.StringField;
+import org.apache.usergrid.persistence.model.field.UUIDField;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+import org.apache.usergrid.persistence.model.field.value.Location;
+import org.apache.usergrid.persistence.model.util.EntityUtils;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+
+import static org.apache.usergrid.persistence.core.util.IdGenerator.createId;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests the streamed document is the document of the entity to map converter
+ */
+public class EntityDocumentWriterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ApplicationScope scope = new ApplicationScopeImpl( createId( "application" ) );
+
+    private final IndexEdge indexEdge =
+        new IndexEdgeImpl( createId( "source" ), "testEdgeType", SearchEdge.NodeType.SOURCE, 1000 );
+
+
+    @Test
+    public void sameAsConverter() throws IOException {
+        final Entity entity = createEntity();
+
+        assertSameDocument( EntityToMapConverter.convert( scope, indexEdge, entity ),
+            EntityDocumentWriter.write( scope, indexEdge, entity ) );
+    }
+
+
+    @Test
+    public void sameAsConverterWithFieldsToIndex() throws IOException {
+        final Entity entity = createEntity();
+
+        final Optional<Set<String>> fieldsToIndex =
+            Optional.of( new HashSet<>( Arrays.asList( "name", "count", "address", "tags", "missing" ) ) );
+
+        final Map<String, Object> converted = EntityToMapConverter.convert( scope, indexEdge, entity, fieldsToIndex );
+
+        assertSameDocument( converted, EntityDocumentWriter.write( scope, indexEdge, entity, fieldsToIndex ) );
+
+        //make sure the filter left something to compare
+        assertTrue( ( ( Set<?> ) converted.get( IndexingUtils.ENTITY_FIELDS ) ).size() > 3 );
+    }
+
+
+    @Test
+    public void readsMapMessages() throws IOException {
+        final Entity entity = createEntity();
+
+        final IndexOperation written = new IndexOperation( "alias", scope, indexEdge, entity, Optional.absent() );
+
+        final IndexOperation read =
+            MAPPER.readValue( MAPPER.writeValueAsString( written ), IndexOperation.class );
+
+        assertEquals( written, read );
+
+        //a message from a node that sends the document as a map
+        final Map<String, Object> mapMessage =
+            MAPPER.readValue( MAPPER.writeValueAsString( written ), Map.class );
+
+        assertTrue( mapMessage.get( "data" ) instanceof Map );
+
+        final IndexOperation fromMap =
+            MAPPER.readValue( MAPPER.writeValueAsString( mapMessage ), IndexOperation.class );
+
+        assertArrayEquals( written.data, fromMap.data );
+    }
+
+
+    private Entity createEntity() {
+        final Entity entity = new Entity( "test" );
+
+        EntityUtils.setVersion( entity, UUIDGenerator.newTimeUUID() );
+
+        entity.setField( new StringField( "Name", "Value" ) );
+        entity.setField( new BooleanField( "active", true ) );
+        entity.setField( new IntegerField( "count", 10 ) );
+        entity.setField( new LongField( "total", Long.MAX_VALUE ) );
+        entity.setField( new FloatField( "ratio", 1.5f ) );
+        entity.setField( new DoubleField( "score", 2.25 ) );
+        entity.setField( new UUIDField( "ref", UUIDGenerator.newTimeUUID() ) );
+        entity.setField( new NullField( "nothing" ) );
+        entity.setField( new LocationField( "location", new Location( 10, 20 ) ) );
+        entity.setField( new ArrayField<>( "tags", Arrays.asList( "One", "two", "three" ) ) );
+
+        final EntityObject geo = new EntityObject();
+        geo.setField( new DoubleField( "latitude", 1.0 ) );
+        geo.setField( new DoubleField( "longitude", 2.0 ) );
+
+        final EntityObject address = new EntityObject();
+        address.setField( new StringField( "Street", "Main" ) );
+        address.setField( new IntegerField( "number", 5 ) );
+        address.setField( new EntityObjectField( "geo", geo ) );
+        address.setField( new ArrayField<>( "codes", Arrays.asList( 1L, 2L ) ) );
+        entity.setField( new EntityObjectField( "address", address ) );
+
+        final EntityObject element = new EntityObject();
+        element.setField( new StringField( "key", "element" ) );
+
+        final ListField<Object> list = new ListField<>( "list" );
+        list.add( Arrays.asList( "nested", "list" ) );
+        list.add( element );
+        entity.setField( list );
+
+        return entity;
+    }
+
+
+    /**
+     * Compare the documents as json.  The fields of the converter are a set, so compare them as sets
+     */
+    private void assertSameDocument( final Map<String, Object> converted, final byte[] written ) throws IOException {
+        final Map<String, Object> expected = MAPPER.readValue( MAPPER.writeValueAsBytes( converted ), Map.class );
+        final Map<String, Object> actual = MAPPER.readValue( written, Map.class );
+
+        final List<?> expectedFields = ( List<?> ) expected.remove( IndexingUtils.ENTITY_FIELDS );
+        final List<?> actualFields = ( List<?> ) actual.remove( IndexingUtils.ENTITY_FIELDS );
+
+        assertEquals( expected, actual );
+        assertEquals( expectedFields.size(), actualFields.size() );
+        assertEquals( new HashSet<>( expectedFields ), new HashSet<>( actualFields ) );
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.usergrid.persistence.index.query;
+
+
+import org.antlr.runtime.tree.Tree;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.index.IndexFig;
+import org.apache.usergrid.persistence.index.exceptions.QueryParseException;
+import org.apache.usergrid.persistence.index.query.tree.Literal;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class ParsedQueryCacheTest {
+
+    private Meter hits;
+    private Meter misses;
+    private ParsedQueryCache cache;
+
+
+    @Before
+    public void setup() {
+        final IndexFig indexFig = mock( IndexFig.class );
+        when( indexFig.getQueryCacheSize() ).thenReturn( 100 );
+
+        hits = new Meter();
+        misses = new Meter();
+
+        final MetricsFactory metricsFactory = mock( MetricsFactory.class );
+        when( metricsFactory.getMeter( any( Class.class ), eq( "query.cache.hit" ) ) ).thenReturn( hits );
+        when( metricsFactory.getMeter( any( Class.class ), eq( "query.cache.miss" ) ) ).thenReturn( misses );
+        when( metricsFactory.getTimer( any( Class.class ), any( String.class ) ) ).thenReturn( new Timer() );
+
+        cache = new ParsedQueryCacheImpl( indexFig, metricsFactory );
+    }
+
+
+    @Test
+    public void sameAsGrammar() {
+        final String[] queries = {
+            "select * where name = 'bob' order by name asc",
+            "select * where name = 'alice' order by name asc",
+            "where age > 5 and age <= 10",
+            "where age > -15 and age <= 1000",
+            "where weight >= 5.5 or not weight < .25",
+            "where weight >= 12.0e3 or not weight < 1.5",
+            "uuid = c6ee8a1c-3ef4-11e2-8861-02e81adcf3d0",
+            "uuid = 01234567-3ef4-11e2-8861-02e81adcf3d0",
+            "select name, age where title contains 'fred*'",
+            "select name, age where title contains 'it\\'s'",
+            "select {n:name} where location within 20000 of 37,-75 and active = true",
+            "select {n:name} where location within 100 of 38,-76 and active = true",
+            "order by created desc",
+            "name = 'BOB' and (age = 5 or age = 6)"
+        };
+
+        for ( final String ql : queries ) {
+            assertSame( ql, ParsedQueryBuilder.build( ql ), cache.get( ql ) );
+        }
+
+        // every pair of queries of the same shape shares a template
+        assertEquals( 6, hits.getCount() );
+
+        // the cached query is still bound correctly the third time
+        final String ql = "select * where name = 'carol' order by name asc";
+        assertSame( ql, ParsedQueryBuilder.build( ql ), cache.get( ql ) );
+        assertEquals( 7, hits.getCount() );
+    }
+
+
+    @Test
+    public void typesNotShared() {
+        for ( final String ql : new String[] { "where a = 5", "where a = 5.5", "where a = '5'", "where a = true" } ) {
+            assertSame( ql, ParsedQueryBuilder.build( ql ), cache.get( ql ) );
+        }
+
+        assertEquals( 0, hits.getCount() );
+        assertEquals( 4, misses.getCount() );
+    }
+
+
+    @Test
+    public void invalidQueries() {
+        assertNull( cache.get( "" ) );
+
+        for ( int i = 0; i < 2; i++ ) {
+            try {
+                cache.get( "select * where name = 'bob' order by" );
+                fail( "should throw an exception" );
+            }
+            catch ( QueryParseException qpe ) {
+                // expected, never cached
+            }
+        }
+
+        assertEquals( 0, hits.getCount() );
+    }
+
+
+    @Test
+    public void queriesNotShared() {
+        final String ql = "where a = 5";
+
+        assertEquals( cache.get( ql ).getRootOperand().getClass(), cache.get( ql ).getRootOperand().getClass() );
+
+        // each caller gets its own tree
+        if ( cache.get( ql ).getRootOperand() == cache.get( ql ).getRootOperand() ) {
+            fail( "trees must not be shared" );
+        }
+    }
+
+
+    private static void assertSame( final String ql, final ParsedQuery expected, final ParsedQuery actual ) {
+        assertEquals( ql, describe( expected.getRootOperand() ), describe( actual.getRootOperand() ) );
+        assertEquals( ql, expected.getSortPredicates(), actual.getSortPredicates() );
+        assertEquals( ql, expected.getSelectFieldMappings().size(), actual.getSelectFieldMappings().size() );
+        assertEquals( ql, ql, actual.getOriginalQuery() );
+    }
+
+
+    /**
+     * The types and values of the tree
+     */
+    private static String describe( final Tree node ) {
+        if ( node == null ) {
+            return "null";
+        }
+
+        final StringBuilder description = new StringBuilder( node.getClass().getSimpleName() );
+
+        if ( node instanceof Literal ) {
+            description.append( '[' ).append( ( ( Literal<?> ) node ).getValue() ).append( ']' );
+        }
+
+        description.append( '(' );
+
+        for ( int i = 0; i < node.getChildCount(); i++ ) {
+            description.append( describe( node.getChild( i ) ) ).append( ' ' );
+        }
+
+        return description.append( ')' ).toString();
+    }
+}
@@ -23,78 +23,293 @@ package org.apache.usergrid.persistence.queue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.StringUtils;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.queue.impl.QueueSegment;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
- * Default queue manager implementation, uses in memory linked queue
+ * Single node queue implementation backed by an append only log of memory mapped segments.  Sends and acks are both
+ * appended to the log, so any message that was not acked before a restart is delivered again.  Messages that are not
+ * acked within the visibility timeout are delivered again as well.  Segments are deleted once every message in them,
+ * and in every segment before them, has been acked.
+ *
+ * Unacked messages are held in memory, so senders block once usergrid.queue.local.max.unacked messages are waiting
+ * for an ack.  The manager is closed on JVM shutdown if it wasn't closed before.
  */
 public class LocalQueueManager implements QueueManager {
 
     private static final Logger logger = LoggerFactory.getLogger(LocalQueueManager.class);
 
-    public ArrayBlockingQueue<QueueMessage> queue = new ArrayBlockingQueue<>(10000);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String LOCK_FILE = "queue.lock";
+
+    private final QueueFig fig;
+    private final File dir;
+    private final boolean tempDir;
+    private final FileLock fileLock;
+    private final Thread shutdownHook;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition messagesAvailable = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+
+    /**
+     * All the state below is guarded by our lock
+     */
+
+    //every message that has not been acked, by id
+    private final Map<Long, Entry> unacked = new HashMap<>();
+
+    //messages waiting for their first delivery, in send order
+    private final ArrayDeque<Entry> ready = new ArrayDeque<>();
+
+    //messages whose visibility timeout expired, delivered before the ready messages
+    private final ArrayDeque<Entry> redeliver = new ArrayDeque<>();
+
+    //delivered messages in delivery order.  The timeout is fixed, so this is also visibility order
+    private final LinkedHashMap<Long, Entry> inFlight = new LinkedHashMap<>();
+
+    //the number of unacked messages written to each segment
+    private final TreeMap<Long, SegmentState> segments = new TreeMap<>();
+
+    private QueueSegment active;
+    private long nextMessageId;
+    private boolean closed;
+
+    private final Meter sendMeter;
+    private final Meter ackMeter;
+    private final Meter redeliverMeter;
+    private final MetricsFactory metricsFactory;
+    private final String[] gaugeNames;
+
+
+    public LocalQueueManager( final QueueScope scope, final QueueFig fig, final MetricsFactory metricsFactory ) {
+        this.fig = fig;
+
+        this.tempDir = StringUtils.isBlank( fig.getLocalQueueDir() );
+
+        try {
+            this.dir = getQueueDir( fig, scope.getName() );
+
+            if ( !dir.isDirectory() && !dir.mkdirs() ) {
+                throw new IOException( "Unable to create directory " + dir );
+            }
+
+            //only a single manager may own the log
+            this.fileLock = new RandomAccessFile( new File( dir, LOCK_FILE ), "rw" ).getChannel().tryLock();
+
+            if ( fileLock == null ) {
+                throw new IOException( "Queue directory " + dir + " is locked by another process" );
+            }
+
+            recover();
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to open local queue " + scope.getName(), e );
+        }
+
+        final String name = scope.getName();
+
+        this.sendMeter = metricsFactory.getMeter( LocalQueueManager.class, name + ".send" );
+        this.ackMeter = metricsFactory.getMeter( LocalQueueManager.class, name + ".ack" );
+        this.redeliverMeter = metricsFactory.getMeter( LocalQueueManager.class, name + ".redeliver" );
+
+        this.metricsFactory = metricsFactory;
+        this.gaugeNames = new String[] { name + ".depth", name + ".inflight", name + ".segments" };
+
+        metricsFactory.addGauge( LocalQueueManager.class, gaugeNames[0], ( Gauge<Long> ) this::getQueueDepth );
+        metricsFactory.addGauge( LocalQueueManager.class, gaugeNames[1], ( Gauge<Integer> ) this::getInFlight );
+        metricsFactory.addGauge( LocalQueueManager.class, gaugeNames[2], ( Gauge<Integer> ) this::getSegmentCount );
+
+        //release the mappings and temp directory if the JVM exits without closing us
+        this.shutdownHook = new Thread( this::close, "local-queue-shutdown-" + name );
+        Runtime.getRuntime().addShutdownHook( shutdownHook );
+    }
+
 
     @Override
-    public    List<QueueMessage> getMessages(int limit, Class klass) {
-        List<QueueMessage> returnQueue = new ArrayList<>();
+    public List<QueueMessage> getMessages( final int limit, final Class klass ) {
+
+        final List<Entry> taken = new ArrayList<>( limit );
+
+        lock.lock();
+
         try {
-            QueueMessage message=null;
-            int count = 5;
-            do {
-                message = queue.poll(100, TimeUnit.MILLISECONDS);
-                if (message != null) {
-                    returnQueue.add(message);
+            //the closed log can't take acks, leave everything for the next manager
+            if ( closed ) {
+                return Collections.emptyList();
+            }
+
+            final long pollDeadline = System.currentTimeMillis() + fig.getQueuePollTimeout();
+
+            while ( true ) {
+                final long now = System.currentTimeMillis();
+
+                final long nextVisible = requeueExpired( now );
+
+                if ( !ready.isEmpty() || !redeliver.isEmpty() ) {
+                    break;
+                }
+
+                final long wait = Math.min( pollDeadline, nextVisible ) - now;
+
+                if ( now >= pollDeadline || closed ) {
+                    return Collections.emptyList();
                 }
-            }while(message!=null && count-->0);
-        }catch (InterruptedException ie){
-            throw new RuntimeException(ie);
+
+                if ( wait > 0 ) {
+                    messagesAvailable.await( wait, TimeUnit.MILLISECONDS );
+                }
+            }
+
+            final long visibleAt = System.currentTimeMillis() + fig.getVisibilityTimeout();
+
+            drain( redeliver, taken, limit, visibleAt );
+            drain( ready, taken, limit, visibleAt );
+        }
+        catch ( InterruptedException ie ) {
+            throw new RuntimeException( ie );
+        }
+        finally {
+            lock.unlock();
         }
-        return returnQueue;
+
+        //deserialize outside of the lock
+        final List<QueueMessage> messages = new ArrayList<>( taken.size() );
+
+        for ( final Entry entry : taken ) {
+            final String messageId = String.valueOf( entry.id );
+
+            final QueueMessage message = new QueueMessage( messageId, messageId, getBody( entry, klass ), null );
+            message.setReceiveCount( entry.receiveCount );
+
+            if ( entry.payload != null ) {
+                message.setStringBody( new String( entry.payload, StandardCharsets.UTF_8 ) );
+            }
+
+            messages.add( message );
+        }
+
+        return messages;
     }
 
+
     @Override
     public long getQueueDepth() {
-        return queue.size();
-    }
+        lock.lock();
 
-    @Override
-    public void commitMessage(QueueMessage queueMessage) {
+        try {
+            return unacked.size() - inFlight.size();
+        }
+        finally {
+            lock.unlock();
+        }
     }
 
+
     @Override
-    public void commitMessages(List<QueueMessage> queueMessages) {
+    public void commitMessage( final QueueMessage queueMessage ) {
+        commitMessages( Collections.singletonList( queueMessage ) );
     }
 
+
     @Override
-    public  void sendMessages(List bodies) throws IOException {
-        for(Object body : bodies){
-            String uuid = UUID.randomUUID().toString();
-            try {
-                queue.put(new QueueMessage(uuid, "handle_" + uuid, body, "put type here"));
-            }catch (InterruptedException ie){
-                throw new RuntimeException(ie);
+    public void commitMessages( final List<QueueMessage> queueMessages ) {
+
+        lock.lock();
+
+        try {
+            int acked = 0;
+
+            for ( final QueueMessage queueMessage : queueMessages ) {
+
+                final long id = Long.parseLong( queueMessage.getHandle() );
+
+                final Entry entry = unacked.remove( id );
+
+                //already acked
+                if ( entry == null ) {
+                    continue;
+                }
+
+                //entries waiting for redelivery are skipped when they're drained
+                entry.acked = true;
+                inFlight.remove( id );
+
+                append( QueueSegment.ACK, id, null );
+
+                segments.get( entry.segment ).pending--;
+
+                acked++;
             }
+
+            if ( fig.getLocalQueueSync() ) {
+                active.force();
+            }
+
+            deleteAckedSegments();
+
+            if ( acked > 0 ) {
+                spaceAvailable.signalAll();
+            }
+
+            ackMeter.mark( acked );
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to ack messages", e );
+        }
+        finally {
+            lock.unlock();
         }
     }
 
 
     @Override
-    public <T extends Serializable> void sendMessage( final T body ) throws IOException {
-        String uuid = UUID.randomUUID().toString();
-        try {
-            queue.offer(new QueueMessage(uuid, "handle_" + uuid, body, "put type here"),5000,TimeUnit.MILLISECONDS);
-        }catch (InterruptedException ie){
-            throw new RuntimeException(ie);
+    public void sendMessages( final List bodies ) throws IOException {
+
+        final List<Entry> entries = new ArrayList<>( bodies.size() );
+
+        for ( final Object body : bodies ) {
+            entries.add( new Entry( body, MAPPER.writeValueAsBytes( body ) ) );
         }
+
+        send( entries );
     }
 
 
+    @Override
+    public <T extends Serializable> void sendMessage( final T body ) throws IOException {
+        send( Collections.singletonList( new Entry( body, MAPPER.writeValueAsBytes( body ) ) ) );
+    }
+
 
     @Override
     public <T extends Serializable> void sendMessageToTopic( final T body ) throws IOException {
@@ -105,5 +320,423 @@ public class LocalQueueManager implements QueueManager {
     @Override
     public void deleteQueue() {
 
+        lock.lock();
+
+        try {
+            for ( final SegmentState state : segments.values() ) {
+                state.segment.delete();
+            }
+
+            segments.clear();
+            unacked.clear();
+            ready.clear();
+            redeliver.clear();
+            inFlight.clear();
+
+            spaceAvailable.signalAll();
+
+            active = createSegment( active.getSequence() + 1, fig.getLocalQueueSegmentSize() );
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to delete queue " + dir, e );
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Flush the log, unmap the segments and release the queue directory.  Unacked messages are delivered again by the
+     * next manager that opens the directory, unless it was a temp directory, which is deleted
+     */
+    public void close() {
+
+        lock.lock();
+
+        try {
+            if ( closed ) {
+                return;
+            }
+
+            closed = true;
+
+            for ( final String gaugeName : gaugeNames ) {
+                metricsFactory.getRegistry().remove( MetricRegistry.name( LocalQueueManager.class, gaugeName ) );
+            }
+
+            active.force();
+
+            for ( final SegmentState state : segments.values() ) {
+                state.segment.close();
+            }
+
+            fileLock.release();
+            fileLock.channel().close();
+
+            if ( tempDir ) {
+                deleteTempDir();
+            }
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to close queue " + dir, e );
+        }
+        finally {
+            //wake anyone blocked, they'll find the manager closed
+            messagesAvailable.signalAll();
+            spaceAvailable.signalAll();
+            lock.unlock();
+        }
+
+        try {
+            Runtime.getRuntime().removeShutdownHook( shutdownHook );
+        }
+        catch ( IllegalStateException e ) {
+            //we're running in the hook
+        }
+    }
+
+
+    /**
+     * Append the entries to the log and make them visible to readers.  Blocks while the queue is full, and fails once
+     * the send timeout passes.  Entries sent before the timeout stay queued
+     */
+    private void send( final List<Entry> entries ) throws IOException {
+
+        final int maxUnacked = fig.getLocalQueueMaxUnacked();
+
+        int sent = 0;
+
+        lock.lock();
+
+        try {
+            final long deadline = System.currentTimeMillis() + fig.getLocalQueueSendTimeout();
+
+            for ( final Entry entry : entries ) {
+
+                while ( unacked.size() >= maxUnacked && !closed ) {
+                    final long wait = deadline - System.currentTimeMillis();
+
+                    if ( wait <= 0 ) {
+                        throw new IOException(
+                            "Local queue " + dir + " is full with " + unacked.size() + " unacked messages" );
+                    }
+
+                    //readers have to see what we've sent so far, or nothing is acked and we wait out the timeout
+                    if ( sent > 0 ) {
+                        messagesAvailable.signalAll();
+                    }
+
+                    spaceAvailable.await( wait, TimeUnit.MILLISECONDS );
+                }
+
+                if ( closed ) {
+                    throw new IOException( "Local queue " + dir + " is closed" );
+                }
+
+                entry.id = nextMessageId++;
+
+                append( QueueSegment.MESSAGE, entry.id, entry.payload );
+
+                entry.segment = active.getSequence();
+                segments.get( entry.segment ).pending++;
+
+                //the in memory body is returned to readers, the serialized form only needs to live in the log
+                entry.payload = null;
+
+                unacked.put( entry.id, entry );
+                ready.add( entry );
+                sent++;
+            }
+        }
+        catch ( InterruptedException ie ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted sending to local queue " + dir, ie );
+        }
+        finally {
+            if ( sent > 0 ) {
+                if ( fig.getLocalQueueSync() && !closed ) {
+                    active.force();
+                }
+
+                messagesAvailable.signalAll();
+            }
+
+            lock.unlock();
+
+            sendMeter.mark( sent );
+        }
+    }
+
+
+    /**
+     * Move messages whose visibility timeout has expired to the redelivery queue.  Returns the time the next in flight
+     * message becomes visible
+     */
+    private long requeueExpired( final long now ) {
+
+        final Iterator<Entry> entries = inFlight.values().iterator();
+
+        while ( entries.hasNext() ) {
+            final Entry entry = entries.next();
+
+            if ( entry.visibleAt > now ) {
+                return entry.visibleAt;
+            }
+
+            entries.remove();
+            entry.receiveCount++;
+            redeliver.add( entry );
+            redeliverMeter.mark();
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+
+    private void drain( final ArrayDeque<Entry> source, final List<Entry> taken, final int limit,
+                        final long visibleAt ) {
+
+        while ( taken.size() < limit ) {
+            final Entry entry = source.poll();
+
+            if ( entry == null ) {
+                return;
+            }
+
+            if ( entry.acked ) {
+                continue;
+            }
+
+            entry.visibleAt = visibleAt;
+            inFlight.put( entry.id, entry );
+            taken.add( entry );
+        }
+    }
+
+
+    private Object getBody( final Entry entry, final Class klass ) {
+
+        if ( entry.body != null ) {
+            return entry.body;
+        }
+
+        try {
+            return MAPPER.readValue( entry.payload, klass );
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to deserialize message " + entry.id + " for class " + klass, e );
+        }
+    }
+
+
+    /**
+     * Append a record to the active segment, rolling to a new segment when it's full
+     */
+    private void append( final byte type, final long id, final byte[] payload ) throws IOException {
+
+        if ( active.append( type, id, payload ) ) {
+            return;
+        }
+
+        active.force();
+
+        final int payloadLength = payload == null ? 0 : payload.length;
+        final int size = Math.max( fig.getLocalQueueSegmentSize(), QueueSegment.recordSize( payloadLength ) );
+
+        active = createSegment( active.getSequence() + 1, size );
+
+        if ( !active.append( type, id, payload ) ) {
+            throw new IOException( "Unable to append record of " + payloadLength + " bytes to a new segment" );
+        }
+    }
+
+
+    private QueueSegment createSegment( final long sequence, final int size ) throws IOException {
+        final QueueSegment segment = QueueSegment.create( dir, sequence, size );
+        segments.put( sequence, new SegmentState( segment ) );
+        return segment;
+    }
+
+
+    /**
+     * Delete segments from the head of the log that have no unacked messages.  Acks can be written to a later segment
+     * than their message, so we only ever delete in order
+     */
+    private void deleteAckedSegments() {
+
+        while ( !segments.isEmpty() ) {
+            final SegmentState head = segments.firstEntry().getValue();
+
+            if ( head.segment == active || head.pending > 0 ) {
+                return;
+            }
+
+            if ( !head.segment.delete() ) {
+                logger.warn( "Unable to delete acked queue segment {} in {}", head.segment.getSequence(), dir );
+            }
+
+            segments.pollFirstEntry();
+        }
+    }
+
+
+    /**
+     * Read all existing segments, and queue every message that was never acked
+     */
+    private void recover() throws IOException {
+
+        final File[] files = dir.listFiles( ( d, name ) -> QueueSegment.isSegment( name ) );
+
+        //zero padded names sort in write order
+        Arrays.sort( files );
+
+        final TreeMap<Long, Entry> recovered = new TreeMap<>();
+
+        //acks in the log can refer to ids higher than any unacked message, never re-use them
+        final long[] maxMessageId = { -1 };
+
+        long lastSequence = -1;
+
+        for ( final File file : files ) {
+
+            final QueueSegment segment =
+                QueueSegment.open( file, ( segmentSequence, type, messageId, body, offset, length ) -> {
+                    maxMessageId[0] = Math.max( maxMessageId[0], messageId );
+
+                    if ( type == QueueSegment.MESSAGE ) {
+                        final Entry entry = new Entry( null, Arrays.copyOfRange( body, offset, offset + length ) );
+                        entry.id = messageId;
+                        entry.segment = segmentSequence;
+                        recovered.put( messageId, entry );
+                    }
+                    else if ( type == QueueSegment.ACK ) {
+                        recovered.remove( messageId );
+                    }
+                } );
+
+            segments.put( segment.getSequence(), new SegmentState( segment ) );
+            lastSequence = segment.getSequence();
+        }
+
+        for ( final Entry entry : recovered.values() ) {
+            unacked.put( entry.id, entry );
+            ready.add( entry );
+            segments.get( entry.segment ).pending++;
+        }
+
+        nextMessageId = maxMessageId[0] + 1;
+
+        //never append to a recovered segment, its tail may be torn
+        active = createSegment( lastSequence + 1, fig.getLocalQueueSegmentSize() );
+
+        deleteAckedSegments();
+
+        if ( !recovered.isEmpty() ) {
+            logger.info( "Recovered {} unacked messages from {} segments in {}", recovered.size(), files.length, dir );
+        }
+    }
+
+
+    /**
+     * Get the directory for the queue.  Without a configured directory every manager gets its own temp directory, so
+     * managers can't collide but nothing is recovered after a restart
+     */
+    private static File getQueueDir( final QueueFig fig, final String queueName ) throws IOException {
+
+        if ( StringUtils.isNotBlank( fig.getLocalQueueDir() ) ) {
+            return new File( fig.getLocalQueueDir(), queueName );
+        }
+
+        final File tempDir = Files.createTempDirectory( "usergrid-queue-" + queueName ).toFile();
+
+        logger.warn( "usergrid.queue.local.dir is not set, queue {} will not be recovered after a restart.  Using {}",
+            queueName, tempDir );
+
+        return tempDir;
+    }
+
+
+    /**
+     * Delete our temp directory once the segments are unmapped.  Nothing in it can be recovered
+     */
+    private void deleteTempDir() {
+
+        final File[] files = dir.listFiles();
+
+        if ( files != null ) {
+            for ( final File file : files ) {
+                if ( !file.delete() ) {
+                    logger.warn( "Unable to delete {}", file );
+                }
+            }
+        }
+
+        if ( !dir.delete() ) {
+            logger.warn( "Unable to delete temp queue directory {}", dir );
+        }
+    }
+
+
+    /**
+     * The directory holding our log
+     */
+    File getDirectory() {
+        return dir;
+    }
+
+
+    private int getInFlight() {
+        lock.lock();
+
+        try {
+            return inFlight.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+
+    private int getSegmentCount() {
+        lock.lock();
+
+        try {
+            return segments.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * A message that has not been acked
+     */
+    private static final class Entry {
+
+        private final Object body;
+        private byte[] payload;
+        private long id;
+        private long segment;
+        private int receiveCount = 1;
+        private long visibleAt;
+        private boolean acked;
+
+
+        private Entry( final Object body, final byte[] payload ) {
+            this.body = body;
+            this.payload = payload;
+        }
+    }
+
+
+    private static final class SegmentState {
+
+        private final QueueSegment segment;
+        private int pending;
+
+
+        private SegmentState( final QueueSegment segment ) {this.segment = segment;}
     }
 }
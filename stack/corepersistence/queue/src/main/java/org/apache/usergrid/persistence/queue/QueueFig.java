@@ -103,4 +103,41 @@ public interface QueueFig extends GuicyFig {
     @Default("false") // 30 seconds
     boolean getQuorumFallback();
 
+    /**
+     * Directory the local queue keeps its segment logs in.  Each queue gets its own sub directory.  When empty, the
+     * system temp directory is used.
+     */
+    @Key( "usergrid.queue.local.dir" )
+    @Default( "" )
+    String getLocalQueueDir();
+
+    /**
+     * Size (in bytes) of each memory mapped segment of the local queue log
+     */
+    @Key( "usergrid.queue.local.segment.size" )
+    @Default( "67108864" ) // 64 MB
+    int getLocalQueueSegmentSize();
+
+    /**
+     * Force local queue writes to disk after every send.  Without it, writes survive a process crash but not an OS
+     * crash
+     */
+    @Key( "usergrid.queue.local.sync" )
+    @Default( "false" )
+    boolean getLocalQueueSync();
+
+    /**
+     * The most messages the local queue holds that were not acked.  Senders wait for acks once it's reached
+     */
+    @Key( "usergrid.queue.local.max.unacked" )
+    @Default( "10000" )
+    int getLocalQueueMaxUnacked();
+
+    /**
+     * How long (in milliseconds) a send to a full local queue waits for acks before it fails
+     */
+    @Key( "usergrid.queue.local.send.timeout" )
+    @Default( "5000" ) // 5 seconds
+    int getLocalQueueSendTimeout();
+
 }
@@ -21,6 +21,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.queue.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +40,7 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
 
     private final QueueFig queueFig;
     private final QueueManagerInternalFactory queuemanagerInternalFactory;
+    private final MetricsFactory metricsFactory;
     private final Map<String,QueueManager> defaultManager;
     private final LoadingCache<QueueScope, QueueManager> queueManager =
         CacheBuilder
@@ -54,7 +56,7 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
 
                         QueueManager manager = defaultManager.get( scope.getName() );
                         if ( manager == null ) {
-                            manager = new LocalQueueManager();
+                            manager = new LocalQueueManager( scope, queueFig, metricsFactory );
                             defaultManager.put( scope.getName(), manager );
                         }
                         return manager;
@@ -67,9 +69,11 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
             });
 
     @Inject
-    public QueueManagerFactoryImpl(final QueueFig queueFig, final QueueManagerInternalFactory queuemanagerInternalFactory){
+    public QueueManagerFactoryImpl(final QueueFig queueFig, final QueueManagerInternalFactory queuemanagerInternalFactory,
+                                   final MetricsFactory metricsFactory){
         this.queueFig = queueFig;
         this.queuemanagerInternalFactory = queuemanagerInternalFactory;
+        this.metricsFactory = metricsFactory;
         this.defaultManager = new HashMap<>(10);
     }
 
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+package org.apache.usergrid.persistence.queue.impl;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A single memory mapped, append only file of the local queue log.  Records are framed as
+ *
+ * <pre>
+ *     int length | int crc32 | byte type | long messageId | payload
+ * </pre>
+ *
+ * where length covers type, id and payload.  The unwritten tail of the file is zero filled, so a zero length marks the
+ * end of the segment.  A torn record at the tail fails its crc and ends the segment as well.
+ *
+ * Segments are not thread safe, callers must synchronize appends.  The mapping is released on close or delete, the
+ * segment can't be used after either.
+ */
+public class QueueSegment {
+
+    private static final Logger logger = LoggerFactory.getLogger( QueueSegment.class );
+
+    public static final byte MESSAGE = 1;
+    public static final byte ACK = 2;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private static final int HEADER_SIZE = 8;
+    private static final int BODY_OVERHEAD = 9;
+
+
+    private final long sequence;
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private boolean closed;
+
+
+    private QueueSegment( final long sequence, final File file, final MappedByteBuffer buffer ) {
+        this.sequence = sequence;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+
+    /**
+     * Create a new segment of at least the given size
+     */
+    public static QueueSegment create( final File dir, final long sequence, final int size ) throws IOException {
+        final File file = new File( dir, fileName( sequence ) );
+
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+            final MappedByteBuffer buffer = raf.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, size );
+            return new QueueSegment( sequence, file, buffer );
+        }
+    }
+
+
+    /**
+     * Open an existing segment and read its records.  The write position is left after the last valid record
+     */
+    public static QueueSegment open( final File file, final RecordHandler handler ) throws IOException {
+
+        final long sequence = parseSequence( file.getName() );
+
+        final MappedByteBuffer buffer;
+
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+            buffer = raf.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, raf.length() );
+        }
+
+        final CRC32 crc = new CRC32();
+
+        while ( buffer.remaining() >= HEADER_SIZE ) {
+
+            final int start = buffer.position();
+            final int length = buffer.getInt();
+            final int checksum = buffer.getInt();
+
+            if ( length < BODY_OVERHEAD || length > buffer.remaining() ) {
+                buffer.position( start );
+                break;
+            }
+
+            final byte[] body = new byte[length];
+            buffer.get( body );
+
+            crc.reset();
+            crc.update( body, 0, length );
+
+            if ( ( int ) crc.getValue() != checksum ) {
+                buffer.position( start );
+                break;
+            }
+
+            final byte type = body[0];
+            final long messageId = readLong( body, 1 );
+
+            handler.onRecord( sequence, type, messageId, body, BODY_OVERHEAD, length - BODY_OVERHEAD );
+        }
+
+        return new QueueSegment( sequence, file, buffer );
+    }
+
+
+    /**
+     * The space a record with this payload needs in a segment
+     */
+    public static int recordSize( final int payloadLength ) {
+        return HEADER_SIZE + BODY_OVERHEAD + payloadLength;
+    }
+
+
+    /**
+     * Append the record.  Returns false without writing if the segment is full
+     */
+    public boolean append( final byte type, final long messageId, final byte[] payload ) {
+
+        checkOpen();
+
+        final int payloadLength = payload == null ? 0 : payload.length;
+
+        if ( buffer.remaining() < recordSize( payloadLength ) ) {
+            return false;
+        }
+
+        final byte[] body = new byte[BODY_OVERHEAD + payloadLength];
+        body[0] = type;
+        writeLong( body, 1, messageId );
+
+        if ( payloadLength > 0 ) {
+            System.arraycopy( payload, 0, body, BODY_OVERHEAD, payloadLength );
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update( body, 0, body.length );
+
+        buffer.putInt( body.length );
+        buffer.putInt( ( int ) crc.getValue() );
+        buffer.put( body );
+
+        return true;
+    }
+
+
+    public void force() {
+        checkOpen();
+        buffer.force();
+    }
+
+
+    /**
+     * Release the mapping, the file is kept
+     */
+    public void close() {
+        if ( closed ) {
+            return;
+        }
+
+        closed = true;
+        unmap( buffer );
+    }
+
+
+    /**
+     * Release the mapping and delete the file
+     */
+    public boolean delete() {
+        close();
+        return file.delete();
+    }
+
+
+    public long getSequence() {
+        return sequence;
+    }
+
+
+    public static boolean isSegment( final String name ) {
+        return name.startsWith( PREFIX ) && name.endsWith( SUFFIX );
+    }
+
+
+    public static long parseSequence( final String name ) {
+        return Long.parseLong( name.substring( PREFIX.length(), name.length() - SUFFIX.length() ) );
+    }
+
+
+    private static String fileName( final long sequence ) {
+        //zero pad so a directory listing sorts in write order
+        return String.format( "%s%020d%s", PREFIX, sequence, SUFFIX );
+    }
+
+
+    private static long readLong( final byte[] bytes, final int offset ) {
+        long value = 0;
+        for ( int i = 0; i < 8; i++ ) {
+            value = ( value << 8 ) | ( bytes[offset + i] & 0xFF );
+        }
+        return value;
+    }
+
+
+    private static void writeLong( final byte[] bytes, final int offset, final long value ) {
+        for ( int i = 0; i < 8; i++ ) {
+            bytes[offset + i] = ( byte ) ( value >>> ( 56 - 8 * i ) );
+        }
+    }
+
+
+    /**
+     * Callback for records read when a segment is opened
+     */
+    public interface RecordHandler {
+
+        void onRecord( long segment, byte type, long messageId, byte[] body, int payloadOffset, int payloadLength );
+    }
+
+
+    private void checkOpen() {
+        if ( closed ) {
+            throw new IllegalStateException( "Segment " + sequence + " is closed" );
+        }
+    }
+
+
+    /**
+     * Release the mapping now rather than when the buffer is collected, otherwise the address space and the space of
+     * deleted files is held until a GC happens to run
+     */
+    private static void unmap( final MappedByteBuffer buffer ) {
+        try {
+            try {
+                //java 9 and later
+                final Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+                final Method invokeCleaner = unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class );
+                final Field theUnsafe = unsafeClass.getDeclaredField( "theUnsafe" );
+                theUnsafe.setAccessible( true );
+                invokeCleaner.invoke( theUnsafe.get( null ), buffer );
+            }
+            catch ( NoSuchMethodException e ) {
+                //java 8
+                final Method cleanerMethod = buffer.getClass().getMethod( "cleaner" );
+                cleanerMethod.setAccessible( true );
+                final Object cleaner = cleanerMethod.invoke( buffer );
+                cleaner.getClass().getMethod( "clean" ).invoke( cleaner );
+            }
+        }
+        catch ( Exception e ) {
+            logger.debug( "Unable to unmap queue segment, it's released once collected", e );
+        }
+    }
+}
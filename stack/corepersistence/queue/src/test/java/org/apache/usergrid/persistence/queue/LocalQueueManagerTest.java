@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.usergrid.persistence.queue;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.apache.usergrid.persistence.core.guicyfig.SetConfigTestBypass;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.test.ITRunner;
+import org.apache.usergrid.persistence.core.test.UseModules;
+import org.apache.usergrid.persistence.queue.guice.TestQueueModule;
+import org.apache.usergrid.persistence.queue.impl.QueueScopeImpl;
+
+import com.google.inject.Inject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+@RunWith( ITRunner.class )
+@UseModules( { TestQueueModule.class } )
+public class LocalQueueManagerTest {
+
+    @Inject
+    protected QueueFig queueFig;
+
+    @Inject
+    protected MetricsFactory metricsFactory;
+
+    private static long queueSeed = System.currentTimeMillis();
+
+
+    @Before
+    public void setup() throws Exception {
+        SetConfigTestBypass.setValueByPass( queueFig, "getLocalQueueDir",
+            Files.createTempDirectory( "localQueueTest" ).toString() );
+        SetConfigTestBypass.setValueByPass( queueFig, "getQueuePollTimeout", "100" );
+        SetConfigTestBypass.setValueByPass( queueFig, "getVisibilityTimeout", "500" );
+    }
+
+
+    @After
+    public void cleanup() {
+        queueFig.bypass( "getLocalQueueDir", null );
+        queueFig.bypass( "getQueuePollTimeout", null );
+        queueFig.bypass( "getVisibilityTimeout", null );
+    }
+
+
+    @Test
+    public void batchedTake() throws Exception {
+        final LocalQueueManager qm = createManager( newScope() );
+
+        final List<String> bodies = new ArrayList<>();
+
+        for ( int i = 0; i < 100; i++ ) {
+            bodies.add( "body" + i );
+        }
+
+        qm.sendMessages( bodies );
+
+        assertEquals( 100, qm.getQueueDepth() );
+
+        final List<QueueMessage> first = qm.getMessages( 60, String.class );
+        final List<QueueMessage> second = qm.getMessages( 60, String.class );
+
+        assertEquals( 60, first.size() );
+        assertEquals( 40, second.size() );
+        assertEquals( "body0", first.get( 0 ).getBody() );
+        assertEquals( "body60", second.get( 0 ).getBody() );
+
+        qm.commitMessages( first );
+        qm.commitMessages( second );
+
+        assertEquals( 0, qm.getQueueDepth() );
+        assertEquals( 0, qm.getMessages( 10, String.class ).size() );
+
+        qm.close();
+    }
+
+
+    @Test
+    public void visibilityTimeout() throws Exception {
+        final LocalQueueManager qm = createManager( newScope() );
+
+        qm.sendMessage( "body" );
+
+        final List<QueueMessage> taken = qm.getMessages( 10, String.class );
+
+        assertEquals( 1, taken.size() );
+
+        //not acked, so it shouldn't be visible until the timeout passes
+        assertEquals( 0, qm.getMessages( 10, String.class ).size() );
+
+        Thread.sleep( queueFig.getVisibilityTimeout() );
+
+        final List<QueueMessage> redelivered = qm.getMessages( 10, String.class );
+
+        assertEquals( 1, redelivered.size() );
+        assertEquals( "body", redelivered.get( 0 ).getBody() );
+        assertEquals( 2, redelivered.get( 0 ).getReceiveCount() );
+
+        qm.commitMessages( redelivered );
+
+        assertEquals( 0, qm.getQueueDepth() );
+
+        qm.close();
+    }
+
+
+    @Test
+    public void recoverAfterRestart() throws Exception {
+        final QueueScope scope = newScope();
+
+        final LocalQueueManager qm = createManager( scope );
+
+        qm.sendMessage( "acked" );
+        qm.sendMessage( "inflight" );
+        qm.sendMessage( "pending" );
+
+        final List<QueueMessage> taken = qm.getMessages( 2, String.class );
+
+        assertEquals( 2, taken.size() );
+
+        qm.commitMessage( taken.get( 0 ) );
+
+        qm.close();
+
+
+        final LocalQueueManager restarted = createManager( scope );
+
+        assertEquals( 2, restarted.getQueueDepth() );
+
+        final List<QueueMessage> recovered = restarted.getMessages( 10, String.class );
+
+        assertEquals( 2, recovered.size() );
+        assertEquals( "inflight", recovered.get( 0 ).getBody() );
+        assertEquals( "pending", recovered.get( 1 ).getBody() );
+
+        restarted.commitMessages( recovered );
+
+        assertEquals( 0, restarted.getQueueDepth() );
+
+        restarted.close();
+    }
+
+
+    @Test
+    public void rollSegments() throws Exception {
+        SetConfigTestBypass.setValueByPass( queueFig, "getLocalQueueSegmentSize", "256" );
+
+        try {
+            final LocalQueueManager qm = createManager( newScope() );
+
+            for ( int i = 0; i < 50; i++ ) {
+                qm.sendMessage( "body" + i );
+            }
+
+            final List<QueueMessage> taken = qm.getMessages( 50, String.class );
+
+            assertEquals( 50, taken.size() );
+
+            for ( int i = 0; i < 50; i++ ) {
+                assertEquals( "body" + i, taken.get( i ).getBody() );
+            }
+
+            qm.commitMessages( taken );
+
+            assertEquals( 0, qm.getQueueDepth() );
+
+            qm.close();
+        }
+        finally {
+            queueFig.bypass( "getLocalQueueSegmentSize", null );
+        }
+    }
+
+
+    @Test
+    public void fullQueueBlocksSend() throws Exception {
+        SetConfigTestBypass.setValueByPass( queueFig, "getLocalQueueMaxUnacked", "2" );
+        SetConfigTestBypass.setValueByPass( queueFig, "getLocalQueueSendTimeout", "100" );
+
+        try {
+            final LocalQueueManager qm = createManager( newScope() );
+
+            qm.sendMessage( "body0" );
+            qm.sendMessage( "body1" );
+
+            //taken messages still count until they're acked
+            final List<QueueMessage> taken = qm.getMessages( 1, String.class );
+
+            try {
+                qm.sendMessage( "body2" );
+                fail( "Send to a full queue should time out" );
+            }
+            catch ( IOException e ) {
+                //expected
+            }
+
+            assertEquals( 1, qm.getQueueDepth() );
+
+            qm.commitMessages( taken );
+
+            qm.sendMessage( "body2" );
+
+            final List<QueueMessage> remaining = qm.getMessages( 10, String.class );
+
+            assertEquals( 2, remaining.size() );
+            assertEquals( "body1", remaining.get( 0 ).getBody() );
+            assertEquals( "body2", remaining.get( 1 ).getBody() );
+
+            qm.close();
+        }
+        finally {
+            queueFig.bypass( "getLocalQueueMaxUnacked", null );
+            queueFig.bypass( "getLocalQueueSendTimeout", null );
+        }
+    }
+
+
+    @Test
+    public void closeDeletesTempDir() throws Exception {
+        queueFig.bypass( "getLocalQueueDir", null );
+
+        final LocalQueueManager qm = createManager( newScope() );
+
+        qm.sendMessage( "body" );
+
+        final File dir = qm.getDirectory();
+
+        assertTrue( dir.isDirectory() );
+
+        qm.close();
+
+        assertFalse( dir.exists() );
+
+        //closing again is a no-op
+        qm.close();
+    }
+
+
+    private QueueScope newScope() {
+        return new QueueScopeImpl( "localQueue" + queueSeed++, QueueScope.RegionImplementation.LOCAL );
+    }
+
+
+    private LocalQueueManager createManager( final QueueScope scope ) {
+        return new LocalQueueManager( scope, queueFig, metricsFactory );
+    }
+}
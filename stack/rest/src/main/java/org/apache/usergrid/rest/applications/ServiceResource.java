@@ -38,6 +38,7 @@ import org.apache.usergrid.services.*;
 import org.apache.usergrid.services.assets.data.AssetUtils;
 import org.apache.usergrid.services.assets.data.AwsSdkS3BinaryStore;
 import org.apache.usergrid.services.assets.data.BinaryStore;
+import org.apache.usergrid.services.assets.data.FileRangeInputStream;
 import org.apache.usergrid.services.assets.data.LocalFileBinaryStore;
 import org.apache.usergrid.services.exceptions.AwsPropertiesNotFoundException;
 import org.apache.usergrid.utils.JsonUtils;
@@ -54,6 +55,7 @@ import org.springframework.stereotype.Component;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.util.*;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
@@ -911,7 +913,8 @@ public class ServiceResource extends AbstractContextResource {
             contentLength = ( Long ) fileMetadata.get( AssetUtils.CONTENT_LENGTH );
             end = contentLength - 1;
             if ( rangeValue.startsWith( "-" ) ) {
-                start = contentLength - 1 - Long.parseLong( rangeValue.substring( "-".length() ) );
+                // suffix range, the last n bytes
+                start = Math.max( 0, contentLength - Long.parseLong( rangeValue.substring( "-".length() ) ) );
             }
             else {
                 String[] startEnd = rangeValue.split( "-" );
@@ -927,7 +930,8 @@ public class ServiceResource extends AbstractContextResource {
                 }
             }
             try {
-                inputStream = binaryStore.read( getApplicationId(), entity, start, end - start );
+                // ranges are inclusive of the end byte
+                inputStream = binaryStore.read( getApplicationId(), entity, start, end - start + 1 );
             }catch(AwsPropertiesNotFoundException apnfe){
                 logger.error( "Amazon Property needed for this operation not found",apnfe );
                 return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -965,7 +969,7 @@ public class ServiceResource extends AbstractContextResource {
 
         Long lastModified = ( Long ) fileMetadata.get( AssetUtils.LAST_MODIFIED );
         Response.ResponseBuilder responseBuilder =
-                Response.ok( inputStream ).type( ( String ) fileMetadata.get( AssetUtils.CONTENT_TYPE ) )
+                Response.ok( toEntity( inputStream ) ).type( ( String ) fileMetadata.get( AssetUtils.CONTENT_TYPE ) )
                         .lastModified( new Date( lastModified ) );
 
         if ( fileMetadata.get( AssetUtils.E_TAG ) != null ) {
@@ -973,9 +977,32 @@ public class ServiceResource extends AbstractContextResource {
         }
 
         if ( range ) {
-            responseBuilder.header( "Content-Range", "bytes " + start + "-" + end + "/" + contentLength );
+            responseBuilder.status( 206 )
+                    .header( "Content-Range", "bytes " + start + "-" + end + "/" + contentLength )
+                    .header( HttpHeaders.CONTENT_LENGTH, end - start + 1 );
         }
 
         return responseBuilder.build();
     }
+
+
+    /**
+     * Local file reads are written with a channel transfer rather than copied through a buffer by the container
+     */
+    private Object toEntity( final InputStream inputStream ) {
+        if ( !( inputStream instanceof FileRangeInputStream ) ) {
+            return inputStream;
+        }
+
+        final FileRangeInputStream fileStream = ( FileRangeInputStream ) inputStream;
+
+        return ( StreamingOutput ) output -> {
+            try {
+                fileStream.transferTo( Channels.newChannel( output ) );
+            }
+            finally {
+                fileStream.close();
+            }
+        };
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.filters;
+
+
+/**
+ * The state of a single request while it is metered.  Only ever touched by the thread handling the request.
+ */
+class MeteredRequest {
+
+    private final long started;
+    private final String method;
+    private final String path;
+
+    private long bytesIn;
+    private long bytesOut;
+    private String application;
+    private String endpoint;
+    private int status;
+    private long latency;
+    private boolean completed;
+
+
+    /**
+     * @param path The path of the request, without the query string since that may hold credentials
+     */
+    MeteredRequest( final long started, final String method, final String path ) {
+        this.started = started;
+        this.method = method;
+        this.path = path;
+    }
+
+
+    long getStarted() {
+        return started;
+    }
+
+
+    String getMethod() {
+        return method;
+    }
+
+
+    String getPath() {
+        return path;
+    }
+
+
+    long getBytesIn() {
+        return bytesIn;
+    }
+
+
+    void addBytesIn( final long read ) {
+        bytesIn += read;
+    }
+
+
+    long getBytesOut() {
+        return bytesOut;
+    }
+
+
+    void setBytesOut( final long bytesOut ) {
+        this.bytesOut = bytesOut;
+    }
+
+
+    String getApplication() {
+        return application;
+    }
+
+
+    void setApplication( final String application ) {
+        this.application = application;
+    }
+
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+
+    void setEndpoint( final String endpoint ) {
+        this.endpoint = endpoint;
+    }
+
+
+    int getStatus() {
+        return status;
+    }
+
+
+    void setStatus( final int status ) {
+        this.status = status;
+    }
+
+
+    long getLatency() {
+        return latency;
+    }
+
+
+    void setLatency( final long latency ) {
+        this.latency = latency;
+    }
+
+
+    /**
+     * Mark the request as completed
+     *
+     * @return true the first time this is called
+     */
+    boolean complete() {
+        if ( completed ) {
+            return false;
+        }
+
+        completed = true;
+        return true;
+    }
+}
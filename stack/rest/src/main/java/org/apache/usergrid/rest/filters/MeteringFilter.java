@@ -17,348 +17,359 @@
 package org.apache.usergrid.rest.filters;
 
 
-import com.yammer.metrics.Metrics;
-import com.yammer.metrics.core.Counter;
-import com.yammer.metrics.core.Timer;
-import com.yammer.metrics.core.TimerContext;
-import org.apache.usergrid.management.ManagementService;
-import org.apache.usergrid.persistence.EntityManager;
+import com.google.inject.Injector;
 import org.apache.usergrid.persistence.EntityManagerFactory;
-import org.apache.usergrid.services.ServiceManagerFactory;
-import org.apache.usergrid.system.UsergridSystemMonitor;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.rest.ServerEnvironmentProperties;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.stereotype.Component;
 
-import javax.annotation.Resource;
-import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.container.*;
-import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
 import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Properties;
+import java.io.OutputStream;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
+import static org.apache.usergrid.rest.utils.PathingUtils.PARAM_APP_NAME;
+import static org.apache.usergrid.rest.utils.PathingUtils.PARAM_ORG_NAME;
+import static org.apache.usergrid.rest.utils.PathingUtils.assembleAppName;
+import static org.apache.usergrid.utils.UUIDUtils.tryExtractUUID;
+import static org.apache.usergrid.utils.UUIDUtils.tryGetUUID;
 
-// TODO: Metering for Jersey 2 (https://issues.apache.org/jira/browse/USERGRID-1103)
 
+/**
+ * Meters every request: latency histograms overall, per application and per endpoint template, an in flight gauge,
+ * request and response byte counters, and a sampled log of slow requests.  Everything is exported through the
+ * {@link MetricsFactory}, see {@link RequestMetrics} for the metric names.
+ *
+ * A request is complete once its response entity has been written, so the latency includes serializing the response.
+ */
 @Provider
-public class MeteringFilter implements ContainerRequestFilter, ContainerResponseFilter {
+public class MeteringFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger( MeteringFilter.class );
+
+    public static final String METERING_ENABLED = "usergrid.rest.metering.enabled";
+    public static final String MAX_APPLICATIONS = "usergrid.rest.metering.max.applications";
+    public static final String MAX_ENDPOINTS = "usergrid.rest.metering.max.endpoints";
+    public static final String SLOW_THRESHOLD = "usergrid.rest.metering.slow.threshold";
+    public static final String SLOW_SAMPLE_INTERVAL = "usergrid.rest.metering.slow.sample.interval";
+
+    private static final String METERED_REQUEST = MeteringFilter.class.getName() + ".request";
+
+    @Autowired
+    private Injector injector;
+
+    @Autowired
+    private ServerEnvironmentProperties properties;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    private volatile RequestMetrics metrics;
+    private volatile boolean initialized;
+
+
+    public MeteringFilter() {
+    }
+
+
+    MeteringFilter( final Injector injector, final ServerEnvironmentProperties properties,
+                    final EntityManagerFactory emf ) {
+        this.injector = injector;
+        this.properties = properties;
+        this.emf = emf;
+    }
+
+
+    @Override
+    public void filter( ContainerRequestContext request ) {
+        final RequestMetrics metrics = getMetrics();
+
+        if ( metrics == null ) {
+            return;
+        }
+
+        final MeteredRequest metered = new MeteredRequest( System.nanoTime(), request.getMethod(),
+            request.getUriInfo().getRequestUri().getRawPath() );
+
+        metrics.started();
+        request.setProperty( METERED_REQUEST, metered );
+
+        if ( request.hasEntity() ) {
+            request.setEntityStream( new CountingInputStream( request.getEntityStream(), metered ) );
+        }
+    }
+
 
     @Override
-    public void filter(ContainerRequestContext containerRequestContext) throws IOException {
+    public void filter( ContainerRequestContext request, ContainerResponseContext response ) {
+        final MeteredRequest metered = ( MeteredRequest ) request.getProperty( METERED_REQUEST );
 
+        if ( metered == null ) {
+            return;
+        }
+
+        metered.setStatus( response.getStatus() );
+        metered.setEndpoint( getEndpoint( request ) );
+        metered.setApplication( getApplication( request.getUriInfo().getPathParameters() ) );
+
+        //otherwise we complete once the entity is written
+        if ( !response.hasEntity() ) {
+            complete( metered );
+        }
     }
 
+
     @Override
-    public void filter(ContainerRequestContext containerRequestContext, ContainerResponseContext containerResponseContext) throws IOException {
+    public void aroundWriteTo( final WriterInterceptorContext context ) throws IOException {
+        final MeteredRequest metered = ( MeteredRequest ) context.getProperty( METERED_REQUEST );
+
+        if ( metered == null ) {
+            context.proceed();
+            return;
+        }
+
+        final CountingOutputStream out = new CountingOutputStream( context.getOutputStream() );
+        context.setOutputStream( out );
+
+        try {
+            context.proceed();
+        }
+        finally {
+            metered.setBytesOut( out.count );
+            complete( metered );
+        }
+    }
+
+
+    private void complete( final MeteredRequest metered ) {
+        if ( !metered.complete() ) {
+            return;
+        }
+
+        if ( metrics.completed( metered ) ) {
+            logger.warn( "Slow request {} for application {} took {} ms with status {}, {} bytes in, {} bytes out",
+                describe( metered ), metered.getApplication(), metered.getLatency() / 1000, metered.getStatus(),
+                metered.getBytesIn(), metered.getBytesOut() );
+        }
+    }
+
+
+    /**
+     * Get the metrics, creating them on first use once spring has wired the filter.  Null if metering is disabled
+     */
+    private RequestMetrics getMetrics() {
+        if ( initialized ) {
+            return metrics;
+        }
+
+        synchronized ( this ) {
+            if ( !initialized ) {
+                metrics = createMetrics();
+                initialized = true;
+            }
+        }
+
+        return metrics;
+    }
+
+
+    private RequestMetrics createMetrics() {
+        if ( injector == null || properties == null ) {
+            logger.warn( "MeteringFilter is not wired, requests will not be metered" );
+            return null;
+        }
+
+        if ( !Boolean.parseBoolean( getProperty( METERING_ENABLED, "true" ) ) ) {
+            logger.info( "Request metering is disabled" );
+            return null;
+        }
+
+        return new RequestMetrics( injector.getInstance( MetricsFactory.class ),
+            Integer.parseInt( getProperty( MAX_APPLICATIONS, "200" ) ),
+            Integer.parseInt( getProperty( MAX_ENDPOINTS, "500" ) ),
+            Long.parseLong( getProperty( SLOW_THRESHOLD, "5000" ) ),
+            Long.parseLong( getProperty( SLOW_SAMPLE_INTERVAL, "1000" ) ) );
+    }
+
+
+    private String getProperty( final String key, final String defaultValue ) {
+        final String value = properties.getProperty( key );
+        return value == null ? defaultValue : value.trim();
+    }
+
+
+    /**
+     * The id of the application this request was for, resolved from the path parameters the same way the
+     * application resources resolve it.  Null if the request wasn't for an application
+     */
+    private String getApplication( final MultivaluedMap<String, String> pathParams ) {
+        final String applicationId = pathParams.getFirst( "applicationId" );
+
+        if ( applicationId != null ) {
+            final UUID uuid = tryGetUUID( applicationId );
+            return uuid == null ? null : uuid.toString();
+        }
+
+        final String organizationName = pathParams.getFirst( PARAM_ORG_NAME );
+        final String applicationName = pathParams.getFirst( PARAM_APP_NAME );
+
+        if ( organizationName == null || applicationName == null || emf == null ) {
+            return null;
+        }
+
+        try {
+            //served from the application id cache
+            UUID uuid = emf.lookupApplication( assembleAppName( organizationName, applicationName ) );
+
+            if ( uuid == null ) {
+                uuid = tryExtractUUID( applicationName );
+            }
+
+            return uuid == null ? null : uuid.toString();
+        }
+        catch ( Exception e ) {
+            logger.debug( "Unable to resolve application {}/{}", organizationName, applicationName, e );
+            return null;
+        }
+    }
+
+
+    /**
+     * The endpoint template if a resource was matched, otherwise the method and path.  Never the query string, it may
+     * hold credentials
+     */
+    static String describe( final MeteredRequest metered ) {
+        if ( metered.getEndpoint() != null ) {
+            return metered.getEndpoint();
+        }
+
+        return metered.getMethod() + " " + metered.getPath();
+    }
+
+
+    /**
+     * The method and the full template of the resource that was matched, for instance "GET /{applicationId}/users"
+     */
+    static String getEndpoint( final ContainerRequestContext request ) {
+        final UriInfo uriInfo = request.getUriInfo();
+
+        if ( !( uriInfo instanceof ExtendedUriInfo ) ) {
+            return null;
+        }
+
+        //the last template matched is first in the list
+        final List<UriTemplate> templates = ( ( ExtendedUriInfo ) uriInfo ).getMatchedTemplates();
+
+        if ( templates.isEmpty() ) {
+            return null;
+        }
+
+        final StringBuilder endpoint = new StringBuilder( request.getMethod() ).append( ' ' );
+
+        for ( int i = templates.size() - 1; i >= 0; i-- ) {
+            final String template = templates.get( i ).getTemplate();
+
+            final boolean separated = endpoint.charAt( endpoint.length() - 1 ) == '/';
+
+            if ( separated && template.startsWith( "/" ) ) {
+                endpoint.append( template, 1, template.length() );
+            }
+            else {
+                if ( !separated && !template.startsWith( "/" ) ) {
+                    endpoint.append( '/' );
+                }
+                endpoint.append( template );
+            }
+        }
+
+        return endpoint.toString();
+    }
+
+
+    /**
+     * Counts the bytes of the request entity as they are read
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final MeteredRequest metered;
+
+
+        private CountingInputStream( final InputStream in, final MeteredRequest metered ) {
+            super( in );
+            this.metered = metered;
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+
+            if ( b != -1 ) {
+                metered.addBytesIn( 1 );
+            }
+
+            return b;
+        }
+
+
+        @Override
+        public int read( final byte[] b, final int off, final int len ) throws IOException {
+            final int read = super.read( b, off, len );
+
+            if ( read > 0 ) {
+                metered.addBytesIn( read );
+            }
+
+            return read;
+        }
+
+
+        @Override
+        public long skip( final long n ) throws IOException {
+            final long skipped = super.skip( n );
+            metered.addBytesIn( skipped );
+            return skipped;
+        }
+    }
+
+
+    /**
+     * Counts the bytes of the response entity as they are written
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+
+        private CountingOutputStream( final OutputStream out ) {
+            super( out );
+        }
+
+
+        @Override
+        public void write( final int b ) throws IOException {
+            out.write( b );
+            count++;
+        }
+
 
+        @Override
+        public void write( final byte[] b, final int off, final int len ) throws IOException {
+            out.write( b, off, len );
+            count += len;
+        }
     }
-//
-//    @Context
-//    protected HttpServletRequest httpServletRequest;
-//
-//    EntityManagerFactory emf;
-//    ServiceManagerFactory smf;
-//    Properties properties;
-//    ManagementService management;
-//    UsergridSystemMonitor usergridSystemMonitor;
-//    final Counter activeRequests;
-//    final Timer requestTimer;
-//
-//    private static final Logger logger = LoggerFactory.getLogger( MeteringFilter.class );
-//
-//
-//    public MeteringFilter() {
-//        logger.info( "MeteringFilter installed" );
-//        this.activeRequests = Metrics.newCounter( MeteringFilter.class, "activeRequests" );
-//        this.requestTimer =
-//                Metrics.newTimer( MeteringFilter.class, "requests", TimeUnit.MILLISECONDS, TimeUnit.SECONDS );
-//    }
-//
-//
-//    @Autowired
-//    public void setEntityManagerFactory( EntityManagerFactory emf ) {
-//        this.emf = emf;
-//    }
-//
-//
-//    @Autowired
-//    public void setServiceManagerFactory( ServiceManagerFactory smf ) {
-//        this.smf = smf;
-//    }
-//
-//
-//    @Autowired
-//    @Qualifier("properties")
-//    public void setProperties( Properties properties ) {
-//        this.properties = properties;
-//    }
-//
-//
-//    @Autowired
-//    public void setManagementService( ManagementService management ) {
-//        this.management = management;
-//    }
-//
-//
-//    @Autowired
-//    public void setUsergridSystemMonitor( UsergridSystemMonitor usergridSystemMonitor ) {
-//        this.usergridSystemMonitor = usergridSystemMonitor;
-//    }
-//
-//
-//    @Override
-//    public void filter(ContainerRequestContext creq) throws IOException {
-//
-//        try {
-//            activeRequests.inc();
-//            creq.setEntityStream( new InputStreamAdapter( creq.getEntityStream() ) );
-//            httpServletRequest.setAttribute( "application.request.timetamp", System.currentTimeMillis() );
-//            httpServletRequest.setAttribute( "application.request.requestTimer", requestTimer.time() );
-//        }
-//        catch ( Exception e ) {
-//            logger.error( "Unable to capture request", e );
-//        }
-//    }
-//
-//    public void countDataWritten( long written ) {
-//        TimerContext timer = ( TimerContext ) httpServletRequest.getAttribute( "application.request.requestTimer" );
-//        try {
-//            UUID applicationId = ( UUID ) httpServletRequest.getAttribute( "applicationId" );
-//            Long timestamp = ( Long ) httpServletRequest.getAttribute( "application.request.timetamp" );
-//            long time;
-//            if ( ( timestamp != null ) && ( timestamp > 0 ) ) {
-//                time = System.currentTimeMillis() - timestamp;
-//            }
-//            else {
-//                time = -1;
-//            }
-//            usergridSystemMonitor.maybeLogPayload( time, "path", httpServletRequest.getRequestURI(), "applicationId",
-//                    applicationId );
-//            if ( applicationId != null ) {
-//
-//                Map<String, Long> counters = new HashMap<String, Long>();
-//
-//
-//                if ( time > 0 ) {
-//                    logger.trace( "Application: {}, spent {} milliseconds of CPU time", applicationId, time );
-//                    counters.put( "application.request.time", time );
-//                }
-//
-//                Long read = ( Long ) httpServletRequest.getAttribute( "application.request.upload" );
-//                if ( ( read != null ) && ( read > 0 ) ) {
-//                    logger.trace( "Application: {}, received {} bytes", applicationId, written );
-//                    counters.put( "application.request.upload", read );
-//                }
-//
-//                if ( written > 0 ) {
-//                    logger.trace( "Application: {}, sending {} bytes", applicationId, written );
-//                    counters.put( "application.request.download", written );
-//                }
-//
-//                if ( emf != null ) {
-//                    EntityManager em = emf.getEntityManager( applicationId );
-//                    em.incrementAggregateCounters( null, null, null, counters );
-//                }
-//                else {
-//                    logger.error( "No EntityManagerFactory configured" );
-//                }
-//            }
-//        }
-//        catch ( Exception e ) {
-//            logger.error( "Unable to capture output", e );
-//        }
-//        finally {
-//            if ( timer != null ) {
-//                timer.stop();
-//            }
-//            activeRequests.dec();
-//        }
-//    }
-//
-//
-//    public void countDataRead( long read ) {
-//        try {
-//            if ( read > 0 ) {
-//                httpServletRequest.setAttribute( "application.request.upload", read );
-//            }
-//        }
-//        catch ( Exception e ) {
-//            logger.error( "Unable to capture input", e );
-//        }
-//    }
-//
-//
-//    private final class InputStreamAdapter extends FilterInputStream {
-//
-//        long total = 0;
-//
-//
-//        protected InputStreamAdapter( InputStream in ) {
-//            super( in );
-//        }
-//
-//
-//        @Override
-//        public int available() throws IOException {
-//            int i = super.available();
-//            return i;
-//        }
-//
-//
-//        @Override
-//        public int read() throws IOException {
-//            int b = super.read();
-//            if ( b != -1 ) {
-//                total++;
-//            }
-//            else {
-//                countDataRead( total );
-//                total = 0;
-//            }
-//            return b;
-//        }
-//
-//
-//        @Override
-//        public int read( byte[] b, int off, int len ) throws IOException {
-//            int l = super.read( b, off, len );
-//            if ( l != -1 ) {
-//                total += l;
-//            }
-//            if ( ( l == -1 ) || ( l < len ) ) {
-//                countDataRead( total );
-//                total = 0;
-//            }
-//            return l;
-//        }
-//
-//
-//        @Override
-//        public int read( byte[] b ) throws IOException {
-//            int l = super.read( b );
-//            if ( l != -1 ) {
-//                total += l;
-//            }
-//            if ( ( l == -1 ) || ( l < b.length ) ) {
-//                countDataRead( total );
-//                total = 0;
-//            }
-//            return l;
-//        }
-//
-//
-//        @Override
-//        public void close() throws IOException {
-//            super.close();
-//            countDataRead( total );
-//        }
-//    }
-//
-//
-//    private final class ContainerResponseWriterAdapter implements ContainerResponseWriter {
-//
-//        private final ContainerResponseWriter crw;
-//        private OutputStreamAdapter out = null;
-//
-//
-//        ContainerResponseWriterAdapter( ContainerResponseWriter crw ) {
-//            this.crw = crw;
-//        }
-//
-//
-//        @Override
-//        public OutputStream writeResponseStatusAndHeaders(
-//            long contentLength, ContainerResponse response) throws ContainerException {
-//
-//            // logger.info("Wrapping output stream");
-//            OutputStream o = crw.writeResponseStatusAndHeaders( contentLength, response );
-//
-//            if ( out == null ) {
-//                out = new OutputStreamAdapter( o );
-//            }
-//
-//            return out;
-//        }
-//
-//        @Override
-//        public boolean suspend(long l, TimeUnit timeUnit, TimeoutHandler timeoutHandler) {
-//            return crw.suspend( l, timeUnit, timeoutHandler );
-//        }
-//
-//        @Override
-//        public void setSuspendTimeout(long l, TimeUnit timeUnit) throws IllegalStateException {
-//            crw.setSuspendTimeout( l, timeUnit );
-//        }
-//
-//        @Override
-//        public void commit() {
-//            crw.commit();
-//        }
-//
-//        @Override
-//        public void failure(Throwable throwable) {
-//            crw.failure( throwable );
-//        }
-//
-//        @Override
-//        public boolean enableResponseBuffering() {
-//            return false;
-//        }
-//
-//
-//        private final class OutputStreamAdapter extends FilterOutputStream {
-//
-//            long total = 0;
-//
-//
-//            public OutputStreamAdapter( OutputStream out ) {
-//                super( out );
-//            }
-//
-//
-//            public long getTotal() {
-//                return total;
-//            }
-//
-//
-//            @Override
-//            public void write( byte[] b, int off, int len ) throws IOException {
-//                out.write( b, off, len );
-//                total += len;
-//            }
-//
-//
-//            @Override
-//            public void write( byte[] b ) throws IOException {
-//                out.write( b );
-//                total += b.length;
-//            }
-//
-//
-//            @Override
-//            public void write( int b ) throws IOException {
-//                out.write( b );
-//                total += 1;
-//            }
-//        }
-//    }
-//
-//    @Override
-//    public void filter(ContainerRequestContext req, ContainerResponseContext res) throws IOException {
-//        try {
-//            res.setEntityStream( res.getEntityStream() );
-//        }
-//        catch ( Exception e ) {
-//            logger.error( "Unable to capture response", e );
-//        }
-//    }
 }
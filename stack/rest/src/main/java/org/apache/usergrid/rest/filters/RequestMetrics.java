@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.filters;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.core.metrics.LogLinearReservoir;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+
+/**
+ * The metrics recorded for REST requests: overall, per application and per endpoint template.  Latencies are recorded
+ * in microseconds into {@link LogLinearReservoir} backed histograms, so recording a request does not allocate once its
+ * application and endpoint have been seen.  The number of applications and endpoints tracked is capped, requests past
+ * the cap are recorded under "other".
+ */
+class RequestMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger( RequestMetrics.class );
+
+    static final String NONE = "none";
+    static final String OTHER = "other";
+
+    private final MetricsFactory metricsFactory;
+    private final int maxApplications;
+    private final int maxEndpoints;
+    private final long slowThresholdMicros;
+    private final long slowSampleIntervalNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Scope total;
+    private final Meter slowRequests;
+    private final Meter serverErrors;
+    private final AtomicLong lastSlowSample = new AtomicLong();
+
+    private final ConcurrentHashMap<String, Scope> applications = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Scope> endpoints = new ConcurrentHashMap<>();
+
+
+    RequestMetrics( final MetricsFactory metricsFactory, final int maxApplications, final int maxEndpoints,
+                    final long slowThresholdMillis, final long slowSampleIntervalMillis ) {
+        this.metricsFactory = metricsFactory;
+        this.maxApplications = maxApplications;
+        this.maxEndpoints = maxEndpoints;
+        this.slowThresholdMicros = TimeUnit.MILLISECONDS.toMicros( slowThresholdMillis );
+        this.slowSampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos( slowSampleIntervalMillis );
+
+        this.total = new Scope( MetricRegistry.name( MeteringFilter.class, "requests" ) );
+        this.slowRequests = metricsFactory.getMeter( MeteringFilter.class, "requests.slow" );
+        this.serverErrors = metricsFactory.getMeter( MeteringFilter.class, "requests.errors" );
+
+        try {
+            metricsFactory.addGauge( MeteringFilter.class, "requests.inflight", ( Gauge<Integer> ) inFlight::get );
+        }
+        catch ( IllegalArgumentException e ) {
+            logger.warn( "In flight request gauge already registered, it will not track this filter" );
+        }
+    }
+
+
+    /**
+     * A request has started
+     */
+    void started() {
+        inFlight.incrementAndGet();
+    }
+
+
+    /**
+     * A request has completed
+     *
+     * @param metered The state of the request
+     *
+     * @return true if the request was slow and should be logged as a sample
+     */
+    boolean completed( final MeteredRequest metered ) {
+        inFlight.decrementAndGet();
+
+        final long latency = TimeUnit.NANOSECONDS.toMicros( System.nanoTime() - metered.getStarted() );
+
+        total.record( latency, metered.getBytesIn(), metered.getBytesOut() );
+
+        scope( applications, "application", metered.getApplication(), maxApplications )
+            .record( latency, metered.getBytesIn(), metered.getBytesOut() );
+
+        scope( endpoints, "endpoint", metered.getEndpoint(), maxEndpoints )
+            .record( latency, metered.getBytesIn(), metered.getBytesOut() );
+
+        if ( metered.getStatus() >= 500 ) {
+            serverErrors.mark();
+        }
+
+        metered.setLatency( latency );
+
+        if ( latency < slowThresholdMicros ) {
+            return false;
+        }
+
+        slowRequests.mark();
+
+        //only sample one slow request per interval, a struggling cluster shouldn't also flood the logs
+        final long now = System.nanoTime();
+        final long last = lastSlowSample.get();
+
+        return ( last == 0 || now - last >= slowSampleIntervalNanos ) && lastSlowSample.compareAndSet( last, now );
+    }
+
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+
+    Histogram getLatency() {
+        return total.latency;
+    }
+
+
+    Histogram getApplicationLatency( final String application ) {
+        final Scope scope = applications.get( application );
+        return scope == null ? null : scope.latency;
+    }
+
+
+    Histogram getEndpointLatency( final String endpoint ) {
+        final Scope scope = endpoints.get( endpoint );
+        return scope == null ? null : scope.latency;
+    }
+
+
+    private Scope scope( final ConcurrentHashMap<String, Scope> scopes, final String kind, final String name,
+                         final int max ) {
+        final String key = name == null ? NONE : name;
+
+        final Scope existing = scopes.get( key );
+
+        if ( existing != null ) {
+            return existing;
+        }
+
+        //past the cap everything is grouped together, the size check is racy but only by a few entries
+        final String scopeKey = scopes.size() >= max && !OTHER.equals( key ) ? OTHER : key;
+
+        return scopes.computeIfAbsent( scopeKey,
+            k -> new Scope( MetricRegistry.name( MeteringFilter.class, kind, k ) ) );
+    }
+
+
+    /**
+     * The latency histogram and byte counters for a group of requests
+     */
+    private final class Scope {
+
+        private final Histogram latency;
+        private final Counter bytesIn;
+        private final Counter bytesOut;
+
+
+        private Scope( final String prefix ) {
+            this.latency = histogram( MetricRegistry.name( prefix, "latency" ) );
+            this.bytesIn = metricsFactory.getRegistry().counter( MetricRegistry.name( prefix, "bytes.in" ) );
+            this.bytesOut = metricsFactory.getRegistry().counter( MetricRegistry.name( prefix, "bytes.out" ) );
+        }
+
+
+        private void record( final long latency, final long in, final long out ) {
+            this.latency.update( latency );
+            this.bytesIn.inc( in );
+            this.bytesOut.inc( out );
+        }
+    }
+
+
+    private Histogram histogram( final String name ) {
+        final MetricRegistry registry = metricsFactory.getRegistry();
+
+        try {
+            return registry.register( name, new Histogram( new LogLinearReservoir() ) );
+        }
+        catch ( IllegalArgumentException e ) {
+            //registered by an earlier instance of the filter
+            logger.debug( "Reusing histogram {}", name );
+            return registry.getHistograms().get( name );
+        }
+    }
+}
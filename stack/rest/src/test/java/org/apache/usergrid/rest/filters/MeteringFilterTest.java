@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.filters;
+
+
+import java.net.URI;
+import java.util.Properties;
+import java.util.UUID;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+
+import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.rest.RootResource;
+import org.apache.usergrid.rest.ServerEnvironmentProperties;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.inject.Injector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Runs requests through jersey in process, with resources matched the way the application resources are, to check
+ * the application and endpoint each request is metered under
+ */
+public class MeteringFilterTest {
+
+    private MetricRegistry registry;
+    private UUID applicationId;
+    private ApplicationHandler handler;
+
+
+    @Before
+    public void setup() throws Exception {
+        registry = new MetricRegistry();
+        applicationId = UUIDUtils.newTimeUUID();
+
+        final Injector injector = mock( Injector.class );
+        when( injector.getInstance( MetricsFactory.class ) ).thenReturn( new RequestMetricsTest.RegistryMetricsFactory(
+            registry ) );
+
+        final ServerEnvironmentProperties properties = new ServerEnvironmentProperties( new Properties() );
+
+        final EntityManagerFactory emf = mock( EntityManagerFactory.class );
+        when( emf.lookupApplication( "test-org/test-app" ) ).thenReturn( applicationId );
+
+        //the same beans spring wires the filter with in the web app
+        final GenericApplicationContext context = new GenericApplicationContext();
+        context.getBeanFactory().registerSingleton( "injector", injector );
+        context.getBeanFactory().registerSingleton( "serverEnvironmentProperties", properties );
+        context.getBeanFactory().registerSingleton( "entityManagerFactory", emf );
+        context.refresh();
+
+        final ResourceConfig config = new ResourceConfig( TestRootResource.class )
+            .register( new MeteringFilter( injector, properties, emf ) )
+            .property( "contextConfig", context );
+
+        handler = new ApplicationHandler( config );
+    }
+
+
+    @Test
+    public void applicationByName() throws Exception {
+        assertEquals( 200, get( "/Test-Org/test-app/things?access_token=secret" ).getStatus() );
+
+        assertEquals( 1, latency( "application", applicationId.toString() ).getCount() );
+        assertEquals( 1, latency( "endpoint", "GET /{organizationName}/{applicationName}/{itemName}" ).getCount() );
+        assertNull( registry.getHistograms().get( latencyName( "application", RequestMetrics.NONE ) ) );
+    }
+
+
+    @Test
+    public void applicationById() throws Exception {
+        assertEquals( 200, get( "/" + applicationId + "/things" ).getStatus() );
+
+        assertEquals( 1, latency( "application", applicationId.toString() ).getCount() );
+    }
+
+
+    @Test
+    public void unknownApplication() throws Exception {
+        assertEquals( 200, get( "/test-org/missing-app/things" ).getStatus() );
+
+        assertEquals( 1, latency( "application", RequestMetrics.NONE ).getCount() );
+    }
+
+
+    @Test
+    public void describeWithoutEndpoint() {
+        final MeteredRequest metered = new MeteredRequest( System.nanoTime(), "GET", "/test-org/test-app/things" );
+
+        assertEquals( "GET /test-org/test-app/things", MeteringFilter.describe( metered ) );
+
+        metered.setEndpoint( "GET /{organizationName}/{applicationName}/{itemName}" );
+
+        assertEquals( "GET /{organizationName}/{applicationName}/{itemName}", MeteringFilter.describe( metered ) );
+    }
+
+
+    private ContainerResponse get( final String path ) throws Exception {
+        final ContainerRequest request =
+            new ContainerRequest( URI.create( "http://localhost/" ), URI.create( "http://localhost" + path ), "GET",
+                null, new MapPropertiesDelegate() );
+
+        return handler.apply( request ).get();
+    }
+
+
+    private Histogram latency( final String kind, final String key ) {
+        final Histogram histogram = registry.getHistograms().get( latencyName( kind, key ) );
+        assertNotNull( kind + " " + key + " was not metered", histogram );
+        return histogram;
+    }
+
+
+    private static String latencyName( final String kind, final String key ) {
+        return MetricRegistry.name( MeteringFilter.class, kind, key, "latency" );
+    }
+
+
+    /**
+     * Locates applications the same way {@link RootResource} does
+     */
+    @Path( "/" )
+    public static class TestRootResource {
+
+        @Path( RootResource.APPLICATION_ID_PATH )
+        public TestApplicationResource getApplicationById() {
+            return new TestApplicationResource();
+        }
+
+
+        @Path( "{organizationName}" )
+        public TestOrganizationResource getOrganizationByName() {
+            return new TestOrganizationResource();
+        }
+    }
+
+
+    public static class TestOrganizationResource {
+
+        @Path( "{applicationName}" )
+        public TestApplicationResource getApplicationByName() {
+            return new TestApplicationResource();
+        }
+    }
+
+
+    public static class TestApplicationResource {
+
+        @GET
+        @Path( "{itemName}" )
+        @Produces( MediaType.TEXT_PLAIN )
+        public String getItem( @PathParam( "itemName" ) final String itemName ) {
+            return itemName;
+        }
+    }
+}
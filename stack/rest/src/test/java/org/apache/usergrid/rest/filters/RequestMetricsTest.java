@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.rest.filters;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class RequestMetricsTest {
+
+    private MetricRegistry registry;
+    private MetricsFactory metricsFactory;
+
+
+    @Before
+    public void setup() {
+        registry = new MetricRegistry();
+        metricsFactory = new RegistryMetricsFactory( registry );
+    }
+
+
+    @Test
+    public void requestsRecorded() {
+        final RequestMetrics metrics = new RequestMetrics( metricsFactory, 10, 10, 60000, 1000 );
+
+        metrics.started();
+        assertEquals( 1, metrics.getInFlight() );
+
+        final MeteredRequest metered = request( "app1", "GET /{applicationId}/{itemName}" );
+        metered.addBytesIn( 10 );
+        metered.setBytesOut( 100 );
+
+        assertFalse( metrics.completed( metered ) );
+
+        assertEquals( 0, metrics.getInFlight() );
+        assertEquals( 1, metrics.getLatency().getCount() );
+        assertEquals( 1, metrics.getApplicationLatency( "app1" ).getCount() );
+        assertEquals( 1, metrics.getEndpointLatency( "GET /{applicationId}/{itemName}" ).getCount() );
+
+        assertEquals( 100, registry.counter(
+            MetricRegistry.name( MeteringFilter.class, "application", "app1", "bytes.out" ) ).getCount() );
+        assertEquals( 10, registry.counter(
+            MetricRegistry.name( MeteringFilter.class, "requests", "bytes.in" ) ).getCount() );
+    }
+
+
+    @Test
+    public void applicationsCapped() {
+        final RequestMetrics metrics = new RequestMetrics( metricsFactory, 2, 10, 60000, 1000 );
+
+        for ( int i = 0; i < 5; i++ ) {
+            metrics.started();
+            metrics.completed( request( "app" + i, "GET /" ) );
+        }
+
+        assertNotNull( metrics.getApplicationLatency( "app0" ) );
+        assertNotNull( metrics.getApplicationLatency( "app1" ) );
+        assertNull( metrics.getApplicationLatency( "app2" ) );
+        assertEquals( 3, metrics.getApplicationLatency( RequestMetrics.OTHER ).getCount() );
+    }
+
+
+    @Test
+    public void slowRequestsSampled() {
+        final RequestMetrics metrics = new RequestMetrics( metricsFactory, 10, 10, 0, 60000 );
+
+        metrics.started();
+        assertTrue( metrics.completed( request( null, null ) ) );
+
+        metrics.started();
+        assertFalse( metrics.completed( request( null, null ) ) );
+
+        assertEquals( 2, registry.meter( MetricRegistry.name( MeteringFilter.class, "requests.slow" ) ).getCount() );
+        assertEquals( 2, metrics.getApplicationLatency( RequestMetrics.NONE ).getCount() );
+    }
+
+
+    @Test
+    public void histogramsShared() {
+        final RequestMetrics first = new RequestMetrics( metricsFactory, 10, 10, 60000, 1000 );
+        final RequestMetrics second = new RequestMetrics( metricsFactory, 10, 10, 60000, 1000 );
+
+        assertTrue( first.getLatency() == second.getLatency() );
+    }
+
+
+    private static MeteredRequest request( final String application, final String endpoint ) {
+        final MeteredRequest metered = new MeteredRequest( System.nanoTime(), "GET", "/test" );
+        metered.setApplication( application );
+        metered.setEndpoint( endpoint );
+        metered.setStatus( 200 );
+        return metered;
+    }
+
+
+    /**
+     * Metrics backed by a plain registry, shared with the filter tests
+     */
+    static final class RegistryMetricsFactory implements MetricsFactory {
+
+        private final MetricRegistry registry;
+
+
+        RegistryMetricsFactory( final MetricRegistry registry ) {
+            this.registry = registry;
+        }
+
+
+        @Override
+        public MetricRegistry getRegistry() {
+            return registry;
+        }
+
+
+        @Override
+        public Timer getTimer( final Class<?> klass, final String name ) {
+            return registry.timer( MetricRegistry.name( klass, name ) );
+        }
+
+
+        @Override
+        public Histogram getHistogram( final Class<?> klass, final String name ) {
+            return registry.histogram( MetricRegistry.name( klass, name ) );
+        }
+
+
+        @Override
+        public Counter getCounter( final Class<?> klass, final String name ) {
+            return registry.counter( MetricRegistry.name( klass, name ) );
+        }
+
+
+        @Override
+        public Meter getMeter( final Class<?> klass, final String name ) {
+            return registry.meter( MetricRegistry.name( klass, name ) );
+        }
+
+
+        @Override
+        public void addGauge( final Class<?> clazz, final String name, final Gauge<?> gauge ) {
+            registry.register( MetricRegistry.name( clazz, name ), gauge );
+        }
+    }
+}
@@ -147,6 +147,29 @@ public class FileImportTracker {
     }
 
 
+    /**
+     * Invoke when everything in the file before the offset has been written.  The counters are
+     * flushed with the offset, so a resumed import starts at the offset with the counters it had there
+     *
+     * @param offset The byte offset in the file to resume at
+     * @param collection The name of the collection the offset is in
+     */
+    public void checkpoint( final long offset, final String collection ) {
+        writeSemaphore.acquireUninterruptibly();
+
+        try {
+            fileImport.setCheckpointOffset( offset );
+            fileImport.setCheckpointCollection( collection );
+
+            updateFileImport( FileImport.State.STARTED, progressMessage() );
+            cachedOperations.set( 0 );
+        }
+        finally {
+            writeSemaphore.release();
+        }
+    }
+
+
     /**
      * Invoke when the file is completed processing
      */
@@ -263,21 +286,22 @@ public class FileImportTracker {
             return;
         }
 
+        updateFileImport( FileImport.State.STARTED, progressMessage() );
+        cachedOperations.addAndGet( flushCount * -1 );
+        writeSemaphore.release();
+    }
+
+
+    private String progressMessage() {
         final long failed = entitiesFailed.get();
         final long written = entitiesWritten.get();
-        final String message;
 
         if ( failed > 0 ) {
-            message = "Failed to import " + failed
+            return "Failed to import " + failed
                 + " entities.  Successfully imported " + written + " entities";
         }
-        else {
-            message = "Successfully imported " + written + " entities";
-        }
 
-        updateFileImport( FileImport.State.STARTED, message );
-        cachedOperations.addAndGet( flushCount * -1 );
-        writeSemaphore.release();
+        return "Successfully imported " + written + " entities";
     }
 
 
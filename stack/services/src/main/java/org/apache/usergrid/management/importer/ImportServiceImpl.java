@@ -32,20 +32,26 @@ import org.apache.usergrid.persistence.Query;
 import org.apache.usergrid.persistence.Query.Level;
 import org.apache.usergrid.utils.InflectionUtils;
 import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonLocation;
 import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonStreamContext;
 import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.impl.Utf8StreamJsonParser;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
-import rx.Subscriber;
-import rx.functions.Action1;
-import rx.functions.Func2;
 import rx.schedulers.Schedulers;
 
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 
@@ -55,7 +61,8 @@ public class ImportServiceImpl implements ImportService {
     public static final String IMPORT_JOB_NAME = "importJob";
     public static final String FILE_IMPORT_ID = "fileImportId";
     public static final String FILE_IMPORT_JOB_NAME = "fileImportJob";
-    public static final int HEARTBEAT_COUNT = 50;
+    public static final int IMPORT_BATCH_SIZE = 100;
+    public static final int WRITE_CONCURRENCY = 10;
 
     public static final String APP_IMPORT_CONNECTION = "imports";
     public static final String IMPORT_FILE_INCLUDES_CONNECTION = "files";
@@ -697,8 +704,8 @@ public class ImportServiceImpl implements ImportService {
             return;
         }
 
-        // tracker flushes every 100 entities
-        final FileImportTracker tracker = new FileImportTracker(emf, fileImport, 100);
+        // tracker flushes with each checkpoint, so the counters always match the checkpointed offset
+        final FileImportTracker tracker = new FileImportTracker(emf, fileImport, Integer.MAX_VALUE);
 
         String fileName = jobExecution.getJobData().getProperty("File").toString();
         UUID targetAppId = (UUID) jobExecution.getJobData().getProperty("applicationId");
@@ -901,119 +908,125 @@ public class ImportServiceImpl implements ImportService {
 
 
     /**
-     * Imports the entity's connecting references (collections, connections and dictionaries)
+     * Gets a JSON parser that resumes the file at an entity boundary.  The parser reads a prefix that opens the
+     * collection the offset is in, then the rest of the file from the offset
      *
-     * @param execution  The job jobExecution currently running
-     * @param file       The file to be imported
-     * @param em         Entity Manager for the application being imported
-     * @param rootEm     Entity manager for the root applicaition
-     * @param fileImport The file import entity
+     * @param collectionFile the file for which JSON parser is required
+     * @param offset         byte offset in the file after an entity
+     * @param prefix         the JSON that opens the collection
      */
-    private void parseEntitiesAndConnectionsFromJson(
-        final JobExecution execution,
-        final File file,
-        final EntityManager em,
-        final EntityManager rootEm,
-        final FileImport fileImport,
-        final FileImportTracker tracker) throws Exception {
-
-
-        // tracker flushes every 100 entities
-        //final FileImportTracker tracker = new FileImportTracker( emf, fileImport, 100 );
-
-        // function to execute for each write event
-        final Action1<WriteEvent> doWork = new Action1<WriteEvent>() {
-            @Override
-            public void call(WriteEvent writeEvent) {
-                writeEvent.doWrite(em, fileImport, tracker);
-            }
-        };
-
-        // invokes the heartbeat every HEARTBEAT_COUNT operations
-        final Func2<Integer, WriteEvent, Integer> heartbeatReducer = new Func2<Integer, WriteEvent, Integer>() {
-            @Override
-            public Integer call(final Integer integer, final WriteEvent writeEvent) {
-                final int next = integer.intValue() + 1;
-                if (next % HEARTBEAT_COUNT == 0) {
-                    execution.heartbeat();
-                }
-                return next;
-            }
-        };
-
-
-        // FIRST PASS: import all entities in the file
+    private JsonParser getJsonParserForFile(File collectionFile, long offset, byte[] prefix) throws Exception {
+        final FileInputStream fileStream = new FileInputStream(collectionFile);
+        fileStream.getChannel().position(offset);
 
+        JsonParser jp = jsonFactory.createJsonParser(
+            new SequenceInputStream(new ByteArrayInputStream(prefix), fileStream));
+        jp.setCodec(new ObjectMapper());
+        return jp;
+    }
 
-        // observable that parses JSON and emits write events
-        JsonParser jp = getJsonParserForFile(file);
-
-        // TODO: move JSON parser into observable creation so open/close happens within the stream
-        // entitiesOnly = true
-        final JsonEntityParserObservable jsonObservableEntities =
-            new JsonEntityParserObservable(jp, em, rootEm, fileImport, tracker, true);
 
-        final Observable<WriteEvent> entityEventObservable = Observable.create(jsonObservableEntities);
+    /**
+     * The JSON that opens a collection, up to and including an empty entity, so the entities after a checkpoint
+     * parse the same as they do from the start of the file
+     */
+    private byte[] resumePrefix(String collection) throws IOException {
+        return ("{\"" + JsonEntityParser.COLLECTION_OBJECT_NAME + "\":{"
+            + new ObjectMapper().writeValueAsString(collection) + ":[{}").getBytes(StandardCharsets.UTF_8);
+    }
 
-        // only take while our stats tell us we should continue processing
-        // potentially skip the first n if this is a resume operation
-        final int entityNumSkip = (int) tracker.getTotalEntityCount();
 
+    /**
+     * Returns true if the offset in the file is right after an entity, followed by the next one or the end of
+     * the collection
+     */
+    private boolean isEntityBoundary(File file, long offset) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (offset <= 0 || offset >= in.length()) {
+                return false;
+            }
 
-        entityEventObservable.takeWhile(writeEvent -> !tracker.shouldStopProcessingEntities()).skip(entityNumSkip)
-            .flatMap(writeEvent -> {
-                return Observable.just(writeEvent).doOnNext(doWork);
-            }, 10).reduce(0, heartbeatReducer).toBlocking().last();
+            in.seek(offset - 1);
 
+            if (in.read() != '}') {
+                return false;
+            }
 
-        jp.close();
+            int next;
 
-        if (FileImport.State.FAILED.equals(fileImport.getState())) {
-            if (logger.isTraceEnabled()) {
-                logger.trace("\n\nFailed to completely write entities, skipping second phase. File: {}\n",
-                    fileImport.getFileName());
+            do {
+                next = in.read();
             }
-            return;
-        }
-        if (logger.isTraceEnabled()) {
-            logger.trace("\n\nWrote entities. File: {}\n", fileImport.getFileName());
-        }
+            while (Character.isWhitespace(next));
 
+            return next == ',' || next == ']';
+        }
+    }
 
-        // SECOND PASS: import all connections and dictionaries
 
+    /**
+     * Imports the entity's connecting references (collections, connections and dictionaries).  The file is read
+     * once, its entities are written in batches, each followed by the connections and dictionaries of the batch.
+     * After each batch the offset in the file is checkpointed, so a resumed import starts after the last batch.
+     *
+     * @param execution  The job jobExecution currently running
+     * @param file       The file to be imported
+     * @param em         Entity Manager for the application being imported
+     * @param rootEm     Entity manager for the root applicaition
+     * @param fileImport The file import entity
+     */
+    void parseEntitiesAndConnectionsFromJson(
+        final JobExecution execution,
+        final File file,
+        final EntityManager em,
+        final EntityManager rootEm,
+        final FileImport fileImport,
+        final FileImportTracker tracker) throws Exception {
 
-        // observable that parses JSON and emits write events
-        jp = getJsonParserForFile(file);
+        final long checkpointOffset = fileImport.getCheckpointOffset();
+        final String checkpointCollection = fileImport.getCheckpointCollection();
 
-        // TODO: move JSON parser into observable creation so open/close happens within the stream
-        // entitiesOnly = false
-        final JsonEntityParserObservable jsonObservableOther =
-            new JsonEntityParserObservable(jp, em, rootEm, fileImport, tracker, false);
+        boolean resume = checkpointOffset > 0 && checkpointCollection != null;
 
-        final Observable<WriteEvent> otherEventObservable = Observable.create(jsonObservableOther);
+        if (resume && !isEntityBoundary(file, checkpointOffset)) {
+            logger.warn("Checkpoint {} is not an entity boundary in file {}, resuming by count",
+                checkpointOffset, fileImport.getFileName());
+            resume = false;
+        }
 
-        // only take while our stats tell us we should continue processing
-        // potentially skip the first n if this is a resume operation
-        final int connectionNumSkip = (int) tracker.getTotalConnectionCount();
+        final JsonParser jp;
+        final long baseOffset;
+        final ImportBatchWriter writer;
 
-        // with this code we get asynchronous behavior and testImportWithMultipleFiles will fail
-        final int connectionCount = otherEventObservable.takeWhile(
-            writeEvent -> !tracker.shouldStopProcessingConnections()).skip(connectionNumSkip).flatMap(entityWrapper -> {
-            return Observable.just(entityWrapper).doOnNext(doWork).subscribeOn(Schedulers.io());
+        if (resume) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Resuming file {} at offset {} in collection {}",
+                    fileImport.getFileName(), checkpointOffset, checkpointCollection);
+            }
 
-        }, 10).reduce(0, heartbeatReducer).toBlocking().last();
+            final byte[] prefix = resumePrefix(checkpointCollection);
 
-        jp.close();
+            jp = getJsonParserForFile(file, checkpointOffset, prefix);
+            baseOffset = checkpointOffset - prefix.length;
+            writer = new ImportBatchWriter(execution, em, fileImport, tracker, 0, 0);
+        } else {
+            // no checkpoint, potentially skip the first n if this is a resume operation
+            jp = getJsonParserForFile(file);
+            baseOffset = 0;
+            writer = new ImportBatchWriter(execution, em, fileImport, tracker,
+                tracker.getTotalEntityCount(), tracker.getTotalConnectionCount());
+        }
 
-        if (logger.isTraceEnabled()) {
-            logger.trace("\n\nparseEntitiesAndConnectionsFromJson(): Wrote others for file {}\n",
-                fileImport.getFileName());
+        try {
+            new JsonEntityParser(jp, baseOffset, tracker, writer).process();
+        } finally {
+            jp.close();
         }
 
         if (FileImport.State.FAILED.equals(fileImport.getState())) {
             if (logger.isDebugEnabled()) {
-                logger.debug("\n\nparseEntitiesAndConnectionsFromJson(): failed to completely write entities\n");
+                logger.debug("\n\nparseEntitiesAndConnectionsFromJson(): failed to completely write file {}\n",
+                    fileImport.getFileName());
             }
             return;
         }
@@ -1023,14 +1036,14 @@ public class ImportServiceImpl implements ImportService {
 
         if (FileImport.State.FAILED.equals(fileImport.getState())) {
             if (logger.isDebugEnabled()) {
-                logger.debug("\n\nFailed to completely write connections and dictionaries. File: {}\n",
+                logger.debug("\n\nFailed to completely write entities, connections and dictionaries. File: {}\n",
                     fileImport.getFileName());
             }
             return;
         }
 
         if (logger.isTraceEnabled()) {
-            logger.trace("\n\nWrote connections and dictionaries. File: {}\n", fileImport.getFileName());
+            logger.trace("\n\nWrote entities, connections and dictionaries. File: {}\n", fileImport.getFileName());
         }
     }
 
@@ -1150,40 +1163,177 @@ public class ImportServiceImpl implements ImportService {
     }
 
 
-    private final class JsonEntityParserObservable implements Observable.OnSubscribe<WriteEvent> {
-        public static final String COLLECTION_OBJECT_NAME = "collections";
-        private final JsonParser jp;
-        EntityManager em;
-        EntityManager rootEm;
-        FileImport fileImport;
-        FileImportTracker tracker;
-        boolean entitiesOnly;
+    /**
+     * Writes the events of a file in batches.  The entities of a batch are written in parallel, then the
+     * connections and dictionaries of the batch, whose source entities are written by then.  A batch is written
+     * once it's full, and every batch size of entities the offset after the last one is checkpointed.  Files the
+     * offset can't be tracked in are still written in batches, they just can't be resumed from an offset.
+     *
+     * Entities and connections fail independently, as they did when they were written in separate passes: an entity
+     * failure stops the file, a connection failure only drops the connections and dictionaries that follow it.
+     */
+    private final class ImportBatchWriter {
+        private final JobExecution execution;
+        private final EntityManager em;
+        private final FileImport fileImport;
+        private final FileImportTracker tracker;
 
+        private final List<WriteEvent> entities = new ArrayList<>(IMPORT_BATCH_SIZE);
+        private final List<WriteEvent> others = new ArrayList<>();
 
-        JsonEntityParserObservable(
-            JsonParser parser,
+        private long entitiesToSkip;
+        private long othersToSkip;
+        private int entitiesSinceCheckpoint;
+
+
+        ImportBatchWriter(
+            JobExecution execution,
             EntityManager em,
-            EntityManager rootEm,
             FileImport fileImport,
             FileImportTracker tracker,
-            boolean entitiesOnly) {
+            long entitiesToSkip,
+            long othersToSkip) {
 
-            this.jp = parser;
+            this.execution = execution;
             this.em = em;
-            this.rootEm = rootEm;
             this.fileImport = fileImport;
             this.tracker = tracker;
-            this.entitiesOnly = entitiesOnly;
+            this.entitiesToSkip = entitiesToSkip;
+            this.othersToSkip = othersToSkip;
         }
 
 
-        @Override
-        public void call(final Subscriber<? super WriteEvent> subscriber) {
-            process(subscriber);
+        void entity(WriteEvent event) {
+            if (entitiesToSkip > 0) {
+                entitiesToSkip--;
+                return;
+            }
+
+            entities.add(event);
+            flushIfFull();
         }
 
 
-        private void process(final Subscriber<? super WriteEvent> subscriber) {
+        void other(WriteEvent event) {
+            if (othersToSkip > 0) {
+                othersToSkip--;
+                return;
+            }
+
+            if (shouldSkip(event)) {
+                return;
+            }
+
+            others.add(event);
+            flushIfFull();
+        }
+
+
+        /**
+         * Invoked after each entity in the file, writes what's buffered and checkpoints once a batch of entities
+         * has ended since the last checkpoint
+         *
+         * @param offset     byte offset in the file after the entity
+         * @param collection the collection the entity is in
+         */
+        void endOfEntity(long offset, String collection) {
+            entitiesSinceCheckpoint++;
+
+            if (entitiesSinceCheckpoint < IMPORT_BATCH_SIZE) {
+                return;
+            }
+
+            flush();
+
+            // don't move past writes that failed
+            if (!tracker.shouldStopProcessingEntities() && !tracker.shouldStopProcessingConnections()) {
+                tracker.checkpoint(offset, collection);
+            }
+
+            entitiesSinceCheckpoint = 0;
+        }
+
+
+        /**
+         * Write everything buffered
+         */
+        void flush() {
+            write(entities);
+            write(others);
+
+            entities.clear();
+            others.clear();
+
+            execution.heartbeat();
+        }
+
+
+        private void flushIfFull() {
+            if (entities.size() >= IMPORT_BATCH_SIZE || others.size() >= IMPORT_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+
+        /**
+         * True once an entity failed, nothing more of the file is read
+         */
+        boolean shouldStop() {
+            return tracker.shouldStopProcessingEntities();
+        }
+
+
+        /**
+         * True if the event shouldn't be written because of an earlier failure.  Connections and dictionaries are
+         * also skipped once an entity failed, it may be the one they belong to
+         */
+        private boolean shouldSkip(WriteEvent event) {
+            if (event instanceof EntityEvent) {
+                return tracker.shouldStopProcessingEntities();
+            }
+
+            return tracker.shouldStopProcessingEntities() || tracker.shouldStopProcessingConnections();
+        }
+
+
+        private void write(List<WriteEvent> events) {
+            if (events.isEmpty()) {
+                return;
+            }
+
+            Observable.from(events).flatMap(writeEvent -> {
+                return Observable.just(writeEvent).doOnNext(event -> {
+                    if (!shouldSkip(event)) {
+                        event.doWrite(em, fileImport, tracker);
+                    }
+                }).subscribeOn(Schedulers.io());
+            }, WRITE_CONCURRENCY).toBlocking().lastOrDefault(null);
+        }
+    }
+
+
+    private final class JsonEntityParser {
+        public static final String COLLECTION_OBJECT_NAME = "collections";
+        private final JsonParser jp;
+        private final long baseOffset;
+        private final FileImportTracker tracker;
+        private final ImportBatchWriter writer;
+
+
+        JsonEntityParser(
+            JsonParser parser,
+            long baseOffset,
+            FileImportTracker tracker,
+            ImportBatchWriter writer) {
+
+            this.jp = parser;
+            this.baseOffset = baseOffset;
+            this.tracker = tracker;
+            this.writer = writer;
+        }
+
+
+        private void process() {
 
             try {
 
@@ -1194,7 +1344,7 @@ public class ImportServiceImpl implements ImportService {
 
                 String entityType = null;
 
-                while (true) {
+                while (!writer.shouldStop()) {
 
                     JsonToken token = jp.nextToken();
 
@@ -1228,12 +1378,8 @@ public class ImportServiceImpl implements ImportService {
                                 lastEntity = new SimpleEntityRef(entityType, uuid);
                             }
 
-                            if (entitiesOnly) {
-                                //logger.debug("{}Got entity with uuid {}", indent, lastEntity);
+                            writer.entity(new EntityEvent(uuid, entityType, entityMap));
 
-                                WriteEvent event = new EntityEvent(uuid, entityType, entityMap);
-                                processWriteEvent(subscriber, event);
-                            }
                             objectStartStack.pop();
                         } else if ("connections".equals(name)) {
 
@@ -1245,14 +1391,8 @@ public class ImportServiceImpl implements ImportService {
                                 for (Object targetObject : targets) {
                                     UUID target = UUID.fromString((String) targetObject);
 
-                                    if (!entitiesOnly) {
-                                        //logger.debug("{}Got connection {} to {}",
-                                        //new Object[]{indent, type, target.toString()});
-
-                                        EntityRef entryRef = new SimpleEntityRef(target);
-                                        WriteEvent event = new ConnectionEvent(lastEntity, type, entryRef);
-                                        processWriteEvent(subscriber, event);
-                                    }
+                                    EntityRef entryRef = new SimpleEntityRef(target);
+                                    writer.other(new ConnectionEvent(lastEntity, type, entryRef));
                                 }
                             }
 
@@ -1264,13 +1404,7 @@ public class ImportServiceImpl implements ImportService {
                             for (String dname : dictionariesMap.keySet()) {
                                 Map dmap = (Map) dictionariesMap.get(dname);
 
-                                if (!entitiesOnly) {
-                                    //logger.debug("{}Got dictionary {} size {}",
-                                    //new Object[] {indent, dname, dmap.size() });
-
-                                    WriteEvent event = new DictionaryEvent(lastEntity, dname, dmap);
-                                    processWriteEvent(subscriber, event);
-                                }
+                                writer.other(new DictionaryEvent(lastEntity, dname, dmap));
                             }
 
                             objectStartStack.pop();
@@ -1288,12 +1422,17 @@ public class ImportServiceImpl implements ImportService {
 
                     } else if (token.equals(JsonToken.END_OBJECT)) {
                         objectStartStack.pop();
+
+                        final String collection = entityCollection(jp.getParsingContext());
+                        final long offset = tokenOffset();
+
+                        if (collection != null && offset >= 0) {
+                            writer.endOfEntity(baseOffset + offset + 1, collection);
+                        }
                     }
                 }
 
-                if (subscriber != null) {
-                    subscriber.onCompleted();
-                }
+                writer.flush();
 
                 if (logger.isTraceEnabled()) {
                     logger.trace("process(): done parsing JSON");
@@ -1303,31 +1442,56 @@ public class ImportServiceImpl implements ImportService {
 
                 tracker.fatal(e.getMessage());
 
-                if (subscriber != null) {
+                // don't need to blow up here, we handled the problem
+                // but write the entities we've read, they were complete
+                writer.flush();
+            }
+        }
 
-                    // don't need to blow up here, we handled the problem
-                    // if we blow up we may prevent in-flight entities from being written
-                    // subscriber.onError(e);
 
-                    // but we are done reading entities
-                    subscriber.onCompleted();
-                }
+        /**
+         * Returns the collection name if the context is a collection array, the token just closed an entity then
+         */
+        private String entityCollection(JsonStreamContext context) {
+            if (!context.inArray()) {
+                return null;
             }
-        }
 
-        private void processWriteEvent(final Subscriber<? super WriteEvent> subscriber, WriteEvent writeEvent) {
+            final JsonStreamContext collections = context.getParent();
 
-            if (subscriber == null) {
+            if (collections == null || !collections.inObject()) {
+                return null;
+            }
 
-                // this logic makes it easy to remove Rx for debugging purposes
-                // no Rx, just do it
-                writeEvent.doWrite(em, fileImport, tracker);
+            final JsonStreamContext document = collections.getParent();
 
-            } else {
-                subscriber.onNext(writeEvent);
+            if (document == null || !document.inObject()
+                || !COLLECTION_OBJECT_NAME.equals(document.getCurrentName())
+                || document.getParent() == null || !document.getParent().inRoot()) {
+                return null;
             }
+
+            return collections.getCurrentName();
         }
 
+
+        /**
+         * The byte offset of the current token, or -1 if the parser doesn't count bytes
+         */
+        private long tokenOffset() {
+            final JsonLocation location = jp.getTokenLocation();
+
+            if (location.getByteOffset() >= 0) {
+                return location.getByteOffset();
+            }
+
+            // the utf-8 parser counts the bytes it reads as its input offset
+            if (jp instanceof Utf8StreamJsonParser) {
+                return location.getCharOffset();
+            }
+
+            return -1;
+        }
     }
 }
 
@@ -17,6 +17,7 @@
 package org.apache.usergrid.security.shiro;
 
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -40,6 +41,9 @@ public class CustomPermission extends WildcardPermission {
 
     private static final long serialVersionUID = 1L;
 
+    /** The parts with application paths normalized, computed once per permission */
+    private transient volatile List<Set<String>> pathParts;
+
 
     public CustomPermission() {
     }
@@ -71,6 +75,7 @@ public class CustomPermission extends WildcardPermission {
 
         CustomPermission wp = ( CustomPermission ) p;
 
+        List<Set<String>> parts = getParts();
         List<Set<String>> otherParts = wp.getParts();
 
         boolean isApp = false;
@@ -79,7 +84,7 @@ public class CustomPermission extends WildcardPermission {
             // If this permission has less parts than the other permission,
             // everything after the number of parts contained
             // in this permission is automatically implied, so return true
-            if ( ( getParts().size() - 1 ) < i ) {
+            if ( ( parts.size() - 1 ) < i ) {
                 return true;
             }
             else {
@@ -87,13 +92,13 @@ public class CustomPermission extends WildcardPermission {
                     isApp = true;
                 }
                 // this part is the permission, the other part is the challenger
-                Set<String> part = getParts().get( i );
+                Set<String> part = parts.get( i );
                 // if we know we're doing an application compare
                 // then make sure all the parts from the third onwards
                 // are normalized as paths
                 if ( isApp && ( i > 2 ) ) {
-                    part = makePaths( part );
-                    otherPart = makePaths( otherPart );
+                    part = getPathParts().get( i );
+                    otherPart = wp.getPathParts().get( i );
                 }
                 if ( !part.contains( WILDCARD_TOKEN ) && !partContainsPart( part, otherPart ) ) {
                     return false;
@@ -104,8 +109,8 @@ public class CustomPermission extends WildcardPermission {
 
         // If this permission has more parts than the other parts, only imply it
         // if all of the other parts are wildcards
-        for (; i < getParts().size(); i++ ) {
-            Set<String> part = getParts().get( i );
+        for (; i < parts.size(); i++ ) {
+            Set<String> part = parts.get( i );
             if ( !part.contains( WILDCARD_TOKEN ) ) {
                 return false;
             }
@@ -115,6 +120,35 @@ public class CustomPermission extends WildcardPermission {
     }
 
 
+    /**
+     * The parts of this permission, with the parts from the fourth onwards normalized as paths.  Computed on first use
+     * and kept, a permission compared many times only normalizes its paths once
+     */
+    List<Set<String>> getPathParts() {
+        List<Set<String>> result = pathParts;
+
+        if ( result == null ) {
+            List<Set<String>> parts = getParts();
+            result = new ArrayList<Set<String>>( parts.size() );
+            for ( int i = 0; i < parts.size(); i++ ) {
+                result.add( i > 2 ? makePaths( parts.get( i ) ) : parts.get( i ) );
+            }
+            pathParts = result;
+        }
+
+        return result;
+    }
+
+
+    /**
+     * True if the subpart only ever matches an identical value, ignoring case.  It's not a path, a pattern or a
+     * substitution
+     */
+    static boolean isLiteral( String p ) {
+        return !p.equals( WILDCARD_TOKEN ) && !isPath( p ) && !matcher.isPattern( p ) && p.indexOf( '$' ) == -1;
+    }
+
+
     static String normalizeIfPath( String p ) {
         if ( p.startsWith( "/" ) ) {
             if ( !p.endsWith( "/" ) && !p.endsWith( "*" ) ) {
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.security.shiro;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.shiro.authz.Permission;
+
+
+/**
+ * The permissions of a principal compiled for evaluation.  Permissions are indexed in a trie on their leading parts,
+ * the domain, the operations and the application id, so a check only compares the challenger with the few
+ * permissions that can match those parts instead of with every permission the principal holds.
+ *
+ * Permissions whose leading part is a wildcard, a path or a pattern can't be indexed on it and are kept in a separate
+ * branch that is always followed.  Every candidate found is evaluated with {@link CustomPermission#implies}, so the
+ * result is always the same as checking each permission in turn.
+ *
+ * Immutable once built and safe to share between threads.
+ */
+public class PermissionMatcher {
+
+    /** The number of leading parts permissions are indexed on */
+    private static final int INDEXED_PARTS = 3;
+
+    private final Node root = new Node();
+
+    /** Permissions that aren't CustomPermissions, checked one by one */
+    private final List<Permission> others = new ArrayList<>();
+
+
+    public PermissionMatcher( Collection<Permission> permissions ) {
+        for ( Permission permission : permissions ) {
+            if ( permission instanceof CustomPermission ) {
+                CustomPermission customPermission = ( CustomPermission ) permission;
+
+                // normalize now rather than on the first check
+                customPermission.getPathParts();
+
+                root.add( customPermission, customPermission.getParts(), 0 );
+            }
+            else {
+                others.add( permission );
+            }
+        }
+    }
+
+
+    /**
+     * True if any of the permissions implies the given permission
+     */
+    public boolean implies( Permission permission ) {
+        if ( permission instanceof CustomPermission ) {
+            CustomPermission challenger = ( CustomPermission ) permission;
+
+            if ( root.implies( challenger, challenger.getParts(), 0 ) ) {
+                return true;
+            }
+        }
+
+        for ( Permission other : others ) {
+            if ( other.implies( permission ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private static final class Node {
+
+        /** Permissions that end at this depth, or all permissions below the indexed depth */
+        private final List<CustomPermission> permissions = new ArrayList<>();
+
+        /** Children for permissions whose part at this depth is made only of literals, by literal */
+        private final Map<String, Node> literals = new TreeMap<>( String.CASE_INSENSITIVE_ORDER );
+
+        /** Child for permissions whose part at this depth can match more than identical values */
+        private Node wildcards;
+
+
+        private void add( CustomPermission permission, List<Set<String>> parts, int depth ) {
+            if ( depth == INDEXED_PARTS || depth == parts.size() ) {
+                permissions.add( permission );
+                return;
+            }
+
+            Set<String> part = parts.get( depth );
+
+            if ( !isLiteral( part ) ) {
+                if ( wildcards == null ) {
+                    wildcards = new Node();
+                }
+                wildcards.add( permission, parts, depth + 1 );
+                return;
+            }
+
+            // a permission granting several literals is found through each of them
+            for ( String literal : part ) {
+                Node child = literals.get( literal );
+                if ( child == null ) {
+                    child = new Node();
+                    literals.put( literal, child );
+                }
+                child.add( permission, parts, depth + 1 );
+            }
+        }
+
+
+        private boolean implies( CustomPermission challenger, List<Set<String>> challengerParts, int depth ) {
+            for ( CustomPermission permission : permissions ) {
+                if ( permission.implies( challenger ) ) {
+                    return true;
+                }
+            }
+
+            // the challenger ends above the indexed depth, only trailing wildcards can imply it
+            if ( depth == challengerParts.size() ) {
+                return childrenImply( challenger );
+            }
+
+            if ( depth < INDEXED_PARTS ) {
+                Set<String> part = challengerParts.get( depth );
+
+                if ( isLiteral( part ) ) {
+                    // a permission matches every literal of the challenger, so also the first one
+                    Node child = literals.get( part.iterator().next() );
+                    if ( child != null && child.implies( challenger, challengerParts, depth + 1 ) ) {
+                        return true;
+                    }
+                }
+                else {
+                    for ( Node child : literals.values() ) {
+                        if ( child.implies( challenger, challengerParts, depth + 1 ) ) {
+                            return true;
+                        }
+                    }
+                }
+
+                if ( wildcards != null && wildcards.implies( challenger, challengerParts, depth + 1 ) ) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+
+        /**
+         * Check every permission below this node
+         */
+        private boolean childrenImply( CustomPermission challenger ) {
+            for ( Node child : literals.values() ) {
+                if ( child.impliesAny( challenger ) ) {
+                    return true;
+                }
+            }
+
+            return wildcards != null && wildcards.impliesAny( challenger );
+        }
+
+
+        /**
+         * Check every permission at or below this node
+         */
+        private boolean impliesAny( CustomPermission challenger ) {
+            for ( CustomPermission permission : permissions ) {
+                if ( permission.implies( challenger ) ) {
+                    return true;
+                }
+            }
+
+            return childrenImply( challenger );
+        }
+
+
+        private static boolean isLiteral( Set<String> part ) {
+            if ( part.isEmpty() ) {
+                return false;
+            }
+
+            for ( String subpart : part ) {
+                if ( !CustomPermission.isLiteral( subpart ) ) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -21,7 +21,10 @@ import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.authc.*;
 import org.apache.shiro.authc.credential.AllowAllCredentialsMatcher;
 import org.apache.shiro.authc.credential.CredentialsMatcher;
+import org.apache.shiro.authz.AuthorizationException;
 import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.UnauthorizedException;
 import org.apache.shiro.authz.permission.PermissionResolver;
 import org.apache.shiro.cache.CacheManager;
 import org.apache.shiro.realm.AuthorizingRealm;
@@ -139,6 +142,10 @@ public class Realm extends AuthorizingRealm {
     protected AuthorizationInfo getAuthorizationInfo(PrincipalCollection principals) {
         UsergridAuthorizationInfo info = (UsergridAuthorizationInfo)super.getAuthorizationInfo(principals);
 
+        if ( info == null ) {
+            return null;
+        }
+
         Subject currentUser = SecurityUtils.getSubject();
         Session session = currentUser.getSession();
         session.setAttribute( "applications", info.getApplicationSet());
@@ -154,6 +161,32 @@ public class Realm extends AuthorizingRealm {
     }
 
 
+    /**
+     * Check against the permissions compiled with the authorization info, rather than resolving and comparing every
+     * permission of the principal on each check
+     */
+    @Override
+    public boolean isPermitted( PrincipalCollection principals, Permission permission ) {
+        UsergridAuthorizationInfo info = ( UsergridAuthorizationInfo ) getAuthorizationInfo( principals );
+
+        // same as shiro, no authorization info permits nothing
+        if ( info == null ) {
+            return false;
+        }
+
+        return info.getPermissionMatcher( getPermissionResolver() ).implies( permission );
+    }
+
+
+    @Override
+    public void checkPermission( PrincipalCollection principals, Permission permission )
+            throws AuthorizationException {
+        if ( !isPermitted( principals, permission ) ) {
+            throw new UnauthorizedException( "User is not permitted [" + permission + "]" );
+        }
+    }
+
+
     @Override
     protected AuthenticationInfo doGetAuthenticationInfo( AuthenticationToken token ) throws AuthenticationException {
         PrincipalCredentialsToken pcToken = ( PrincipalCredentialsToken ) token;
@@ -17,11 +17,16 @@
 
 package org.apache.usergrid.security.shiro;
 
+import org.apache.shiro.authz.Permission;
 import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.authz.permission.PermissionResolver;
 import org.apache.usergrid.management.ApplicationInfo;
 import org.apache.usergrid.management.OrganizationInfo;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -37,6 +42,9 @@ public class UsergridAuthorizationInfo extends SimpleAuthorizationInfo {
     OrganizationInfo organization = null;
     ApplicationInfo application = null;
 
+    /** The permissions compiled on first check, kept with the info in the local cache. Not serialized */
+    private transient volatile PermissionMatcher permissionMatcher;
+
 
     /**
      * Default no-argument constructor.
@@ -88,6 +96,66 @@ public class UsergridAuthorizationInfo extends SimpleAuthorizationInfo {
         this.organizationSet.putAll( organizationSet );
     }
 
+    /**
+     * The string and object permissions compiled for evaluation.  Compiled on first use, the same matcher then answers
+     * every check until the permissions change
+     */
+    public PermissionMatcher getPermissionMatcher( PermissionResolver resolver ) {
+        PermissionMatcher matcher = permissionMatcher;
+
+        if ( matcher == null ) {
+            List<Permission> permissions = new ArrayList<>();
+            if ( getObjectPermissions() != null ) {
+                permissions.addAll( getObjectPermissions() );
+            }
+            if ( getStringPermissions() != null ) {
+                for ( String permission : getStringPermissions() ) {
+                    permissions.add( resolver.resolvePermission( permission ) );
+                }
+            }
+            matcher = new PermissionMatcher( permissions );
+            permissionMatcher = matcher;
+        }
+
+        return matcher;
+    }
+
+    @Override
+    public void setStringPermissions(Set<String> stringPermissions) {
+        super.setStringPermissions( stringPermissions );
+        permissionMatcher = null;
+    }
+
+    @Override
+    public void addStringPermission(String permission) {
+        super.addStringPermission( permission );
+        permissionMatcher = null;
+    }
+
+    @Override
+    public void addStringPermissions(Collection<String> permissions) {
+        super.addStringPermissions( permissions );
+        permissionMatcher = null;
+    }
+
+    @Override
+    public void setObjectPermissions(Set<Permission> objectPermissions) {
+        super.setObjectPermissions( objectPermissions );
+        permissionMatcher = null;
+    }
+
+    @Override
+    public void addObjectPermission(Permission permission) {
+        super.addObjectPermission( permission );
+        permissionMatcher = null;
+    }
+
+    @Override
+    public void addObjectPermissions(Collection<Permission> permissions) {
+        super.addObjectPermissions( permissions );
+        permissionMatcher = null;
+    }
+
     @Override
     public String toString() {
         String orgName = null;
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.assets.data;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * An input stream over a byte range of a file.  Reads are positional reads against a {@link FileChannel}, so only the
+ * requested range is ever read from disk.  Callers that can write to a channel should use {@link
+ * #transferTo(WritableByteChannel)}, which lets the OS move the bytes without copying them through the heap.
+ */
+public class FileRangeInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+    private long mark;
+
+
+    /**
+     * Open the range of the file starting at offset.  The length is clamped to the end of the file
+     */
+    public FileRangeInputStream( File file, long offset, long length ) throws IOException {
+        if ( offset < 0 || length < 0 ) {
+            throw new IllegalArgumentException( "offset and length must be positive" );
+        }
+
+        this.channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+
+        final long size = channel.size();
+
+        this.position = Math.min( offset, size );
+        this.end = position + Math.min( size - position, length );
+        this.mark = position;
+    }
+
+
+    /**
+     * @return the number of bytes left in the range
+     */
+    public long getRemaining() {
+        return end - position;
+    }
+
+
+    /**
+     * Write the rest of the range to the target channel
+     *
+     * @return the number of bytes written
+     */
+    public long transferTo( WritableByteChannel target ) throws IOException {
+        final long start = position;
+
+        while ( position < end ) {
+            final long transferred = channel.transferTo( position, end - position, target );
+
+            //the file was truncated underneath us
+            if ( transferred <= 0 ) {
+                break;
+            }
+
+            position += transferred;
+        }
+
+        return position - start;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        return read( single, 0, 1 ) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if ( len == 0 ) {
+            return 0;
+        }
+
+        if ( position >= end ) {
+            return -1;
+        }
+
+        final int toRead = ( int ) Math.min( len, end - position );
+        final int read = channel.read( ByteBuffer.wrap( b, off, toRead ), position );
+
+        if ( read <= 0 ) {
+            return -1;
+        }
+
+        position += read;
+
+        return read;
+    }
+
+
+    @Override
+    public long skip( long n ) {
+        if ( n <= 0 ) {
+            return 0;
+        }
+
+        final long skipped = Math.min( n, end - position );
+        position += skipped;
+        return skipped;
+    }
+
+
+    @Override
+    public int available() {
+        return ( int ) Math.min( Integer.MAX_VALUE, end - position );
+    }
+
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+
+    @Override
+    public synchronized void mark( int readlimit ) {
+        mark = position;
+    }
+
+
+    @Override
+    public synchronized void reset() {
+        position = mark;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
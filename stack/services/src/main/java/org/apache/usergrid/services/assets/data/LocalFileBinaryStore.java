@@ -17,8 +17,9 @@
 package org.apache.usergrid.services.assets.data;
 
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang.RandomStringUtils;
 import org.apache.usergrid.persistence.Entity;
 import org.apache.usergrid.persistence.EntityManager;
 import org.apache.usergrid.persistence.EntityManagerFactory;
@@ -27,10 +28,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
@@ -45,6 +50,8 @@ public class LocalFileBinaryStore implements BinaryStore {
 
     private static final long FIVE_MB = ( FileUtils.ONE_MB * 5 );
 
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
     @Autowired
     private Properties properties;
 
@@ -76,40 +83,63 @@ public class LocalFileBinaryStore implements BinaryStore {
 
         File file = path( appId, entity );
 
-        FileUtils.copyInputStreamToFile( inputStream, file );
+        long maxSizeBytes = getMaxSizeBytes();
 
-        long size = FileUtils.sizeOf( file );
+        EntityManager em = emf.getEntityManager( appId );
+        Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( entity );
 
-        // determine max size file allowed, default to 50mb
-        long maxSizeBytes = 50 * FileUtils.ONE_MB;
-        String maxSizeMbString = properties.getProperty( "usergrid.binary.max-size-mb", "50" );
-        if (StringUtils.isNumeric( maxSizeMbString )) {
-            maxSizeBytes = Long.parseLong( maxSizeMbString ) * FileUtils.ONE_MB;
-        }
+        FileUtils.forceMkdir( file.getParentFile() );
 
-        // always allow files up to 5mb
-        if (maxSizeBytes < 5 * FileUtils.ONE_MB ) {
-            maxSizeBytes = 5 * FileUtils.ONE_MB;
-        }
+        // stream to a temp file next to the asset, so a failed or oversized upload never replaces the existing data
+        File tempFile = File.createTempFile( file.getName(), ".tmp", file.getParentFile() );
 
-        EntityManager em = emf.getEntityManager( appId );
-        Map<String, Object> fileMetadata = AssetUtils.getFileMetadata( entity );
+        long size;
+        String checksum;
 
-        if ( size > maxSizeBytes ) {
-            try {
-                fileMetadata.put( "error", "Asset size " + size
-                        + " is larger than max size of " + maxSizeBytes );
-                em.update( entity );
+        try {
+            MessageDigest digest = DigestUtils.getMd5Digest();
+            byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+            size = 0;
+
+            try ( OutputStream out = new FileOutputStream( tempFile ) ) {
+                int read;
+                while ( ( read = inputStream.read( buffer ) ) != -1 ) {
+                    size += read;
+
+                    // stop reading as soon as we pass the limit instead of writing the whole upload to disk
+                    if ( size > maxSizeBytes ) {
+                        break;
+                    }
+
+                    digest.update( buffer, 0, read );
+                    out.write( buffer, 0, read );
+                }
+            }
 
-            } catch ( Exception e ) {
-                logger.error( "Error updating entity with error message", e);
+            if ( size > maxSizeBytes ) {
+                try {
+                    fileMetadata.put( "error", "Asset size is larger than max size of " + maxSizeBytes );
+                    em.update( entity );
+
+                } catch ( Exception e ) {
+                    logger.error( "Error updating entity with error message", e);
+                }
+                return;
             }
-            return;
+
+            checksum = Hex.encodeHexString( digest.digest() );
+
+            Files.move( tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE );
+        }
+        finally {
+            FileUtils.deleteQuietly( tempFile );
         }
 
         fileMetadata.put( AssetUtils.CONTENT_LENGTH, size );
         fileMetadata.put( AssetUtils.LAST_MODIFIED, System.currentTimeMillis() );
-        fileMetadata.put( AssetUtils.E_TAG, RandomStringUtils.randomAlphanumeric( 10 ) );
+        fileMetadata.put( AssetUtils.CHECKSUM, checksum );
+        fileMetadata.put( AssetUtils.E_TAG, checksum );
 
         // if we were successful, write the mime type
         if ( file.exists() ) {
@@ -124,15 +154,43 @@ public class LocalFileBinaryStore implements BinaryStore {
     }
 
 
+    /** The configured max upload size, defaults to 50mb and is never less than 5mb */
+    private long getMaxSizeBytes() {
+        long maxSizeBytes = 50 * FileUtils.ONE_MB;
+        String maxSizeMbString = properties.getProperty( "usergrid.binary.max-size-mb", "50" );
+        if (StringUtils.isNumeric( maxSizeMbString )) {
+            maxSizeBytes = Long.parseLong( maxSizeMbString ) * FileUtils.ONE_MB;
+        }
+
+        // always allow files up to 5mb
+        if (maxSizeBytes < FIVE_MB ) {
+            maxSizeBytes = FIVE_MB;
+        }
+
+        return maxSizeBytes;
+    }
+
+
+    /** Reads the whole file */
     @Override
     public InputStream read( UUID appId, Entity entity ) throws IOException {
-        return read( appId, entity, 0, FileUtils.ONE_MB * 5 );
+        return read( appId, entity, 0, Long.MAX_VALUE );
     }
 
 
+    /**
+     * Reads length bytes starting at offset.  The returned {@link FileRangeInputStream} only reads the requested range
+     * and can be transferred directly to a channel.  Returns null if the asset has no data.
+     */
     @Override
     public InputStream read( UUID appId, Entity entity, long offset, long length ) throws IOException {
-        return new BufferedInputStream( FileUtils.openInputStream( path( appId, entity ) ) );
+        File file = path( appId, entity );
+
+        if ( !file.isFile() ) {
+            return null;
+        }
+
+        return new FileRangeInputStream( file, offset, length );
     }
 
 
@@ -19,6 +19,7 @@ package org.apache.usergrid.services.notifications.impl;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -46,7 +47,6 @@ import org.apache.usergrid.persistence.entities.Notification;
 import org.apache.usergrid.persistence.entities.Notifier;
 import org.apache.usergrid.persistence.entities.Receipt;
 import org.apache.usergrid.persistence.entities.User;
-import org.apache.usergrid.persistence.index.utils.UUIDUtils;
 import org.apache.usergrid.persistence.queue.QueueManager;
 import org.apache.usergrid.persistence.queue.QueueMessage;
 import org.apache.usergrid.services.notifications.ApplicationQueueManager;
@@ -78,11 +78,18 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
     private final String queueName;
     private final Meter queueMeter;
     private final Meter sendMeter;
+    private final Meter fanoutMeter;
     private int concurrencyFactor;
+    private final int fanoutBatchSize;
+    private final int dedupExpectedDevices;
+    private final int dedupMaxInMemory;
 
     private final static String PUSH_PROCESSING_MAXTHREADS_PROP = "usergrid.push.async.processing.threads";
     private final static String PUSH_PROCESSING_QUEUESIZE_PROP = "usergrid.push.async.processing.queue.size";
     private final static String PUSH_PROCESSING_CONCURRENCY_PROP = "usergrid.push.async.processing.concurrency";
+    private final static String PUSH_FANOUT_BATCH_SIZE_PROP = "usergrid.push.fanout.batch.size";
+    private final static String PUSH_DEDUP_EXPECTED_DEVICES_PROP = "usergrid.push.dedup.expected.devices";
+    private final static String PUSH_DEDUP_MEMORY_DEVICES_PROP = "usergrid.push.dedup.memory.devices";
 
     HashMap<Object, ProviderAdapter> notifierHashMap; // only retrieve notifiers once
 
@@ -103,7 +110,11 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
         this.queueName = getQueueNames(properties);
         this.queueMeter = metricsFactory.getMeter(ApplicationQueueManagerImpl.class, "notification.queue");
         this.sendMeter = metricsFactory.getMeter(NotificationsService.class, "queue.send");
+        this.fanoutMeter = metricsFactory.getMeter(ApplicationQueueManagerImpl.class, "notification.fanout.devices");
         this.concurrencyFactor = Integer.valueOf(System.getProperty(PUSH_PROCESSING_CONCURRENCY_PROP, "50"));
+        this.fanoutBatchSize = Integer.valueOf(properties.getProperty(PUSH_FANOUT_BATCH_SIZE_PROP, "100"));
+        this.dedupExpectedDevices = Integer.valueOf(properties.getProperty(PUSH_DEDUP_EXPECTED_DEVICES_PROP, "5000000"));
+        this.dedupMaxInMemory = Integer.valueOf(properties.getProperty(PUSH_DEDUP_MEMORY_DEVICES_PROP, "100000"));
 
 
         /**
@@ -258,48 +269,17 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
 
             final Map<String, Object> filters = notification.getFilters();
 
-            Observable processMessagesObservable = Observable.create(new IteratorObservable<EntityRef>(iterator))
-
-                .flatMap( entityRef -> {
-
-                    return Observable.just(entityRef).flatMap(ref->{
-
-                        List<Entity> entities = new ArrayList<>();
-
-                            if( ref.getType().equals(User.ENTITY_TYPE)){
+            // devices already queued for this notification, kept out of the heap past a bound
+            final DeviceDeduplicator deduplicator =
+                new DeviceDeduplicator(dedupExpectedDevices, dedupMaxInMemory, metricsFactory);
 
-                                Query devicesQuery = new Query();
-                                devicesQuery.setCollection("devices");
-                                devicesQuery.setResultsLevel(Query.Level.CORE_PROPERTIES);
-                                devicesQuery.setLimit(50); // for now, assume a user has no more than 50 devices
-
-                                try {
-
-                                   entities = em.searchCollection(new SimpleEntityRef("user", ref.getUuid()), devicesQuery.getCollection(), devicesQuery).getEntities();
-
-                                }catch (Exception e){
-
-                                    logger.error("Unable to load devices for user: {}", ref.getUuid());
-                                    return Observable.empty();
-                                }
-
-
-                            }else if ( ref.getType().equals(Device.ENTITY_TYPE)){
-
-                                try{
-                                    entities.add(em.get(ref));
-
-                                }catch(Exception e){
-
-                                    logger.error("Unable to load device: {}", ref.getUuid());
-                                    return Observable.empty();
+            Observable processMessagesObservable = Observable.create(new IteratorObservable<EntityRef>(iterator))
 
-                                }
+                .buffer(fanoutBatchSize)
 
-                            }
-                        return Observable.from(entities);
+                .flatMap( refs -> {
 
-                        })
+                    return Observable.just(refs).flatMap(batch -> Observable.from(resolveDevices(batch, deduplicator, errorMessages)))
                         .filter( device -> {
 
                             if(logger.isTraceEnabled()) {
@@ -339,15 +319,6 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
                         .subscribeOn(Schedulers.io());
 
                 }, concurrencyFactor)
-                .distinct( queueMessage -> {
-
-                    if(queueMessage.isPresent()) {
-                        return queueMessage.get().getDeviceId();
-                    }
-
-                    return UUIDUtils.newTimeUUID(); // this should be distinct, default handling for the Optional.empty() case
-
-                } )
                 .doOnNext( message -> {
                     try {
 
@@ -402,7 +373,8 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
                         logger.error("Unable to set processing finished timestamp for notification");
                     }
 
-                });
+                })
+                .doOnTerminate( deduplicator::close );
 
             processMessagesObservable.subscribeOn(Schedulers.io()).subscribe(); // fire the queuing into the background
 
@@ -431,6 +403,92 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
 
     }
 
+    /**
+     * Resolve the devices of a batch of users and devices.  Devices already resolved for the notification are dropped
+     * before they're loaded, the rest are loaded together in a single read.  If that read fails the devices are loaded
+     * one at a time, since they're already marked as seen and would never be queued otherwise.
+     */
+    private List<Entity> resolveDevices(final List<EntityRef> refs, final DeviceDeduplicator deduplicator,
+                                        final Collection<String> errorMessages) {
+
+        final List<UUID> deviceIds = new ArrayList<>(refs.size());
+
+        for (EntityRef ref : refs) {
+
+            if (ref.getType().equals(User.ENTITY_TYPE)) {
+
+                Query devicesQuery = new Query();
+                devicesQuery.setCollection("devices");
+                devicesQuery.setResultsLevel(Query.Level.REFS);
+                devicesQuery.setLimit(50); // for now, assume a user has no more than 50 devices
+
+                try {
+
+                    for (EntityRef deviceRef : em.searchCollection(new SimpleEntityRef("user", ref.getUuid()),
+                        devicesQuery.getCollection(), devicesQuery).getRefs()) {
+                        addDevice(deviceIds, deviceRef.getUuid(), deduplicator);
+                    }
+
+                } catch (Exception e) {
+                    logger.error("Unable to load devices for user: {}", ref.getUuid());
+                }
+
+            } else if (ref.getType().equals(Device.ENTITY_TYPE)) {
+
+                addDevice(deviceIds, ref.getUuid(), deduplicator);
+            }
+        }
+
+        if (deviceIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        try {
+
+            return em.getEntities(deviceIds, Device.ENTITY_TYPE).getEntities();
+
+        } catch (Exception e) {
+            logger.error("Unable to load {} devices together, loading them one at a time", deviceIds.size(), e);
+        }
+
+        final List<Entity> devices = new ArrayList<>(deviceIds.size());
+
+        for (UUID deviceId : deviceIds) {
+
+            try {
+
+                final Entity device = em.get(new SimpleEntityRef(Device.ENTITY_TYPE, deviceId));
+
+                if (device != null) {
+                    devices.add(device);
+                }
+
+            } catch (Exception deviceLoadException) {
+                logger.error("Unable to load device: {}", deviceId, deviceLoadException);
+                errorMessages.add("Failed to add device: " + deviceId + ", error:" + deviceLoadException);
+            }
+        }
+
+        return devices;
+    }
+
+
+    private void addDevice(final List<UUID> deviceIds, final UUID deviceId, final DeviceDeduplicator deduplicator) {
+
+        fanoutMeter.mark();
+
+        try {
+            if (!deduplicator.add(deviceId)) {
+                return;
+            }
+        } catch (IOException e) {
+            // better to possibly send twice than to not send at all
+            logger.error("Unable to de-duplicate device: {}", deviceId, e);
+        }
+
+        deviceIds.add(deviceId);
+    }
+
     /**
      * only need to get notifiers once. will reset on next batch
      *
@@ -735,9 +793,9 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
 
     private String getProviderId(EntityRef device, Notifier notifier) throws Exception {
         try {
-            Object value = em.getProperty(device, notifier.getName() + NOTIFIER_ID_POSTFIX);
+            Object value = getProperty(device, notifier.getName() + NOTIFIER_ID_POSTFIX);
             if (value == null) {
-                value = em.getProperty(device, notifier.getUuid() + NOTIFIER_ID_POSTFIX);
+                value = getProperty(device, notifier.getUuid() + NOTIFIER_ID_POSTFIX);
             }
             return value != null ? value.toString() : null;
         } catch (Exception e) {
@@ -747,4 +805,15 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
     }
 
 
+    /**
+     * Read the property from the device if it's already loaded
+     */
+    private Object getProperty(EntityRef device, String propertyName) throws Exception {
+        if (device instanceof Entity) {
+            return ((Entity) device).getProperty(propertyName);
+        }
+        return em.getProperty(device, propertyName);
+    }
+
+
 }
@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.notifications.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+
+
+/**
+ * Remembers the devices a notification has been queued for, in bounded memory.
+ *
+ * The most recent ids are held in an exact set in memory, up to a limit.  Older ids are spilled to sorted files on
+ * disk, and go into a bloom filter sized for the expected number of devices.  Spilled ids the filter has not seen are
+ * new, only ids it might have seen are checked against the files.  Spilled files of the same size are merged, so a
+ * check reads a logarithmic number of files.
+ *
+ * The filter is only built on the first spill, so notifications that reach fewer devices than the memory limit never
+ * pay for it.
+ */
+public class DeviceDeduplicator implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger( DeviceDeduplicator.class );
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    /** The bytes of an id in a spilled file */
+    private static final int ID_BYTES = 16;
+
+    /** Rough bytes of an id held in memory */
+    private static final int ID_MEMORY_BYTES = 80;
+
+    private static final Funnel<UUID> UUID_FUNNEL =
+        ( uuid, into ) -> into.putLong( uuid.getMostSignificantBits() ).putLong( uuid.getLeastSignificantBits() );
+
+    private final int expectedDevices;
+    private final int maxInMemory;
+
+    private BloomFilter<UUID> bloomFilter;
+    private long bloomFilterBytes;
+
+    private final Set<UUID> inMemory = new HashSet<>();
+    private final List<SpilledIds> spilled = new ArrayList<>();
+
+    private final Meter duplicateMeter;
+    private final Meter spillMeter;
+    private final Counter memoryCounter;
+
+    private boolean closed;
+
+
+    /**
+     * @param expectedDevices The number of devices the bloom filter is sized for once ids are spilled.  More devices
+     * only cost more exact checks
+     * @param maxInMemory The number of ids held in memory before they're spilled to disk
+     */
+    public DeviceDeduplicator( final int expectedDevices, final int maxInMemory,
+                               final MetricsFactory metricsFactory ) {
+        this.expectedDevices = Math.max( expectedDevices, 1 );
+        this.maxInMemory = Math.max( maxInMemory, 1 );
+
+        this.duplicateMeter = metricsFactory.getMeter( DeviceDeduplicator.class, "notification.dedup.duplicates" );
+        this.spillMeter = metricsFactory.getMeter( DeviceDeduplicator.class, "notification.dedup.spilled" );
+        this.memoryCounter = metricsFactory.getCounter( DeviceDeduplicator.class, "notification.dedup.memory" );
+    }
+
+
+    /**
+     * Add the device id, returning true if it's the first time the device was added
+     */
+    public synchronized boolean add( final UUID deviceId ) throws IOException {
+        if ( inMemory.contains( deviceId ) || ( bloomFilter != null && bloomFilter.mightContain( deviceId )
+            && isSpilled( deviceId ) ) ) {
+            duplicateMeter.mark();
+            return false;
+        }
+
+        inMemory.add( deviceId );
+        memoryCounter.inc( ID_MEMORY_BYTES );
+
+        if ( inMemory.size() >= maxInMemory ) {
+            spill();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Release the memory and delete the spilled files
+     */
+    @Override
+    public synchronized void close() {
+        if ( closed ) {
+            return;
+        }
+
+        closed = true;
+
+        memoryCounter.dec( bloomFilterBytes + ( long ) inMemory.size() * ID_MEMORY_BYTES );
+        inMemory.clear();
+        bloomFilter = null;
+
+        for ( SpilledIds ids : spilled ) {
+            ids.delete();
+        }
+
+        spilled.clear();
+    }
+
+
+    private boolean isSpilled( final UUID deviceId ) throws IOException {
+        for ( SpilledIds ids : spilled ) {
+            if ( ids.contains( deviceId ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Write the ids in memory to a sorted file and the bloom filter, then merge the files of the same level
+     */
+    private void spill() throws IOException {
+        if ( bloomFilter == null ) {
+            bloomFilter = BloomFilter.create( UUID_FUNNEL, expectedDevices, FALSE_POSITIVE_PROBABILITY );
+            bloomFilterBytes = bloomFilterBytes( expectedDevices );
+            memoryCounter.inc( bloomFilterBytes );
+        }
+
+        final List<UUID> sorted = new ArrayList<>( inMemory );
+        Collections.sort( sorted );
+
+        final File file = File.createTempFile( "push-devices", ".ids" );
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) ) ) {
+            for ( UUID id : sorted ) {
+                write( out, id );
+                bloomFilter.put( id );
+            }
+        }
+
+        spilled.add( new SpilledIds( file, sorted.size(), 0 ) );
+        spillMeter.mark( sorted.size() );
+
+        memoryCounter.dec( ( long ) inMemory.size() * ID_MEMORY_BYTES );
+        inMemory.clear();
+
+        while ( spilled.size() > 1 && spilled.get( spilled.size() - 1 ).level == spilled.get(
+            spilled.size() - 2 ).level ) {
+
+            final SpilledIds newer = spilled.remove( spilled.size() - 1 );
+            final SpilledIds older = spilled.remove( spilled.size() - 1 );
+
+            spilled.add( merge( older, newer ) );
+        }
+
+        if ( logger.isTraceEnabled() ) {
+            logger.trace( "Spilled {} device ids, {} spill files", sorted.size(), spilled.size() );
+        }
+    }
+
+
+    private SpilledIds merge( final SpilledIds first, final SpilledIds second ) throws IOException {
+        final File file = File.createTempFile( "push-devices", ".ids" );
+
+        try ( DataInputStream firstIn = first.openStream(); DataInputStream secondIn = second.openStream();
+              DataOutputStream out = new DataOutputStream(
+                  new BufferedOutputStream( new FileOutputStream( file ) ) ) ) {
+
+            UUID firstId = read( firstIn );
+            UUID secondId = read( secondIn );
+
+            while ( firstId != null || secondId != null ) {
+                if ( secondId == null || ( firstId != null && firstId.compareTo( secondId ) <= 0 ) ) {
+                    write( out, firstId );
+                    firstId = read( firstIn );
+                }
+                else {
+                    write( out, secondId );
+                    secondId = read( secondIn );
+                }
+            }
+        }
+
+        first.delete();
+        second.delete();
+
+        return new SpilledIds( file, first.count + second.count, first.level + 1 );
+    }
+
+
+    private static UUID read( final DataInputStream in ) throws IOException {
+        try {
+            return new UUID( in.readLong(), in.readLong() );
+        }
+        catch ( EOFException e ) {
+            return null;
+        }
+    }
+
+
+    private static void write( final DataOutputStream out, final UUID id ) throws IOException {
+        out.writeLong( id.getMostSignificantBits() );
+        out.writeLong( id.getLeastSignificantBits() );
+    }
+
+
+    /**
+     * The bytes of a bloom filter for the number of expected insertions, the same way guava sizes it
+     */
+    private static long bloomFilterBytes( final int expectedInsertions ) {
+        return ( long ) ( -( double ) expectedInsertions * Math.log( FALSE_POSITIVE_PROBABILITY ) / ( Math.log( 2 ) * Math
+            .log( 2 ) ) ) / 8;
+    }
+
+
+    /**
+     * A sorted file of device ids
+     */
+    private static final class SpilledIds {
+
+        private final File file;
+        private final long count;
+        private final int level;
+        private RandomAccessFile reader;
+
+
+        private SpilledIds( final File file, final long count, final int level ) {
+            this.file = file;
+            this.count = count;
+            this.level = level;
+        }
+
+
+        /**
+         * Binary search the file for the id
+         */
+        private boolean contains( final UUID id ) throws IOException {
+            if ( reader == null ) {
+                reader = new RandomAccessFile( file, "r" );
+            }
+
+            long low = 0;
+            long high = count - 1;
+
+            while ( low <= high ) {
+                final long mid = ( low + high ) >>> 1;
+
+                reader.seek( mid * ID_BYTES );
+
+                final int compare = new UUID( reader.readLong(), reader.readLong() ).compareTo( id );
+
+                if ( compare < 0 ) {
+                    low = mid + 1;
+                }
+                else if ( compare > 0 ) {
+                    high = mid - 1;
+                }
+                else {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+
+        private DataInputStream openStream() throws IOException {
+            return new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        }
+
+
+        private void delete() {
+            try {
+                if ( reader != null ) {
+                    reader.close();
+                }
+            }
+            catch ( IOException e ) {
+                logger.warn( "Unable to close spilled device ids {}", file, e );
+            }
+
+            if ( !file.delete() ) {
+                logger.warn( "Unable to delete spilled device ids {}", file );
+            }
+        }
+    }
+}
@@ -22,7 +22,7 @@ import org.apache.usergrid.ServiceITSetup;
 import org.apache.usergrid.ServiceITSetupImpl;
 import org.apache.usergrid.cassandra.ClearShiroSubject;
 import org.apache.usergrid.cassandra.SpringResource;
-import org.apache.usergrid.count.SimpleBatcher;
+import org.apache.usergrid.count.AggregatingBatcher;
 import org.apache.usergrid.management.OrganizationInfo;
 import org.apache.usergrid.management.UserInfo;
 import org.apache.usergrid.persistence.CredentialsInfo;
@@ -132,7 +132,7 @@ public class ManagementServiceIT {
 
     @Test
     public void testCountAdminUserAction() throws Exception {
-        SimpleBatcher batcher = SpringResource.getInstance().getBean( SimpleBatcher.class );
+        AggregatingBatcher batcher = SpringResource.getInstance().getBean( AggregatingBatcher.class );
 
         batcher.setBlockingSubmit( true );
         batcher.setBatchSize( 1 );
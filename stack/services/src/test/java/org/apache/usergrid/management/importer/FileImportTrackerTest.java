@@ -395,5 +395,39 @@ public class FileImportTrackerTest {
 
         assertTrue( "We shouldn't process after a failure", statistics.shouldStopProcessingConnections() );
     }
-}
 
+
+    @Test
+    public void testCheckpoint() throws Exception {
+
+        final EntityManagerFactory emf = mock( EntityManagerFactory.class );
+        final EntityManager em = mock( EntityManager.class );
+        when( emf.getEntityManager( emf.getManagementAppId() ) ).thenReturn( em );
+
+        final FileImport fileImport = new FileImport();
+        fileImport.setUuid( UUIDGenerator.newTimeUUID() );
+
+        // never flushes on its own, only with checkpoints
+        final FileImportTracker fileImportTracker = new FileImportTracker( emf, fileImport, Integer.MAX_VALUE );
+
+        for ( long i = 0; i < 100; i++ ) {
+            fileImportTracker.entityWritten();
+        }
+
+        verify( em, times( 0 ) ).update( same( fileImport ) );
+
+        fileImportTracker.checkpoint( 4096, "things" );
+
+        verify( em ).update( same( fileImport ) );
+
+        assertEquals( FileImport.State.STARTED, fileImport.getState() );
+        assertEquals( 4096, fileImport.getCheckpointOffset() );
+        assertEquals( "things", fileImport.getCheckpointCollection() );
+        assertEquals( 100, fileImport.getImportedEntityCount() );
+
+        // a resumed tracker starts from the checkpointed counters
+        final FileImportTracker resumed = new FileImportTracker( emf, fileImport, Integer.MAX_VALUE );
+
+        assertEquals( 100, resumed.getTotalEntityCount() );
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.usergrid.management.importer;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.batch.JobExecution;
+import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.EntityManagerFactory;
+import org.apache.usergrid.persistence.EntityRef;
+import org.apache.usergrid.persistence.entities.FileImport;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Parses import files with the entity writes recorded in memory, to check how a file is batched, checkpointed and
+ * resumed
+ */
+public class ImportServiceImplTest {
+
+    private static final int ENTITY_COUNT = 350;
+
+    /** Multi byte characters, so character and byte offsets differ */
+    private static final String NAME_SUFFIX = "-\u00fc\u00e9\u221a";
+
+    private final ImportServiceImpl importService = new ImportServiceImpl();
+
+    private EntityManagerFactory emf;
+    private File file;
+
+
+    @Before
+    public void setup() throws Exception {
+        emf = mock( EntityManagerFactory.class );
+        when( emf.getEntityManager( any( UUID.class ) ) ).thenReturn( mock( EntityManager.class ) );
+
+        file = File.createTempFile( "import", ".json" );
+    }
+
+
+    @After
+    public void cleanup() {
+        file.delete();
+    }
+
+
+    @Test
+    public void resumeFromCheckpoint() throws Exception {
+        writeFile( "{\"collections\":{\"things\":[\n", "\n]}}" );
+
+        final FileImport fileImport = new FileImport( file.getName(), UUIDGenerator.newTimeUUID() );
+
+        //the import stops while the third batch is written, as when its node goes down
+        final StoppingTracker stoppingTracker = new StoppingTracker( fileImport );
+        final Map<String, Integer> firstRun = new ConcurrentHashMap<>();
+
+        importService.parseEntitiesAndConnectionsFromJson( mock( JobExecution.class ), file,
+            recordingEntityManager( firstRun, stoppingTracker, name( 250 ) ), mock( EntityManager.class ),
+            fileImport, stoppingTracker );
+
+        for ( int i = 0; i < 200; i++ ) {
+            assertEquals( Integer.valueOf( 1 ), firstRun.get( name( i ) ) );
+        }
+
+        //the checkpoint is the byte offset right after the last entity of the second batch
+        final long offset = fileImport.getCheckpointOffset();
+        final byte[] bytes = Files.readAllBytes( file.toPath() );
+
+        assertEquals( "things", fileImport.getCheckpointCollection() );
+        assertEquals( '}', bytes[( int ) offset - 1] );
+
+        final String rest = new String( bytes, ( int ) offset, bytes.length - ( int ) offset, StandardCharsets.UTF_8 );
+        assertTrue( rest, rest.startsWith( ",\n{\"Metadata\":{\"name\":\"" + name( 200 ) + "\"" ) );
+
+        //resumed with a new tracker, as a restarted job would
+        final Map<String, Integer> resumed = new ConcurrentHashMap<>();
+
+        importService.parseEntitiesAndConnectionsFromJson( mock( JobExecution.class ), file,
+            recordingEntityManager( resumed, null, null ), mock( EntityManager.class ), fileImport,
+            new FileImportTracker( emf, fileImport, 1000 ) );
+
+        //every entity after the checkpoint exactly once, none before it
+        assertEquals( ENTITY_COUNT - 200, resumed.size() );
+
+        for ( int i = 200; i < ENTITY_COUNT; i++ ) {
+            assertEquals( Integer.valueOf( 1 ), resumed.get( name( i ) ) );
+        }
+
+        assertEquals( FileImport.State.FINISHED, fileImport.getState() );
+    }
+
+
+    @Test
+    public void flushWithoutCheckpoint() throws Exception {
+        //the collections aren't in the root object, so there's no offset to checkpoint
+        writeFile( "[{\"collections\":{\"things\":[\n", "\n]}}]" );
+
+        final FileImport fileImport = new FileImport( file.getName(), UUIDGenerator.newTimeUUID() );
+        final FileImportTracker tracker = new FileImportTracker( emf, fileImport, 1000 );
+        final JobExecution execution = mock( JobExecution.class );
+        final Map<String, Integer> written = new ConcurrentHashMap<>();
+
+        importService.parseEntitiesAndConnectionsFromJson( execution, file,
+            recordingEntityManager( written, null, null ), mock( EntityManager.class ), fileImport, tracker );
+
+        assertEquals( ENTITY_COUNT, written.size() );
+
+        //written in full batches as they're read, then the rest at the end of the file
+        verify( execution, times( ENTITY_COUNT / ImportServiceImpl.IMPORT_BATCH_SIZE + 1 ) ).heartbeat();
+
+        assertEquals( 0, fileImport.getCheckpointOffset() );
+    }
+
+
+    @Test
+    public void connectionFailureKeepsWritingEntities() throws Exception {
+        writeFile( "{\"collections\":{\"things\":[\n", "\n]}}",
+            ",\"connections\":{\"likes\":[\"" + UUIDGenerator.newTimeUUID() + "\"]}" );
+
+        final FileImport fileImport = new FileImport( file.getName(), UUIDGenerator.newTimeUUID() );
+        final FileImportTracker tracker = new FileImportTracker( emf, fileImport, 1000 );
+        final Map<String, Integer> written = new ConcurrentHashMap<>();
+
+        final EntityManager em = recordingEntityManager( written, null, null );
+        when( em.createConnection( any( EntityRef.class ), anyString(), any( EntityRef.class ) ) )
+            .thenThrow( new RuntimeException( "connection failed" ) );
+
+        importService.parseEntitiesAndConnectionsFromJson( mock( JobExecution.class ), file, em,
+            mock( EntityManager.class ), fileImport, tracker );
+
+        //every entity is still written
+        assertEquals( ENTITY_COUNT, written.size() );
+        assertEquals( 0, tracker.getEntitiesFailed() );
+
+        //connections stop at the batch the first one failed in
+        assertTrue( tracker.getConnectionsFailed() > 0 );
+        verify( em, atMost( ImportServiceImpl.IMPORT_BATCH_SIZE ) )
+            .createConnection( any( EntityRef.class ), anyString(), any( EntityRef.class ) );
+
+        assertEquals( FileImport.State.FAILED, fileImport.getState() );
+    }
+
+
+    private void writeFile( final String head, final String tail ) throws Exception {
+        writeFile( head, tail, "" );
+    }
+
+
+    /**
+     * Write the entities between the head and the tail, with the given fields after the metadata of each
+     */
+    private void writeFile( final String head, final String tail, final String fields ) throws Exception {
+        try ( OutputStream out = new FileOutputStream( file ) ) {
+            out.write( head.getBytes( StandardCharsets.UTF_8 ) );
+
+            for ( int i = 0; i < ENTITY_COUNT; i++ ) {
+                if ( i > 0 ) {
+                    out.write( ",\n".getBytes( StandardCharsets.UTF_8 ) );
+                }
+
+                final String entity = "{\"Metadata\":{\"name\":\"" + name( i ) + "\",\"uuid\":\""
+                    + UUIDGenerator.newTimeUUID() + "\"}" + fields + "}";
+
+                out.write( entity.getBytes( StandardCharsets.UTF_8 ) );
+            }
+
+            out.write( tail.getBytes( StandardCharsets.UTF_8 ) );
+        }
+    }
+
+
+    /**
+     * An entity manager that counts the entities created by name, and stops the tracker once the given entity is
+     * written
+     */
+    private EntityManager recordingEntityManager( final Map<String, Integer> written,
+                                                  final StoppingTracker tracker, final String stopAt )
+        throws Exception {
+
+        final EntityManager em = mock( EntityManager.class );
+
+        when( em.create( any( UUID.class ), anyString(), any( Map.class ) ) ).thenAnswer( invocation -> {
+            final String name = ( String ) ( ( Map ) invocation.getArguments()[2] ).get( "name" );
+
+            assertEquals( "thing", invocation.getArguments()[1] );
+
+            written.merge( name, 1, Integer::sum );
+
+            if ( name.equals( stopAt ) ) {
+                tracker.stopped = true;
+            }
+
+            return null;
+        } );
+
+        return em;
+    }
+
+
+    private static String name( final int index ) {
+        return "thing-" + index + NAME_SUFFIX;
+    }
+
+
+    /**
+     * Stops processing when told to, without recording a failure
+     */
+    private final class StoppingTracker extends FileImportTracker {
+
+        private volatile boolean stopped;
+
+
+        private StoppingTracker( final FileImport fileImport ) {
+            super( emf, fileImport, 1000 );
+        }
+
+
+        @Override
+        public boolean shouldStopProcessingEntities() {
+            return stopped || super.shouldStopProcessingEntities();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.security;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.usergrid.security.shiro.CustomPermission;
+import org.apache.usergrid.security.shiro.PermissionMatcher;
+
+import org.apache.shiro.authz.Permission;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class PermissionMatcherTest {
+
+    private static final String APP_1 = "00000000-0000-0000-0000-000000000001";
+    private static final String APP_2 = "00000000-0000-0000-0000-000000000002";
+
+    private static final String[] PERMISSIONS = {
+            "applications:get:" + APP_1 + ":/foo",
+            "applications:get,put:" + APP_1 + ":/foo/bar/*",
+            "applications:post:" + APP_1 + ":/bar/*/boz/*",
+            "applications:delete:" + APP_2 + ":/**",
+            "applications:*:" + APP_2 + ":/users/*",
+            "applications:get:*:/public/**",
+            "organizations:access:" + APP_1,
+            "access:*",
+            "applications:get"
+    };
+
+    private static final String[] CHALLENGERS = {
+            "applications:get:" + APP_1 + ":/foo",
+            "applications:get:" + APP_1 + ":/foo/bar",
+            "applications:put:" + APP_1 + ":/foo/bar/baz",
+            "applications:get,put:" + APP_1 + ":/foo/bar/baz",
+            "applications:get,post:" + APP_1 + ":/foo/bar/baz",
+            "applications:delete:" + APP_1 + ":/foo/bar/baz",
+            "applications:post:" + APP_1 + ":/bar/1/boz/2",
+            "applications:post:" + APP_1 + ":/bar/1/boz/2/3",
+            "applications:delete:" + APP_2 + ":/anything/at/all",
+            "applications:put:" + APP_2 + ":/users/fred",
+            "applications:put:" + APP_2 + ":/groups/fred",
+            "applications:get:" + APP_2 + ":/public/stuff",
+            "applications:put:" + APP_2 + ":/public/stuff",
+            "organizations:access:" + APP_1,
+            "organizations:access:" + APP_2,
+            "access:anything:else",
+            "APPLICATIONS:GET:" + APP_1 + ":/foo",
+            "applications:get:" + APP_1,
+            "applications",
+            "applications:*:" + APP_1 + ":/foo"
+    };
+
+
+    @Test
+    public void sameAsEachPermission() {
+        List<Permission> permissions = new ArrayList<>();
+
+        for ( String permission : PERMISSIONS ) {
+            permissions.add( new CustomPermission( permission ) );
+        }
+
+        PermissionMatcher matcher = new PermissionMatcher( permissions );
+
+        for ( String challengerString : CHALLENGERS ) {
+            CustomPermission challenger = new CustomPermission( challengerString );
+
+            boolean expected = false;
+            for ( Permission permission : permissions ) {
+                expected |= permission.implies( challenger );
+            }
+
+            assertEquals( challengerString, expected, matcher.implies( challenger ) );
+        }
+    }
+
+
+    @Test
+    public void noPermissions() {
+        PermissionMatcher matcher = new PermissionMatcher( new ArrayList<Permission>() );
+
+        assertEquals( false, matcher.implies( new CustomPermission( "applications:get:" + APP_1 + ":/foo" ) ) );
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.assets.data;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+public class FileRangeInputStreamTest {
+
+    private File file;
+    private byte[] data;
+
+
+    @Before
+    public void setup() throws Exception {
+        data = new byte[1000];
+        for ( int i = 0; i < data.length; i++ ) {
+            data[i] = ( byte ) i;
+        }
+
+        file = File.createTempFile( "fileRange", ".bin" );
+        FileUtils.writeByteArrayToFile( file, data );
+    }
+
+
+    @After
+    public void cleanup() {
+        FileUtils.deleteQuietly( file );
+    }
+
+
+    @Test
+    public void readRange() throws Exception {
+        try ( FileRangeInputStream in = new FileRangeInputStream( file, 100, 50 ) ) {
+            assertEquals( 50, in.getRemaining() );
+            assertArrayEquals( slice( 100, 50 ), IOUtils.toByteArray( in ) );
+            assertEquals( -1, in.read() );
+        }
+    }
+
+
+    @Test
+    public void rangeClampedToFile() throws Exception {
+        //a length to the end of the file must not overflow the end of the range
+        try ( FileRangeInputStream in = new FileRangeInputStream( file, 900, Long.MAX_VALUE ) ) {
+            assertEquals( 100, in.getRemaining() );
+            assertArrayEquals( slice( 900, 100 ), IOUtils.toByteArray( in ) );
+        }
+
+        try ( FileRangeInputStream in = new FileRangeInputStream( file, 2000, 10 ) ) {
+            assertEquals( -1, in.read() );
+        }
+    }
+
+
+    @Test
+    public void transferRange() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try ( FileRangeInputStream in = new FileRangeInputStream( file, 10, 500 ) ) {
+            assertEquals( 500, in.transferTo( Channels.newChannel( out ) ) );
+            assertEquals( 0, in.getRemaining() );
+        }
+
+        assertArrayEquals( slice( 10, 500 ), out.toByteArray() );
+    }
+
+
+    private byte[] slice( int offset, int length ) {
+        final byte[] slice = new byte[length];
+        System.arraycopy( data, offset, slice, 0, length );
+        return slice;
+    }
+}
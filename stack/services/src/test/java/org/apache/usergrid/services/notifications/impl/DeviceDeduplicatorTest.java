@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.services.notifications.impl;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class DeviceDeduplicatorTest {
+
+    private MetricsFactory metricsFactory;
+    private Counter memoryCounter;
+
+
+    @Before
+    public void setup() {
+        metricsFactory = mock( MetricsFactory.class );
+        memoryCounter = new Counter();
+
+        when( metricsFactory.getMeter( any( Class.class ), anyString() ) ).thenReturn( new Meter() );
+        when( metricsFactory.getCounter( any( Class.class ), anyString() ) ).thenReturn( memoryCounter );
+    }
+
+
+    @Test
+    public void inMemory() throws Exception {
+        try ( DeviceDeduplicator deduplicator = new DeviceDeduplicator( 1000, 1000, metricsFactory ) ) {
+            final UUID device = UUID.randomUUID();
+
+            assertTrue( deduplicator.add( device ) );
+            assertFalse( deduplicator.add( device ) );
+            assertTrue( deduplicator.add( UUID.randomUUID() ) );
+        }
+
+        assertEquals( 0, memoryCounter.getCount() );
+    }
+
+
+    /**
+     * The bloom filter for the expected devices is only built once ids are spilled
+     */
+    @Test
+    public void filterBuiltOnSpill() throws Exception {
+        try ( DeviceDeduplicator deduplicator = new DeviceDeduplicator( 5000000, 100, metricsFactory ) ) {
+            for ( int i = 0; i < 99; i++ ) {
+                assertTrue( deduplicator.add( UUID.randomUUID() ) );
+            }
+
+            assertTrue( memoryCounter.getCount() < 100 * 1024 );
+
+            final UUID device = UUID.randomUUID();
+
+            assertTrue( deduplicator.add( device ) );
+            assertTrue( memoryCounter.getCount() > 1024 * 1024 );
+
+            assertFalse( deduplicator.add( device ) );
+        }
+
+        assertEquals( 0, memoryCounter.getCount() );
+    }
+
+
+    /**
+     * A small filter and memory bound, so most checks go to the spilled files
+     */
+    @Test
+    public void spilled() throws Exception {
+        final List<UUID> devices = new ArrayList<>();
+
+        for ( int i = 0; i < 5000; i++ ) {
+            devices.add( UUID.randomUUID() );
+        }
+
+        try ( DeviceDeduplicator deduplicator = new DeviceDeduplicator( 10, 100, metricsFactory ) ) {
+            for ( UUID device : devices ) {
+                assertTrue( deduplicator.add( device ) );
+            }
+
+            for ( UUID device : devices ) {
+                assertFalse( deduplicator.add( device ) );
+            }
+
+            assertTrue( deduplicator.add( UUID.randomUUID() ) );
+        }
+
+        assertEquals( 0, memoryCounter.getCount() );
+    }
+}